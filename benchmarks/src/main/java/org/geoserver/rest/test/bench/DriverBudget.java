@@ -0,0 +1,94 @@
+package org.geoserver.rest.test.bench;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Runs all the benchmarks and checks them against the driver's overhead budget, exiting with
+ * status 1 if any is over.
+ * <p>
+ * The budget is {@link #REQUEST_BUDGET_MICROS} of driver time per REST request: building the
+ * largest request body, picking the member, recording the latency, and parsing a feature type
+ * document, so the driver stays well under the millisecond a cluster member takes for the
+ * cheapest request. Each benchmark has its own budget as well, and scanning GetFeature
+ * responses, which grows with the response, is budgeted per feature.
+ */
+public class DriverBudget {
+
+    public static final double REQUEST_BUDGET_MICROS = 50;
+
+    /**
+     * Microseconds per operation, by benchmark method
+     */
+    private static final Map<String, Double> BUDGETS = ImmutableMap.<String, Double> builder()
+            .put("workspace", 0.5) //
+            .put("dataStore", 1.0) //
+            .put("featureType", 1.0) //
+            .put("modifiedFeatureType", 3.0) //
+            .put("manyAttributes", 100.0) //
+            .put("parseAttributes", 40.0) //
+            .put("countElementDeclarations", 20.0) //
+            .put("selectAndComplete", 1.0) //
+            .put("recordLatency", 0.5) //
+            .put("recordError", 0.5) //
+            .put("logBelowLevel", 0.05) //
+            .build();
+
+    private static final double SCAN_BUDGET_MICROS = 5, SCAN_BUDGET_MICROS_PER_FEATURE = 0.5;
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder().include(
+                DriverBudget.class.getPackage().getName() + ".*Benchmark").build();
+        Collection<RunResult> results = new Runner(options).run();
+
+        boolean over = false;
+        double maxBody = 0, maxSelect = 0, record = 0, parse = 0;
+        System.out.printf("%-60s %12s %12s\n", "benchmark", "us/op", "budget");
+        for (RunResult result : results) {
+            String benchmark = result.getParams().getBenchmark();
+            String method = benchmark.substring(benchmark.lastIndexOf('.') + 1);
+            String label = benchmark.substring(benchmark.lastIndexOf('.', benchmark.length()
+                    - method.length() - 2) + 1);
+            double score = result.getPrimaryResult().getScore();
+            double budget;
+            if ("scanGetFeature".equals(method)) {
+                String features = result.getParams().getParam("features");
+                label += " features=" + features;
+                budget = SCAN_BUDGET_MICROS + SCAN_BUDGET_MICROS_PER_FEATURE
+                        * Integer.parseInt(features);
+            } else {
+                String strategy = result.getParams().getParam("strategy");
+                if (strategy != null) {
+                    label += " " + strategy;
+                }
+                budget = BUDGETS.get(method).doubleValue();
+            }
+            if (method.toLowerCase().contains("featuretype") || "workspace".equals(method)
+                    || "dataStore".equals(method)) {
+                maxBody = Math.max(maxBody, score);
+            } else if ("selectAndComplete".equals(method)) {
+                maxSelect = Math.max(maxSelect, score);
+            } else if ("recordLatency".equals(method)) {
+                record = score;
+            } else if ("parseAttributes".equals(method)) {
+                parse = score;
+            }
+            over |= score > budget;
+            System.out.printf("%-60s %12.3f %12.3f%s\n", label, score, budget,
+                    score > budget ? " OVER" : "");
+        }
+        double request = maxBody + maxSelect + record + parse;
+        over |= request > REQUEST_BUDGET_MICROS;
+        System.out.printf("%-60s %12.3f %12.3f%s\n", "driver overhead per REST request", request,
+                REQUEST_BUDGET_MICROS, request > REQUEST_BUDGET_MICROS ? " OVER" : "");
+        System.exit(over ? 1 : 0);
+    }
+}
@@ -0,0 +1,48 @@
+package org.geoserver.rest.test.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.geoserver.rest.test.FeatureCollectionScan;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Scanning GetFeature responses of growing size through the 64KB buffer the driver uses by
+ * default
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FeatureScanBenchmark {
+
+    @Param({ "1", "100", "10000" })
+    public int features;
+
+    private byte[] getFeature;
+
+    private final byte[] buffer = new byte[64 * 1024];
+
+    @Setup
+    public void setUp() throws IOException {
+        getFeature = Payloads.getFeature(features);
+    }
+
+    @Benchmark
+    public FeatureCollectionScan scanGetFeature() throws IOException {
+        return FeatureCollectionScan.scan(new ByteArrayInputStream(getFeature), buffer);
+    }
+}
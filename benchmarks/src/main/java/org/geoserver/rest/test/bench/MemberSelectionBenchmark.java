@@ -0,0 +1,116 @@
+package org.geoserver.rest.test.bench;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.geoserver.rest.test.HttpTransport;
+import org.geoserver.rest.test.MemberSelector;
+import org.geoserver.rest.test.Operation;
+import org.geoserver.rest.test.TransportResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Picking the member for a request and reporting its latency back, from as many threads as a
+ * typical test runs
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class MemberSelectionBenchmark {
+
+    private static final List<String> MEMBERS = ImmutableList.of(
+            "http://localhost:8081/geoserver/", "http://localhost:8082/geoserver/",
+            "http://localhost:8083/geoserver/");
+
+    @Param({ MemberSelector.ROUND_ROBIN, MemberSelector.RANDOM, MemberSelector.LEAST_OUTSTANDING,
+            MemberSelector.EWMA, MemberSelector.STICKY })
+    public String strategy;
+
+    private MemberSelector selector;
+
+    /**
+     * Requests in flight per member, as the selectors see them through the transport
+     */
+    private final AtomicIntegerArray inFlight = new AtomicIntegerArray(MEMBERS.size());
+
+    @Setup
+    public void setUp() {
+        selector = MemberSelector.create(strategy, MEMBERS, new InFlightTransport(), 0.2);
+    }
+
+    @Benchmark
+    public int selectAndComplete() {
+        final int member = selector.select();
+        inFlight.incrementAndGet(member);
+        selector.completed(member, 1000000 + ThreadLocalRandom.current().nextInt(1000000), true);
+        inFlight.decrementAndGet(member);
+        return member;
+    }
+
+    /**
+     * Reports the requests in flight, nothing is sent: requests are answered right away with an
+     * empty successful response
+     */
+    private class InFlightTransport implements HttpTransport {
+
+        @Override
+        public ListenableFuture<TransportResponse> send(Operation op, int member, String method,
+                String relativePath, String contentType, byte[] body, int bodyLength) {
+            return Futures.immediateFuture(new TransportResponse(200, "OK", null));
+        }
+
+        @Override
+        public boolean isAsynchronous() {
+            return false;
+        }
+
+        @Override
+        public int inFlight() {
+            int total = 0;
+            for (int m = 0; m < inFlight.length(); m++) {
+                total += inFlight.get(m);
+            }
+            return total;
+        }
+
+        @Override
+        public int inFlight(int member) {
+            return inFlight.get(member);
+        }
+
+        @Override
+        public String targetUrl(int member, String relativePath) {
+            return MEMBERS.get(member) + relativePath;
+        }
+
+        @Override
+        public void report(PrintStream out) {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package org.geoserver.rest.test.bench;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.geoserver.rest.test.ErrorCounters;
+import org.geoserver.rest.test.EventLog;
+import org.geoserver.rest.test.LatencyMetrics;
+import org.geoserver.rest.test.Operation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Recording the outcome of a request, from as many threads as a typical test runs
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class MetricsBenchmark {
+
+    private static final List<String> MEMBERS = ImmutableList.of(
+            "http://localhost:8081/geoserver/", "http://localhost:8082/geoserver/",
+            "http://localhost:8083/geoserver/");
+
+    @State(Scope.Benchmark)
+    public static class Shared {
+        final LatencyMetrics metrics = new LatencyMetrics(MEMBERS);
+
+        final ErrorCounters errors = new ErrorCounters(MEMBERS);
+
+        /**
+         * Logging below its level, as debug and trace messages are on most runs
+         */
+        final EventLog log = EventLog.console(EventLog.Level.INFO);
+
+        @TearDown
+        public void tearDown() {
+            log.close();
+        }
+    }
+
+    /**
+     * Each thread attaches to the metrics, as the test threads do
+     */
+    @State(Scope.Thread)
+    public static class Attached {
+        LatencyMetrics metrics;
+
+        @Setup(Level.Trial)
+        public void attach(Shared shared) {
+            metrics = shared.metrics;
+            metrics.attach();
+        }
+
+        @TearDown(Level.Trial)
+        public void detach() {
+            metrics.detach();
+        }
+    }
+
+    @Benchmark
+    public void recordLatency(Attached attached) {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        attached.metrics.record(Operation.REST_GET, random.nextInt(MEMBERS.size()),
+                1000000 + random.nextInt(1000000));
+    }
+
+    @Benchmark
+    public void recordError(Shared shared) {
+        shared.errors.record(Operation.REST_GET, ThreadLocalRandom.current().nextInt(
+                MEMBERS.size()), ErrorCounters.FailureClass.HTTP_STATUS, 500);
+    }
+
+    @Benchmark
+    public void logBelowLevel(Shared shared) {
+        shared.log.log(EventLog.Level.TRACE, "GET %s: %s (%s)\n", "rest/workspaces.xml", "OK",
+                "1.00 ms");
+    }
+}
@@ -0,0 +1,57 @@
+package org.geoserver.rest.test.bench;
+
+import java.io.IOException;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Resources;
+
+/**
+ * GeoServer responses captured from a cluster member, as the benchmark fixtures
+ */
+public class Payloads {
+
+    private static final String MEMBER_START = "<gml:featureMember>";
+
+    private static final String MEMBER_END = "</gml:featureMember>";
+
+    private Payloads() {
+        // utility class
+    }
+
+    /**
+     * @return the REST API document of a feature type with three attributes
+     */
+    public static byte[] featureType() throws IOException {
+        return load("featureType.xml");
+    }
+
+    /**
+     * @return the WFS 1.0 DescribeFeatureType schema of the same feature type
+     */
+    public static byte[] describeFeatureType() throws IOException {
+        return load("describeFeatureType.xsd");
+    }
+
+    /**
+     * @return a WFS 1.0 GetFeature response with the given number of copies of the captured
+     *         feature
+     */
+    public static byte[] getFeature(final int features) throws IOException {
+        String response = new String(load("getFeature.xml"), Charsets.UTF_8);
+        int start = response.indexOf(MEMBER_START);
+        int end = response.indexOf(MEMBER_END) + MEMBER_END.length();
+        String member = response.substring(start, end);
+        StringBuilder collection = new StringBuilder(response.length() + features
+                * member.length());
+        collection.append(response, 0, start);
+        for (int i = 0; i < features; i++) {
+            collection.append(member);
+        }
+        collection.append(response, end, response.length());
+        return collection.toString().getBytes(Charsets.UTF_8);
+    }
+
+    private static byte[] load(final String name) throws IOException {
+        return Resources.toByteArray(Resources.getResource(Payloads.class, name));
+    }
+}
@@ -0,0 +1,84 @@
+package org.geoserver.rest.test.bench;
+
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.geoserver.rest.test.BodyTemplate.Buffer;
+import org.geoserver.rest.test.RequestBodies;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Building the bodies of the REST requests changing the catalog
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestBodyBenchmark {
+
+    private RequestBodies bodies;
+
+    private LinkedHashMap<String, String> attributes;
+
+    /**
+     * A wide table, the feature type body growing with the number of attributes
+     */
+    private LinkedHashMap<String, String> manyAttributes;
+
+    private int index;
+
+    @Setup
+    public void setUp() {
+        bodies = new RequestBodies("localhost", "5432", "public", "postgis", "postgres",
+                "geo123");
+        attributes = new LinkedHashMap<>();
+        attributes.put("newcol", "java.lang.String");
+        attributes.put("geom", "com.vividsolutions.jts.geom.MultiPolygon");
+        attributes.put("state_name", "java.lang.String");
+        manyAttributes = new LinkedHashMap<>(attributes);
+        for (int i = 0; manyAttributes.size() < 1000; i++) {
+            manyAttributes.put("column_" + i, "java.lang.Double");
+        }
+    }
+
+    @Benchmark
+    public Buffer workspace() {
+        return RequestBodies.workspace("rest-stress-ws-" + (index++ & 1023));
+    }
+
+    @Benchmark
+    public Buffer dataStore() {
+        return bodies.dataStore("ds-" + (index++ & 1023));
+    }
+
+    @Benchmark
+    public Buffer featureType() {
+        final int i = index++ & 1023;
+        return RequestBodies.featureType(i, "clustertest_" + i, "clustertest_" + i);
+    }
+
+    @Benchmark
+    public Buffer modifiedFeatureType() {
+        final int i = index++ & 1023;
+        return RequestBodies.modifiedFeatureType("clustertest_" + i, "clustertest_" + i,
+                attributes);
+    }
+
+    @Benchmark
+    public Buffer manyAttributes() {
+        final int i = index++ & 1023;
+        return RequestBodies.modifiedFeatureType("clustertest_" + i, "clustertest_" + i,
+                manyAttributes);
+    }
+}
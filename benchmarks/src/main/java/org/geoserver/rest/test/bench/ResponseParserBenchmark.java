@@ -0,0 +1,55 @@
+package org.geoserver.rest.test.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.geoserver.rest.test.ResponseParsers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reading what the verifications need out of captured GeoServer responses
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseParserBenchmark {
+
+    private byte[] featureType;
+
+    private byte[] describeFeatureType;
+
+    @Setup
+    public void setUp() throws IOException {
+        featureType = Payloads.featureType();
+        describeFeatureType = Payloads.describeFeatureType();
+    }
+
+    @Benchmark
+    public LinkedHashMap<String, String> parseAttributes() throws XMLStreamException {
+        LinkedHashMap<String, String> attributes = new LinkedHashMap<>();
+        ResponseParsers.parseAttributes(new ByteArrayInputStream(featureType), attributes);
+        return attributes;
+    }
+
+    @Benchmark
+    public int countElementDeclarations() throws XMLStreamException {
+        return ResponseParsers.countElementDeclarations(new ByteArrayInputStream(
+                describeFeatureType));
+    }
+}
@@ -0,0 +1,255 @@
+package org.geoserver.rest.test;
+
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.restlet.engine.util.Base64;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Base class for transports, holds the cluster member base URLs and the HTTP basic authentication
+ * credentials, and keeps count of the requests in flight, in total and per member.
+ * <p>
+ * It also holds each request to the {@link Timeouts#readMillis deadline} of its operation, from
+ * the time it's sent to the time its response is handed over, however slowly the member trickles
+ * its bytes in. An asynchronous request past its deadline is failed and its response future
+ * cancelled, which {@link #doSend} implementations are expected to pass on to the request itself.
+ * A blocking request past its deadline has its sending thread interrupted, which aborts the socket
+ * operation it's blocked in on a virtual thread, and is failed once it returns.
+ */
+public abstract class AbstractHttpTransport implements HttpTransport {
+
+    private static final ScheduledThreadPoolExecutor DEADLINES = new ScheduledThreadPoolExecutor(
+            1, new ThreadFactoryBuilder().setDaemon(true).setNameFormat("request-deadlines")
+                    .build());
+    static {
+        DEADLINES.setRemoveOnCancelPolicy(true);
+    }
+
+    protected final ImmutableList<String> baseUrls;
+
+    protected final String user;
+
+    protected final String password;
+
+    /**
+     * The value for the {@code Authorization} header, or {@code null} if no credentials were given
+     */
+    protected final String authorization;
+
+    protected final Timeouts timeouts;
+
+    private final LongAdder inFlight = new LongAdder();
+
+    private final LongAdder[] memberInFlight;
+
+    /**
+     * Per member listeners decrementing the in flight counts once a response is received
+     */
+    private final Runnable[] completed;
+
+    protected static final Executor SAME_THREAD = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    protected AbstractHttpTransport(List<String> clusterMembers, String user, String password,
+            Timeouts timeouts) {
+        ImmutableList.Builder<String> urls = ImmutableList.builder();
+        for (String baseUrl : clusterMembers) {
+            if (!baseUrl.endsWith("/")) {
+                baseUrl += "/";
+            }
+            urls.add(baseUrl);
+        }
+        this.baseUrls = urls.build();
+        this.memberInFlight = new LongAdder[baseUrls.size()];
+        this.completed = new Runnable[baseUrls.size()];
+        for (int i = 0; i < baseUrls.size(); i++) {
+            final LongAdder counter = new LongAdder();
+            memberInFlight[i] = counter;
+            completed[i] = new Runnable() {
+                @Override
+                public void run() {
+                    counter.decrement();
+                    inFlight.decrement();
+                }
+            };
+        }
+        this.user = user;
+        this.password = password;
+        if (user != null && password != null) {
+            String usrpwd = user + ":" + password;
+            authorization = "Basic " + Base64.encode(usrpwd.toCharArray(), false);
+        } else {
+            authorization = null;
+        }
+        this.timeouts = timeouts;
+    }
+
+    @Override
+    public final ListenableFuture<TransportResponse> send(final Operation op, final int member,
+            final String method, final String relativePath, final String contentType,
+            final byte[] body, final int bodyLength) {
+        inFlight.increment();
+        memberInFlight[member].increment();
+        final int deadlineMillis = timeouts.readMillis(op);
+        ListenableFuture<TransportResponse> response;
+        if (deadlineMillis == 0) {
+            response = doSend(op, member, method, relativePath, contentType, body, bodyLength);
+        } else if (isAsynchronous()) {
+            response = withDeadline(doSend(op, member, method, relativePath, contentType, body,
+                    bodyLength), deadlineMillis, member, relativePath);
+        } else {
+            final BlockingDeadline deadline = new BlockingDeadline(Thread.currentThread());
+            final ScheduledFuture<?> expiry = DEADLINES.schedule(deadline, deadlineMillis,
+                    TimeUnit.MILLISECONDS);
+            response = doSend(op, member, method, relativePath, contentType, body, bodyLength);
+            expiry.cancel(false);
+            if (!deadline.finish()) {
+                response = expired(response, deadlineMillis, member, relativePath);
+            }
+        }
+        response.addListener(completed[member], SAME_THREAD);
+        return response;
+    }
+
+    /**
+     * @return a future with the outcome of {@code response}, or failed with a
+     *         {@link SocketTimeoutException} if it's not done within the deadline, in which case
+     *         {@code response} is cancelled
+     */
+    private ListenableFuture<TransportResponse> withDeadline(
+            final ListenableFuture<TransportResponse> response, final int deadlineMillis,
+            final int member, final String relativePath) {
+
+        final SettableFuture<TransportResponse> result = SettableFuture.create();
+        final ScheduledFuture<?> expiry = DEADLINES.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (result.setException(deadlineExceeded(deadlineMillis, member, relativePath))) {
+                    response.cancel(true);
+                }
+            }
+        }, deadlineMillis, TimeUnit.MILLISECONDS);
+        Futures.addCallback(response, new FutureCallback<TransportResponse>() {
+
+            @Override
+            public void onSuccess(TransportResponse received) {
+                expiry.cancel(false);
+                if (!result.set(received)) {
+                    // too late, the request already failed
+                    closeQuietly(received);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                expiry.cancel(false);
+                result.setException(t);
+            }
+        }, SAME_THREAD);
+        return result;
+    }
+
+    /**
+     * @return {@code response} of a blocking request that outlived its deadline, replaced by a
+     *         {@link SocketTimeoutException}
+     */
+    private ListenableFuture<TransportResponse> expired(
+            final ListenableFuture<TransportResponse> response, final int deadlineMillis,
+            final int member, final String relativePath) {
+        try {
+            closeQuietly(Uninterruptibles.getUninterruptibly(response));
+        } catch (ExecutionException | RuntimeException e) {
+            // most likely aborted by the interrupt, the deadline is what failed it
+        }
+        return Futures.immediateFailedFuture(deadlineExceeded(deadlineMillis, member,
+                relativePath));
+    }
+
+    private SocketTimeoutException deadlineExceeded(final int deadlineMillis, final int member,
+            final String relativePath) {
+        return new SocketTimeoutException(String.format("No response within %,d ms from %s",
+                deadlineMillis, targetUrl(member, relativePath)));
+    }
+
+    private static void closeQuietly(final TransportResponse response) {
+        try {
+            response.close();
+        } catch (RuntimeException e) {
+            // already failed, nothing left to report it to
+        }
+    }
+
+    /**
+     * Performs {@link #send}
+     */
+    protected abstract ListenableFuture<TransportResponse> doSend(Operation op, int member,
+            String method, String relativePath, String contentType, byte[] body,
+            int bodyLength);
+
+    @Override
+    public int inFlight() {
+        return inFlight.intValue();
+    }
+
+    @Override
+    public int inFlight(final int member) {
+        return memberInFlight[member].intValue();
+    }
+
+    @Override
+    public String targetUrl(final int member, final String relativePath) {
+        return baseUrls.get(member) + relativePath;
+    }
+
+    /**
+     * Interrupts a thread blocked in a request once its deadline is past, unless it finished first
+     */
+    private static class BlockingDeadline implements Runnable {
+
+        private final Thread sender;
+
+        private boolean finished, expired;
+
+        BlockingDeadline(Thread sender) {
+            this.sender = sender;
+        }
+
+        @Override
+        public synchronized void run() {
+            if (!finished) {
+                expired = true;
+                sender.interrupt();
+            }
+        }
+
+        /**
+         * @return {@code false} if the deadline passed before the request finished, in which case
+         *         the sender's interrupt is cleared
+         */
+        synchronized boolean finish() {
+            finished = true;
+            if (expired) {
+                Thread.interrupted();
+            }
+            return !expired;
+        }
+    }
+}
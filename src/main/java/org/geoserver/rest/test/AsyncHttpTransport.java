@@ -0,0 +1,516 @@
+package org.geoserver.rest.test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.StatusLine;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.NHttpClientConnection;
+import org.apache.http.nio.client.methods.AsyncByteConsumer;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.reactor.ConnectingIOReactor;
+import org.apache.http.protocol.HttpContext;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Non-blocking transport based on the Apache HttpAsyncClient, where a small number of I/O
+ * dispatch threads serve all the requests in flight through a bounded pool of keep-alive
+ * connections per cluster member.
+ * <p>
+ * The connection pool is instrumented to report, for each member, the highest number of leased
+ * connections, how many connections were opened versus reused, and the time it took to lease a
+ * new connection (i.e. the time to connect).
+ * <p>
+ * Responses are buffered in memory before being handed over, except for
+ * {@link Operation#isStreamed() streamed} ones such as WFS GetFeature, which can be arbitrarily
+ * large: those are handed over as soon as their headers arrive, and their
+ * body is streamed to the reader through a bounded buffer, suspending input from the connection
+ * while the buffer is full.
+ * <p>
+ * Each request gets the {@link Timeouts} of its operation as its connect and socket timeouts, and
+ * as how long it may wait for a connection of a member's pool to be free. Cancelling a response
+ * future, as done once the request's deadline is past, aborts the request.
+ */
+public class AsyncHttpTransport extends AbstractHttpTransport {
+
+    private final int maxConnectionsPerMember;
+
+    private final InstrumentedConnectionManager connectionManager;
+
+    private final CloseableHttpAsyncClient client;
+
+    /**
+     * The request configurations by operation ordinal
+     */
+    private final RequestConfig[] requestConfigs;
+
+    public AsyncHttpTransport(List<String> clusterMembers, String user, String password,
+            int maxConnectionsPerMember, int ioThreads, Timeouts timeouts) throws IOException {
+        super(clusterMembers, user, password, timeouts);
+        this.maxConnectionsPerMember = maxConnectionsPerMember;
+        this.requestConfigs = new RequestConfig[Operation.values().length];
+        for (Operation op : Operation.values()) {
+            requestConfigs[op.ordinal()] = RequestConfig.custom()//
+                    .setConnectTimeout(timeouts.connectMillis())//
+                    .setSocketTimeout(timeouts.readMillis(op))//
+                    .setConnectionRequestTimeout(timeouts.readMillis(op))//
+                    .build();
+        }
+
+        IOReactorConfig ioConfig = IOReactorConfig.custom()//
+                .setIoThreadCount(ioThreads)//
+                .setTcpNoDelay(true)//
+                .build();
+        ConnectingIOReactor ioReactor = new DefaultConnectingIOReactor(ioConfig);
+        connectionManager = new InstrumentedConnectionManager(ioReactor, baseUrls);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerMember);
+        connectionManager.setMaxTotal(maxConnectionsPerMember * baseUrls.size());
+
+        client = HttpAsyncClients.custom()//
+                .setConnectionManager(connectionManager)//
+                .disableCookieManagement()//
+                .build();
+        client.start();
+    }
+
+    @Override
+    protected ListenableFuture<TransportResponse> doSend(final Operation op, final int member,
+            final String method, final String relativePath, final String contentType,
+            final byte[] body, final int bodyLength) {
+
+        final URI uri = URI.create(targetUrl(member, relativePath));
+        final HttpRequestBase request;
+        if (GET.equals(method)) {
+            request = new HttpGet(uri);
+        } else if (DELETE.equals(method)) {
+            request = new HttpDelete(uri);
+        } else if (PUT.equals(method)) {
+            request = new HttpPut(uri);
+        } else if (POST.equals(method)) {
+            request = new HttpPost(uri);
+        } else {
+            throw new IllegalArgumentException("Method: " + method);
+        }
+        request.setConfig(requestConfigs[op.ordinal()]);
+        if (authorization != null) {
+            request.setHeader("Authorization", authorization);
+        }
+        if (body != null) {
+            ((HttpEntityEnclosingRequestBase) request).setEntity(new ByteArrayEntity(body, 0,
+                    bodyLength, ContentType.create(contentType)));
+        }
+
+        final SettableFuture<TransportResponse> future = SettableFuture.create();
+        final Future<?> exchange;
+        if (op.isStreamed()) {
+            exchange = stream(request, future);
+        } else {
+            exchange = execute(request, future);
+        }
+        future.addListener(new Runnable() {
+            @Override
+            public void run() {
+                if (future.isCancelled()) {
+                    exchange.cancel(true);
+                }
+            }
+        }, SAME_THREAD);
+        return future;
+    }
+
+    private Future<HttpResponse> execute(final HttpRequestBase request,
+            final SettableFuture<TransportResponse> future) {
+        return client.execute(request, new FutureCallback<HttpResponse>() {
+
+            @Override
+            public void completed(HttpResponse result) {
+                StatusLine statusLine = result.getStatusLine();
+                HttpEntity entity = result.getEntity();
+                try {
+                    InputStream stream = entity == null ? null : entity.getContent();
+                    future.set(new TransportResponse(statusLine.getStatusCode(), statusLine
+                            .getReasonPhrase(), stream));
+                } catch (IOException e) {
+                    future.setException(e);
+                }
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                future.setException(ex);
+            }
+
+            @Override
+            public void cancelled() {
+                future.cancel(false);
+            }
+        });
+    }
+
+    private Future<Void> stream(final HttpRequestBase request,
+            final SettableFuture<TransportResponse> future) {
+        final StreamingConsumer consumer = new StreamingConsumer(future);
+        return client.execute(HttpAsyncMethods.create(request), consumer, new FutureCallback<Void>() {
+
+            @Override
+            public void completed(Void result) {
+                // the body was already handed over on response
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                IOException cause = ex instanceof IOException ? (IOException) ex
+                        : new IOException(ex);
+                consumer.body.fail(cause);
+                future.setException(ex);
+            }
+
+            @Override
+            public void cancelled() {
+                consumer.body.fail(new InterruptedIOException("cancelled"));
+                future.cancel(false);
+            }
+        });
+    }
+
+    @Override
+    public boolean isAsynchronous() {
+        return true;
+    }
+
+    @Override
+    public void report(final PrintStream out) {
+        out.printf("Connection pools: max %d connections per member, %,d closed on release\n",
+                maxConnectionsPerMember, connectionManager.closed.get());
+        out.printf("%-40s %9s %9s %9s %9s %9s %9s %9s\n", "member", "leases", "opened",
+                "reused", "max busy", "conn p50", "conn p99", "conn max");
+        for (int m = 0; m < baseUrls.size(); m++) {
+            MemberPoolStats stats = connectionManager.stats[m];
+            Histogram connectTimes = stats.connectTime.getIntervalHistogram();
+            long leases = stats.leases.get();
+            long opened = stats.opened.get();
+            out.printf("%-40s %9d %9d %9d %9d %9.1f %9.1f %9.1f\n", baseUrls.get(m), leases,
+                    opened, leases - opened, stats.maxLeased.get(),
+                    connectTimes.getValueAtPercentile(50) / 1000d,
+                    connectTimes.getValueAtPercentile(99) / 1000d,
+                    connectTimes.getMaxValue() / 1000d);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        client.close();
+    }
+
+    private static class MemberPoolStats {
+
+        final AtomicLong leases = new AtomicLong();
+
+        final AtomicLong opened = new AtomicLong();
+
+        final AtomicInteger maxLeased = new AtomicInteger();
+
+        final Recorder connectTime = new Recorder(LatencyMetrics.HIGHEST_TRACKABLE_MICROS,
+                LatencyMetrics.SIGNIFICANT_DIGITS);
+
+        void leased(final boolean newConnection, final long elapsedNanos, final int leased) {
+            leases.incrementAndGet();
+            if (newConnection) {
+                opened.incrementAndGet();
+                connectTime.recordValue(Math.min(LatencyMetrics.HIGHEST_TRACKABLE_MICROS,
+                        TimeUnit.NANOSECONDS.toMicros(elapsedNanos)));
+            }
+            int max;
+            while (leased > (max = maxLeased.get())) {
+                if (maxLeased.compareAndSet(max, leased)) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Connection manager that keeps track of connection leases per cluster member. A leased
+     * connection whose route is not yet complete is a freshly opened one.
+     */
+    private static class InstrumentedConnectionManager extends PoolingNHttpClientConnectionManager {
+
+        private final Map<HttpHost, MemberPoolStats> statsByHost = new HashMap<>();
+
+        private final MemberPoolStats[] stats;
+
+        private final AtomicLong closed = new AtomicLong();
+
+        InstrumentedConnectionManager(ConnectingIOReactor ioReactor, List<String> baseUrls) {
+            super(ioReactor);
+            stats = new MemberPoolStats[baseUrls.size()];
+            for (int m = 0; m < baseUrls.size(); m++) {
+                stats[m] = new MemberPoolStats();
+                URI uri = URI.create(baseUrls.get(m));
+                int port = uri.getPort();
+                if (port == -1) {
+                    port = "https".equals(uri.getScheme()) ? 443 : 80;
+                }
+                statsByHost.put(new HttpHost(uri.getHost(), port, uri.getScheme()), stats[m]);
+            }
+        }
+
+        @Override
+        public Future<NHttpClientConnection> requestConnection(final HttpRoute route,
+                final Object state, final long connectTimeout, final long leaseTimeout,
+                final TimeUnit tunit, final FutureCallback<NHttpClientConnection> callback) {
+
+            final MemberPoolStats memberStats = statsByHost.get(route.getTargetHost());
+            final long start = System.nanoTime();
+            return super.requestConnection(route, state, connectTimeout, leaseTimeout, tunit,
+                    new FutureCallback<NHttpClientConnection>() {
+
+                        @Override
+                        public void completed(NHttpClientConnection conn) {
+                            if (memberStats != null) {
+                                memberStats.leased(!isRouteComplete(conn), System.nanoTime()
+                                        - start, getStats(route).getLeased());
+                            }
+                            callback.completed(conn);
+                        }
+
+                        @Override
+                        public void failed(Exception ex) {
+                            callback.failed(ex);
+                        }
+
+                        @Override
+                        public void cancelled() {
+                            callback.cancelled();
+                        }
+                    });
+        }
+
+        @Override
+        public void releaseConnection(final NHttpClientConnection conn, final Object state,
+                final long keepalive, final TimeUnit tunit) {
+            if (!conn.isOpen()) {
+                closed.incrementAndGet();
+            }
+            super.releaseConnection(conn, state, keepalive, tunit);
+        }
+    }
+
+    /**
+     * Completes the response future as soon as the response headers arrive, and passes the body
+     * on as it's received
+     */
+    private static class StreamingConsumer extends AsyncByteConsumer<Void> {
+
+        private static final int CHUNK_SIZE = 8 * 1024;
+
+        private final SettableFuture<TransportResponse> future;
+
+        final StreamingBody body = new StreamingBody(CHUNK_SIZE, 8);
+
+        StreamingConsumer(SettableFuture<TransportResponse> future) {
+            super(CHUNK_SIZE);
+            this.future = future;
+        }
+
+        @Override
+        protected void onResponseReceived(HttpResponse response) {
+            StatusLine statusLine = response.getStatusLine();
+            future.set(new TransportResponse(statusLine.getStatusCode(), statusLine
+                    .getReasonPhrase(), body));
+        }
+
+        @Override
+        protected void onByteReceived(ByteBuffer buf, IOControl ioctrl) {
+            body.write(buf, ioctrl);
+        }
+
+        @Override
+        protected Void buildResult(HttpContext context) {
+            body.finish();
+            return null;
+        }
+    }
+
+    /**
+     * Ring buffer between the I/O dispatch thread writing a response body and the thread reading
+     * it. The dispatch thread never blocks: it suspends input on the connection whenever there's
+     * no room left for another chunk, and the reader requests input again once it made room.
+     */
+    private static class StreamingBody extends InputStream {
+
+        private final Lock lock = new ReentrantLock();
+
+        private final Condition readable = lock.newCondition();
+
+        private final int chunkSize;
+
+        private byte[] buffer;
+
+        private int head, count;
+
+        private boolean finished, closed;
+
+        private IOException failure;
+
+        private IOControl suspended;
+
+        StreamingBody(int chunkSize, int chunks) {
+            this.chunkSize = chunkSize;
+            this.buffer = new byte[chunkSize * chunks];
+        }
+
+        void write(final ByteBuffer src, final IOControl ioctrl) {
+            lock.lock();
+            try {
+                if (closed) {
+                    src.position(src.limit());
+                    return;
+                }
+                if (src.remaining() > buffer.length - count) {
+                    grow(count + src.remaining());
+                }
+                while (src.hasRemaining()) {
+                    int tail = (head + count) % buffer.length;
+                    int n = Math.min(src.remaining(), buffer.length - tail);
+                    src.get(buffer, tail, n);
+                    count += n;
+                }
+                if (buffer.length - count < chunkSize) {
+                    ioctrl.suspendInput();
+                    suspended = ioctrl;
+                }
+                readable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void grow(final int capacity) {
+            byte[] grown = new byte[Math.max(capacity, 2 * buffer.length)];
+            int first = Math.min(count, buffer.length - head);
+            System.arraycopy(buffer, head, grown, 0, first);
+            System.arraycopy(buffer, 0, grown, first, count - first);
+            buffer = grown;
+            head = 0;
+        }
+
+        void finish() {
+            lock.lock();
+            try {
+                finished = true;
+                readable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void fail(final IOException cause) {
+            lock.lock();
+            try {
+                if (!finished) {
+                    failure = cause;
+                    readable.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            lock.lock();
+            try {
+                while (count == 0 && !finished && failure == null && !closed) {
+                    readable.await();
+                }
+                if (count == 0) {
+                    if (failure != null) {
+                        throw failure;
+                    }
+                    return -1;
+                }
+                int n = Math.min(len, Math.min(count, buffer.length - head));
+                System.arraycopy(buffer, head, b, off, n);
+                head = (head + n) % buffer.length;
+                count -= n;
+                resume();
+                return n;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Discards the rest of the body, which keeps being drained so the connection can be reused
+         */
+        @Override
+        public void close() {
+            lock.lock();
+            try {
+                closed = true;
+                count = 0;
+                resume();
+                readable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void resume() {
+            if (suspended != null && buffer.length - count >= chunkSize) {
+                suspended.requestInput();
+                suspended = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package org.geoserver.rest.test;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * A request body template, compiled once into the UTF-8 encoded literal text between its
+ * {@code ${name}} placeholders, so filling it in only copies bytes and encodes the values.
+ * <p>
+ * Values are given to {@link #write} in the order of {@link #getPlaceholders()}, the distinct
+ * placeholder names in order of first appearance; a placeholder may appear more than once.
+ */
+public final class BodyTemplate {
+
+    /**
+     * The literal text before each placeholder, and after the last one
+     */
+    private final byte[][] literals;
+
+    /**
+     * For each placeholder occurrence, the index of its value
+     */
+    private final int[] slots;
+
+    private final ImmutableList<String> placeholders;
+
+    private BodyTemplate(byte[][] literals, int[] slots, ImmutableList<String> placeholders) {
+        this.literals = literals;
+        this.slots = slots;
+        this.placeholders = placeholders;
+    }
+
+    public static BodyTemplate compile(final String template) {
+        List<byte[]> literals = new ArrayList<>();
+        List<String> placeholders = new ArrayList<>();
+        int[] slots = new int[0];
+        int from = 0;
+        int start;
+        while ((start = template.indexOf("${", from)) != -1) {
+            int end = template.indexOf('}', start);
+            checkArgument(end != -1, "Unterminated placeholder at %s: %s", start, template);
+            String name = template.substring(start + 2, end);
+            checkArgument(!name.isEmpty(), "Empty placeholder at %s: %s", start, template);
+            if (!placeholders.contains(name)) {
+                placeholders.add(name);
+            }
+            literals.add(template.substring(from, start).getBytes(Charsets.UTF_8));
+            slots = Arrays.copyOf(slots, slots.length + 1);
+            slots[slots.length - 1] = placeholders.indexOf(name);
+            from = end + 1;
+        }
+        literals.add(template.substring(from).getBytes(Charsets.UTF_8));
+        return new BodyTemplate(literals.toArray(new byte[literals.size()][]), slots,
+                ImmutableList.copyOf(placeholders));
+    }
+
+    /**
+     * @return the distinct placeholder names, in the order their values are given to
+     *         {@link #write}
+     */
+    public ImmutableList<String> getPlaceholders() {
+        return placeholders;
+    }
+
+    /**
+     * @return a template with the given placeholder replaced by a fixed value, for the parts of a
+     *         body that don't change between requests
+     */
+    public BodyTemplate bind(final String name, final String value) {
+        final int bound = placeholders.indexOf(name);
+        checkArgument(bound != -1, "No such placeholder: %s", name);
+        List<byte[]> newLiterals = new ArrayList<>();
+        int[] newSlots = new int[0];
+        Buffer literal = new Buffer(64);
+        literal.write(literals[0]);
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i] == bound) {
+                literal.write(value);
+            } else {
+                newLiterals.add(literal.toByteArray());
+                literal.reset();
+                newSlots = Arrays.copyOf(newSlots, newSlots.length + 1);
+                newSlots[newSlots.length - 1] = slots[i] > bound ? slots[i] - 1 : slots[i];
+            }
+            literal.write(literals[i + 1]);
+        }
+        newLiterals.add(literal.toByteArray());
+        List<String> newPlaceholders = new ArrayList<>(placeholders);
+        newPlaceholders.remove(bound);
+        return new BodyTemplate(newLiterals.toArray(new byte[newLiterals.size()][]), newSlots,
+                ImmutableList.copyOf(newPlaceholders));
+    }
+
+    /**
+     * Appends the body to the buffer, with the given values for the {@link #getPlaceholders()
+     * placeholders}
+     */
+    public void write(final Buffer out, final String... values) {
+        checkArgument(values.length == placeholders.size(), "Expected values for %s, got %s",
+                placeholders, values.length);
+        out.write(literals[0]);
+        for (int i = 0; i < slots.length; i++) {
+            out.write(values[slots[i]]);
+            out.write(literals[i + 1]);
+        }
+    }
+
+    /**
+     * A growable byte buffer bodies are written to, meant to be reused for the bodies of one
+     * thread so building them doesn't allocate once it has grown to the largest body.
+     */
+    public static final class Buffer {
+
+        private byte[] bytes;
+
+        private int length;
+
+        public Buffer(final int initialCapacity) {
+            this.bytes = new byte[initialCapacity];
+        }
+
+        public Buffer reset() {
+            length = 0;
+            return this;
+        }
+
+        public void write(final byte[] b) {
+            ensureCapacity(length + b.length);
+            System.arraycopy(b, 0, bytes, length, b.length);
+            length += b.length;
+        }
+
+        /**
+         * Appends the string encoded in UTF-8, without creating an intermediate array if it's all
+         * ASCII
+         */
+        public void write(final String s) {
+            final int len = s.length();
+            ensureCapacity(length + len);
+            for (int i = 0; i < len; i++) {
+                char c = s.charAt(i);
+                if (c >= 0x80) {
+                    write(s.getBytes(Charsets.UTF_8));
+                    return;
+                }
+                bytes[length + i] = (byte) c;
+            }
+            length += len;
+        }
+
+        private void ensureCapacity(final int capacity) {
+            if (capacity > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(capacity, 2 * bytes.length));
+            }
+        }
+
+        /**
+         * @return the backing array, holding the body in its first {@link #length()} bytes
+         */
+        public byte[] array() {
+            return bytes;
+        }
+
+        public int length() {
+            return length;
+        }
+
+        public byte[] toByteArray() {
+            return Arrays.copyOf(bytes, length);
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, 0, length, Charsets.UTF_8);
+        }
+    }
+}
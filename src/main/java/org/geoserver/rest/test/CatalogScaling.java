@@ -0,0 +1,175 @@
+package org.geoserver.rest.test;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * A catalog-size scaling benchmark: the catalog is grown in stages to each of a list of layer
+ * counts, and at each stage every cluster member gets the same fixed set of {@link Probe probes},
+ * so the latency of each can be reported against the catalog size.
+ * <p>
+ * The catalog is grown by a {@link CatalogSeeder} laid out {@link #getLayersPerStore()} layers
+ * per store and {@link #getStoresPerWorkspace()} stores per workspace, all layers publishing the
+ * same table under different names so growing the catalog takes no extra database tables.
+ * Probes are sent one at a time, so they measure the cost of the catalog size rather than of
+ * concurrency.
+ */
+public class CatalogScaling {
+
+    /**
+     * A request sent to every member at each stage
+     */
+    public static enum Probe {
+        WORKSPACES("workspaces.xml", Operation.REST_GET), //
+        LAYERS("layers.xml", Operation.REST_GET), //
+        FEATURE_TYPE("featuretype GET", Operation.REST_GET), //
+        GET_CAPABILITIES("GetCapabilities", Operation.GET_CAPABILITIES), //
+        DESCRIBE_FEATURE_TYPE("DescribeFeatureType", Operation.DESCRIBE_FEATURE_TYPE);
+
+        private final String label;
+
+        private final Operation op;
+
+        private Probe(String label, Operation op) {
+            this.label = label;
+            this.op = op;
+        }
+
+        public String label() {
+            return label;
+        }
+
+        /**
+         * @return the kind of request the probe is, for transports and error counts
+         */
+        public Operation op() {
+            return op;
+        }
+    }
+
+    private final ImmutableList<Integer> sizes;
+
+    private final ImmutableList<String> members;
+
+    private final int layersPerStore;
+
+    private final int storesPerWorkspace;
+
+    private final int probeRounds;
+
+    /**
+     * Probe latencies in microseconds, by stage, probe ordinal, and member
+     */
+    private final Histogram[][][] latencies;
+
+    private final long[][][] failures;
+
+    public CatalogScaling(List<Integer> sizes, List<String> members, int layersPerStore,
+            int storesPerWorkspace, int probeRounds) {
+        checkArgument(!sizes.isEmpty(), "catalog.sizes must not be empty");
+        for (int i = 0; i < sizes.size(); i++) {
+            checkArgument(sizes.get(i).intValue() > 0
+                    && (i == 0 || sizes.get(i).intValue() > sizes.get(i - 1).intValue()),
+                    "catalog.sizes must be increasing and > 0: %s", sizes);
+        }
+        checkArgument(layersPerStore > 0, "catalog.layersPerStore must be > 0: %s",
+                layersPerStore);
+        checkArgument(storesPerWorkspace > 0, "catalog.storesPerWorkspace must be > 0: %s",
+                storesPerWorkspace);
+        checkArgument(probeRounds > 0, "catalog.probes must be > 0: %s", probeRounds);
+        this.sizes = ImmutableList.copyOf(sizes);
+        this.members = ImmutableList.copyOf(members);
+        this.layersPerStore = layersPerStore;
+        this.storesPerWorkspace = storesPerWorkspace;
+        this.probeRounds = probeRounds;
+        this.latencies = new Histogram[sizes.size()][Probe.values().length][members.size()];
+        this.failures = new long[sizes.size()][Probe.values().length][members.size()];
+        for (Histogram[][] stage : latencies) {
+            for (Histogram[] probe : stage) {
+                for (int m = 0; m < probe.length; m++) {
+                    probe[m] = LatencyMetrics.newHistogram();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of layers to grow the catalog to at each stage
+     */
+    public ImmutableList<Integer> getSizes() {
+        return sizes;
+    }
+
+    public int getLayersPerStore() {
+        return layersPerStore;
+    }
+
+    public int getStoresPerWorkspace() {
+        return storesPerWorkspace;
+    }
+
+    /**
+     * @return how many times each member gets each probe at every stage
+     */
+    public int getProbeRounds() {
+        return probeRounds;
+    }
+
+    /**
+     * Called by the single probing thread
+     */
+    public void record(final int stage, final Probe probe, final int member,
+            final long elapsedNanos) {
+        latencies[stage][probe.ordinal()][member].recordValue(Math.min(
+                LatencyMetrics.HIGHEST_TRACKABLE_MICROS,
+                TimeUnit.NANOSECONDS.toMicros(elapsedNanos)));
+    }
+
+    public void recordFailure(final int stage, final Probe probe, final int member) {
+        failures[stage][probe.ordinal()][member]++;
+    }
+
+    /**
+     * Prints out the p50 and p99 latency of each probe on each member at every catalog size
+     */
+    public void report(final PrintStream out) {
+        out.printf("Catalog scaling: %d probes per member and stage, %d layers per store, "
+                + "%d stores per workspace, p50/p99 in ms\n", probeRounds, layersPerStore,
+                storesPerWorkspace);
+        out.printf("%-20s %-40s", "probe", "member");
+        for (Integer size : sizes) {
+            out.printf(" %17s", String.format("%,d layers", size));
+        }
+        out.println();
+        boolean anyFailed = false;
+        for (Probe probe : Probe.values()) {
+            for (int m = 0; m < members.size(); m++) {
+                out.printf("%-20s %-40s", probe.label(), members.get(m));
+                for (int stage = 0; stage < sizes.size(); stage++) {
+                    Histogram h = latencies[stage][probe.ordinal()][m];
+                    long failed = failures[stage][probe.ordinal()][m];
+                    anyFailed |= failed > 0;
+                    String cell;
+                    if (h.getTotalCount() == 0) {
+                        cell = failed > 0 ? "failed" : "-";
+                    } else {
+                        cell = String.format("%.1f/%.1f%s", h.getValueAtPercentile(50) / 1000d,
+                                h.getValueAtPercentile(99) / 1000d, failed > 0 ? "*" : "");
+                    }
+                    out.printf(" %17s", cell);
+                }
+                out.println();
+            }
+        }
+        if (anyFailed) {
+            out.println("* some probes failed and are not included");
+        }
+    }
+}
@@ -0,0 +1,684 @@
+package org.geoserver.rest.test;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.BitSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.geoserver.rest.test.EventLog.Level;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Creates large catalogs of workspaces, stores, and layers as fast as the cluster takes them, and
+ * deletes them again.
+ * <p>
+ * Seeding is a dependency-ordered pipeline rather than a sequence of phases: the stores of a
+ * workspace are queued as soon as the workspace is created, and the layers of a store as soon as
+ * the store is, so all kinds of objects are being created at once. A dispatcher thread sends the
+ * queued requests, with at most {@code maxInFlight} requests in flight per member, to whichever
+ * member has room. Teardown deletes the workspaces recursively with the same bounds.
+ * <p>
+ * Layers are laid out {@code layersPerStore} per store and {@code storesPerWorkspace} stores per
+ * workspace, and numbered consecutively across stores and workspaces. When seeding with a journal
+ * file, every object created is appended to it, and a later run with the same journal skips them,
+ * so seeding can resume where it stopped after a failure. Objects the cluster reports as already
+ * existing count as created for the same reason.
+ */
+public class CatalogSeeder {
+
+    /**
+     * Names and request bodies of the seeded objects, the bodies encoded in UTF-8 and owned by
+     * the seeder as they're sent asynchronously
+     */
+    public static interface Catalog {
+        String workspaceName(int workspace);
+
+        String storeName(int store);
+
+        byte[] workspaceXml(int workspace);
+
+        byte[] dataStoreXml(int store);
+
+        byte[] featureTypeXml(int layer);
+    }
+
+    public static enum Kind {
+        WORKSPACE("workspaces", Operation.POST_WORKSPACE), //
+        STORE("stores", Operation.POST_DATASTORE), //
+        LAYER("layers", Operation.POST_FEATURETYPE);
+
+        private final String label;
+
+        private final Operation op;
+
+        private Kind(String label, Operation op) {
+            this.label = label;
+            this.op = op;
+        }
+
+        public String label() {
+            return label;
+        }
+    }
+
+    private static final class Task {
+        final Kind kind;
+
+        final int index;
+
+        Task(Kind kind, int index) {
+            this.kind = kind;
+            this.index = index;
+        }
+    }
+
+    private static final Executor SAME_THREAD = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    /**
+     * Number of journal entries between flushes, entries lost in a crash are recovered by
+     * treating "already exists" responses as success
+     */
+    private static final int JOURNAL_FLUSH_INTERVAL = 100;
+
+    private final HttpTransport transport;
+
+    private final Catalog catalog;
+
+    private final ErrorCounters errors;
+
+    private final EventLog log;
+
+    private final int layersPerStore;
+
+    private final int storesPerWorkspace;
+
+    private final int maxInFlight;
+
+    private final int numMembers;
+
+    private final AtomicLongArray created = new AtomicLongArray(Kind.values().length);
+
+    private final AtomicLongArray existing = new AtomicLongArray(Kind.values().length);
+
+    private final AtomicLongArray failed = new AtomicLongArray(Kind.values().length);
+
+    private final AtomicLongArray skipped = new AtomicLongArray(Kind.values().length);
+
+    private final Recorder[] latencies = new Recorder[Kind.values().length];
+
+    /**
+     * What was drained from {@link #latencies} so far
+     */
+    private final Histogram[] totals = new Histogram[Kind.values().length];
+
+    private final AtomicLong deleted = new AtomicLong();
+
+    private final AtomicLong deleteFailures = new AtomicLong();
+
+    private long seedNanos, teardownNanos;
+
+    public CatalogSeeder(HttpTransport transport, Catalog catalog, ErrorCounters errors,
+            EventLog log, int numMembers, int layersPerStore, int storesPerWorkspace,
+            int maxInFlight) {
+        checkArgument(layersPerStore > 0, "layersPerStore must be > 0: %s", layersPerStore);
+        checkArgument(storesPerWorkspace > 0, "storesPerWorkspace must be > 0: %s",
+                storesPerWorkspace);
+        checkArgument(maxInFlight > 0, "seed.maxInFlight must be > 0: %s", maxInFlight);
+        this.transport = transport;
+        this.catalog = catalog;
+        this.errors = errors;
+        this.log = log;
+        this.numMembers = numMembers;
+        this.layersPerStore = layersPerStore;
+        this.storesPerWorkspace = storesPerWorkspace;
+        this.maxInFlight = maxInFlight;
+        for (Kind kind : Kind.values()) {
+            latencies[kind.ordinal()] = new Recorder(LatencyMetrics.HIGHEST_TRACKABLE_MICROS,
+                    LatencyMetrics.SIGNIFICANT_DIGITS);
+            totals[kind.ordinal()] = LatencyMetrics.newHistogram();
+        }
+    }
+
+    /**
+     * @return the index of the store the given layer belongs to
+     */
+    public int storeOf(final int layer) {
+        return layer / layersPerStore;
+    }
+
+    /**
+     * @return the index of the workspace the given store belongs to
+     */
+    public int workspaceOfStore(final int store) {
+        return store / storesPerWorkspace;
+    }
+
+    /**
+     * @return the number of stores needed to hold the given number of layers
+     */
+    public int storesFor(final int layers) {
+        return (layers + layersPerStore - 1) / layersPerStore;
+    }
+
+    /**
+     * @return the number of workspaces needed to hold the given number of layers
+     */
+    public int workspacesFor(final int layers) {
+        return (storesFor(layers) + storesPerWorkspace - 1) / storesPerWorkspace;
+    }
+
+    /**
+     * @return whether seeding with this journal would resume a previous run
+     */
+    public static boolean isResuming(final File journal) {
+        return journal != null && journal.isFile() && journal.length() > 0;
+    }
+
+    /**
+     * Creates layers {@code fromLayer} to {@code toLayer - 1}, and the stores and workspaces they
+     * need that don't hold any of the layers before {@code fromLayer}
+     *
+     * @param journal the file to record the objects created in, and skip the ones it already
+     *        lists, {@code null} for none
+     * @return whether every object was created
+     */
+    public boolean seed(final int fromLayer, final int toLayer, final File journal)
+            throws IOException, InterruptedException {
+        final Run run = new Run(fromLayer, toLayer, journal);
+        final long start = System.nanoTime();
+        try {
+            final int fromStore = storesFor(fromLayer), toStore = storesFor(toLayer);
+            final int fromWorkspace = workspacesFor(fromLayer);
+            for (int w = fromWorkspace; w < workspacesFor(toLayer); w++) {
+                run.submit(Kind.WORKSPACE, w);
+            }
+            for (int s = fromStore; s < toStore && workspaceOfStore(s) < fromWorkspace; s++) {
+                run.submit(Kind.STORE, s);
+            }
+            for (int l = fromLayer; l < toLayer && storeOf(l) < fromStore; l++) {
+                run.submit(Kind.LAYER, l);
+            }
+            run.dispatch();
+        } finally {
+            run.close();
+            seedNanos += System.nanoTime() - start;
+        }
+        return run.failures.get() == 0;
+    }
+
+    /**
+     * Deletes workspaces {@code 0} to {@code workspaces - 1} recursively, workspaces already gone
+     * count as deleted. Deletes the journal too if all of them were.
+     *
+     * @return whether every workspace was deleted
+     */
+    public boolean teardown(final int workspaces, final File journal)
+            throws InterruptedException {
+        final Run run = new Run();
+        final long start = System.nanoTime();
+        try {
+            for (int w = 0; w < workspaces; w++) {
+                run.submit(Kind.WORKSPACE, w);
+            }
+            run.dispatch();
+        } finally {
+            teardownNanos += System.nanoTime() - start;
+            run.shutdown();
+        }
+        if (run.failures.get() == 0 && journal != null && journal.exists()) {
+            journal.delete();
+        }
+        return run.failures.get() == 0;
+    }
+
+    /**
+     * The state of a single seed or teardown
+     */
+    private class Run {
+
+        final boolean teardown;
+
+        final int fromLayer, toLayer, fromStore, toStore;
+
+        final BlockingQueue<Task> ready = new LinkedBlockingQueue<>();
+
+        /**
+         * Tasks queued or in flight, the run is over when it drops to zero
+         */
+        final AtomicInteger outstanding = new AtomicInteger();
+
+        final Semaphore total = new Semaphore(numMembers * maxInFlight);
+
+        final Semaphore[] permits = new Semaphore[numMembers];
+
+        /**
+         * The objects listed in the journal, by kind ordinal, guarded by {@code this}
+         */
+        final BitSet[] journaled = new BitSet[Kind.values().length];
+
+        /**
+         * Sends the requests for synchronous transports
+         */
+        final ExecutorService senders;
+
+        /**
+         * Guarded by {@code this}
+         */
+        Writer journal;
+
+        int journalEntries;
+
+        final AtomicInteger failures = new AtomicInteger();
+
+        int nextMember;
+
+        Run(int fromLayer, int toLayer, File journalFile) throws IOException {
+            this.teardown = false;
+            this.fromLayer = fromLayer;
+            this.toLayer = toLayer;
+            this.fromStore = storesFor(fromLayer);
+            this.toStore = storesFor(toLayer);
+            this.senders = newSenders();
+            for (int i = 0; i < journaled.length; i++) {
+                journaled[i] = new BitSet();
+            }
+            if (journalFile != null) {
+                final boolean cutShort = journalFile.isFile() && readJournal(journalFile);
+                journal = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(
+                        journalFile, true), Charsets.UTF_8));
+                if (cutShort) {
+                    journal.write('\n');
+                }
+            }
+            initPermits();
+        }
+
+        Run() {
+            this.teardown = true;
+            this.fromLayer = this.toLayer = this.fromStore = this.toStore = 0;
+            this.senders = newSenders();
+            initPermits();
+        }
+
+        private ExecutorService newSenders() {
+            if (transport.isAsynchronous()) {
+                return null;
+            }
+            return Executors.newCachedThreadPool(new ThreadFactoryBuilder().setDaemon(true)
+                    .setNameFormat("seeder-%d").build());
+        }
+
+        private void initPermits() {
+            for (int m = 0; m < numMembers; m++) {
+                permits[m] = new Semaphore(maxInFlight);
+            }
+        }
+
+        /**
+         * Marks the objects in the journal as existing, ignoring a last line without its newline,
+         * which a crash may have cut short, and lines that don't parse
+         *
+         * @return whether the journal ends with such a line, for the next entry to start a new
+         *         one
+         */
+        private boolean readJournal(final File file) throws IOException {
+            int entries = 0, skipped = 0;
+            final StringBuilder line = new StringBuilder();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(file), Charsets.UTF_8))) {
+                int c;
+                while ((c = reader.read()) != -1) {
+                    if (c != '\n') {
+                        line.append((char) c);
+                        continue;
+                    }
+                    if (readJournalEntry(line.toString())) {
+                        entries++;
+                    } else {
+                        skipped++;
+                    }
+                    line.setLength(0);
+                }
+            }
+            log.log(Level.INFO, "Resuming from %,d objects in journal %s\n", entries, file);
+            if (skipped > 0 || line.length() > 0) {
+                log.log(Level.INFO, "Ignored %,d unreadable journal lines%s\n", skipped,
+                        line.length() > 0 ? " and a last one cut short" : "");
+            }
+            return line.length() > 0;
+        }
+
+        /**
+         * @return whether the line was a valid entry
+         */
+        private boolean readJournalEntry(final String line) {
+            final int space = line.indexOf(' ');
+            if (space < 0) {
+                return false;
+            }
+            try {
+                final Kind kind = Kind.valueOf(line.substring(0, space));
+                final int index = Integer.parseInt(line.substring(space + 1));
+                if (index < 0) {
+                    return false;
+                }
+                journaled[kind.ordinal()].set(index);
+                return true;
+            } catch (IllegalArgumentException e) {
+                // unknown kind or not a number
+                return false;
+            }
+        }
+
+        /**
+         * Queues the object, or if the journal says it exists already, queues its dependents
+         */
+        void submit(final Kind kind, final int index) {
+            if (!teardown && isJournaled(kind, index)) {
+                existing.incrementAndGet(kind.ordinal());
+                for (Task child : children(kind, index)) {
+                    submit(child.kind, child.index);
+                }
+                return;
+            }
+            outstanding.incrementAndGet();
+            ready.add(new Task(kind, index));
+        }
+
+        private synchronized boolean isJournaled(final Kind kind, final int index) {
+            return journaled[kind.ordinal()].get(index);
+        }
+
+        /**
+         * @return the objects that can be created once the given one is
+         */
+        private Task[] children(final Kind kind, final int index) {
+            int from, to;
+            Kind childKind;
+            if (kind == Kind.WORKSPACE) {
+                childKind = Kind.STORE;
+                from = Math.max(fromStore, index * storesPerWorkspace);
+                to = Math.min(toStore, (index + 1) * storesPerWorkspace);
+            } else if (kind == Kind.STORE) {
+                childKind = Kind.LAYER;
+                from = Math.max(fromLayer, index * layersPerStore);
+                to = Math.min(toLayer, (index + 1) * layersPerStore);
+            } else {
+                return new Task[0];
+            }
+            Task[] children = new Task[Math.max(0, to - from)];
+            for (int i = from; i < to; i++) {
+                children[i - from] = new Task(childKind, i);
+            }
+            return children;
+        }
+
+        void dispatch() throws InterruptedException {
+            while (true) {
+                Task task = ready.poll(50, TimeUnit.MILLISECONDS);
+                if (task == null) {
+                    if (outstanding.get() == 0) {
+                        return;
+                    }
+                    continue;
+                }
+                total.acquire();
+                send(task, acquireMember());
+            }
+        }
+
+        /**
+         * @return the first member from the last one used that has room for another request,
+         *         there always is one once a {@link #total} permit was acquired
+         */
+        private int acquireMember() {
+            while (true) {
+                for (int i = 0; i < numMembers; i++) {
+                    int member = (nextMember + i) % numMembers;
+                    if (permits[member].tryAcquire()) {
+                        nextMember = member + 1;
+                        return member;
+                    }
+                }
+                Thread.yield();
+            }
+        }
+
+        private void send(final Task task, final int member) {
+            final Operation op = teardown ? Operation.DELETE : task.kind.op;
+            final String method = teardown ? HttpTransport.DELETE : HttpTransport.POST;
+            final String path = path(task);
+            final byte[] body = teardown ? null : body(task);
+            final long start = System.nanoTime();
+            Runnable request = new Runnable() {
+                @Override
+                public void run() {
+                    ListenableFuture<TransportResponse> sent;
+                    try {
+                        sent = transport.send(op, member, method, path, body == null ? null
+                                : "application/xml", body, body == null ? 0 : body.length);
+                    } catch (RuntimeException e) {
+                        sent = Futures.immediateFailedFuture(e);
+                    }
+                    final ListenableFuture<TransportResponse> response = sent;
+                    response.addListener(new Runnable() {
+                        @Override
+                        public void run() {
+                            completed(task, member, op, response, System.nanoTime() - start);
+                        }
+                    }, SAME_THREAD);
+                }
+            };
+            if (senders == null) {
+                request.run();
+            } else {
+                senders.execute(request);
+            }
+        }
+
+        private String path(final Task task) {
+            final int store = task.kind == Kind.LAYER ? storeOf(task.index) : task.index;
+            final int workspace = task.kind == Kind.WORKSPACE ? task.index
+                    : workspaceOfStore(store);
+            final String wsName = catalog.workspaceName(workspace);
+            if (teardown) {
+                return "rest/workspaces/" + wsName + ".xml?recurse=true";
+            }
+            switch (task.kind) {
+            case WORKSPACE:
+                return "rest/workspaces";
+            case STORE:
+                return "rest/workspaces/" + wsName + "/datastores";
+            default:
+                return "rest/workspaces/" + wsName + "/datastores/" + catalog.storeName(store)
+                        + "/featuretypes";
+            }
+        }
+
+        private byte[] body(final Task task) {
+            switch (task.kind) {
+            case WORKSPACE:
+                return catalog.workspaceXml(task.index);
+            case STORE:
+                return catalog.dataStoreXml(task.index);
+            default:
+                return catalog.featureTypeXml(task.index);
+            }
+        }
+
+        /**
+         * Accounts for the outcome of a request and hands its member's permits back, whatever
+         * happens, so a failure in here can't stall the dispatch of the remaining requests
+         */
+        private void completed(final Task task, final int member, final Operation op,
+                final ListenableFuture<TransportResponse> future, final long elapsedNanos) {
+            try {
+                boolean success = false, exists = false;
+                try (TransportResponse response = future.get()) {
+                    final int status = response.getStatus();
+                    if (response.isSuccess()) {
+                        success = true;
+                    } else if (teardown ? status == 404 : alreadyExists(response)) {
+                        success = exists = true;
+                    } else {
+                        errors.record(op, member, ErrorCounters.FailureClass.HTTP_STATUS, status);
+                        log.log(Level.TRACE, "ERROR %s %s: %s\n", op, path(task), response);
+                    }
+                } catch (ExecutionException e) {
+                    errors.record(op, member, e.getCause());
+                    log.log(Level.TRACE, "ERROR %s %s: %s\n", op, path(task), e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (success) {
+                    succeeded(task, exists, elapsedNanos);
+                } else {
+                    failures.incrementAndGet();
+                    failedWithDependents(task);
+                }
+            } finally {
+                permits[member].release();
+                total.release();
+                outstanding.decrementAndGet();
+            }
+        }
+
+        private boolean alreadyExists(final TransportResponse response) {
+            if (response.getStatus() == 409) {
+                return true;
+            }
+            if (response.getBody() == null) {
+                return false;
+            }
+            try (InputStream body = response.getBody()) {
+                byte[] message = ByteStreams.toByteArray(ByteStreams.limit(body, 4096));
+                return new String(message, Charsets.UTF_8).contains("already exists");
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        private void succeeded(final Task task, final boolean exists, final long elapsedNanos) {
+            if (teardown) {
+                deleted.incrementAndGet();
+                return;
+            }
+            if (exists) {
+                existing.incrementAndGet(task.kind.ordinal());
+            } else {
+                created.incrementAndGet(task.kind.ordinal());
+                latencies[task.kind.ordinal()].recordValue(Math.min(
+                        LatencyMetrics.HIGHEST_TRACKABLE_MICROS,
+                        TimeUnit.NANOSECONDS.toMicros(elapsedNanos)));
+            }
+            journal(task);
+            for (Task child : children(task.kind, task.index)) {
+                submit(child.kind, child.index);
+            }
+        }
+
+        private void failedWithDependents(final Task task) {
+            if (teardown) {
+                deleteFailures.incrementAndGet();
+                return;
+            }
+            failed.incrementAndGet(task.kind.ordinal());
+            for (Task child : children(task.kind, task.index)) {
+                skipped.incrementAndGet(child.kind.ordinal());
+                for (Task grandChild : children(child.kind, child.index)) {
+                    skipped.incrementAndGet(grandChild.kind.ordinal());
+                }
+            }
+        }
+
+        private synchronized void journal(final Task task) {
+            if (journal == null) {
+                return;
+            }
+            try {
+                journal.write(task.kind.name() + " " + task.index + "\n");
+                if (++journalEntries % JOURNAL_FLUSH_INTERVAL == 0) {
+                    journal.flush();
+                }
+            } catch (IOException e) {
+                log.log(Level.INFO, "ERROR writing seeding journal: %s\n", e.getMessage());
+            }
+        }
+
+        synchronized void close() throws IOException {
+            shutdown();
+            if (journal != null) {
+                journal.close();
+                journal = null;
+            }
+        }
+
+        void shutdown() {
+            if (senders != null) {
+                senders.shutdown();
+            }
+        }
+    }
+
+    public synchronized void report(final PrintStream out) {
+        long totalCreated = 0;
+        for (Kind kind : Kind.values()) {
+            totalCreated += created.get(kind.ordinal());
+        }
+        if (seedNanos > 0) {
+            final double seconds = seedNanos / 1e9;
+            out.printf("Catalog seeding: %,d objects created in %.1fs (%.1f objects/s), at most "
+                    + "%d requests in flight per member, times in ms\n", totalCreated, seconds,
+                    totalCreated / seconds, maxInFlight);
+            out.printf("%-20s %9s %9s %9s %9s %9s %9s %9s\n", "kind", "created", "objects/s",
+                    "existing", "failed", "skipped", "p50", "p99");
+            for (Kind kind : Kind.values()) {
+                final int k = kind.ordinal();
+                Histogram h = totals[k];
+                h.add(latencies[k].getIntervalHistogram());
+                out.printf("%-20s %9d %9.1f %9d %9d %9d %9.1f %9.1f\n", kind.label(),
+                        created.get(k), created.get(k) / seconds, existing.get(k),
+                        failed.get(k), skipped.get(k), h.getValueAtPercentile(50) / 1000d,
+                        h.getValueAtPercentile(99) / 1000d);
+            }
+        }
+        if (teardownNanos > 0) {
+            out.printf("Catalog teardown: %,d workspaces deleted recursively in %.1fs "
+                    + "(%.1f workspaces/s), %,d failed\n", deleted.get(), teardownNanos / 1e9,
+                    deleted.get() / (teardownNanos / 1e9), deleteFailures.get());
+        }
+    }
+}
@@ -0,0 +1,373 @@
+package org.geoserver.rest.test;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Takes cluster members that keep failing out of rotation for a while, the way the load balancer
+ * in front of the cluster does in production, so a degraded member fails fast instead of slowing
+ * the whole test down.
+ * <p>
+ * Each member has a breaker that opens after a number of consecutive failures, that is,
+ * requests that time out, can't connect, or get a 5xx response. While open, the requests the
+ * {@link #wrap(HttpTransport) wrapped} transport is asked to send to the member fail right away
+ * with an {@link OpenException}, and the {@link MemberSelector} sends the requests that can go
+ * to any member to the others. Once the backoff elapsed, a single request is let through as a
+ * probe: if it succeeds the breaker closes, otherwise it opens again with twice the backoff, up to
+ * the maximum. Backoffs are jittered between half and all of their value, so breakers opened
+ * together don't probe together. Each state change starts a new generation of the breaker, and
+ * only the outcomes of requests let through in the current one count, so a late response to a
+ * request sent before the breaker opened neither closes it nor reopens it while probing.
+ * <p>
+ * Closed breakers cost a volatile read per request, only state changes take a lock. The report
+ * compares the cluster throughput while all breakers were closed with the throughput while some
+ * member was out.
+ */
+public class CircuitBreakers {
+
+    private static final int CLOSED = 0, OPEN = 1, HALF_OPEN = 2;
+
+    /**
+     * What {@link #allow(int)} returns for a request not to send
+     */
+    static final long REJECTED = -1L;
+
+    private static final Executor SAME_THREAD = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    /**
+     * The failure a request to a member whose breaker is open fails with, without being sent
+     */
+    public static class OpenException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        OpenException(String member) {
+            super("circuit open for " + member);
+        }
+    }
+
+    private static class Breaker {
+
+        volatile int state = CLOSED;
+
+        /**
+         * Incremented on every state change, guarded by the {@link CircuitBreakers}
+         */
+        volatile long generation;
+
+        final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+        /**
+         * {@link System#nanoTime()} after which an open breaker lets a probe through
+         */
+        volatile long retryAtNanos;
+
+        long backoffMillis, openedAtNanos, openNanos;
+
+        int opened, probes;
+
+        final LongAdder rejected = new LongAdder();
+    }
+
+    private final ImmutableList<String> members;
+
+    private final int failureThreshold;
+
+    private final long initialBackoffMillis, maxBackoffMillis;
+
+    private final Breaker[] breakers;
+
+    /**
+     * Number of breakers not closed, guarded by this
+     */
+    private volatile int openBreakers;
+
+    private long degradedSinceNanos, degradedNanos, startNanos, stopNanos;
+
+    private final LongAdder healthySuccesses = new LongAdder(),
+            degradedSuccesses = new LongAdder();
+
+    /**
+     * @param failureThreshold consecutive failures that open a member's breaker
+     */
+    public CircuitBreakers(List<String> members, int failureThreshold, long backoffMillis,
+            long maxBackoffMillis) {
+        checkArgument(failureThreshold > 0, "breaker.failures must be > 0: %s", failureThreshold);
+        checkArgument(backoffMillis > 0 && maxBackoffMillis >= backoffMillis,
+                "breaker.backoff must be > 0 and at most breaker.maxBackoff");
+        this.members = ImmutableList.copyOf(members);
+        this.failureThreshold = failureThreshold;
+        this.initialBackoffMillis = backoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.breakers = new Breaker[members.size()];
+        for (int m = 0; m < breakers.length; m++) {
+            breakers[m] = new Breaker();
+        }
+    }
+
+    /**
+     * @return a transport sending requests through the given one, unless the member's breaker is
+     *         open, and feeding the outcomes to the breakers
+     */
+    public HttpTransport wrap(final HttpTransport transport) {
+        return new BreakingTransport(transport);
+    }
+
+    /**
+     * Starts counting the cluster throughput, right after {@link LatencyMetrics#start()}
+     */
+    public synchronized void start() {
+        startNanos = System.nanoTime();
+        stopNanos = 0L;
+        degradedNanos = 0L;
+        degradedSinceNanos = openBreakers > 0 ? startNanos : 0L;
+        healthySuccesses.reset();
+        degradedSuccesses.reset();
+    }
+
+    public synchronized void stop() {
+        stopNanos = System.nanoTime();
+    }
+
+    /**
+     * @return whether a request to the member would be sent, without taking the probe of an open
+     *         breaker
+     */
+    public boolean isAvailable(final int member) {
+        final Breaker breaker = breakers[member];
+        final int state = breaker.state;
+        return state == CLOSED
+                || (state == OPEN && System.nanoTime() - breaker.retryAtNanos >= 0);
+    }
+
+    /**
+     * @return the first available member after the given one, the given one if none is
+     */
+    public int nextAvailable(final int member) {
+        for (int i = 1; i < breakers.length; i++) {
+            int next = (member + i) % breakers.length;
+            if (isAvailable(next)) {
+                return next;
+            }
+        }
+        return member;
+    }
+
+    /**
+     * @return the generation of the member's breaker the request is let through in, to pass to
+     *         {@link #succeeded(int, long)} or {@link #failed(int, long)}, taking the probe if the
+     *         breaker is open and the backoff elapsed, or {@link #REJECTED} not to send it
+     */
+    long allow(final int member) {
+        final Breaker breaker = breakers[member];
+        if (breaker.state == CLOSED) {
+            final long generation = breaker.generation;
+            // a breaker opened in between rejects the request
+            if (breaker.state == CLOSED) {
+                return generation;
+            }
+        }
+        if (breaker.state == OPEN && System.nanoTime() - breaker.retryAtNanos >= 0) {
+            synchronized (this) {
+                if (breaker.state == OPEN && System.nanoTime() - breaker.retryAtNanos >= 0) {
+                    breaker.state = HALF_OPEN;
+                    breaker.probes++;
+                    return ++breaker.generation;
+                }
+            }
+        }
+        breaker.rejected.increment();
+        return REJECTED;
+    }
+
+    /**
+     * Reports a request let through in the given generation of the member's breaker as
+     * successful, closing the breaker if it was the probe
+     */
+    void succeeded(final int member, final long generation) {
+        final Breaker breaker = breakers[member];
+        if (openBreakers > 0) {
+            degradedSuccesses.increment();
+        } else {
+            healthySuccesses.increment();
+        }
+        if (breaker.generation != generation) {
+            return;
+        }
+        if (breaker.state == CLOSED) {
+            if (breaker.consecutiveFailures.get() != 0) {
+                breaker.consecutiveFailures.set(0);
+            }
+            return;
+        }
+        synchronized (this) {
+            if (breaker.state == HALF_OPEN && breaker.generation == generation) {
+                final long now = System.nanoTime();
+                breaker.state = CLOSED;
+                breaker.generation++;
+                breaker.consecutiveFailures.set(0);
+                breaker.openNanos += now - breaker.openedAtNanos;
+                if (--openBreakers == 0 && degradedSinceNanos != 0L) {
+                    degradedNanos += now - degradedSinceNanos;
+                    degradedSinceNanos = 0L;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reports a request let through in the given generation of the member's breaker as failed,
+     * opening the breaker once enough failed in a row, or again if it was the probe
+     */
+    void failed(final int member, final long generation) {
+        final Breaker breaker = breakers[member];
+        final int state = breaker.state;
+        if (breaker.generation != generation || state == OPEN
+                || (state == CLOSED && breaker.consecutiveFailures.incrementAndGet()
+                        < failureThreshold)) {
+            return;
+        }
+        synchronized (this) {
+            if (breaker.generation != generation) {
+                return;
+            }
+            final long now = System.nanoTime();
+            if (breaker.state == CLOSED) {
+                breaker.state = OPEN;
+                breaker.opened++;
+                breaker.openedAtNanos = now;
+                breaker.backoffMillis = initialBackoffMillis;
+                if (openBreakers++ == 0 && startNanos != 0L && stopNanos == 0L) {
+                    degradedSinceNanos = now;
+                }
+            } else if (breaker.state == HALF_OPEN) {
+                breaker.state = OPEN;
+                breaker.backoffMillis = Math.min(2 * breaker.backoffMillis, maxBackoffMillis);
+            } else {
+                return;
+            }
+            breaker.generation++;
+            final long half = breaker.backoffMillis / 2;
+            breaker.retryAtNanos = now + TimeUnit.MILLISECONDS.toNanos(half
+                    + ThreadLocalRandom.current().nextLong(breaker.backoffMillis - half + 1));
+        }
+    }
+
+    public synchronized void report(final PrintStream out) {
+        out.printf("Circuit breakers: open after %d consecutive timeouts, connection errors, or "
+                + "5xx responses, backoff %d to %d ms\n", failureThreshold, initialBackoffMillis,
+                maxBackoffMillis);
+        out.printf("%-40s %-9s %7s %10s %10s %7s\n", "member", "state", "opened", "open (s)",
+                "rejected", "probes");
+        final long now = System.nanoTime();
+        for (int m = 0; m < breakers.length; m++) {
+            Breaker breaker = breakers[m];
+            long openNanos = breaker.openNanos + (breaker.state == CLOSED ? 0L : now
+                    - breaker.openedAtNanos);
+            out.printf("%-40s %-9s %7d %10.1f %10d %7d\n", members.get(m),
+                    breaker.state == CLOSED ? "closed" : breaker.state == OPEN ? "open"
+                            : "half-open", breaker.opened, openNanos / 1e9, breaker.rejected
+                            .sum(), breaker.probes);
+        }
+        if (startNanos == 0L) {
+            return;
+        }
+        final long end = stopNanos == 0L ? now : stopNanos;
+        final long degraded = degradedNanos + (degradedSinceNanos == 0L ? 0L : end
+                - degradedSinceNanos);
+        final long healthy = end - startNanos - degraded;
+        out.printf("Cluster throughput: %.1f requests/s over %.1fs with all members in, "
+                + "%.1f requests/s over %.1fs with some member out\n", healthy <= 0 ? 0d
+                : healthySuccesses.sum() / (healthy / 1e9), healthy / 1e9, degraded <= 0 ? 0d
+                : degradedSuccesses.sum() / (degraded / 1e9), degraded / 1e9);
+    }
+
+    /**
+     * Sends requests through another transport, or fails them right away if the member's breaker
+     * is open, and reports the outcome of those sent back to the breakers
+     */
+    private class BreakingTransport implements HttpTransport {
+
+        private final HttpTransport transport;
+
+        BreakingTransport(HttpTransport transport) {
+            this.transport = transport;
+        }
+
+        @Override
+        public ListenableFuture<TransportResponse> send(final Operation op, final int member,
+                final String method, final String relativePath, final String contentType,
+                final byte[] body, final int bodyLength) {
+            final long generation = allow(member);
+            if (generation == REJECTED) {
+                return Futures.immediateFailedFuture(new OpenException(members.get(member)));
+            }
+            final ListenableFuture<TransportResponse> response = transport.send(op, member,
+                    method, relativePath, contentType, body, bodyLength);
+            response.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (Uninterruptibles.getUninterruptibly(response).getStatus() < 500) {
+                            succeeded(member, generation);
+                        } else {
+                            failed(member, generation);
+                        }
+                    } catch (ExecutionException | RuntimeException e) {
+                        failed(member, generation);
+                    }
+                }
+            }, SAME_THREAD);
+            return response;
+        }
+
+        @Override
+        public boolean isAsynchronous() {
+            return transport.isAsynchronous();
+        }
+
+        @Override
+        public int inFlight() {
+            return transport.inFlight();
+        }
+
+        @Override
+        public int inFlight(final int member) {
+            return transport.inFlight(member);
+        }
+
+        @Override
+        public String targetUrl(final int member, final String relativePath) {
+            return transport.targetUrl(member, relativePath);
+        }
+
+        @Override
+        public void report(final PrintStream out) {
+            transport.report(out);
+        }
+
+        @Override
+        public void close() throws IOException {
+            transport.close();
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package org.geoserver.rest.test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintStream;
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Counts every failure of the test, keyed by {@link Operation}, cluster member, failure class,
+ * and HTTP status.
+ * <p>
+ * Each key gets its own striped {@link LongAdder}, so threads counting failures concurrently don't
+ * contend with each other, and looking up the counter of a key seen before takes no lock.
+ */
+public class ErrorCounters {
+
+    /**
+     * What went wrong
+     */
+    public static enum FailureClass {
+        TIMEOUT("timeout"), //
+        CONNECTION_REFUSED("connection refused"), //
+        CONNECTION_ERROR("connection error"), //
+        HTTP_STATUS("http status"), //
+        INVALID_RESPONSE("invalid response"), //
+        ATTRIBUTE_MISMATCH("attribute mismatch"), //
+        DFT_COUNT_MISMATCH("dft count mismatch"), //
+        NOT_FEATURE_COLLECTION("not a feature collection"), //
+        FEATURE_COUNT_MISMATCH("feature count mismatch"), //
+        DIVERGENT_ANSWERS("divergent answers"), //
+        CONVERGENCE_TIMEOUT("not converged"), //
+        FIXTURE("database fixture"), //
+        CIRCUIT_OPEN("circuit open"), //
+        OTHER("other");
+
+        private final String label;
+
+        private FailureClass(String label) {
+            this.label = label;
+        }
+
+        public String label() {
+            return label;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    private static final class Key {
+
+        final Operation op;
+
+        final int member;
+
+        final FailureClass failureClass;
+
+        final int status;
+
+        Key(Operation op, int member, FailureClass failureClass, int status) {
+            this.op = op;
+            this.member = member;
+            this.failureClass = failureClass;
+            this.status = status;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return op == k.op && member == k.member && failureClass == k.failureClass
+                    && status == k.status;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(op, member, failureClass, status);
+        }
+    }
+
+    private final ImmutableList<String> members;
+
+    private final ConcurrentMap<Key, LongAdder> counters = new ConcurrentHashMap<>();
+
+    public ErrorCounters(List<String> members) {
+        this.members = ImmutableList.copyOf(members);
+    }
+
+    /**
+     * @param op the operation that failed, {@code null} if not related to a request
+     * @param member the cluster member that failed, {@code -1} if not related to a single member
+     * @param status the HTTP status code of the response, {@code 0} if there was none
+     */
+    public void record(final Operation op, final int member, final FailureClass failureClass,
+            final int status) {
+        counter(new Key(op, member, failureClass, status)).increment();
+    }
+
+    private LongAdder counter(final Key key) {
+        LongAdder counter = counters.get(key);
+        if (counter == null) {
+            LongAdder created = new LongAdder();
+            counter = counters.putIfAbsent(key, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        return counter;
+    }
+
+    public void record(final Operation op, final int member, final FailureClass failureClass) {
+        record(op, member, failureClass, 0);
+    }
+
+    /**
+     * Records a request that failed with the given exception
+     */
+    public void record(final Operation op, final int member, final Throwable error) {
+        record(op, member, classify(error), 0);
+    }
+
+    /**
+     * @return the failure class of the exception or, failing that, of the first of its causes
+     *         that has a specific one
+     */
+    public static FailureClass classify(final Throwable error) {
+        for (Throwable e = error; e != null; e = e.getCause()) {
+            if (e instanceof CircuitBreakers.OpenException) {
+                return FailureClass.CIRCUIT_OPEN;
+            }
+            if (e instanceof ConnectException) {
+                return FailureClass.CONNECTION_REFUSED;
+            }
+            if (e instanceof InterruptedIOException || e instanceof TimeoutException) {
+                return FailureClass.TIMEOUT;
+            }
+        }
+        for (Throwable e = error; e != null; e = e.getCause()) {
+            if (e instanceof IOException) {
+                return FailureClass.CONNECTION_ERROR;
+            }
+        }
+        return FailureClass.OTHER;
+    }
+
+    /**
+     * Discards the failures counted so far, for requests issued to set up the test
+     */
+    public void reset() {
+        counters.clear();
+    }
+
+    public long total() {
+        long total = 0;
+        for (LongAdder counter : counters.values()) {
+            total += counter.sum();
+        }
+        return total;
+    }
+
+    /**
+     * @return the percentage of failures over the given number of requests sent, successful or
+     *         not. Failed verifications of successful responses don't add to the requests, so the
+     *         failures are capped at the requests sent.
+     */
+    public double errorPercent(final long requests) {
+        final long total = total(), sent = Math.max(requests, 1L);
+        return total == 0 ? 0d : 100d * Math.min(total, sent) / sent;
+    }
+
+    /**
+     * Writes out the counts, for {@link #read(DataInputStream)} to add to the counters of another
+     * process
+     */
+    public void write(final DataOutputStream out) throws IOException {
+        List<Map.Entry<Key, LongAdder>> entries = new ArrayList<>(counters.entrySet());
+        out.writeInt(entries.size());
+        for (Map.Entry<Key, LongAdder> entry : entries) {
+            Key k = entry.getKey();
+            out.writeInt(k.op == null ? -1 : k.op.ordinal());
+            out.writeInt(k.member);
+            out.writeInt(k.failureClass.ordinal());
+            out.writeInt(k.status);
+            out.writeLong(entry.getValue().sum());
+        }
+    }
+
+    /**
+     * Adds the counts written by {@link #write(DataOutputStream)} in another process, counted
+     * against the same cluster members, to the ones of this one
+     */
+    public void read(final DataInputStream in) throws IOException {
+        final int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            final int op = in.readInt();
+            final int member = in.readInt();
+            final FailureClass failureClass = FailureClass.values()[in.readInt()];
+            final int status = in.readInt();
+            counter(new Key(op == -1 ? null : Operation.values()[op], member, failureClass,
+                    status)).add(in.readLong());
+        }
+    }
+
+    /**
+     * @param requests the number of requests sent, successful or not
+     */
+    public void report(final PrintStream out, final long requests) {
+        List<Map.Entry<Key, LongAdder>> entries = new ArrayList<>(counters.entrySet());
+        out.printf("Errors: %,d (%.2f%% of %,d requests sent)\n", total(),
+                errorPercent(requests), requests);
+        if (entries.isEmpty()) {
+            return;
+        }
+        Collections.sort(entries, new Comparator<Map.Entry<Key, LongAdder>>() {
+            @Override
+            public int compare(Map.Entry<Key, LongAdder> e1, Map.Entry<Key, LongAdder> e2) {
+                Key k1 = e1.getKey(), k2 = e2.getKey();
+                int c = Integer.compare(k1.op == null ? -1 : k1.op.ordinal(), k2.op == null ? -1
+                        : k2.op.ordinal());
+                if (c == 0) {
+                    c = Integer.compare(k1.member, k2.member);
+                }
+                if (c == 0) {
+                    c = k1.failureClass.compareTo(k2.failureClass);
+                }
+                return c == 0 ? Integer.compare(k1.status, k2.status) : c;
+            }
+        });
+        out.printf("%-20s %-40s %-24s %6s %9s\n", "operation", "member", "failure", "status",
+                "count");
+        for (Map.Entry<Key, LongAdder> entry : entries) {
+            Key k = entry.getKey();
+            out.printf("%-20s %-40s %-24s %6s %9d\n", k.op == null ? "-" : k.op.label(),
+                    k.member == -1 ? "-" : members.get(k.member), k.failureClass.label(),
+                    k.status == 0 ? "-" : String.valueOf(k.status), entry.getValue().sum());
+        }
+    }
+}
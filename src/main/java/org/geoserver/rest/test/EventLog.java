@@ -0,0 +1,490 @@
+package org.geoserver.rest.test;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Log of the events of a test run, where logging threads only copy the event into a pre-allocated
+ * ring buffer, and a single consumer thread formats the events and writes them out in batches.
+ * <p>
+ * Producers claim a slot with an atomic increment and publish it by writing its sequence number;
+ * they never take a lock, and only wait if the consumer fell a whole ring behind. Messages are
+ * formatted by the consumer, so arguments are kept as they are if immutable and converted to
+ * strings when published otherwise. Events below the configured {@link Level} are discarded before
+ * anything is copied.
+ * <p>
+ * Events are written as text, indented by level as the console output always was, or to a compact
+ * binary log holding each distinct format string once and the raw arguments of each event, which
+ * {@link #main(String[])} prints out as text.
+ */
+public class EventLog implements Closeable {
+
+    public static enum Level {
+        OFF(""), INFO(""), DEBUG("  "), TRACE("    ");
+
+        private final String indent;
+
+        private Level(String indent) {
+            this.indent = indent;
+        }
+    }
+
+    private static final int MAX_ARGS = 8;
+
+    private static final Object[] NO_ARGS = new Object[0];
+
+    private static final long IDLE_PARK_NANOS = 100_000;
+
+    private static final int BINARY_MAGIC = 0x45564c31; // "EVL1"
+
+    private static final byte FORMAT = 1, FORMATTED_EVENT = 2, MESSAGE_EVENT = 3;
+
+    /**
+     * A ring buffer slot
+     */
+    private static final class Event {
+
+        /**
+         * The sequence number of the event in this slot once published
+         */
+        volatile long sequence = -1;
+
+        long nanos;
+
+        Level level;
+
+        String format;
+
+        /**
+         * Whether {@link #format} is to be formatted with the arguments, or printed as a line
+         */
+        boolean formatted;
+
+        int argCount;
+
+        final Object[] args = new Object[MAX_ARGS];
+    }
+
+    private final Level level;
+
+    private final Event[] ring;
+
+    private final int mask;
+
+    private final AtomicLong claimed = new AtomicLong();
+
+    /**
+     * The sequence of the next event the consumer will take, all slots before it can be reused
+     */
+    private volatile long consumed;
+
+    private final LongAdder stalls = new LongAdder();
+
+    private final LongAdder discarded = new LongAdder();
+
+    private final long startNanos = System.nanoTime();
+
+    private final EventWriter writer;
+
+    private final Thread consumer;
+
+    private volatile boolean closed;
+
+    /**
+     * Logs to standard output as text
+     */
+    public static EventLog console(Level level) {
+        return new EventLog(level, 64 * 1024, new TextWriter(System.out, false));
+    }
+
+    /**
+     * @param binary whether to write a binary log rather than text
+     */
+    public static EventLog file(Level level, int ringSize, File file, boolean binary)
+            throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        EventWriter writer = binary ? new BinaryWriter(out) : new TextWriter(out, true);
+        return new EventLog(level, ringSize, writer);
+    }
+
+    private EventLog(Level level, int ringSize, EventWriter writer) {
+        this.level = level;
+        int size = Integer.highestOneBit(Math.max(2, ringSize - 1)) << 1;
+        this.ring = new Event[size];
+        for (int i = 0; i < size; i++) {
+            ring[i] = new Event();
+        }
+        this.mask = size - 1;
+        this.writer = writer;
+        this.consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                consume();
+            }
+        }, "event-log");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    public boolean isEnabled(final Level l) {
+        return l.compareTo(level) <= 0 && level != Level.OFF;
+    }
+
+    /**
+     * Logs the message as a line of its own
+     */
+    public void log(final Level l, final String message) {
+        if (isEnabled(l)) {
+            publish(l, message, false, NO_ARGS);
+        }
+    }
+
+    /**
+     * Logs a {@link String#format} style message, which includes its own line terminator
+     */
+    public void log(final Level l, final String format, final Object... args) {
+        if (isEnabled(l)) {
+            publish(l, format, true, args);
+        }
+    }
+
+    private void publish(final Level l, String format, boolean formatted, Object[] args) {
+        if (closed) {
+            discarded.increment();
+            return;
+        }
+        if (args.length > MAX_ARGS) {
+            format = String.format(format, args);
+            args = NO_ARGS;
+            formatted = false;
+        }
+        final long seq = claimed.getAndIncrement();
+        if (seq - consumed >= ring.length) {
+            stalls.increment();
+            while (seq - consumed >= ring.length) {
+                LockSupport.parkNanos(1000);
+            }
+        }
+        final Event e = ring[(int) seq & mask];
+        e.nanos = System.nanoTime();
+        e.level = l;
+        e.format = format;
+        e.formatted = formatted;
+        e.argCount = args.length;
+        for (int i = 0; i < args.length; i++) {
+            e.args[i] = snapshot(args[i]);
+        }
+        e.sequence = seq;
+    }
+
+    /**
+     * @return the argument itself if it can't change before the consumer formats it, its string
+     *         representation otherwise
+     */
+    private static Object snapshot(final Object arg) {
+        if (arg == null || arg instanceof String || arg instanceof Number
+                || arg instanceof Boolean || arg instanceof Character || arg instanceof Enum) {
+            return arg;
+        }
+        return String.valueOf(arg);
+    }
+
+    private void consume() {
+        long next = 0;
+        boolean pending = false;
+        try {
+            while (true) {
+                final Event e = ring[(int) next & mask];
+                if (e.sequence != next) {
+                    if (pending) {
+                        writer.flush();
+                        pending = false;
+                    }
+                    if (closed && next == claimed.get()) {
+                        break;
+                    }
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                    continue;
+                }
+                writer.write(e.nanos - startNanos, e.level, e.format, e.formatted, e.args,
+                        e.argCount);
+                for (int i = 0; i < e.argCount; i++) {
+                    e.args[i] = null;
+                }
+                e.format = null;
+                pending = true;
+                consumed = ++next;
+            }
+            writer.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes out all the events published so far and stops the consumer
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void report(final PrintStream out) {
+        out.printf("Event log: %,d events at level %s, producers waited for the writer %,d "
+                + "times, %,d events discarded after close\n", consumed, level, stalls.sum(),
+                discarded.sum());
+    }
+
+    private static interface EventWriter {
+        void write(long nanos, Level level, String format, boolean formatted, Object[] args,
+                int argCount) throws IOException;
+
+        void flush() throws IOException;
+
+        void close() throws IOException;
+    }
+
+    private static class TextWriter implements EventWriter {
+
+        private final Writer out;
+
+        private final boolean closeStream;
+
+        private final StringBuilder line = new StringBuilder();
+
+        TextWriter(OutputStream out, boolean closeStream) {
+            this.out = new BufferedWriter(new OutputStreamWriter(out, Charsets.UTF_8), 64 * 1024);
+            this.closeStream = closeStream;
+        }
+
+        @Override
+        public void write(long nanos, Level level, String format, boolean formatted,
+                Object[] args, int argCount) throws IOException {
+            line.setLength(0);
+            line.append(level.indent);
+            if (formatted) {
+                line.append(String.format(format, argCount == args.length ? args : copyOf(args,
+                        argCount)));
+            } else {
+                line.append(format).append('\n');
+            }
+            out.write(line.toString());
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closeStream) {
+                out.close();
+            } else {
+                out.flush();
+            }
+        }
+    }
+
+    private static Object[] copyOf(final Object[] args, final int count) {
+        Object[] copy = new Object[count];
+        System.arraycopy(args, 0, copy, 0, count);
+        return copy;
+    }
+
+    /**
+     * Writes each distinct format string once, followed by its id, and events as their time
+     * since the log started, level, and either a format string id and its arguments, or a
+     * message.
+     */
+    private static class BinaryWriter implements EventWriter {
+
+        private final DataOutputStream out;
+
+        private final Map<String, Integer> formatIds = new HashMap<>();
+
+        BinaryWriter(OutputStream out) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+            this.out.writeInt(BINARY_MAGIC);
+        }
+
+        @Override
+        public void write(long nanos, Level level, String format, boolean formatted,
+                Object[] args, int argCount) throws IOException {
+            if (!formatted) {
+                out.writeByte(MESSAGE_EVENT);
+                out.writeLong(nanos);
+                out.writeByte(level.ordinal());
+                writeString(out, format);
+                return;
+            }
+            Integer id = formatIds.get(format);
+            if (id == null) {
+                id = Integer.valueOf(formatIds.size());
+                formatIds.put(format, id);
+                out.writeByte(FORMAT);
+                out.writeInt(id.intValue());
+                writeString(out, format);
+            }
+            out.writeByte(FORMATTED_EVENT);
+            out.writeLong(nanos);
+            out.writeByte(level.ordinal());
+            out.writeInt(id.intValue());
+            out.writeByte(argCount);
+            for (int i = 0; i < argCount; i++) {
+                Object arg = args[i];
+                if (arg == null) {
+                    out.writeByte('N');
+                } else if (arg instanceof Integer || arg instanceof Short || arg instanceof Byte) {
+                    out.writeByte('I');
+                    out.writeInt(((Number) arg).intValue());
+                } else if (arg instanceof Long) {
+                    out.writeByte('J');
+                    out.writeLong(((Long) arg).longValue());
+                } else if (arg instanceof Double || arg instanceof Float) {
+                    out.writeByte('D');
+                    out.writeDouble(((Number) arg).doubleValue());
+                } else if (arg instanceof Boolean) {
+                    out.writeByte('Z');
+                    out.writeBoolean(((Boolean) arg).booleanValue());
+                } else {
+                    out.writeByte('S');
+                    writeString(out, arg.toString());
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    private static void writeString(final DataOutputStream out, final String s)
+            throws IOException {
+        byte[] bytes = s.getBytes(Charsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(final DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, Charsets.UTF_8);
+    }
+
+    /**
+     * Prints out a binary event log as text, each line prefixed by the event time in seconds
+     * since the log started
+     */
+    public static void print(final InputStream binaryLog, final PrintStream out)
+            throws IOException {
+        final DataInputStream in = new DataInputStream(binaryLog);
+        if (in.readInt() != BINARY_MAGIC) {
+            throw new IOException("Not a binary event log");
+        }
+        final List<String> formats = new ArrayList<>();
+        final Level[] levels = Level.values();
+        while (true) {
+            int type;
+            try {
+                type = in.readByte();
+            } catch (EOFException eof) {
+                break;
+            }
+            if (type == FORMAT) {
+                int id = in.readInt();
+                while (formats.size() <= id) {
+                    formats.add(null);
+                }
+                formats.set(id, readString(in));
+                continue;
+            }
+            long nanos = in.readLong();
+            Level level = levels[in.readByte()];
+            String text;
+            if (type == MESSAGE_EVENT) {
+                text = readString(in) + "\n";
+            } else if (type == FORMATTED_EVENT) {
+                String format = formats.get(in.readInt());
+                Object[] args = new Object[in.readByte()];
+                for (int i = 0; i < args.length; i++) {
+                    byte tag = in.readByte();
+                    switch (tag) {
+                    case 'N':
+                        args[i] = null;
+                        break;
+                    case 'I':
+                        args[i] = Integer.valueOf(in.readInt());
+                        break;
+                    case 'J':
+                        args[i] = Long.valueOf(in.readLong());
+                        break;
+                    case 'D':
+                        args[i] = Double.valueOf(in.readDouble());
+                        break;
+                    case 'Z':
+                        args[i] = Boolean.valueOf(in.readBoolean());
+                        break;
+                    default:
+                        args[i] = readString(in);
+                    }
+                }
+                text = String.format(format, args);
+            } else {
+                throw new IOException("Unknown record type " + type);
+            }
+            out.printf("[%12.6f] %-5s %s%s", nanos / 1e9, level, level.indent, text);
+        }
+    }
+
+    /**
+     * Prints out the binary event log given as argument
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: java -cp cluster_stress.jar "
+                    + EventLog.class.getName() + " <binary event log>");
+            System.exit(-1);
+        }
+        try (InputStream in = new FileInputStream(args[0])) {
+            print(in, System.out);
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package org.geoserver.rest.test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.google.common.base.Function;
+import com.google.common.base.Objects;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Sends the same GET request to several cluster members at the same time and waits for all the
+ * responses.
+ * <p>
+ * With an {@link HttpTransport#isAsynchronous() asynchronous} transport all the requests are sent
+ * from the calling thread, and each response body is read by a thread of the given executor as
+ * soon as its response arrives, so streamed bodies are consumed concurrently; otherwise each
+ * request is sent from a thread of the given executor, as the transport would send them one after
+ * the other.
+ */
+public class FanOut {
+
+    /**
+     * Extracts the answer to compare across members from a successful response body
+     */
+    public static interface BodyReader<T> {
+        public T read(InputStream body) throws Exception;
+    }
+
+    /**
+     * The outcome of the request to a single member
+     */
+    public static class Reply<T> {
+
+        public final int member;
+
+        /**
+         * Time from the moment all requests were sent to this member's response
+         */
+        public final long elapsedNanos;
+
+        /**
+         * Time from the moment all requests were sent until this member's response body was read
+         */
+        public final long completedNanos;
+
+        /**
+         * The response status, {@code null} if the request failed
+         */
+        public final String status;
+
+        /**
+         * The response status code, {@code 0} if the request failed
+         */
+        public final int statusCode;
+
+        public final boolean success;
+
+        /**
+         * The answer read from the response body, {@code null} if not successful
+         */
+        public final T answer;
+
+        public final Exception error;
+
+        Reply(int member, long elapsedNanos, long completedNanos, TransportResponse response,
+                T answer, Exception error) {
+            this.member = member;
+            this.elapsedNanos = elapsedNanos;
+            this.completedNanos = completedNanos;
+            this.status = response == null ? null : response.toString();
+            this.statusCode = response == null ? 0 : response.getStatus();
+            this.success = response != null && response.isSuccess() && error == null;
+            this.answer = answer;
+            this.error = error;
+        }
+    }
+
+    private static class Timed {
+        final TransportResponse response;
+
+        final long endNanos;
+
+        Timed(TransportResponse response) {
+            this.response = response;
+            this.endNanos = System.nanoTime();
+        }
+    }
+
+    private static final Function<TransportResponse, Timed> TIMESTAMP = new Function<TransportResponse, Timed>() {
+        @Override
+        public Timed apply(TransportResponse response) {
+            return new Timed(response);
+        }
+    };
+
+    private static final Executor SAME_THREAD = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private final HttpTransport transport;
+
+    private final ExecutorService blockingExecutor;
+
+    public FanOut(HttpTransport transport, ExecutorService blockingExecutor) {
+        this.transport = transport;
+        this.blockingExecutor = blockingExecutor;
+    }
+
+    public <T> List<Reply<T>> get(final Operation op, final String relativePath,
+            final List<Integer> members, final BodyReader<T> reader) {
+
+        final long start = System.nanoTime();
+        final List<Future<Reply<T>>> futures = new ArrayList<>(members.size());
+        if (transport.isAsynchronous()) {
+            for (final Integer member : members) {
+                final ListenableFuture<Timed> response = Futures.transform(transport.send(op,
+                        member.intValue(), HttpTransport.GET, relativePath, null, null, 0),
+                        TIMESTAMP, SAME_THREAD);
+                final SettableFuture<Reply<T>> reply = SettableFuture.create();
+                response.addListener(new Runnable() {
+                    @Override
+                    public void run() {
+                        PooledThreadLocal.attach();
+                        try {
+                            reply.set(read(member.intValue(), start, response, reader));
+                        } finally {
+                            PooledThreadLocal.detach();
+                        }
+                    }
+                }, blockingExecutor);
+                futures.add(reply);
+            }
+        } else {
+            final SampleLog.Context context = SampleLog.current();
+            for (final Integer member : members) {
+                futures.add(blockingExecutor.submit(new Callable<Reply<T>>() {
+                    @Override
+                    public Reply<T> call() {
+                        SampleLog.resume(context);
+                        PooledThreadLocal.attach();
+                        try {
+                            ListenableFuture<Timed> response = Futures.transform(transport.send(
+                                    op, member.intValue(), HttpTransport.GET, relativePath, null,
+                                    null, 0), TIMESTAMP, SAME_THREAD);
+                            return read(member.intValue(), start, response, reader);
+                        } finally {
+                            PooledThreadLocal.detach();
+                            SampleLog.resume(null);
+                        }
+                    }
+                }));
+            }
+        }
+        final List<Reply<T>> replies = new ArrayList<>(members.size());
+        for (Future<Reply<T>> future : futures) {
+            try {
+                replies.add(Uninterruptibles.getUninterruptibly(future));
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        return replies;
+    }
+
+    private <T> Reply<T> read(final int member, final long start,
+            final ListenableFuture<Timed> future, final BodyReader<T> reader) {
+        Timed timed;
+        try {
+            timed = Uninterruptibles.getUninterruptibly(future);
+        } catch (ExecutionException e) {
+            Exception cause = e.getCause() instanceof Exception ? (Exception) e.getCause()
+                    : new IOException(e.getCause());
+            final long elapsed = System.nanoTime() - start;
+            return new Reply<T>(member, elapsed, elapsed, null, null, cause);
+        }
+        final long elapsed = timed.endNanos - start;
+        try (TransportResponse response = timed.response) {
+            if (!response.isSuccess()) {
+                return new Reply<T>(member, elapsed, elapsed, response, null, null);
+            }
+            try {
+                T answer = reader.read(response.getBody());
+                return new Reply<T>(member, elapsed, System.nanoTime() - start, response, answer,
+                        null);
+            } catch (Exception e) {
+                return new Reply<T>(member, elapsed, System.nanoTime() - start, response, null, e);
+            }
+        }
+    }
+
+    /**
+     * @return the difference between the slowest and fastest successful replies, zero if there are
+     *         less than two
+     */
+    public static long skewNanos(final List<? extends Reply<?>> replies) {
+        long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+        for (Reply<?> reply : replies) {
+            if (reply.success) {
+                min = Math.min(min, reply.elapsedNanos);
+                max = Math.max(max, reply.elapsedNanos);
+            }
+        }
+        return max < min ? 0L : max - min;
+    }
+
+    /**
+     * @return whether the members did not all give the same answer, counting failures as an
+     *         answer of their own
+     */
+    public static boolean divergent(final List<?> answers) {
+        for (int i = 1; i < answers.size(); i++) {
+            if (!Objects.equal(answers.get(0), answers.get(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
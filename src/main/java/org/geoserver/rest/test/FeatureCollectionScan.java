@@ -0,0 +1,170 @@
+package org.geoserver.rest.test;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * What a single pass over a WFS GetFeature response found: the root element, how many bytes were
+ * read, and how many {@code featureMember} elements it holds.
+ * <p>
+ * The response is {@link #scan scanned} through a caller provided buffer with a minimal tag
+ * tokenizer rather than an XML parser, so that reading a large response costs little more than
+ * moving its bytes; no text content is decoded and nothing is allocated per element. Comments,
+ * CDATA sections and processing instructions are skipped up to their own closing sequence, so any
+ * markup they hold is not counted.
+ */
+public class FeatureCollectionScan {
+
+    private static final byte[] FEATURE_MEMBER = { 'f', 'e', 'a', 't', 'u', 'r', 'e', 'M', 'e',
+            'm', 'b', 'e', 'r' };
+
+    private static final int TEXT = 0, TAG_OPEN = 1, NAME = 2, IN_TAG = 3, SKIP = 4, BANG = 5,
+            SECTION = 6;
+
+    private final String rootElement;
+
+    private final long bytes;
+
+    private final long features;
+
+    private FeatureCollectionScan(String rootElement, long bytes, long features) {
+        this.rootElement = rootElement;
+        this.bytes = bytes;
+        this.features = features;
+    }
+
+    /**
+     * @return the local name of the document's root element, {@code null} if none was found
+     */
+    public String getRootElement() {
+        return rootElement;
+    }
+
+    public boolean isFeatureCollection() {
+        return "FeatureCollection".equals(rootElement);
+    }
+
+    /**
+     * @return the number of bytes read, the whole response unless it was not a feature collection
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getFeatures() {
+        return features;
+    }
+
+    /**
+     * Reads the response to the end, or up to its root element if it's not a feature collection
+     */
+    public static FeatureCollectionScan scan(final InputStream body, final byte[] buffer)
+            throws IOException {
+        int state = TEXT;
+        byte quote = 0, closer = 0;
+        int needed = 0, run = 0;
+        int matched = 0;
+        boolean mismatch = false;
+        StringBuilder root = new StringBuilder();
+        String rootElement = null;
+        long bytes = 0, features = 0;
+
+        int n;
+        while ((n = body.read(buffer)) != -1) {
+            bytes += n;
+            for (int i = 0; i < n; i++) {
+                final byte b = buffer[i];
+                switch (state) {
+                case TEXT:
+                    if (b == '<') {
+                        state = TAG_OPEN;
+                    }
+                    break;
+                case TAG_OPEN:
+                    if (b == '!') {
+                        state = BANG;
+                    } else if (b == '?') {
+                        state = SECTION;
+                        closer = '?';
+                        needed = 1;
+                        run = 0;
+                    } else if (b == '/') {
+                        state = SKIP;
+                    } else {
+                        state = NAME;
+                        matched = 0;
+                        mismatch = false;
+                        // read the first name character again in the NAME state
+                        i--;
+                    }
+                    break;
+                case BANG:
+                    if (b == '-' || b == '[') {
+                        // a comment ends at "-->", a CDATA section at "]]>"; the second dash of
+                        // "<!--" is not part of the closing one
+                        state = SECTION;
+                        closer = b == '[' ? (byte) ']' : (byte) '-';
+                        needed = 2;
+                        run = b == '-' ? -1 : 0;
+                    } else {
+                        state = b == '>' ? TEXT : SKIP;
+                    }
+                    break;
+                case SECTION:
+                    if (b == closer) {
+                        run++;
+                    } else if (b == '>' && run >= needed) {
+                        state = TEXT;
+                    } else {
+                        run = 0;
+                    }
+                    break;
+                case NAME:
+                    if (b == ' ' || b == '\t' || b == '\r' || b == '\n' || b == '/' || b == '>') {
+                        if (!mismatch && matched == FEATURE_MEMBER.length) {
+                            features++;
+                        }
+                        if (rootElement == null) {
+                            rootElement = root.substring(root.lastIndexOf(":") + 1);
+                            root = null;
+                            if (!"FeatureCollection".equals(rootElement)) {
+                                return new FeatureCollectionScan(rootElement, bytes, 0);
+                            }
+                        }
+                        state = b == '>' ? TEXT : IN_TAG;
+                    } else {
+                        if (b == ':') {
+                            matched = 0;
+                            mismatch = false;
+                        } else if (!mismatch && matched < FEATURE_MEMBER.length
+                                && FEATURE_MEMBER[matched] == b) {
+                            matched++;
+                        } else {
+                            mismatch = true;
+                        }
+                        if (root != null) {
+                            root.append((char) b);
+                        }
+                    }
+                    break;
+                case IN_TAG:
+                    if (quote != 0) {
+                        if (b == quote) {
+                            quote = 0;
+                        }
+                    } else if (b == '"' || b == '\'') {
+                        quote = b;
+                    } else if (b == '>') {
+                        state = TEXT;
+                    }
+                    break;
+                default:
+                    if (b == '>') {
+                        state = TEXT;
+                    }
+                }
+            }
+        }
+        return new FeatureCollectionScan(rootElement, bytes, features);
+    }
+}
@@ -0,0 +1,66 @@
+package org.geoserver.rest.test;
+
+import java.io.Closeable;
+import java.io.PrintStream;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Sends HTTP requests to the cluster members.
+ * <p>
+ * Requests are addressed by cluster member index and a path relative to the member's root
+ * geoserver context, and their responses are delivered asynchronously; whether the calling thread
+ * is used to perform the request depends on the implementation.
+ */
+public interface HttpTransport extends Closeable {
+
+    public static final String GET = "GET";
+
+    public static final String POST = "POST";
+
+    public static final String PUT = "PUT";
+
+    public static final String DELETE = "DELETE";
+
+    /**
+     * @param op the kind of request, some transports may need to handle them differently
+     * @param member the index of the cluster member to send the request to
+     * @param method one of {@link #GET}, {@link #POST}, {@link #PUT}, {@link #DELETE}
+     * @param relativePath path and query string relative to the member's root context
+     * @param contentType the request body content type, {@code null} if there's no body
+     * @param body the request body, {@code null} if none; it is not copied, and must not be
+     *        changed until the response is closed
+     * @param bodyLength the number of bytes at the start of {@code body} to send
+     * @return the future response, failed with an {@link java.io.IOException} if the member
+     *         couldn't be reached
+     */
+    public ListenableFuture<TransportResponse> send(Operation op, int member, String method,
+            String relativePath, String contentType, byte[] body, int bodyLength);
+
+    /**
+     * @return {@code true} if {@link #send} returns before the response is received, {@code false}
+     *         if the request is performed in the calling thread
+     */
+    public boolean isAsynchronous();
+
+    /**
+     * @return the number of requests sent whose response has not been received yet
+     */
+    public int inFlight();
+
+    /**
+     * @return the number of requests sent to the given member whose response has not been
+     *         received yet
+     */
+    public int inFlight(int member);
+
+    /**
+     * @return the absolute URL for the given member and relative path, as used in log messages
+     */
+    public String targetUrl(int member, String relativePath);
+
+    /**
+     * Prints out any statistics the transport collected about its connections
+     */
+    public void report(PrintStream out);
+}
@@ -0,0 +1,826 @@
+package org.geoserver.rest.test;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.zip.DataFormatException;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.HdrHistogram.SingleWriterRecorder;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Records request latencies in HDR histograms keyed by {@link Operation} and cluster member.
+ * <p>
+ * Each worker thread records into its own set of histograms, so recording never contends with other
+ * threads. Request latencies go to per-thread {@link SingleWriterRecorder}s, which are drained
+ * without blocking the writers into run totals and into the current interval, so
+ * {@link #takeInterval()} can be sampled while the test runs; the other per-thread histograms are
+ * only merged when the report is produced, once the workers are done. Tasks
+ * {@link #attach() attach} a set of histograms to the running thread from a pool of idle ones and
+ * {@link #detach() detach} it when finished, so the number of sets is bound by the number of
+ * concurrent tasks rather than by the number of threads, which matters when running each task on
+ * its own virtual thread.
+ * <p>
+ * When requests are issued on an open-loop schedule, {@link #scheduled(long)} tells how late the
+ * current thread started the work it was given, and that delay is added to the latency of the next
+ * request the thread records, so time spent queued behind a stalled member is not hidden.
+ */
+public class LatencyMetrics {
+
+    /**
+     * Latencies are recorded in microseconds, anything longer than this is clamped
+     */
+    static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.HOURS.toMicros(1);
+
+    static final int SIGNIFICANT_DIGITS = 2;
+
+    private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+
+    private final ImmutableList<String> members;
+
+    private final Queue<ThreadHistograms> allThreadHistograms = new ConcurrentLinkedQueue<>();
+
+    private final Queue<ThreadHistograms> idleThreadHistograms = new ConcurrentLinkedQueue<>();
+
+    private final ThreadLocal<ThreadHistograms> threadHistograms = new ThreadLocal<ThreadHistograms>() {
+        @Override
+        protected ThreadHistograms initialValue() {
+            ThreadHistograms histograms = new ThreadHistograms(members.size());
+            allThreadHistograms.add(histograms);
+            return histograms;
+        }
+    };
+
+    private volatile long startNanos, endNanos;
+
+    private volatile long schedulePeriodNanos;
+
+    /**
+     * The request latencies drained from the recorders so far, and since the last interval was
+     * taken, by operation and member, guarded by {@code this}
+     */
+    private final Histogram[][] totals, interval;
+
+    private long[][] intervalFailures;
+
+    private long intervalStartNanos;
+
+    /**
+     * Times to consistency of all threads, for {@link #takeConvergence()}
+     */
+    private final Recorder convergenceRecorder = new Recorder(HIGHEST_TRACKABLE_MICROS,
+            SIGNIFICANT_DIGITS);
+
+    public LatencyMetrics(List<String> members) {
+        this.members = ImmutableList.copyOf(members);
+        totals = new Histogram[Operation.values().length][members.size()];
+        interval = new Histogram[Operation.values().length][members.size()];
+        intervalFailures = new long[Operation.values().length][members.size()];
+        for (Operation op : Operation.values()) {
+            for (int m = 0; m < members.size(); m++) {
+                totals[op.ordinal()][m] = newHistogram();
+                interval[op.ordinal()][m] = newHistogram();
+            }
+        }
+    }
+
+    /**
+     * Binds a set of histograms to the current thread until {@link #detach()} is called, reusing
+     * an idle one if available
+     */
+    public void attach() {
+        ThreadHistograms histograms = idleThreadHistograms.poll();
+        if (histograms == null) {
+            histograms = new ThreadHistograms(members.size());
+            allThreadHistograms.add(histograms);
+        }
+        threadHistograms.set(histograms);
+    }
+
+    /**
+     * Returns the histograms bound to the current thread to the pool of idle ones
+     */
+    public void detach() {
+        ThreadHistograms histograms = threadHistograms.get();
+        threadHistograms.remove();
+        histograms.pendingLagNanos = 0L;
+        idleThreadHistograms.add(histograms);
+    }
+
+    public void start() {
+        startNanos = System.nanoTime();
+        endNanos = 0L;
+        synchronized (this) {
+            intervalStartNanos = startNanos;
+        }
+    }
+
+    public void stop() {
+        endNanos = System.nanoTime();
+    }
+
+    /**
+     * Discards the request latencies and failures recorded so far, for requests issued to set up
+     * the test rather than as part of it. Must not be called while other threads are recording.
+     */
+    public synchronized void reset() {
+        drain();
+        for (int o = 0; o < totals.length; o++) {
+            for (int m = 0; m < members.size(); m++) {
+                totals[o][m].reset();
+                interval[o][m].reset();
+                intervalFailures[o][m] = 0;
+            }
+        }
+        for (ThreadHistograms histograms : allThreadHistograms) {
+            for (int i = 0; i < histograms.failures.length(); i++) {
+                histograms.failures.set(i, 0);
+            }
+        }
+    }
+
+    public void record(final Operation op, final int member, final Stopwatch elapsed) {
+        record(op, member, elapsed.elapsed(TimeUnit.NANOSECONDS));
+    }
+
+    public void record(final Operation op, final int member, final long elapsedNanos) {
+        ThreadHistograms histograms = threadHistograms.get();
+        long latency = elapsedNanos + histograms.pendingLagNanos;
+        histograms.pendingLagNanos = 0L;
+        histograms.recorder(op, member).recordValue(toMicros(latency));
+    }
+
+    /**
+     * Records a request that failed, either because the member couldn't be reached or because it
+     * didn't answer with a success status
+     */
+    public void recordFailure(final Operation op, final int member) {
+        ThreadHistograms histograms = threadHistograms.get();
+        int index = histograms.index(op, member);
+        histograms.failures.lazySet(index, histograms.failures.get(index) + 1);
+    }
+
+    /**
+     * @return the number of failed requests recorded so far
+     */
+    public long failures() {
+        long failures = 0;
+        for (ThreadHistograms histograms : allThreadHistograms) {
+            for (int i = 0; i < histograms.failures.length(); i++) {
+                failures += histograms.failures.get(i);
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * @return the number of failed requests of the given operation recorded so far
+     */
+    public long failures(final Operation op) {
+        long failures = 0;
+        for (ThreadHistograms histograms : allThreadHistograms) {
+            for (int m = 0; m < members.size(); m++) {
+                failures += histograms.failures.get(histograms.index(op, m));
+            }
+        }
+        return failures;
+    }
+
+    private long[][] failuresByOperationAndMember() {
+        long[][] failures = new long[Operation.values().length][members.size()];
+        for (ThreadHistograms histograms : allThreadHistograms) {
+            for (Operation op : Operation.values()) {
+                for (int m = 0; m < members.size(); m++) {
+                    failures[op.ordinal()][m] += histograms.failures.get(histograms.index(op,
+                            m));
+                }
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Enables reporting of the open-loop schedule, at the given interval between task starts
+     */
+    public void setSchedulePeriod(final long periodNanos) {
+        this.schedulePeriodNanos = periodNanos;
+    }
+
+    /**
+     * Called by a worker thread when it starts a task that was scheduled to start at
+     * {@code intendedStartNanos} (as per {@link System#nanoTime()}), to account for the time the
+     * task waited behind schedule.
+     */
+    public void scheduled(final long intendedStartNanos) {
+        final long lag = Math.max(0L, System.nanoTime() - intendedStartNanos);
+        ThreadHistograms histograms = threadHistograms.get();
+        histograms.scheduleLag.recordValue(toMicros(lag));
+        if (lag > schedulePeriodNanos) {
+            histograms.lateStarts++;
+        }
+        histograms.pendingLagNanos = lag;
+    }
+
+    /**
+     * Records the spread between the fastest and slowest member response to a request sent to all
+     * members at once, and whether their answers differed
+     */
+    public void recordSkew(final Operation op, final long skewNanos, final boolean divergent) {
+        ThreadHistograms histograms = threadHistograms.get();
+        histograms.skew(op).recordValue(toMicros(skewNanos));
+        if (divergent) {
+            histograms.divergent[op.ordinal()]++;
+        }
+    }
+
+    /**
+     * Records how long it took for a cluster member to reflect a catalog change
+     */
+    public void recordConvergence(final int member, final long elapsedNanos) {
+        threadHistograms.get().convergence(member).recordValue(toMicros(elapsedNanos));
+        convergenceRecorder.recordValue(toMicros(elapsedNanos));
+    }
+
+    /**
+     * @return the times to consistency of all members recorded since the previous call, can be
+     *         called while the workers are recording
+     */
+    public Histogram takeConvergence() {
+        return convergenceRecorder.getIntervalHistogram();
+    }
+
+    /**
+     * Records a cluster member didn't reflect a catalog change within the allowed time
+     */
+    public void convergenceTimeout(final int member) {
+        threadHistograms.get().convergenceTimeouts[member]++;
+    }
+
+    /**
+     * Records a response body streamed from a cluster member, with the time to its first byte and
+     * to its last one
+     */
+    public void recordTransfer(final int member, final long firstByteNanos, final long totalNanos,
+            final long bytes, final long features) {
+        ThreadHistograms histograms = threadHistograms.get();
+        histograms.firstByte(member).recordValue(toMicros(firstByteNanos));
+        histograms.transfer(member).recordValue(toMicros(totalNanos));
+        histograms.transferNanos[member] += totalNanos;
+        histograms.transferBytes[member] += bytes;
+        histograms.transferFeatures[member] += features;
+    }
+
+    private static long toMicros(final long nanos) {
+        return Math.min(HIGHEST_TRACKABLE_MICROS, TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    /**
+     * @return the run time in nanoseconds, up to now if {@link #stop()} was not yet called
+     */
+    public long elapsedNanos() {
+        long end = endNanos == 0L ? System.nanoTime() : endNanos;
+        return end - startNanos;
+    }
+
+    /**
+     * Merges the histograms recorded by all threads for the given operation and member. Pass
+     * {@code null} as operation or {@code -1} as member to merge across all of them.
+     */
+    public synchronized Histogram merge(final Operation op, final int member) {
+        drain();
+        Histogram merged = newHistogram();
+        for (Operation o : Operation.values()) {
+            if (op != null && o != op) {
+                continue;
+            }
+            for (int m = 0; m < members.size(); m++) {
+                if (member == -1 || m == member) {
+                    merged.add(totals[o.ordinal()][m]);
+                }
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * The requests completed since the previous interval was taken
+     */
+    public static class Interval {
+
+        public final long startNanos, endNanos;
+
+        /**
+         * Successful request latencies in microseconds, by operation ordinal and member,
+         * {@code null} where there were none
+         */
+        public final Histogram[][] latencies;
+
+        /**
+         * Failed requests, by operation ordinal and member
+         */
+        public final long[][] failures;
+
+        Interval(long startNanos, long endNanos, Histogram[][] latencies, long[][] failures) {
+            this.startNanos = startNanos;
+            this.endNanos = endNanos;
+            this.latencies = latencies;
+            this.failures = failures;
+        }
+    }
+
+    /**
+     * Takes the latencies and failures recorded since the previous call (or since
+     * {@link #start()}), can be called while the workers are recording
+     */
+    public synchronized Interval takeInterval() {
+        drain();
+        final long now = System.nanoTime();
+        final Histogram[][] latencies = new Histogram[interval.length][members.size()];
+        final long[][] failures = failuresByOperationAndMember();
+        for (int o = 0; o < interval.length; o++) {
+            for (int m = 0; m < members.size(); m++) {
+                if (interval[o][m].getTotalCount() > 0) {
+                    latencies[o][m] = interval[o][m].copy();
+                    interval[o][m].reset();
+                }
+                long total = failures[o][m];
+                failures[o][m] -= intervalFailures[o][m];
+                intervalFailures[o][m] = total;
+            }
+        }
+        Interval taken = new Interval(intervalStartNanos, now, latencies, failures);
+        intervalStartNanos = now;
+        return taken;
+    }
+
+    /**
+     * Moves what the recorders got since the last drain into the totals and the current interval
+     */
+    private void drain() {
+        for (ThreadHistograms histograms : allThreadHistograms) {
+            for (int i = 0; i < histograms.recorders.length(); i++) {
+                SingleWriterRecorder recorder = histograms.recorders.get(i);
+                if (recorder == null) {
+                    continue;
+                }
+                Histogram h = recorder.getIntervalHistogram(histograms.recycled[i]);
+                histograms.recycled[i] = h;
+                int op = i / members.size(), member = i % members.size();
+                totals[op][member].add(h);
+                interval[op][member].add(h);
+            }
+        }
+    }
+
+    /**
+     * Writes out everything recorded so far, once the workers are done, for
+     * {@link #read(DataInputStream)} to add to the metrics of another process
+     */
+    public synchronized void write(final DataOutputStream out) throws IOException {
+        writeTotals(out);
+        ThreadHistograms combined = new ThreadHistograms(members.size());
+        for (ThreadHistograms histograms : allThreadHistograms) {
+            combined.add(histograms);
+        }
+        combined.write(out);
+    }
+
+    /**
+     * Writes out the request latencies and failures recorded so far in the format of
+     * {@link #write(DataOutputStream)}, without the other per-thread histograms, so it can be
+     * called while the workers are recording
+     */
+    public synchronized void writeSnapshot(final DataOutputStream out) throws IOException {
+        writeTotals(out);
+        new ThreadHistograms(members.size()).write(out);
+    }
+
+    private void writeTotals(final DataOutputStream out) throws IOException {
+        drain();
+        final long[][] failures = failuresByOperationAndMember();
+        out.writeInt(members.size());
+        for (int o = 0; o < totals.length; o++) {
+            for (int m = 0; m < members.size(); m++) {
+                writeHistogram(out, totals[o][m]);
+                out.writeLong(failures[o][m]);
+            }
+        }
+    }
+
+    /**
+     * Adds the metrics written by {@link #write(DataOutputStream)} or
+     * {@link #writeSnapshot(DataOutputStream)} in another process, recorded against the same
+     * cluster members, to the ones of this one
+     */
+    public synchronized void read(final DataInputStream in) throws IOException {
+        final int numMembers = in.readInt();
+        checkState(numMembers == members.size(), "Expected metrics for %s members, got %s",
+                members.size(), numMembers);
+        ThreadHistograms read = new ThreadHistograms(numMembers);
+        for (int o = 0; o < totals.length; o++) {
+            for (int m = 0; m < members.size(); m++) {
+                Histogram h = readHistogram(in);
+                if (h != null) {
+                    totals[o][m].add(h);
+                }
+                read.failures.set(read.index(Operation.values()[o], m), in.readLong());
+            }
+        }
+        read.read(in);
+        allThreadHistograms.add(read);
+    }
+
+    private static void writeHistogram(final DataOutputStream out, final Histogram h)
+            throws IOException {
+        if (h == null || h.getTotalCount() == 0) {
+            out.writeInt(0);
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(h.getNeededByteBufferCapacity());
+        int length = h.encodeIntoCompressedByteBuffer(buffer);
+        out.writeInt(length);
+        out.write(buffer.array(), 0, length);
+    }
+
+    /**
+     * @return the histogram written by {@link #writeHistogram}, {@code null} if it was empty
+     */
+    private static Histogram readHistogram(final DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length == 0) {
+            return null;
+        }
+        byte[] encoded = new byte[length];
+        in.readFully(encoded);
+        try {
+            return Histogram.decodeFromCompressedByteBuffer(ByteBuffer.wrap(encoded),
+                    HIGHEST_TRACKABLE_MICROS);
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid histogram", e);
+        }
+    }
+
+    public void report(final PrintStream out) {
+        final double seconds = elapsedNanos() / 1e9;
+        final Histogram total = merge(null, -1);
+        out.printf("Latency report: %,d requests in %.1fs (%.1f req/s), %,d failed requests "
+                + "not included, times in ms\n", total.getTotalCount(), seconds,
+                total.getTotalCount() / seconds, failures());
+        out.printf("%-20s %-40s %9s %9s %9s %9s %9s %9s %9s\n", "operation", "member", "count",
+                "req/s", "p50", "p90", "p99", "p99.9", "max");
+        for (Operation op : Operation.values()) {
+            for (int m = 0; m < members.size(); m++) {
+                Histogram h = merge(op, m);
+                if (h.getTotalCount() > 0) {
+                    printRow(out, op.label(), members.get(m), h, seconds);
+                }
+            }
+            Histogram h = merge(op, -1);
+            if (h.getTotalCount() > 0) {
+                printRow(out, op.label(), "all", h, seconds);
+            }
+        }
+        printRow(out, "all", "all", total, seconds);
+
+        reportSkew(out, seconds);
+        reportConvergence(out, seconds);
+        reportTransfer(out, seconds);
+
+        if (schedulePeriodNanos > 0) {
+            reportSchedule(out, seconds);
+        }
+    }
+
+    private void reportSkew(final PrintStream out, final double seconds) {
+        boolean header = false;
+        for (Operation op : Operation.values()) {
+            Histogram skew = newHistogram();
+            long divergent = 0;
+            for (ThreadHistograms histograms : allThreadHistograms) {
+                if (histograms.skew[op.ordinal()] != null) {
+                    skew.add(histograms.skew[op.ordinal()]);
+                }
+                divergent += histograms.divergent[op.ordinal()];
+            }
+            if (skew.getTotalCount() == 0) {
+                continue;
+            }
+            if (!header) {
+                out.println("Member skew of requests sent to all members at once, times in ms");
+                header = true;
+            }
+            printRow(out, op.label(), "skew", skew, seconds);
+            if (divergent > 0) {
+                out.printf("%-20s %-40s %9d\n", op.label(), "divergent answers", divergent);
+            }
+        }
+    }
+
+    private void reportConvergence(final PrintStream out, final double seconds) {
+        final Histogram total = newHistogram();
+        final long[] timeouts = new long[members.size()];
+        final Histogram[] perMember = new Histogram[members.size()];
+        for (int m = 0; m < members.size(); m++) {
+            perMember[m] = newHistogram();
+            for (ThreadHistograms histograms : allThreadHistograms) {
+                if (histograms.convergence[m] != null) {
+                    perMember[m].add(histograms.convergence[m]);
+                }
+                timeouts[m] += histograms.convergenceTimeouts[m];
+            }
+            total.add(perMember[m]);
+        }
+        long totalTimeouts = 0;
+        for (long t : timeouts) {
+            totalTimeouts += t;
+        }
+        if (total.getTotalCount() == 0 && totalTimeouts == 0) {
+            return;
+        }
+        out.printf("Time to consistency after feature type changes: %,d converged, "
+                + "%,d timed out, times in ms\n", total.getTotalCount(), totalTimeouts);
+        for (int m = 0; m < members.size(); m++) {
+            printRow(out, "converged", members.get(m), perMember[m], seconds);
+            if (timeouts[m] > 0) {
+                out.printf("%-20s %-40s %9d\n", "timed out", members.get(m), timeouts[m]);
+            }
+        }
+        printRow(out, "converged", "all", total, seconds);
+    }
+
+    private void reportTransfer(final PrintStream out, final double seconds) {
+        long totalBytes = 0;
+        final Histogram[] firstByte = new Histogram[members.size()];
+        final Histogram[] transfer = new Histogram[members.size()];
+        final long[] nanos = new long[members.size()];
+        final long[] bytes = new long[members.size()];
+        final long[] features = new long[members.size()];
+        for (int m = 0; m < members.size(); m++) {
+            firstByte[m] = newHistogram();
+            transfer[m] = newHistogram();
+            for (ThreadHistograms histograms : allThreadHistograms) {
+                if (histograms.firstByte[m] != null) {
+                    firstByte[m].add(histograms.firstByte[m]);
+                    transfer[m].add(histograms.transfer[m]);
+                }
+                nanos[m] += histograms.transferNanos[m];
+                bytes[m] += histograms.transferBytes[m];
+                features[m] += histograms.transferFeatures[m];
+            }
+            totalBytes += bytes[m];
+        }
+        if (totalBytes == 0) {
+            return;
+        }
+        out.printf("GetFeature transfers: %,.1f MB in %.1fs (%.1f MB/s), times in ms, "
+                + "MB/s per response stream\n", totalBytes / 1e6, seconds, totalBytes / 1e6
+                / seconds);
+        out.printf("%-40s %9s %11s %9s %9s %9s %9s %9s %9s\n", "member", "count", "features",
+                "MB", "ttfb p50", "ttfb p99", "total p50", "total p99", "MB/s");
+        for (int m = 0; m < members.size(); m++) {
+            if (transfer[m].getTotalCount() == 0) {
+                continue;
+            }
+            out.printf("%-40s %9d %11d %9.1f %9.1f %9.1f %9.1f %9.1f %9.1f\n", members.get(m),
+                    transfer[m].getTotalCount(), features[m], bytes[m] / 1e6,
+                    firstByte[m].getValueAtPercentile(50) / 1000d,
+                    firstByte[m].getValueAtPercentile(99) / 1000d,
+                    transfer[m].getValueAtPercentile(50) / 1000d,
+                    transfer[m].getValueAtPercentile(99) / 1000d, nanos[m] == 0 ? 0d : bytes[m]
+                            / 1e6 / (nanos[m] / 1e9));
+        }
+    }
+
+    private void reportSchedule(final PrintStream out, final double seconds) {
+        Histogram lag = newHistogram();
+        long lateStarts = 0;
+        for (ThreadHistograms histograms : allThreadHistograms) {
+            lag.add(histograms.scheduleLag);
+            lateStarts += histograms.lateStarts;
+        }
+        out.printf("Open-loop schedule: target %.1f tasks/s, %,d tasks started, "
+                + "%,d of them more than one interval (%.1fms) behind schedule\n",
+                1e9 / schedulePeriodNanos, lag.getTotalCount(), lateStarts,
+                schedulePeriodNanos / 1e6);
+        if (lateStarts > 0) {
+            out.println("WARNING: the harness could not keep up with the schedule, "
+                    + "queueing delay is included in the latencies above");
+        }
+        printRow(out, "schedule lag", "all", lag, seconds);
+    }
+
+    private void printRow(PrintStream out, String op, String member, Histogram h, double seconds) {
+        out.printf("%-20s %-40s %9d %9.1f", op, member, h.getTotalCount(), h.getTotalCount()
+                / seconds);
+        for (double p : PERCENTILES) {
+            out.printf(" %9.1f", h.getValueAtPercentile(p) / 1000d);
+        }
+        out.printf(" %9.1f\n", h.getMaxValue() / 1000d);
+    }
+
+    static Histogram newHistogram() {
+        return new Histogram(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+    }
+
+    /**
+     * The histograms of a single recording thread, lazily created so that operations a thread
+     * never performs don't take any memory
+     */
+    private static class ThreadHistograms {
+
+        private final int numMembers;
+
+        /**
+         * Request latency recorders by {@link #index(Operation, int)}, set by the recording
+         * thread and drained by any
+         */
+        private final AtomicReferenceArray<SingleWriterRecorder> recorders;
+
+        /**
+         * The histograms last drained from each recorder, to be reused on the next drain
+         */
+        private final Histogram[] recycled;
+
+        /**
+         * Failed requests by {@link #index(Operation, int)}, only incremented by the recording
+         * thread
+         */
+        private final AtomicLongArray failures;
+
+        private final Histogram scheduleLag = newHistogram();
+
+        private long lateStarts;
+
+        private long pendingLagNanos;
+
+        private final Histogram[] convergence;
+
+        private final Histogram[] skew = new Histogram[Operation.values().length];
+
+        private final long[] divergent = new long[Operation.values().length];
+
+        private final long[] convergenceTimeouts;
+
+        private final Histogram[] firstByte, transfer;
+
+        private final long[] transferNanos, transferBytes, transferFeatures;
+
+        ThreadHistograms(int numMembers) {
+            this.numMembers = numMembers;
+            recorders = new AtomicReferenceArray<>(Operation.values().length * numMembers);
+            recycled = new Histogram[Operation.values().length * numMembers];
+            failures = new AtomicLongArray(Operation.values().length * numMembers);
+            convergence = new Histogram[numMembers];
+            convergenceTimeouts = new long[numMembers];
+            firstByte = new Histogram[numMembers];
+            transfer = new Histogram[numMembers];
+            transferNanos = new long[numMembers];
+            transferBytes = new long[numMembers];
+            transferFeatures = new long[numMembers];
+        }
+
+        Histogram firstByte(int member) {
+            Histogram h = firstByte[member];
+            if (h == null) {
+                h = newHistogram();
+                firstByte[member] = h;
+                transfer[member] = newHistogram();
+            }
+            return h;
+        }
+
+        Histogram transfer(int member) {
+            firstByte(member);
+            return transfer[member];
+        }
+
+        Histogram skew(Operation op) {
+            Histogram h = skew[op.ordinal()];
+            if (h == null) {
+                h = newHistogram();
+                skew[op.ordinal()] = h;
+            }
+            return h;
+        }
+
+        Histogram convergence(int member) {
+            Histogram h = convergence[member];
+            if (h == null) {
+                h = newHistogram();
+                convergence[member] = h;
+            }
+            return h;
+        }
+
+        int index(Operation op, int member) {
+            return op.ordinal() * numMembers + member;
+        }
+
+        /**
+         * Adds up everything but the request latencies, which are drained from the recorders
+         * into the totals
+         */
+        void add(ThreadHistograms other) {
+            for (int i = 0; i < failures.length(); i++) {
+                failures.set(i, failures.get(i) + other.failures.get(i));
+            }
+            scheduleLag.add(other.scheduleLag);
+            lateStarts += other.lateStarts;
+            for (int o = 0; o < skew.length; o++) {
+                if (other.skew[o] != null) {
+                    skew(Operation.values()[o]).add(other.skew[o]);
+                }
+                divergent[o] += other.divergent[o];
+            }
+            for (int m = 0; m < numMembers; m++) {
+                if (other.convergence[m] != null) {
+                    convergence(m).add(other.convergence[m]);
+                }
+                convergenceTimeouts[m] += other.convergenceTimeouts[m];
+                if (other.firstByte[m] != null) {
+                    firstByte(m).add(other.firstByte[m]);
+                    transfer(m).add(other.transfer[m]);
+                }
+                transferNanos[m] += other.transferNanos[m];
+                transferBytes[m] += other.transferBytes[m];
+                transferFeatures[m] += other.transferFeatures[m];
+            }
+        }
+
+        /**
+         * Writes out what {@link #add} adds up, but the failures
+         */
+        void write(DataOutputStream out) throws IOException {
+            writeHistogram(out, scheduleLag);
+            out.writeLong(lateStarts);
+            for (int o = 0; o < skew.length; o++) {
+                writeHistogram(out, skew[o]);
+                out.writeLong(divergent[o]);
+            }
+            for (int m = 0; m < numMembers; m++) {
+                writeHistogram(out, convergence[m]);
+                out.writeLong(convergenceTimeouts[m]);
+                writeHistogram(out, firstByte[m]);
+                writeHistogram(out, transfer[m]);
+                out.writeLong(transferNanos[m]);
+                out.writeLong(transferBytes[m]);
+                out.writeLong(transferFeatures[m]);
+            }
+        }
+
+        void read(DataInputStream in) throws IOException {
+            Histogram h = readHistogram(in);
+            if (h != null) {
+                scheduleLag.add(h);
+            }
+            lateStarts = in.readLong();
+            for (int o = 0; o < skew.length; o++) {
+                h = readHistogram(in);
+                if (h != null) {
+                    skew(Operation.values()[o]).add(h);
+                }
+                divergent[o] = in.readLong();
+            }
+            for (int m = 0; m < numMembers; m++) {
+                h = readHistogram(in);
+                if (h != null) {
+                    convergence(m).add(h);
+                }
+                convergenceTimeouts[m] = in.readLong();
+                Histogram firstByteRead = readHistogram(in);
+                Histogram transferRead = readHistogram(in);
+                if (firstByteRead != null) {
+                    firstByte(m).add(firstByteRead);
+                    transfer(m).add(transferRead);
+                }
+                transferNanos[m] = in.readLong();
+                transferBytes[m] = in.readLong();
+                transferFeatures[m] = in.readLong();
+            }
+        }
+
+        SingleWriterRecorder recorder(Operation op, int member) {
+            final int index = index(op, member);
+            SingleWriterRecorder r = recorders.get(index);
+            if (r == null) {
+                r = new SingleWriterRecorder(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+                recorders.set(index, r);
+            }
+            return r;
+        }
+    }
+}
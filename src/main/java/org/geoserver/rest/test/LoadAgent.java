@@ -0,0 +1,179 @@
+package org.geoserver.rest.test;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Runs the share of the test a {@link LoadController} hands out, and sends the results back to
+ * it: a snapshot of the latencies and errors so far every interval while it runs, then the full
+ * results once done.
+ * <p>
+ * Only {@code distributed.controller} is read from the agent's own configuration, everything
+ * else comes from the controller's, so all agents run the same load profile.
+ */
+public class LoadAgent {
+
+    /**
+     * How long to keep trying to connect to a controller that's not listening yet
+     */
+    private static final long CONNECT_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final String host;
+
+    private final int port;
+
+    public LoadAgent(Properties config) {
+        String address = config.getProperty("distributed.controller", "").trim();
+        this.port = LoadController.port(address);
+        this.host = address.substring(0, address.lastIndexOf(':'));
+    }
+
+    /**
+     * Runs the test runs the controller hands out, streaming snapshots of the results to the
+     * controller meanwhile, prints out the agent's own report, and sends the results back
+     *
+     * @return whether the agent's errors stayed within the configured threshold
+     */
+    public boolean run() throws Exception {
+        try (Socket socket = connect()) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket
+                    .getOutputStream()));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket
+                    .getInputStream()));
+            out.writeInt(LoadController.MAGIC);
+            out.writeInt(LoadController.VERSION);
+            out.writeLong(ProcessHandle.current().pid());
+            out.flush();
+
+            if (in.readInt() != LoadController.MAGIC) {
+                throw new IOException("Not a compatible controller: " + socket);
+            }
+            final int index = in.readInt();
+            final long startNanos = System.nanoTime()
+                    + TimeUnit.MILLISECONDS.toNanos(in.readLong());
+            final long intervalMillis = in.readLong();
+            final Properties profile = LoadController.readProfile(in);
+            System.err.printf("Agent %d running %s test runs from %s\n", index,
+                    profile.getProperty("runs"), profile.getProperty("runs.first"));
+
+            RunTest test;
+            ScheduledExecutorService reporter = null;
+            try {
+                test = new RunTest(profile);
+                test.startAt(startNanos);
+                reporter = startReporting(test, out, intervalMillis);
+                test.run();
+            } catch (Exception | Error e) {
+                stopReporting(reporter, intervalMillis);
+                String trace = Throwables.getStackTraceAsString(e);
+                synchronized (out) {
+                    out.writeByte(LoadController.FAILED);
+                    out.writeUTF(trace.substring(0, Math.min(trace.length(), 8192)));
+                    out.flush();
+                }
+                throw e;
+            }
+            stopReporting(reporter, intervalMillis);
+            LatencyMetrics metrics = test.getMetrics();
+            synchronized (out) {
+                out.writeByte(LoadController.RESULT);
+                out.writeLong(metrics.elapsedNanos());
+                out.writeLong(metrics.merge(null, -1).getTotalCount());
+                out.writeLong(test.getErrors().total());
+                metrics.write(out);
+                test.getErrors().write(out);
+                out.flush();
+            }
+
+            test.report(System.out);
+            return test.passed();
+        }
+    }
+
+    /**
+     * Sends the controller a snapshot of the test's results so far every interval, from setup to
+     * the end of the test, so it can report progress and tell a lost agent from a busy one
+     */
+    private static ScheduledExecutorService startReporting(final RunTest test,
+            final DataOutputStream out, final long intervalMillis) {
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("agent-reporter")
+                        .build());
+        reporter.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    sendSnapshot(test, out);
+                } catch (IOException e) {
+                    System.err.printf("Lost the controller: %s\n", e.getMessage());
+                    throw Throwables.propagate(e);
+                }
+            }
+        }, 0, intervalMillis, TimeUnit.MILLISECONDS);
+        return reporter;
+    }
+
+    private static void stopReporting(final ScheduledExecutorService reporter,
+            final long intervalMillis) {
+        if (reporter == null) {
+            return;
+        }
+        reporter.shutdownNow();
+        try {
+            reporter.awaitTermination(intervalMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sendSnapshot(final RunTest test, final DataOutputStream out)
+            throws IOException {
+        final LatencyMetrics metrics = test.getMetrics();
+        final ErrorCounters errors = test.getErrors();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream snapshot = new DataOutputStream(bytes);
+        metrics.writeSnapshot(snapshot);
+        errors.write(snapshot);
+        synchronized (out) {
+            out.writeByte(LoadController.SNAPSHOT);
+            out.writeLong(metrics.merge(null, -1).getTotalCount());
+            out.writeLong(errors.total());
+            out.writeInt(bytes.size());
+            bytes.writeTo(out);
+            out.flush();
+        }
+    }
+
+    private Socket connect() throws IOException {
+        final long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MILLIS;
+        while (true) {
+            Socket socket = new Socket();
+            try {
+                socket.connect(new InetSocketAddress(host, port));
+                return socket;
+            } catch (ConnectException e) {
+                socket.close();
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+                System.err.printf("Waiting for the controller at %s:%d\n", host, port);
+                Uninterruptibles.sleepUninterruptibly(1, TimeUnit.SECONDS);
+            }
+        }
+    }
+}
@@ -0,0 +1,468 @@
+package org.geoserver.rest.test;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Runs the test from several {@link LoadAgent} processes, on the same host or on different ones,
+ * and merges their results into a single report.
+ * <p>
+ * The controller listens on the port of {@code distributed.controller} until
+ * {@code distributed.agents} agents connected, then hands each of them a share of the test runs
+ * as a range of run indexes, so the workspaces, stores, layers, and tables they create don't
+ * collide, along with the rest of its own configuration as the load profile and the delay to
+ * start after. Each agent sets up, waits out the delay, runs its share, and sends back its
+ * latency histograms and error counts, which the controller adds up as if a single process had
+ * recorded them.
+ * <p>
+ * While they run, agents also send a snapshot of their results so far every
+ * {@code distributed.interval} seconds, which the controller prints out as the progress of the
+ * whole run. An agent that goes silent for {@code distributed.timeout} milliseconds, or whose
+ * connection drops, is counted as failed with the results of its last snapshot, and the others
+ * carry on. The controller gives up if not all agents connected within
+ * {@code distributed.acceptTimeout} milliseconds.
+ * <p>
+ * The start delay is sent to all agents at once and counted from when they receive it, so agents
+ * on different hosts start together without their clocks having to be in sync.
+ */
+public class LoadController {
+
+    static final int MAGIC = 0x52455354;
+
+    static final int VERSION = 3;
+
+    /**
+     * The kinds of messages an agent sends once it got its share of the test
+     */
+    static final byte SNAPSHOT = 1, RESULT = 2, FAILED = 3;
+
+    private final Properties config;
+
+    private final int port;
+
+    private final int numAgents;
+
+    private final long startDelayMillis;
+
+    private final long acceptTimeoutMillis;
+
+    private final long intervalMillis;
+
+    private final int timeoutMillis;
+
+    private final int numRuns;
+
+    private final int firstRun;
+
+    private final ImmutableList<String> clusterMembers;
+
+    private final LatencyMetrics metrics;
+
+    private final ErrorCounters errors;
+
+    private final double errorThresholdPercent;
+
+    private final List<Agent> agents = new ArrayList<>();
+
+    /**
+     * When the agents started running the test, 0 until then
+     */
+    private volatile long startNanos;
+
+    /**
+     * An agent's share of the test and what it reported back
+     */
+    private static class Agent {
+
+        final String name;
+
+        final int firstRun, runs;
+
+        long elapsedNanos, requests, errors;
+
+        /**
+         * Why the agent didn't report back, {@code null} if it did
+         */
+        String failure;
+
+        /**
+         * The metrics and error counts of the agent's last snapshot, {@code null} until it sent
+         * one
+         */
+        byte[] snapshot;
+
+        boolean done;
+
+        Agent(String name, int firstRun, int runs) {
+            this.name = name;
+            this.firstRun = firstRun;
+            this.runs = runs;
+        }
+    }
+
+    public LoadController(Properties config) {
+        this.config = config;
+        this.port = port(config.getProperty("distributed.controller", ""));
+        this.numAgents = Integer.parseInt(config.getProperty("distributed.agents", "1"));
+        checkArgument(numAgents > 0, "distributed.agents must be > 0: %s", numAgents);
+        this.startDelayMillis = Long.parseLong(config.getProperty("distributed.startDelay",
+                "10000"));
+        checkArgument(startDelayMillis >= 0, "distributed.startDelay must be >= 0: %s",
+                startDelayMillis);
+        this.acceptTimeoutMillis = Long.parseLong(config.getProperty(
+                "distributed.acceptTimeout", "300000"));
+        checkArgument(acceptTimeoutMillis > 0, "distributed.acceptTimeout must be > 0: %s",
+                acceptTimeoutMillis);
+        this.intervalMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(config.getProperty(
+                "distributed.interval", "10")));
+        checkArgument(intervalMillis > 0, "distributed.interval must be > 0: %s",
+                intervalMillis);
+        this.timeoutMillis = Integer.parseInt(config.getProperty("distributed.timeout", "60000"));
+        checkArgument(timeoutMillis > intervalMillis,
+                "distributed.timeout must be longer than distributed.interval: %s", timeoutMillis);
+        this.numRuns = Integer.parseInt(config.getProperty("runs"));
+        checkArgument(numRuns >= numAgents, "runs must be at least distributed.agents: %s",
+                numRuns);
+        this.firstRun = Integer.parseInt(config.getProperty("runs.first", "0"));
+        for (String key : new String[] { "load.steps", "scenario", "catalog.sizes", "seed",
+                "duration", "simulator.members" }) {
+            checkArgument(config.getProperty(key, "").trim().isEmpty(),
+                    "%s can't be used in distributed mode, agents only run the test task script "
+                            + "in closed or open mode against a real cluster", key);
+        }
+        this.clusterMembers = ImmutableList.copyOf(Splitter.on(',').split(
+                config.getProperty("clusterMembers")));
+        this.metrics = new LatencyMetrics(clusterMembers);
+        this.errors = new ErrorCounters(clusterMembers);
+        this.errorThresholdPercent = Double.parseDouble(config.getProperty("errors.threshold",
+                "0"));
+        if ("open".equals(config.getProperty("mode", "closed"))) {
+            metrics.setSchedulePeriod((long) (TimeUnit.SECONDS.toNanos(1) / Double
+                    .parseDouble(config.getProperty("rate"))));
+        }
+    }
+
+    /**
+     * @return the port of a {@code host:port} address
+     */
+    static int port(final String address) {
+        int colon = address.lastIndexOf(':');
+        checkArgument(colon > 0, "distributed.controller must be host:port: %s", address);
+        return Integer.parseInt(address.substring(colon + 1).trim());
+    }
+
+    /**
+     * Waits for the agents to connect, hands out the test runs, and collects the results
+     */
+    public void run() throws IOException {
+        List<Socket> sockets = new ArrayList<>();
+        ExecutorService readers = null;
+        try (ServerSocket server = new ServerSocket(port)) {
+            System.err.printf("Waiting for %d agents on port %d\n", numAgents, port);
+            final long deadline = System.currentTimeMillis() + acceptTimeoutMillis;
+            while (sockets.size() < numAgents) {
+                server.setSoTimeout((int) Math.max(1L, Math.min(Integer.MAX_VALUE, deadline
+                        - System.currentTimeMillis())));
+                Socket socket;
+                try {
+                    socket = server.accept();
+                } catch (SocketTimeoutException e) {
+                    throw new IOException(String.format("Only %d of %d agents connected within "
+                            + "distributed.acceptTimeout (%,d ms)", sockets.size(), numAgents,
+                            acceptTimeoutMillis), e);
+                }
+                sockets.add(socket);
+                socket.setSoTimeout(timeoutMillis);
+                DataInputStream in = new DataInputStream(socket.getInputStream());
+                final long pid;
+                try {
+                    if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                        throw new IOException("Not a compatible agent: " + socket);
+                    }
+                    pid = in.readLong();
+                } catch (SocketTimeoutException e) {
+                    throw new IOException(String.format("%s connected but did not identify as "
+                            + "an agent within distributed.timeout (%,d ms)", socket,
+                            timeoutMillis), e);
+                }
+                final int index = sockets.size() - 1;
+                final int first = (int) ((long) numRuns * index / numAgents);
+                final int next = (int) ((long) numRuns * (index + 1) / numAgents);
+                String name = socket.getInetAddress().getHostAddress() + " pid " + pid;
+                agents.add(new Agent(name, firstRun + first, next - first));
+                System.err.printf("Agent %d connected from %s\n", index, name);
+            }
+
+            for (int i = 0; i < numAgents; i++) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(sockets
+                        .get(i).getOutputStream()));
+                out.writeInt(MAGIC);
+                out.writeInt(i);
+                out.writeLong(startDelayMillis);
+                out.writeLong(intervalMillis);
+                writeProfile(out, profile(i));
+                out.flush();
+            }
+            readers = Executors.newFixedThreadPool(numAgents, new ThreadFactoryBuilder()
+                    .setDaemon(true).setNameFormat("agent-reader-%d").build());
+            final CountDownLatch done = new CountDownLatch(numAgents);
+            for (int i = 0; i < numAgents; i++) {
+                final Agent agent = agents.get(i);
+                final Socket socket = sockets.get(i);
+                readers.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            collect(agent, socket);
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                });
+            }
+            Uninterruptibles.sleepUninterruptibly(startDelayMillis, TimeUnit.MILLISECONDS);
+            metrics.start();
+            startNanos = System.nanoTime();
+            System.err.printf("Started %,d test runs on %d agents\n", numRuns, numAgents);
+
+            long lastRequests = 0, lastNanos = System.nanoTime();
+            while (!Uninterruptibles.awaitUninterruptibly(done, intervalMillis,
+                    TimeUnit.MILLISECONDS)) {
+                final long now = System.nanoTime();
+                lastRequests = progress(lastRequests, (now - lastNanos) / 1e9);
+                lastNanos = now;
+            }
+            metrics.stop();
+        } finally {
+            if (readers != null) {
+                readers.shutdownNow();
+            }
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+    }
+
+    /**
+     * Prints out the progress of the run as of the agents' last snapshots
+     *
+     * @return the number of requests the agents completed so far
+     */
+    private long progress(final long lastRequests, final double seconds) throws IOException {
+        LatencyMetrics progress = new LatencyMetrics(clusterMembers);
+        long errors = 0;
+        int running = 0;
+        for (Agent agent : agents) {
+            synchronized (agent) {
+                if (agent.snapshot != null) {
+                    progress.read(new DataInputStream(new ByteArrayInputStream(agent.snapshot)));
+                }
+                errors += agent.errors;
+                if (!agent.done) {
+                    running++;
+                }
+            }
+        }
+        Histogram latencies = progress.merge(null, -1);
+        long requests = latencies.getTotalCount();
+        System.err.printf("%.0fs: %,d requests (%.1f/s), %,d errors, p50 %.1f ms, p99 %.1f ms, "
+                + "%d of %d agents running\n", metrics.elapsedNanos() / 1e9, requests,
+                seconds > 0 ? (requests - lastRequests) / seconds : 0d, errors,
+                latencies.getValueAtPercentile(50) / 1000d,
+                latencies.getValueAtPercentile(99) / 1000d, running, numAgents);
+        return requests;
+    }
+
+    /**
+     * @return the configuration of the given agent: the controller's, with its share of the test
+     *         runs and of the open-loop rate, and its own log and sample files
+     */
+    private Properties profile(final int index) {
+        final Agent agent = agents.get(index);
+        Properties profile = new Properties();
+        for (String key : config.stringPropertyNames()) {
+            if (!key.startsWith("distributed.")) {
+                profile.setProperty(key, config.getProperty(key));
+            }
+        }
+        profile.setProperty("runs", String.valueOf(agent.runs));
+        profile.setProperty("runs.first", String.valueOf(agent.firstRun));
+        if ("open".equals(config.getProperty("mode", "closed"))) {
+            double rate = Double.parseDouble(config.getProperty("rate"));
+            profile.setProperty("rate", String.valueOf(rate / numAgents));
+        }
+        for (String key : new String[] { "log.file", "sampler.file", "health.file",
+                "samples.file" }) {
+            String file = config.getProperty(key, "").trim();
+            if (!file.isEmpty()) {
+                String extension = Files.getFileExtension(file);
+                String base = extension.isEmpty() ? file : file.substring(0, file.length()
+                        - extension.length() - 1);
+                profile.setProperty(key, base + "-agent" + index
+                        + (extension.isEmpty() ? "" : "." + extension));
+            }
+        }
+        return profile;
+    }
+
+    private static void writeProfile(final DataOutputStream out, final Properties profile)
+            throws IOException {
+        StringWriter writer = new StringWriter();
+        profile.store(writer, null);
+        byte[] bytes = writer.toString().getBytes(Charsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static Properties readProfile(final DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        Properties profile = new Properties();
+        profile.load(new StringReader(new String(bytes, Charsets.UTF_8)));
+        return profile;
+    }
+
+    /**
+     * Reads the agent's snapshots until it reports back, and adds its metrics and error counts to
+     * the totals. If it failed or was lost, those of its last snapshot are added instead.
+     */
+    private void collect(final Agent agent, final Socket socket) {
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket
+                    .getInputStream()));
+            while (true) {
+                final byte message = in.readByte();
+                if (message == SNAPSHOT) {
+                    final long requests = in.readLong();
+                    final long errors = in.readLong();
+                    final byte[] snapshot = new byte[in.readInt()];
+                    in.readFully(snapshot);
+                    synchronized (agent) {
+                        agent.requests = requests;
+                        agent.errors = errors;
+                        agent.snapshot = snapshot;
+                    }
+                } else if (message == FAILED) {
+                    failed(agent, in.readUTF());
+                    return;
+                } else if (message == RESULT) {
+                    final long elapsedNanos = in.readLong();
+                    final long requests = in.readLong();
+                    final long errors = in.readLong();
+                    metrics.read(in);
+                    this.errors.read(in);
+                    synchronized (agent) {
+                        agent.elapsedNanos = elapsedNanos;
+                        agent.requests = requests;
+                        agent.errors = errors;
+                        agent.done = true;
+                    }
+                    System.err.printf("Agent %s finished %,d requests in %.1fs\n", agent.name,
+                            agent.requests, agent.elapsedNanos / 1e9);
+                    return;
+                } else {
+                    throw new IOException("Unexpected message " + message);
+                }
+            }
+        } catch (SocketTimeoutException e) {
+            failed(agent, String.format("no report within distributed.timeout (%,d ms)",
+                    timeoutMillis));
+        } catch (EOFException e) {
+            failed(agent, "lost connection");
+        } catch (IOException e) {
+            failed(agent, "lost connection: " + e.getMessage());
+        }
+    }
+
+    private void failed(final Agent agent, final String failure) {
+        final byte[] snapshot;
+        synchronized (agent) {
+            agent.failure = failure;
+            agent.elapsedNanos = startNanos == 0L ? 0L : System.nanoTime() - startNanos;
+            agent.done = true;
+            snapshot = agent.snapshot;
+        }
+        System.err.printf("Agent %s failed: %s\n", agent.name, failure);
+        if (snapshot == null) {
+            return;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(snapshot));
+            metrics.read(in);
+            errors.read(in);
+        } catch (IOException e) {
+            System.err.printf("Agent %s sent an unreadable snapshot: %s\n", agent.name, e);
+        }
+    }
+
+    /**
+     * @return the number of requests sent, successful or not
+     */
+    private long requests() {
+        return metrics.merge(null, -1).getTotalCount() + metrics.failures();
+    }
+
+    /**
+     * @return whether all agents reported back and the errors stayed within the configured
+     *         threshold
+     */
+    public boolean passed() {
+        for (Agent agent : agents) {
+            if (agent.failure != null) {
+                return false;
+            }
+        }
+        return agents.size() == numAgents
+                && errors.errorPercent(requests()) <= errorThresholdPercent;
+    }
+
+    /**
+     * Prints out each agent's share followed by the merged latency and error reports
+     */
+    public void report(final PrintStream out) {
+        out.printf("Distributed run: %,d test runs on %d agents, times from the start of all "
+                + "agents to the last one reporting back, failed agents counted up to their last "
+                + "snapshot\n", numRuns, numAgents);
+        out.printf("%-6s %-40s %-17s %11s %9s %9s  %s\n", "agent", "host", "runs", "requests",
+                "errors", "elapsed", "status");
+        for (int i = 0; i < agents.size(); i++) {
+            Agent agent = agents.get(i);
+            out.printf("%-6d %-40s %-17s %11d %9d %8.1fs  %s\n", i, agent.name, agent.firstRun
+                    + "-" + (agent.firstRun + agent.runs - 1), agent.requests, agent.errors,
+                    agent.elapsedNanos / 1e9, agent.failure == null ? "OK" : agent.failure);
+        }
+        metrics.report(out);
+        errors.report(out, requests());
+        out.printf("Error threshold %.2f%%: %s\n", errorThresholdPercent, passed() ? "PASSED"
+                : "FAILED");
+    }
+}
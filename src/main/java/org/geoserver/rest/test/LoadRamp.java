@@ -0,0 +1,148 @@
+package org.geoserver.rest.test;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.HdrHistogram.Histogram;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * A step-load schedule: the test runs at each concurrency level in turn for a fixed time, and the
+ * throughput, error rate, and latency percentiles of every step are kept to find the cluster's
+ * saturation point.
+ * <p>
+ * The saturation point, or knee, is the first step where adding concurrency no longer buys
+ * throughput (less than {@link #KNEE_THROUGHPUT_GAIN} more requests per second than the step
+ * before) while the p99 latency rose by at least {@link #KNEE_P99_GROWTH}; the step before it is
+ * the highest concurrency the cluster can usefully take.
+ */
+public class LoadRamp {
+
+    /**
+     * Relative throughput increase below which a step is considered to add no throughput
+     */
+    static final double KNEE_THROUGHPUT_GAIN = 0.05;
+
+    /**
+     * Relative p99 latency increase from which a step is considered to make latency shoot up
+     */
+    static final double KNEE_P99_GROWTH = 0.5;
+
+    private static final double[] PERCENTILES = { 50, 90, 99 };
+
+    /**
+     * The measurements of a single step
+     */
+    public static class Step {
+
+        public final int concurrency;
+
+        public final long elapsedNanos;
+
+        public final long tasks;
+
+        public final long failures;
+
+        /**
+         * The latencies of the successful requests issued during the step, in microseconds
+         */
+        public final Histogram latencies;
+
+        Step(int concurrency, long elapsedNanos, long tasks, long failures, Histogram latencies) {
+            this.concurrency = concurrency;
+            this.elapsedNanos = elapsedNanos;
+            this.tasks = tasks;
+            this.failures = failures;
+            this.latencies = latencies;
+        }
+
+        public double throughput() {
+            return latencies.getTotalCount() / (elapsedNanos / 1e9);
+        }
+
+        public double errorRate() {
+            long requests = latencies.getTotalCount() + failures;
+            return requests == 0 ? 0d : (double) failures / requests;
+        }
+
+        long p99() {
+            return latencies.getValueAtPercentile(99);
+        }
+    }
+
+    private final ImmutableList<Integer> concurrencies;
+
+    private final long stepNanos;
+
+    private final List<Step> steps = new ArrayList<>();
+
+    public LoadRamp(List<Integer> concurrencies, long stepNanos) {
+        this.concurrencies = ImmutableList.copyOf(concurrencies);
+        this.stepNanos = stepNanos;
+    }
+
+    /**
+     * @return the concurrency of each step, in the order they run
+     */
+    public ImmutableList<Integer> getConcurrencies() {
+        return concurrencies;
+    }
+
+    public long getStepNanos() {
+        return stepNanos;
+    }
+
+    public void completed(final int concurrency, final long elapsedNanos, final long tasks,
+            final long failures, final Histogram latencies) {
+        steps.add(new Step(concurrency, elapsedNanos, tasks, failures, latencies));
+    }
+
+    public List<Step> getSteps() {
+        return steps;
+    }
+
+    /**
+     * @return the first step past the saturation point, {@code null} if there's none
+     */
+    public Step knee() {
+        for (int i = 1; i < steps.size(); i++) {
+            Step previous = steps.get(i - 1);
+            Step step = steps.get(i);
+            boolean flat = step.throughput() < previous.throughput() * (1 + KNEE_THROUGHPUT_GAIN);
+            // a p99 that stays at zero, all responses under a microsecond, did not grow
+            boolean slower = step.p99() > previous.p99()
+                    && step.p99() >= previous.p99() * (1 + KNEE_P99_GROWTH);
+            if (flat && slower) {
+                return step;
+            }
+        }
+        return null;
+    }
+
+    public void report(final PrintStream out) {
+        out.printf("Load ramp: %d steps of %.1fs, times in ms\n", steps.size(), stepNanos / 1e9);
+        out.printf("%11s %9s %9s %9s %9s %9s %9s %9s %9s\n", "concurrency", "tasks", "requests",
+                "req/s", "errors", "p50", "p90", "p99", "max");
+        for (Step step : steps) {
+            out.printf("%11d %9d %9d %9.1f %8.2f%%", step.concurrency, step.tasks,
+                    step.latencies.getTotalCount(), step.throughput(), step.errorRate() * 100);
+            for (double p : PERCENTILES) {
+                out.printf(" %9.1f", step.latencies.getValueAtPercentile(p) / 1000d);
+            }
+            out.printf(" %9.1f\n", step.latencies.getMaxValue() / 1000d);
+        }
+        Step knee = knee();
+        if (knee == null) {
+            out.println("No saturation point found: throughput kept growing, or p99 latency "
+                    + "stayed flat, up to the last step");
+            return;
+        }
+        Step before = steps.get(steps.indexOf(knee) - 1);
+        out.printf("Saturation point at concurrency %d: going to %d changed throughput from "
+                + "%.1f to %.1f req/s while p99 went from %.1f to %.1fms\n", before.concurrency,
+                knee.concurrency, before.throughput(), knee.throughput(), before.p99() / 1000d,
+                knee.p99() / 1000d);
+    }
+}
@@ -17,9 +17,25 @@ public class Main {
         Properties config = checkFile(args);
         try {
             Stopwatch sw = Stopwatch.createStarted();
-            new RunTest(config).run();
+            String role = config.getProperty("distributed.role", "").trim();
+            if ("controller".equals(role)) {
+                LoadController controller = new LoadController(config);
+                controller.run();
+                System.err.printf("Test run in %s\n", sw.stop());
+                controller.report(System.out);
+                System.exit(controller.passed() ? 0 : 1);
+            } else if ("agent".equals(role)) {
+                boolean passed = new LoadAgent(config).run();
+                System.err.printf("Test run in %s\n", sw.stop());
+                System.exit(passed ? 0 : 1);
+            }
+            Preconditions.checkArgument(role.isEmpty(),
+                    "distributed.role must be one of controller or agent: %s", role);
+            RunTest test = new RunTest(config);
+            test.run();
             System.err.printf("Test run in %s\n", sw.stop());
-            System.exit(0);
+            test.report(System.out);
+            System.exit(test.passed() ? 0 : 1);
         } catch (Exception e) {
             e.printStackTrace();
             System.exit(-1);
@@ -0,0 +1,356 @@
+package org.geoserver.rest.test;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.geoserver.rest.test.EventLog.Level;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Polls every cluster member for its own view of its health every few seconds while the test
+ * runs, so a latency spike on one member can be told apart as a GC storm, a thread pile up, or a
+ * catalog reload on that node.
+ * <p>
+ * Each sample has a row per member with the response time of its {@code rest/about/system-status}
+ * document and the configured metrics read from it, such as JVM memory usage and thread count,
+ * and, if enabled, the number of workspaces and layers it lists and how long listing them took.
+ * The {@code elapsed} column counts from the start of the {@link LatencyMetrics}, like the one of
+ * the {@link MetricsSampler}, so both files line up. Rows are written as CSV if the file name ends
+ * with {@code .csv}, or as JSON lines otherwise.
+ * <p>
+ * Members are polled one at a time from a single thread, through a transport of the sampler's
+ * own, so the polls don't take connections from the test nor show up in its in-flight counts or
+ * latencies.
+ */
+public class MemberHealthSampler implements Closeable {
+
+    private static final String STATUS_PATH = "rest/about/system-status.xml";
+
+    private final LatencyMetrics metrics;
+
+    private final HttpTransport transport;
+
+    private final ImmutableList<String> members;
+
+    private final File file;
+
+    private final long periodMillis;
+
+    private final ImmutableList<String> metricNames;
+
+    private final ImmutableSet<String> metricNameSet;
+
+    /**
+     * Whether to list the workspaces and layers of each member on every sample
+     */
+    private final boolean catalogCounts;
+
+    private final boolean csv;
+
+    private final Member[] summaries;
+
+    private final EventLog log;
+
+    private ScheduledExecutorService scheduler;
+
+    private Writer out;
+
+    private boolean closed;
+
+    /**
+     * What the samples of a member added up to, for the report
+     */
+    private static class Member {
+
+        long samples, failures;
+
+        double statusMillisSum, statusMillisMax;
+
+        int workspaces = -1, layers = -1;
+
+        /**
+         * Lowest and highest value of each metric, and the elapsed seconds of the highest
+         */
+        final Map<String, double[]> ranges = new HashMap<>();
+    }
+
+    public MemberHealthSampler(LatencyMetrics metrics, HttpTransport transport,
+            List<String> members, File file, long periodMillis, List<String> metricNames,
+            boolean catalogCounts, EventLog log) {
+        this.metrics = metrics;
+        this.transport = transport;
+        this.members = ImmutableList.copyOf(members);
+        this.file = file;
+        this.periodMillis = periodMillis;
+        this.metricNames = ImmutableList.copyOf(metricNames);
+        this.metricNameSet = ImmutableSet.copyOf(metricNames);
+        this.catalogCounts = catalogCounts;
+        this.csv = file.getName().toLowerCase(Locale.ROOT).endsWith(".csv");
+        this.summaries = new Member[members.size()];
+        for (int m = 0; m < summaries.length; m++) {
+            summaries[m] = new Member();
+        }
+        this.log = log;
+    }
+
+    /**
+     * Opens the output file and starts sampling, right after {@link LatencyMetrics#start()}
+     */
+    public synchronized void start() throws IOException {
+        out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file),
+                Charsets.UTF_8));
+        if (csv) {
+            out.write("timestamp,elapsed,member,status_ms,catalog_ms,workspaces,layers,errors");
+            for (String name : metricNames) {
+                out.write("," + name.toLowerCase(Locale.ROOT));
+            }
+            out.write('\n');
+            out.flush();
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setDaemon(true).setNameFormat("member-health-sampler").build());
+        scheduler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                sample();
+            }
+        }, 0, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops sampling and closes the output file and the sampler's transport
+     */
+    @Override
+    public void close() {
+        final ScheduledExecutorService running;
+        synchronized (this) {
+            running = scheduler;
+            scheduler = null;
+        }
+        if (running != null) {
+            running.shutdownNow();
+            try {
+                running.awaitTermination(periodMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    log.log(Level.INFO, "ERROR closing member health file %s: %s\n", file, e);
+                }
+                out = null;
+            }
+            try {
+                transport.close();
+            } catch (IOException e) {
+                log.log(Level.INFO, "ERROR closing the member health transport: %s\n", e);
+            }
+        }
+    }
+
+    private void sample() {
+        for (int m = 0; m < members.size() && !Thread.currentThread().isInterrupted(); m++) {
+            sample(m);
+        }
+    }
+
+    private void sample(final int member) {
+        final double elapsed = metrics.elapsedNanos() / 1e9;
+        final String timestamp = Instant.now().toString();
+        final Map<String, Double> values = new HashMap<>();
+        int errors = 0;
+        int workspaces = -1, layers = -1;
+        double catalogMillis = -1;
+
+        long start = System.nanoTime();
+        try (TransportResponse response = get(member, STATUS_PATH)) {
+            if (response.isSuccess()) {
+                ResponseParsers.parseSystemStatus(response.getBody(), metricNameSet, values);
+            } else {
+                errors++;
+            }
+        } catch (IOException | XMLStreamException e) {
+            errors++;
+        }
+        final double statusMillis = (System.nanoTime() - start) / 1e6;
+
+        if (catalogCounts) {
+            start = System.nanoTime();
+            workspaces = count(member, "rest/workspaces.xml", "workspace");
+            layers = count(member, "rest/layers.xml", "layer");
+            catalogMillis = (System.nanoTime() - start) / 1e6;
+            errors += (workspaces == -1 ? 1 : 0) + (layers == -1 ? 1 : 0);
+        }
+
+        synchronized (this) {
+            if (out == null) {
+                return;
+            }
+            Member summary = summaries[member];
+            summary.samples++;
+            summary.failures += errors;
+            summary.statusMillisSum += statusMillis;
+            summary.statusMillisMax = Math.max(summary.statusMillisMax, statusMillis);
+            summary.workspaces = workspaces == -1 ? summary.workspaces : workspaces;
+            summary.layers = layers == -1 ? summary.layers : layers;
+            for (Map.Entry<String, Double> value : values.entrySet()) {
+                final double v = value.getValue().doubleValue();
+                double[] range = summary.ranges.get(value.getKey());
+                if (range == null) {
+                    summary.ranges.put(value.getKey(), new double[] { v, v, elapsed });
+                } else {
+                    range[0] = Math.min(range[0], v);
+                    if (v > range[1]) {
+                        range[1] = v;
+                        range[2] = elapsed;
+                    }
+                }
+            }
+            try {
+                write(timestamp, elapsed, members.get(member), statusMillis, catalogMillis,
+                        workspaces, layers, errors, values);
+                out.flush();
+            } catch (IOException e) {
+                log.log(Level.INFO, "ERROR writing member health to %s: %s\n", file, e);
+            }
+        }
+    }
+
+    private TransportResponse get(final int member, final String relativePath)
+            throws IOException {
+        try {
+            return transport.send(Operation.REST_GET, member, HttpTransport.GET, relativePath,
+                    null, null, 0).get();
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * @return the number of elements with the given name in the document, {@code -1} if it
+     *         couldn't be read
+     */
+    private int count(final int member, final String relativePath, final String element) {
+        try (TransportResponse response = get(member, relativePath)) {
+            return response.isSuccess() ? ResponseParsers.countElements(response.getBody(),
+                    element) : -1;
+        } catch (IOException | XMLStreamException e) {
+            return -1;
+        }
+    }
+
+    private void write(final String timestamp, final double elapsed, final String member,
+            final double statusMillis, final double catalogMillis, final int workspaces,
+            final int layers, final int errors, final Map<String, Double> values)
+            throws IOException {
+        StringBuilder row = new StringBuilder();
+        if (csv) {
+            row.append(timestamp).append(',').append(format("%.3f", elapsed)).append(',')
+                    .append(member).append(',').append(format("%.3f", statusMillis))
+                    .append(',').append(catalogMillis < 0 ? "" : format("%.3f", catalogMillis))
+                    .append(',').append(workspaces < 0 ? "" : String.valueOf(workspaces))
+                    .append(',').append(layers < 0 ? "" : String.valueOf(layers)).append(',')
+                    .append(errors);
+            for (String name : metricNames) {
+                Double value = values.get(name);
+                row.append(',').append(value == null ? "" : format("%.3f", value));
+            }
+        } else {
+            row.append("{\"timestamp\":\"").append(timestamp).append("\",\"elapsed\":")
+                    .append(format("%.3f", elapsed)).append(",\"member\":\"")
+                    .append(escape(member)).append("\",\"statusMs\":")
+                    .append(format("%.3f", statusMillis));
+            if (catalogMillis >= 0) {
+                row.append(",\"catalogMs\":").append(format("%.3f", catalogMillis));
+            }
+            if (workspaces >= 0) {
+                row.append(",\"workspaces\":").append(workspaces);
+            }
+            if (layers >= 0) {
+                row.append(",\"layers\":").append(layers);
+            }
+            row.append(",\"errors\":").append(errors);
+            for (String name : metricNames) {
+                Double value = values.get(name);
+                if (value != null) {
+                    row.append(",\"").append(escape(name)).append("\":")
+                            .append(format("%.3f", value));
+                }
+            }
+            row.append('}');
+        }
+        row.append('\n');
+        out.write(row.toString());
+    }
+
+    /**
+     * Prints out, per member, the status response times, the last catalog counts, and the range
+     * of each metric with when it peaked
+     */
+    public synchronized void report(final PrintStream out) {
+        out.printf("Member health, sampled every %ds into %s\n",
+                TimeUnit.MILLISECONDS.toSeconds(periodMillis), file);
+        out.printf("%-40s %8s %8s %10s %10s %10s %8s\n", "member", "samples", "errors",
+                "status ms", "max ms", "workspaces", "layers");
+        for (int m = 0; m < members.size(); m++) {
+            Member summary = summaries[m];
+            out.printf("%-40s %8d %8d %10.1f %10.1f %10s %8s\n", members.get(m),
+                    summary.samples, summary.failures, summary.samples == 0 ? 0d
+                            : summary.statusMillisSum / summary.samples,
+                    summary.statusMillisMax, summary.workspaces < 0 ? "-" : String
+                            .valueOf(summary.workspaces), summary.layers < 0 ? "-" : String
+                            .valueOf(summary.layers));
+        }
+        out.printf("%-40s %-28s %12s %12s %10s\n", "member", "metric", "min", "max",
+                "max at (s)");
+        for (int m = 0; m < members.size(); m++) {
+            for (String name : metricNames) {
+                double[] range = summaries[m].ranges.get(name);
+                if (range != null) {
+                    out.printf("%-40s %-28s %12.2f %12.2f %10.1f\n", members.get(m), name,
+                            range[0], range[1], range[2]);
+                }
+            }
+        }
+    }
+
+    private static String format(final String format, final double value) {
+        return String.format(Locale.ROOT, format, value);
+    }
+
+    private static String escape(final String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
@@ -0,0 +1,328 @@
+package org.geoserver.rest.test;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Picks the cluster member each request is sent to, the way a load balancer in front of the
+ * cluster would, and counts how many requests each member got.
+ * <p>
+ * None of the implementations take a lock: they work off atomic counters, the per member
+ * {@link HttpTransport#inFlight(int) in flight} counts, and the latencies reported through
+ * {@link #completed}.
+ */
+public abstract class MemberSelector {
+
+    public static final String ROUND_ROBIN = "round-robin";
+
+    public static final String RANDOM = "random";
+
+    public static final String LEAST_OUTSTANDING = "least-outstanding";
+
+    public static final String EWMA = "ewma";
+
+    public static final String STICKY = "sticky";
+
+    protected final int numMembers;
+
+    protected final ImmutableList<String> members;
+
+    private final LongAdder[] selected;
+
+    /**
+     * The breakers taking failing members out of rotation, {@code null} if none
+     */
+    private volatile CircuitBreakers breakers;
+
+    protected MemberSelector(List<String> members) {
+        this.members = ImmutableList.copyOf(members);
+        this.numMembers = members.size();
+        this.selected = new LongAdder[numMembers];
+        for (int i = 0; i < numMembers; i++) {
+            selected[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @param strategy one of {@link #ROUND_ROBIN}, {@link #RANDOM}, {@link #LEAST_OUTSTANDING},
+     *        {@link #EWMA}, or {@link #STICKY}
+     * @param ewmaDecay weight of each new latency sample in the {@link #EWMA} averages
+     */
+    public static MemberSelector create(String strategy, List<String> members,
+            HttpTransport transport, double ewmaDecay) {
+        if (ROUND_ROBIN.equals(strategy)) {
+            return new RoundRobin(members);
+        }
+        if (RANDOM.equals(strategy)) {
+            return new Random(members);
+        }
+        if (LEAST_OUTSTANDING.equals(strategy)) {
+            return new LeastOutstanding(members, transport);
+        }
+        if (EWMA.equals(strategy)) {
+            return new EwmaLatency(members, transport, ewmaDecay);
+        }
+        checkArgument(STICKY.equals(strategy), "members.strategy must be one of %s, %s, %s, %s, "
+                + "or %s: %s", ROUND_ROBIN, RANDOM, LEAST_OUTSTANDING, EWMA, STICKY, strategy);
+        return new Sticky(members);
+    }
+
+    /**
+     * Has {@link #select()} pass over the members whose breaker is open, as long as some member's
+     * isn't
+     */
+    public void setCircuitBreakers(final CircuitBreakers breakers) {
+        this.breakers = breakers;
+    }
+
+    /**
+     * @return the index of the member to send the next request to
+     */
+    public final int select() {
+        int member = doSelect();
+        final CircuitBreakers breakers = this.breakers;
+        if (breakers != null && !breakers.isAvailable(member)) {
+            member = breakers.nextAvailable(member);
+        }
+        selected[member].increment();
+        return member;
+    }
+
+    protected abstract int doSelect();
+
+    public abstract String name();
+
+    /**
+     * Called by the thread about to run a test task, before any of its requests
+     */
+    public void taskStarted() {
+    }
+
+    /**
+     * Called by the thread that ran a test task, once it finished
+     */
+    public void taskFinished() {
+    }
+
+    /**
+     * Reports the time from sending a request to the given member to getting its response
+     * headers, or failing
+     */
+    public void completed(int member, long nanos, boolean success) {
+    }
+
+    public void report(final PrintStream out) {
+        long total = 0;
+        for (LongAdder counter : selected) {
+            total += counter.sum();
+        }
+        out.printf("Member selection (%s): %,d requests\n", name(), total);
+        out.printf("%-40s %10s %7s\n", "member", "requests", "share");
+        for (int i = 0; i < numMembers; i++) {
+            long count = selected[i].sum();
+            out.printf("%-40s %,10d %6.2f%%\n", members.get(i), count, total == 0 ? 0d : 100d
+                    * count / total);
+        }
+    }
+
+    /**
+     * Cycles through the members with a counter shared by all threads
+     */
+    private static class RoundRobin extends MemberSelector {
+
+        private final AtomicLong next = new AtomicLong();
+
+        RoundRobin(List<String> members) {
+            super(members);
+        }
+
+        @Override
+        protected int doSelect() {
+            return (int) (next.getAndIncrement() % numMembers);
+        }
+
+        @Override
+        public String name() {
+            return ROUND_ROBIN;
+        }
+    }
+
+    private static class Random extends MemberSelector {
+
+        Random(List<String> members) {
+            super(members);
+        }
+
+        @Override
+        protected int doSelect() {
+            return ThreadLocalRandom.current().nextInt(numMembers);
+        }
+
+        @Override
+        public String name() {
+            return RANDOM;
+        }
+    }
+
+    /**
+     * Picks the member with the fewest requests in flight, scanning from a random member so
+     * ties are spread evenly
+     */
+    private static class LeastOutstanding extends MemberSelector {
+
+        private final HttpTransport transport;
+
+        LeastOutstanding(List<String> members, HttpTransport transport) {
+            super(members);
+            this.transport = transport;
+        }
+
+        @Override
+        protected int doSelect() {
+            final int start = ThreadLocalRandom.current().nextInt(numMembers);
+            int best = start;
+            int bestInFlight = transport.inFlight(start);
+            for (int i = 1; i < numMembers && bestInFlight > 0; i++) {
+                int member = (start + i) % numMembers;
+                int inFlight = transport.inFlight(member);
+                if (inFlight < bestInFlight) {
+                    best = member;
+                    bestInFlight = inFlight;
+                }
+            }
+            return best;
+        }
+
+        @Override
+        public String name() {
+            return LEAST_OUTSTANDING;
+        }
+    }
+
+    /**
+     * Keeps an exponentially weighted moving average of each member's latency and picks the
+     * cheaper of two random members, the cost being the average latency times the requests in
+     * flight plus one. Comparing two random members rather than all of them keeps threads from
+     * all piling onto the member that looked fastest a moment ago. Members not heard from yet
+     * cost nothing, so each gets tried, and failures count as at least twice the average, so a
+     * member failing fast doesn't attract more traffic.
+     */
+    private static class EwmaLatency extends MemberSelector {
+
+        private final HttpTransport transport;
+
+        private final double decay;
+
+        /**
+         * The {@link Double#doubleToRawLongBits bits} of each member's average latency in nanos
+         */
+        private final AtomicLongArray averages;
+
+        EwmaLatency(List<String> members, HttpTransport transport, double decay) {
+            super(members);
+            checkArgument(decay > 0 && decay <= 1, "members.ewmaDecay must be > 0 and <= 1: %s",
+                    decay);
+            this.transport = transport;
+            this.decay = decay;
+            this.averages = new AtomicLongArray(numMembers);
+        }
+
+        @Override
+        protected int doSelect() {
+            if (numMembers == 1) {
+                return 0;
+            }
+            final ThreadLocalRandom random = ThreadLocalRandom.current();
+            final int a = random.nextInt(numMembers);
+            int b = random.nextInt(numMembers - 1);
+            if (b >= a) {
+                b++;
+            }
+            return cost(a) <= cost(b) ? a : b;
+        }
+
+        private double cost(final int member) {
+            return average(member) * (transport.inFlight(member) + 1);
+        }
+
+        private double average(final int member) {
+            return Double.longBitsToDouble(averages.get(member));
+        }
+
+        @Override
+        public void completed(final int member, final long nanos, final boolean success) {
+            while (true) {
+                final long bits = averages.get(member);
+                final double average = Double.longBitsToDouble(bits);
+                final double sample = success ? nanos : Math.max(nanos, 2 * average);
+                final double updated = average == 0d ? sample : average + decay
+                        * (sample - average);
+                if (averages.compareAndSet(member, bits, Double.doubleToRawLongBits(updated))) {
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public String name() {
+            return EWMA;
+        }
+
+        @Override
+        public void report(final PrintStream out) {
+            super.report(out);
+            for (int i = 0; i < numMembers; i++) {
+                out.printf("%-40s average latency %.3f ms\n", members.get(i), average(i) / 1e6);
+            }
+        }
+    }
+
+    /**
+     * Sends all the requests of a test task to the same member, assigning members to tasks
+     * round-robin, the way a load balancer with session affinity would. Requests made outside
+     * a task are assigned round-robin as well.
+     */
+    private static class Sticky extends MemberSelector {
+
+        private final AtomicLong next = new AtomicLong();
+
+        private final ThreadLocal<Integer> taskMember = new ThreadLocal<>();
+
+        Sticky(List<String> members) {
+            super(members);
+        }
+
+        @Override
+        public void taskStarted() {
+            taskMember.set(Integer.valueOf(nextMember()));
+        }
+
+        @Override
+        public void taskFinished() {
+            taskMember.remove();
+        }
+
+        @Override
+        protected int doSelect() {
+            Integer member = taskMember.get();
+            return member == null ? nextMember() : member.intValue();
+        }
+
+        private int nextMember() {
+            return (int) (next.getAndIncrement() % numMembers);
+        }
+
+        @Override
+        public String name() {
+            return STICKY;
+        }
+    }
+}
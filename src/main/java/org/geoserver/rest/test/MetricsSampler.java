@@ -0,0 +1,205 @@
+package org.geoserver.rest.test;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.time.Instant;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+import org.geoserver.rest.test.EventLog.Level;
+import org.geoserver.rest.test.LatencyMetrics.Interval;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Writes a snapshot of the {@link LatencyMetrics} every few seconds while the test runs, so
+ * throughput dips and latency spikes can be lined up with events on the cluster side.
+ * <p>
+ * Each snapshot has a row per operation and member that had requests in the interval, with the
+ * completed requests per second, failed requests, and latency percentiles of that interval only,
+ * and an {@code all}/{@code all} row with the totals and the number of requests in flight, which
+ * is written even if nothing completed. Rows are written as CSV if the file name ends with
+ * {@code .csv}, or as JSON lines otherwise.
+ */
+public class MetricsSampler implements Closeable {
+
+    private static final double[] PERCENTILES = { 50, 90, 99 };
+
+    private final LatencyMetrics metrics;
+
+    private final HttpTransport transport;
+
+    private final ImmutableList<String> members;
+
+    private final File file;
+
+    private final long periodMillis;
+
+    private final boolean csv;
+
+    private final EventLog log;
+
+    private ScheduledExecutorService scheduler;
+
+    private Writer out;
+
+    private long startNanos;
+
+    public MetricsSampler(LatencyMetrics metrics, HttpTransport transport, List<String> members,
+            File file, long periodMillis, EventLog log) {
+        this.metrics = metrics;
+        this.transport = transport;
+        this.members = ImmutableList.copyOf(members);
+        this.file = file;
+        this.periodMillis = periodMillis;
+        this.csv = file.getName().toLowerCase(Locale.ROOT).endsWith(".csv");
+        this.log = log;
+    }
+
+    /**
+     * Opens the output file and starts sampling, right after {@link LatencyMetrics#start()}
+     */
+    public synchronized void start() throws IOException {
+        out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file),
+                Charsets.UTF_8));
+        if (csv) {
+            out.write("timestamp,elapsed,operation,member,count,ops_per_sec,errors,in_flight");
+            for (double p : PERCENTILES) {
+                out.write(",p" + (int) p + "_ms");
+            }
+            out.write(",max_ms\n");
+            out.flush();
+        }
+        startNanos = System.nanoTime();
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setDaemon(true).setNameFormat("metrics-sampler").build());
+        scheduler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                sample();
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops sampling and writes a last snapshot with what was recorded since the previous one
+     */
+    @Override
+    public void close() {
+        final ScheduledExecutorService running;
+        synchronized (this) {
+            running = scheduler;
+            scheduler = null;
+        }
+        if (running == null) {
+            return;
+        }
+        running.shutdownNow();
+        try {
+            running.awaitTermination(periodMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            sample();
+            try {
+                out.close();
+            } catch (IOException e) {
+                log.log(Level.INFO, "ERROR closing metrics samples file %s: %s\n", file, e);
+            }
+            out = null;
+        }
+    }
+
+    private synchronized void sample() {
+        if (out == null) {
+            return;
+        }
+        final Interval interval = metrics.takeInterval();
+        final String timestamp = Instant.now().toString();
+        final double elapsed = (interval.endNanos - startNanos) / 1e9;
+        final double seconds = (interval.endNanos - interval.startNanos) / 1e9;
+        final Histogram total = LatencyMetrics.newHistogram();
+        long totalFailures = 0;
+        try {
+            for (Operation op : Operation.values()) {
+                for (int m = 0; m < members.size(); m++) {
+                    Histogram latencies = interval.latencies[op.ordinal()][m];
+                    long failures = interval.failures[op.ordinal()][m];
+                    if (latencies == null && failures == 0) {
+                        continue;
+                    }
+                    if (latencies == null) {
+                        latencies = LatencyMetrics.newHistogram();
+                    }
+                    total.add(latencies);
+                    totalFailures += failures;
+                    write(timestamp, elapsed, op.label(), members.get(m), latencies, failures,
+                            -1, seconds);
+                }
+            }
+            write(timestamp, elapsed, "all", "all", total, totalFailures, transport.inFlight(),
+                    seconds);
+            out.flush();
+        } catch (IOException e) {
+            log.log(Level.INFO, "ERROR writing metrics samples to %s: %s\n", file, e);
+        }
+    }
+
+    private void write(final String timestamp, final double elapsed, final String op,
+            final String member, final Histogram latencies, final long failures,
+            final int inFlight, final double seconds) throws IOException {
+        final long count = latencies.getTotalCount();
+        final double rate = seconds > 0 ? count / seconds : 0d;
+        StringBuilder row = new StringBuilder();
+        if (csv) {
+            row.append(timestamp).append(',').append(format("%.3f", elapsed)).append(',')
+                    .append(op).append(',').append(member).append(',').append(count)
+                    .append(',').append(format("%.2f", rate)).append(',').append(failures)
+                    .append(',').append(inFlight < 0 ? "" : String.valueOf(inFlight));
+            for (double p : PERCENTILES) {
+                row.append(',').append(millis(latencies.getValueAtPercentile(p)));
+            }
+            row.append(',').append(millis(latencies.getMaxValue()));
+        } else {
+            row.append("{\"timestamp\":\"").append(timestamp).append("\",\"elapsed\":")
+                    .append(format("%.3f", elapsed)).append(",\"operation\":\"").append(op)
+                    .append("\",\"member\":\"").append(escape(member)).append("\",\"count\":")
+                    .append(count).append(",\"opsPerSec\":").append(format("%.2f", rate))
+                    .append(",\"errors\":").append(failures);
+            if (inFlight >= 0) {
+                row.append(",\"inFlight\":").append(inFlight);
+            }
+            for (double p : PERCENTILES) {
+                row.append(",\"p").append((int) p).append("Ms\":")
+                        .append(millis(latencies.getValueAtPercentile(p)));
+            }
+            row.append(",\"maxMs\":").append(millis(latencies.getMaxValue())).append('}');
+        }
+        row.append('\n');
+        out.write(row.toString());
+    }
+
+    private static String millis(final long micros) {
+        return format("%.3f", micros / 1000d);
+    }
+
+    private static String format(final String format, final double value) {
+        return String.format(Locale.ROOT, format, value);
+    }
+
+    private static String escape(final String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
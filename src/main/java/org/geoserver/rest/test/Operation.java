@@ -0,0 +1,50 @@
+package org.geoserver.rest.test;
+
+/**
+ * The kinds of requests issued against the cluster members, used to key the recorded timings.
+ */
+public enum Operation {
+
+    POST_WORKSPACE("POST workspace", "postWorkspace"), //
+    POST_DATASTORE("POST datastore", "postDataStore"), //
+    POST_FEATURETYPE("POST featuretype", "postFeatureType"), //
+    PUT_FEATURETYPE("PUT featuretype", "putFeatureType"), //
+    REST_GET("REST GET", "restGet"), //
+    DESCRIBE_FEATURE_TYPE("DescribeFeatureType", "describeFeatureType"), //
+    GET_FEATURE("GetFeature", "getFeature"), //
+    GET_CAPABILITIES("GetCapabilities", "getCapabilities"), //
+    DELETE("DELETE", "delete");
+
+    private final String label;
+
+    private final String key;
+
+    private Operation(String label, String key) {
+        this.label = label;
+        this.key = key;
+    }
+
+    public String label() {
+        return label;
+    }
+
+    /**
+     * @return the name of the operation in configuration keys, such as {@code timeout.getFeature}
+     */
+    public String key() {
+        return key;
+    }
+
+    /**
+     * @return whether responses to this kind of request can be large enough that transports
+     *         should stream them to the reader rather than buffer them whole
+     */
+    public boolean isStreamed() {
+        return this == GET_FEATURE || this == GET_CAPABILITIES;
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
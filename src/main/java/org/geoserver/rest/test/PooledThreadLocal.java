@@ -0,0 +1,74 @@
+package org.geoserver.rest.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A per-thread value, such as a scratch buffer or a set of HTTP clients, that is reused across the
+ * tasks of virtual threads too.
+ * <p>
+ * Platform threads keep their value for as long as they live, like with any thread local. A
+ * virtual thread only lives as long as its task though, so between {@link #attach()} and
+ * {@link #detach()} it borrows its values from a pool of idle ones instead, and gives them back
+ * when the task is done. The number of values is then bound by the number of concurrent tasks,
+ * rather than growing with the number of tasks run, like the histograms
+ * {@link LatencyMetrics#attach() attached} to tasks are.
+ */
+public abstract class PooledThreadLocal<T> extends ThreadLocal<T> {
+
+    /**
+     * The pooled thread locals the current virtual thread borrowed a value from, {@code null} if
+     * not attached
+     */
+    private static final ThreadLocal<List<PooledThreadLocal<?>>> BORROWED = new ThreadLocal<>();
+
+    private final Queue<T> idle = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @return a new value, when there's no idle one to reuse
+     */
+    protected abstract T create();
+
+    @Override
+    protected final T initialValue() {
+        final List<PooledThreadLocal<?>> borrowed = BORROWED.get();
+        if (borrowed == null) {
+            return create();
+        }
+        borrowed.add(this);
+        final T value = idle.poll();
+        return value == null ? create() : value;
+    }
+
+    /**
+     * Has the current thread, if virtual, borrow the values it uses until {@link #detach()} from
+     * the pools
+     */
+    public static void attach() {
+        if (Thread.currentThread().isVirtual() && BORROWED.get() == null) {
+            BORROWED.set(new ArrayList<PooledThreadLocal<?>>(4));
+        }
+    }
+
+    /**
+     * Gives the values the current thread borrowed since {@link #attach()} back to their pools
+     */
+    public static void detach() {
+        final List<PooledThreadLocal<?>> borrowed = BORROWED.get();
+        if (borrowed == null) {
+            return;
+        }
+        BORROWED.remove();
+        for (PooledThreadLocal<?> local : borrowed) {
+            local.giveBack();
+        }
+    }
+
+    private void giveBack() {
+        final T value = get();
+        remove();
+        idle.offer(value);
+    }
+}
@@ -0,0 +1,242 @@
+package org.geoserver.rest.test;
+
+import java.io.PrintStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.geoserver.rest.test.EventLog.Level;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.base.Throwables;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * Creates, alters, and drops the PostGIS tables the test runs publish, through a pool of JDBC
+ * connections.
+ * <p>
+ * Tables can be created one at a time by each test run, or all of them ahead of time with
+ * {@link #createTables(int, int)}, which creates and analyzes them in batches of {@code batchSize}
+ * tables per transaction using all the pooled connections, and later dropped all at once with
+ * {@link #dropTables(int, int)}. The time spent on each is tracked so it can be reported apart from
+ * the time spent on GeoServer requests.
+ * <p>
+ * Each table holds a configurable number of features, so GetFeature requests against them can
+ * return arbitrarily large responses.
+ */
+public class PostgisFixtures implements TableFixtures {
+
+    private final HikariDataSource dataSource;
+
+    private final String schema;
+
+    private final int poolSize;
+
+    private final int batchSize;
+
+    private final int featuresPerTable;
+
+    private final EventLog log;
+
+    private long setupNanos, teardownNanos;
+
+    private int setupTables, teardownTables;
+
+    private final AtomicLong taskNanos = new AtomicLong();
+
+    private final AtomicLong taskStatements = new AtomicLong();
+
+    public PostgisFixtures(String host, String port, String database, String user,
+            String password, String schema, int poolSize, int batchSize, int featuresPerTable,
+            EventLog log) {
+        this.schema = schema;
+        this.log = log;
+        this.poolSize = poolSize;
+        this.batchSize = batchSize;
+        this.featuresPerTable = featuresPerTable;
+
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("postgis-fixtures");
+        config.setDriverClassName("org.postgresql.Driver");
+        config.setJdbcUrl("jdbc:postgresql://" + host + ":" + port + "/" + database);
+        config.setUsername(user);
+        config.setPassword(password);
+        config.setMaximumPoolSize(poolSize);
+        config.setMinimumIdle(0);
+        dataSource = new HikariDataSource(config);
+    }
+
+    public static String tableName(final int index) {
+        return "clustertest_" + index;
+    }
+
+    /**
+     * Creates the table with {@code featuresPerTable} rows: a single polygon if only one,
+     * otherwise one degree square polygons laid out row by row from the lower left corner of the
+     * world.
+     */
+    private String createTableSql(final String table) {
+        final String sql1 = "drop table if exists \"" + table + "\"; CREATE TABLE \"" + table
+                + "\" (gid serial, \"state_name\" varchar(25))";
+        final String sql2 = "ALTER TABLE \"" + table + "\" ADD PRIMARY KEY (gid)";
+        final String sql3 = "SELECT AddGeometryColumn('','" + table
+                + "','geom','4326','MULTIPOLYGON',2)";
+
+        final String sql4;
+        if (featuresPerTable <= 1) {
+            sql4 = String
+                    .format("insert into \"%s\"(state_name, geom) values('oregon', ST_GeomFromText('MULTIPOLYGON(((0 0, 0 1, 1 1, 1 0, 0 0)))', 4326) )",
+                            table);
+        } else {
+            sql4 = String.format("insert into \"%s\"(state_name, geom) "
+                    + "select 'state_' || i, ST_Multi(ST_MakeEnvelope(i %% 360 - 180, "
+                    + "(i / 360) %% 180 - 90, i %% 360 - 179, (i / 360) %% 180 - 89, 4326)) "
+                    + "from generate_series(0, %d) as i", table, featuresPerTable - 1);
+        }
+        // avoid "ERROR: stats for "<table>.geom" do not exist" logs from postgres
+        final String sql5 = "ANALYZE \"" + table + "\"";
+        return String.format("%s;%s;%s;%s;%s;", sql1, sql2, sql3, sql4, sql5);
+    }
+
+    @Override
+    public void createTable(final String table) {
+        runInTask(createTableSql(table));
+    }
+
+    @Override
+    public void alterTableAddColumn(final String table) {
+        runInTask("ALTER TABLE \"" + table + "\" add column newcol text");
+    }
+
+    @Override
+    public void dropTable(final String table) {
+        runInTask("DROP TABLE \"" + table + "\"");
+    }
+
+    private void runInTask(final String sql) {
+        Stopwatch sw = Stopwatch.createStarted();
+        try {
+            runInTransaction(sql, true);
+        } catch (SQLException e) {
+            throw Throwables.propagate(e);
+        } finally {
+            taskNanos.addAndGet(sw.elapsed(TimeUnit.NANOSECONDS));
+            taskStatements.incrementAndGet();
+        }
+    }
+
+    /**
+     * Creates the tables for test runs {@code first} to {@code first + count - 1}, in batches of
+     * {@code batchSize} tables per transaction, in parallel over the pooled connections.
+     */
+    @Override
+    public void createTables(final int first, final int count) {
+        Stopwatch sw = Stopwatch.createStarted();
+        runBatches(first, count, new Batch() {
+            @Override
+            public String sql(int from, int to) {
+                StringBuilder sql = new StringBuilder();
+                for (int i = from; i < to; i++) {
+                    sql.append(createTableSql(tableName(i)));
+                }
+                return sql.toString();
+            }
+        });
+        setupNanos += sw.elapsed(TimeUnit.NANOSECONDS);
+        setupTables += count;
+        log.log(Level.INFO, "Created %,d tables in %s\n", count, sw.stop());
+    }
+
+    /**
+     * Drops the tables for test runs {@code first} to {@code first + count - 1}, in batches of
+     * {@code batchSize} tables per statement.
+     */
+    @Override
+    public void dropTables(final int first, final int count) {
+        Stopwatch sw = Stopwatch.createStarted();
+        runBatches(first, count, new Batch() {
+            @Override
+            public String sql(int from, int to) {
+                StringBuilder sql = new StringBuilder("DROP TABLE IF EXISTS ");
+                for (int i = from; i < to; i++) {
+                    sql.append(i == from ? "\"" : ", \"").append(tableName(i)).append('"');
+                }
+                return sql.toString();
+            }
+        });
+        teardownNanos += sw.elapsed(TimeUnit.NANOSECONDS);
+        teardownTables += count;
+        log.log(Level.INFO, "Dropped %,d tables in %s\n", count, sw.stop());
+    }
+
+    private static interface Batch {
+        String sql(int from, int to);
+    }
+
+    private void runBatches(final int first, final int count, final Batch batch) {
+        ExecutorService executor = Executors.newFixedThreadPool(poolSize);
+        try {
+            List<Future<Void>> results = new ArrayList<>();
+            for (int from = first; from < first + count; from += batchSize) {
+                final int start = from;
+                final int end = Math.min(first + count, from + batchSize);
+                results.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws SQLException {
+                        runInTransaction(batch.sql(start, end), false);
+                        log.log(Level.DEBUG, "Ran SQL batch for tables %s to %s\n",
+                                tableName(start), tableName(end - 1));
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> result : results) {
+                result.get();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw Throwables.propagate(e.getCause() == null ? e : e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void runInTransaction(final String sql, final boolean trace) throws SQLException {
+        try (Connection c = dataSource.getConnection()) {
+            c.setAutoCommit(false);
+            try (Statement st = c.createStatement()) {
+                String query = "set search_path to '" + schema + "';" + sql;
+                if (trace && log.isEnabled(Level.TRACE)) {
+                    log.log(Level.TRACE, "Running SQL: " + query);
+                }
+                st.execute(query);
+                c.commit();
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public void report(final PrintStream out) {
+        out.printf("PostGIS fixtures: setup of %,d tables in %.1fs and teardown of %,d tables "
+                + "in %.1fs outside the measured window, %,d statements issued by test runs "
+                + "took %.1fs\n", setupTables, setupNanos / 1e9, teardownTables,
+                teardownNanos / 1e9, taskStatements.get(), taskNanos.get() / 1e9);
+    }
+
+    @Override
+    public void close() {
+        dataSource.close();
+    }
+}
@@ -0,0 +1,125 @@
+package org.geoserver.rest.test;
+
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.geoserver.rest.test.BodyTemplate.Buffer;
+
+/**
+ * Builds the XML bodies of the REST requests creating and changing the catalog objects of the
+ * test runs.
+ * <p>
+ * The bodies are {@link BodyTemplate templates} compiled once and written to a buffer owned by the
+ * calling thread, so each body is only valid until the same thread builds the next one, or, on a
+ * virtual thread, until its task {@link PooledThreadLocal#detach() gives back} the buffer to the
+ * pool the next task takes it from; use {@link Buffer#toByteArray()} to keep it longer.
+ */
+public class RequestBodies {
+
+    private static final BodyTemplate WORKSPACE = BodyTemplate
+            .compile("<workspace><name>${name}</name></workspace>");
+
+    private static final BodyTemplate DATA_STORE = BodyTemplate.compile("<dataStore>\n" + //
+            "<name>${name}</name>\n" + //
+            " <connectionParameters>\n" + //
+            "  <host>${host}</host>\n" + //
+            "  <port>${port}</port>\n" + //
+            "  <schema>${schema}</schema>\n" + //
+            "  <database>${database}</database>\n" + //
+            "  <user>${user}</user>\n" + //
+            "  <passwd>${passwd}</passwd>\n" + //
+            "  <dbtype>postgis</dbtype>\n" + //
+            " </connectionParameters>\n" + //
+            "</dataStore>");
+
+    private static final BodyTemplate FEATURE_TYPE = BodyTemplate.compile("<featureType>\n"//
+            + "  <name>${name}</name>\n" //
+            + "  <nativeName>${nativeName}</nativeName>\n" + //
+            "  <title>${name} cluster stress test #${index}</title>\n" + //
+            "  <srs>EPSG:4326</srs>\n" + //
+            "  <nativeBoundingBox>"//
+            + "<minx>-180</minx><maxx>180</maxx><miny>-90</miny><maxy>90</maxy>"//
+            + "<crs>EPSG:4326</crs>"//
+            + "</nativeBoundingBox>\n" + //
+            "</featureType>\n");
+
+    private static final BodyTemplate MODIFIED_FEATURE_TYPE = BodyTemplate
+            .compile("<featureType>\n" + "  <name>${name}</name>\n"//
+                    + "  <nativeName>${nativeName}</nativeName>\n"//
+                    + "  <title>${name} + modified</title>\n"//
+                    + "  <srs>EPSG:4326</srs>\n"//
+                    + "  <enabled>true</enabled>\n"//
+                    + "  <attributes>\n");
+
+    private static final BodyTemplate ATTRIBUTE = BodyTemplate.compile("     <attribute>\n"//
+            + "      <name>${name}</name><binding>${binding}</binding>\n"
+            + "     </attribute>\n");
+
+    private static final BodyTemplate MODIFIED_FEATURE_TYPE_END = BodyTemplate
+            .compile("  </attributes>\n"//
+                    + "</featureType>\n");
+
+    private static final PooledThreadLocal<Buffer> BUFFERS = new PooledThreadLocal<Buffer>() {
+        @Override
+        protected Buffer create() {
+            return new Buffer(4096);
+        }
+    };
+
+    /**
+     * {@link #DATA_STORE} with the connection parameters filled in
+     */
+    private final BodyTemplate dataStore;
+
+    public RequestBodies(String storeHost, String storePort, String storeSchema,
+            String storeDatabase, String storeUser, String storePassword) {
+        this.dataStore = DATA_STORE.bind("host", storeHost).bind("port", storePort)
+                .bind("schema", storeSchema).bind("database", storeDatabase)
+                .bind("user", storeUser).bind("passwd", storePassword);
+    }
+
+    private static Buffer buffer() {
+        return BUFFERS.get().reset();
+    }
+
+    public static Buffer workspace(final String wsName) {
+        Buffer body = buffer();
+        WORKSPACE.write(body, wsName);
+        return body;
+    }
+
+    /**
+     * @return a PostGIS data store connecting to the configured database
+     */
+    public Buffer dataStore(final String dsName) {
+        Buffer body = buffer();
+        dataStore.write(body, dsName);
+        return body;
+    }
+
+    /**
+     * @return a new feature type publishing the table under the given name, with the attributes
+     *         of the table
+     */
+    public static Buffer featureType(final int index, final String ftName,
+            final String storeTable) {
+        Buffer body = buffer();
+        FEATURE_TYPE.write(body, ftName, storeTable, String.valueOf(index));
+        return body;
+    }
+
+    /**
+     * @return an update to the feature type setting its attributes to the given names and
+     *         bindings, in order
+     */
+    public static Buffer modifiedFeatureType(final String ftName, final String table,
+            final Map<String, String> attributes) {
+        Buffer body = buffer();
+        MODIFIED_FEATURE_TYPE.write(body, ftName, table);
+        for (Entry<String, String> entry : attributes.entrySet()) {
+            ATTRIBUTE.write(body, entry.getKey(), entry.getValue());
+        }
+        MODIFIED_FEATURE_TYPE_END.write(body);
+        return body;
+    }
+}
@@ -0,0 +1,173 @@
+package org.geoserver.rest.test;
+
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Pull parsers extracting what the verifications need straight from the response streams, with a
+ * single shared {@link XMLInputFactory}, and without building a DOM or buffering the response.
+ */
+public class ResponseParsers {
+
+    private static final XMLInputFactory FACTORY;
+    static {
+        FACTORY = XMLInputFactory.newInstance();
+        FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    }
+
+    private ResponseParsers() {
+        // utility class
+    }
+
+    /**
+     * Reads the attribute names and bindings of a REST API feature type document, in document
+     * order.
+     *
+     * @throws IllegalArgumentException if the document does not have exactly one
+     *         {@code attributes} element
+     */
+    public static void parseAttributes(final InputStream featureType,
+            final Map<String, String> attNamesAndBindings) throws XMLStreamException {
+
+        final XMLStreamReader reader = FACTORY.createXMLStreamReader(featureType);
+        try {
+            int attributesCount = 0;
+            boolean inAttributes = false, inAttribute = false;
+            String name = null, binding = null;
+            while (reader.hasNext()) {
+                final int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    final String localName = reader.getLocalName();
+                    if (inAttribute) {
+                        if (name == null && "name".equals(localName)) {
+                            name = reader.getElementText();
+                        } else if (binding == null && "binding".equals(localName)) {
+                            binding = reader.getElementText();
+                        }
+                    } else if (inAttributes && "attribute".equals(localName)) {
+                        inAttribute = true;
+                        name = null;
+                        binding = null;
+                    } else if ("attributes".equals(localName)) {
+                        attributesCount++;
+                        inAttributes = true;
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    final String localName = reader.getLocalName();
+                    if (inAttribute && "attribute".equals(localName)) {
+                        attNamesAndBindings.put(name, binding);
+                        inAttribute = false;
+                    } else if (inAttributes && "attributes".equals(localName)) {
+                        inAttributes = false;
+                    }
+                }
+            }
+            if (attributesCount != 1) {
+                throw new IllegalArgumentException("expected one attributes element, got "
+                        + attributesCount);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Counts the {@code element} declarations with a {@code maxOccurs} attribute in a WFS
+     * DescribeFeatureType schema, that is, the number of feature type attributes.
+     */
+    public static int countElementDeclarations(final InputStream schema)
+            throws XMLStreamException {
+
+        final XMLStreamReader reader = FACTORY.createXMLStreamReader(schema);
+        try {
+            int count = 0;
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT
+                        && "element".equals(reader.getLocalName())
+                        && reader.getAttributeValue(null, "maxOccurs") != null) {
+                    count++;
+                }
+            }
+            return count;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Counts the elements with the given local name, such as the {@code workspace} entries of a
+     * REST API workspace list.
+     */
+    public static int countElements(final InputStream document, final String localName)
+            throws XMLStreamException {
+
+        final XMLStreamReader reader = FACTORY.createXMLStreamReader(document);
+        try {
+            int count = 0;
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT
+                        && localName.equals(reader.getLocalName())) {
+                    count++;
+                }
+            }
+            return count;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Reads the numeric values of the named metrics of a REST API {@code about/system-status}
+     * document, that is, the {@code value} of each {@code metric} whose {@code name} is one of the
+     * given ones. Metrics reported once per device, such as the load of each CPU, keep the first
+     * value, and metrics whose {@code available} flag is {@code false} and non numeric values are
+     * left out.
+     */
+    public static void parseSystemStatus(final InputStream status, final Set<String> names,
+            final Map<String, Double> values) throws XMLStreamException {
+
+        final XMLStreamReader reader = FACTORY.createXMLStreamReader(status);
+        try {
+            boolean inMetric = false, available = true;
+            String name = null, value = null;
+            while (reader.hasNext()) {
+                final int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    final String localName = reader.getLocalName();
+                    if ("metric".equals(localName)) {
+                        inMetric = true;
+                        available = true;
+                        name = null;
+                        value = null;
+                    } else if (inMetric && "name".equals(localName)) {
+                        name = reader.getElementText().trim();
+                    } else if (inMetric && "value".equals(localName)) {
+                        value = reader.getElementText().trim();
+                    } else if (inMetric && "available".equals(localName)) {
+                        available = !"false".equalsIgnoreCase(reader.getElementText().trim());
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT
+                        && "metric".equals(reader.getLocalName())) {
+                    inMetric = false;
+                    if (available && name != null && value != null && names.contains(name)
+                            && !values.containsKey(name)) {
+                        try {
+                            values.put(name, Double.valueOf(value));
+                        } catch (NumberFormatException notNumeric) {
+                            // e.g. OPERATING_SYSTEM
+                        }
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package org.geoserver.rest.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.restlet.Client;
+import org.restlet.Context;
+import org.restlet.data.ChallengeScheme;
+import org.restlet.data.MediaType;
+import org.restlet.data.Protocol;
+import org.restlet.data.Status;
+import org.restlet.representation.InputRepresentation;
+import org.restlet.representation.Representation;
+import org.restlet.resource.ClientResource;
+import org.restlet.resource.ResourceException;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Blocking transport performing the requests in the calling thread, through one Restlet
+ * {@link ClientResource} per cluster member and thread.
+ * <p>
+ * The client resources hand their requests to one client connector per {@link Operation},
+ * configured with the {@link Timeouts} of that operation.
+ */
+public class RestletTransport extends AbstractHttpTransport {
+
+    /**
+     * The client connectors by operation ordinal, shared by all threads
+     */
+    private final Client[] connectors;
+
+    private final PooledThreadLocal<List<ClientResource>> CLIENTS_BY_THREAD = new PooledThreadLocal<List<ClientResource>>() {
+
+        @Override
+        protected List<ClientResource> create() {
+            List<ClientResource> clients = new ArrayList<ClientResource>();
+            for (String baseUrl : baseUrls) {
+                ClientResource client = new ClientResource(baseUrl);
+                client.getRequest().getResourceRef().setBaseRef(baseUrl);
+                client.setChallengeResponse(ChallengeScheme.HTTP_BASIC, user, password);
+                client.setRetryOnError(false);
+                clients.add(client);
+            }
+            return clients;
+        }
+    };
+
+    public RestletTransport(List<String> clusterMembers, String user, String password,
+            Timeouts timeouts) {
+        super(clusterMembers, user, password, timeouts);
+        this.connectors = new Client[Operation.values().length];
+        for (Operation op : Operation.values()) {
+            Client connector = new Client(new Context(), Protocol.HTTP);
+            connector.getContext().getParameters().add("socketConnectTimeoutMs",
+                    String.valueOf(timeouts.connectMillis()));
+            connector.getContext().getParameters().add("readTimeout",
+                    String.valueOf(timeouts.readMillis(op)));
+            try {
+                connector.start();
+            } catch (Exception e) {
+                throw Throwables.propagate(e);
+            }
+            connectors[op.ordinal()] = connector;
+        }
+    }
+
+    @Override
+    protected ListenableFuture<TransportResponse> doSend(final Operation op, final int member,
+            final String method, final String relativePath, final String contentType,
+            final byte[] body, final int bodyLength) {
+        try {
+            TransportResponse response;
+            if (op.isStreamed()) {
+                response = openConnection(op, member, relativePath);
+            } else {
+                response = execute(op, member, method, relativePath, contentType, body,
+                        bodyLength);
+            }
+            return Futures.immediateFuture(response);
+        } catch (IOException | RuntimeException e) {
+            return Futures.immediateFailedFuture(e);
+        }
+    }
+
+    private TransportResponse execute(final Operation op, final int member,
+            final String method, final String relativePath, final String contentType,
+            final byte[] body, final int bodyLength) throws IOException {
+
+        final ClientResource client = CLIENTS_BY_THREAD.get().get(member);
+        client.setNext(connectors[op.ordinal()]);
+        client.getRequest().setResourceRef(relativePath);
+
+        Representation entity = null;
+        if (body != null) {
+            entity = new InputRepresentation(new ByteArrayInputStream(body, 0, bodyLength),
+                    MediaType.valueOf(contentType), bodyLength);
+        }
+        Representation result;
+        try {
+            if (GET.equals(method)) {
+                result = client.get();
+            } else if (DELETE.equals(method)) {
+                result = client.delete();
+            } else if (PUT.equals(method)) {
+                result = client.put(entity);
+            } else if (POST.equals(method)) {
+                result = client.post(entity);
+            } else {
+                throw new IllegalArgumentException("Method: " + method);
+            }
+        } catch (ResourceException re) {
+            if (Status.CONNECTOR_ERROR_CONNECTION.equals(re.getStatus())) {
+                ConnectException refused = new ConnectException(re.getStatus().toString());
+                refused.initCause(re);
+                throw refused;
+            }
+            if (re.getStatus().isConnectorError()) {
+                throw new IOException(re.getStatus().toString(), re);
+            }
+            result = client.getResponseEntity();
+        }
+        Status status = client.getResponse().getStatus();
+        InputStream stream = result == null ? null : result.getStream();
+        return new TransportResponse(status.getCode(), status.getReasonPhrase(), stream);
+    }
+
+    /**
+     * Can't use ClientResource for WFS GetFeature and GetCapabilities requests cause it can't
+     * parse the weird Content-Type headers the WFS returns
+     */
+    private TransportResponse openConnection(final Operation op, final int member,
+            final String relativePath) throws IOException {
+        final URL url;
+        try {
+            url = URI.create(targetUrl(member, relativePath)).toURL();
+        } catch (IllegalArgumentException e) {
+            throw new MalformedURLException(e.getMessage());
+        }
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(timeouts.connectMillis());
+        connection.setReadTimeout(timeouts.readMillis(op));
+        if (authorization != null) {
+            connection.setRequestProperty("Authorization", authorization);
+        }
+        int code = connection.getResponseCode();
+        InputStream stream = code >= 400 ? connection.getErrorStream() : connection
+                .getInputStream();
+        return new TransportResponse(code, connection.getResponseMessage(), stream);
+    }
+
+    @Override
+    public boolean isAsynchronous() {
+        return false;
+    }
+
+    @Override
+    public void report(PrintStream out) {
+        // nothing to report, connections are managed by the Restlet client connector
+    }
+
+    /**
+     * Stops all the client connectors
+     *
+     * @throws IOException with the first error stopping a connector as its cause
+     */
+    @Override
+    public void close() throws IOException {
+        Exception error = null;
+        for (Client connector : connectors) {
+            try {
+                connector.stop();
+            } catch (Exception e) {
+                if (error == null) {
+                    error = e;
+                }
+            }
+        }
+        if (error != null) {
+            throw new IOException("Error stopping the client connectors", error);
+        }
+    }
+}
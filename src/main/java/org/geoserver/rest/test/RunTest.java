@@ -1,60 +1,56 @@
 package org.geoserver.rest.test;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
 
-import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.StringWriter;
-import java.net.URL;
-import java.net.URLConnection;
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.SQLException;
-import java.sql.Statement;
+import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Iterator;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Properties;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-
-import org.restlet.Response;
-import org.restlet.data.ChallengeScheme;
-import org.restlet.data.MediaType;
-import org.restlet.data.Method;
-import org.restlet.data.Reference;
-import org.restlet.data.Status;
-import org.restlet.engine.util.Base64;
-import org.restlet.representation.Representation;
-import org.restlet.representation.StringRepresentation;
-import org.restlet.resource.ClientResource;
-import org.restlet.resource.ResourceException;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.HdrHistogram.Histogram;
+import org.geoserver.rest.test.BodyTemplate.Buffer;
+import org.geoserver.rest.test.CatalogScaling.Probe;
+import org.geoserver.rest.test.ErrorCounters.FailureClass;
+import org.geoserver.rest.test.EventLog.Level;
+import org.geoserver.rest.test.FanOut.BodyReader;
+import org.geoserver.rest.test.FanOut.Reply;
+import org.geoserver.rest.test.WorkloadMix.Action;
+
+import com.google.common.base.Charsets;
 import com.google.common.base.Splitter;
 import com.google.common.base.Stopwatch;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Iterators;
 import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 public class RunTest {
 
+    private static final String SEED_CREATE = "create";
+
+    private static final String SEED_TEARDOWN = "teardown";
+
     private static final List<String> DEFAULT_BASE_URLS = ImmutableList.of(//
             "http://eva01:8081/geoserver/",//
             "http://eva01:8082/geoserver/",//
@@ -63,6 +59,18 @@ public class RunTest {
 
     private final int numRuns;
 
+    /**
+     * The index of the first test run, which names its table and catalog objects, so several
+     * test programs can run against the same cluster without their names colliding
+     */
+    private final int firstRun;
+
+    /**
+     * {@link System#nanoTime()} to hold the measured part of the test until, set by a
+     * {@link LoadAgent} so all agents start at once, zero to start right away
+     */
+    private volatile long startNanos;
+
     private final int numConcClients;
 
     private final ImmutableList<String> clusterMembers;
@@ -73,13 +81,154 @@ public class RunTest {
 
     private final boolean cleanup;
 
+    /**
+     * How long to wait for all cluster members to reflect a feature type change, zero to not
+     * probe for convergence
+     */
+    private final long convergenceTimeoutMillis;
+
+    private final long convergencePollMillis;
+
+    /**
+     * Whether to run each task on its own virtual thread, with {@link #numConcClients} limiting
+     * how many run concurrently, instead of on a fixed pool of {@link #numConcClients} threads
+     */
+    private final boolean virtualThreads;
+
+    /**
+     * Tasks per second to start at in open-loop mode, or zero to run the closed-loop mode, where
+     * each thread starts a new task as soon as the previous one finished
+     */
+    private final double openLoopRate;
+
+    /**
+     * The step-load schedule to run instead of {@link #numConcClients} fixed concurrent test
+     * runs, {@code null} if not ramping
+     */
+    private final LoadRamp ramp;
+
+    /**
+     * The weighted mix of actions virtual users run instead of the test task script,
+     * {@code null} if no scenario was given
+     */
+    private final WorkloadMix mix;
+
+    /**
+     * The catalog sizes to grow the catalog to and probe at instead of running the test task
+     * script, {@code null} if not benchmarking catalog scaling
+     */
+    private final CatalogScaling scaling;
+
+    /**
+     * {@link #SEED_CREATE} or {@link #SEED_TEARDOWN} to bulk create or delete a catalog of
+     * {@link #seedLayers} layers instead of running the test task script, {@code null} if not
+     * seeding
+     */
+    private final String seedCommand;
+
+    private final int seedLayers;
+
+    /**
+     * Where seeding records what it created, to resume from after a failure
+     */
+    private final File seedJournal;
+
+    /**
+     * Creates and deletes the catalog for {@link #seedCommand} and {@link #scaling},
+     * {@code null} if neither is used
+     */
+    private final CatalogSeeder seeder;
+
+    /**
+     * Watches a soak run, which cycles through the {@link #numRuns} test runs until its duration
+     * elapsed instead of running each once, for latencies drifting up, {@code null} if not soaking
+     */
+    private final SoakMonitor soak;
+
     private final String storeHost, storePort, storeSchema, storeDatabase, storeUser,
             storePassword;
 
-    private Map<String, Exception> errors = new ConcurrentHashMap<String, Exception>();
+    private final RequestBodies bodies;
+
+    private final ErrorCounters errors;
+
+    /**
+     * Where the progress of the test runs is logged, without blocking the threads running them
+     */
+    private final EventLog log;
+
+    /**
+     * Percentage of errors over the {@link #requests() requests sent} above which the test fails
+     */
+    private final double errorThresholdPercent;
+
+    private final LatencyMetrics metrics;
+
+    /**
+     * Writes interval snapshots of the {@link #metrics} while the test runs, {@code null} if
+     * disabled
+     */
+    private final MetricsSampler sampler;
+
+    /**
+     * Polls the cluster members for their heap, threads, and catalog size while the test runs,
+     * {@code null} if disabled
+     */
+    private final MemberHealthSampler health;
+
+    private final HttpTransport transport;
+
+    /**
+     * Takes members that keep failing out of rotation, {@code null} if disabled
+     */
+    private final CircuitBreakers breakers;
+
+    /**
+     * Logs every request sent while the test runs, {@code null} if disabled
+     */
+    private final SampleLog samples;
+
+    /**
+     * Picks the member each request that doesn't go to all of them is sent to
+     */
+    private final MemberSelector selector;
+
+    /**
+     * The indexes of all the {@link #clusterMembers}
+     */
+    private final ImmutableList<Integer> allMembers;
+
+    private final ExecutorService fanOutExecutor;
+
+    private final TableFixtures fixtures;
+
+    /**
+     * The in-process cluster the test runs against instead of {@link #clusterMembers} given in
+     * the configuration, {@code null} if testing a real cluster
+     */
+    private final SimulatedCluster simulator;
+
+    /**
+     * Whether to create all the tables before the test starts and drop them all once finished,
+     * rather than have each test run create and drop its own
+     */
+    private final boolean preloadTables;
+
+    private final FanOut fanOut;
+
+    /**
+     * The number of features in each test table, which GetFeature requests ask for in full
+     */
+    private final int featuresPerTable;
+
+    /**
+     * The fixed size buffers GetFeature responses are read through, one per reading thread
+     */
+    private final PooledThreadLocal<byte[]> getFeatureBuffers;
 
     public RunTest() {
         numRuns = 10;
+        firstRun = 0;
         numConcClients = 2;
         clusterMembers = ImmutableList.copyOf(DEFAULT_BASE_URLS);
         gsUser = "admin";
@@ -90,14 +239,49 @@ public class RunTest {
         storeUser = "postgres";
         storePassword = "geo123";
         storeSchema = "public";
+        bodies = new RequestBodies(storeHost, storePort, storeSchema, storeDatabase, storeUser,
+                storePassword);
+        featuresPerTable = 1;
+        getFeatureBuffers = newBuffers(64 * 1024);
+        log = EventLog.console(Level.TRACE);
+        fixtures = new PostgisFixtures(storeHost, storePort, storeDatabase, storeUser,
+                storePassword, storeSchema, 4, 50, featuresPerTable, log);
+        simulator = null;
+        preloadTables = true;
         cleanup = true;
+        convergenceTimeoutMillis = 10000;
+        convergencePollMillis = 50;
+        virtualThreads = false;
+        openLoopRate = 0;
+        ramp = null;
+        mix = null;
+        scaling = null;
+        seedCommand = null;
+        seedLayers = 0;
+        seedJournal = null;
+        seeder = null;
+        metrics = new LatencyMetrics(clusterMembers);
+        soak = null;
+        errors = new ErrorCounters(clusterMembers);
+        errorThresholdPercent = 0;
+        transport = new RestletTransport(clusterMembers, gsUser, gsPassword, new Timeouts(10000,
+                60000, new HashMap<Operation, Integer>()));
+        breakers = null;
+        samples = null;
+        selector = MemberSelector.create(MemberSelector.ROUND_ROBIN, clusterMembers, transport,
+                0.2);
+        sampler = null;
+        health = null;
+        allMembers = allMembers(clusterMembers);
+        fanOutExecutor = newFanOutExecutor();
+        fanOut = new FanOut(transport, fanOutExecutor);
     }
 
     public RunTest(Properties config) {
         numRuns = Integer.parseInt(config.getProperty("runs"));
+        firstRun = Integer.parseInt(config.getProperty("runs.first", "0"));
+        checkArgument(firstRun >= 0, "runs.first must be >= 0: %s", firstRun);
         numConcClients = Integer.parseInt(config.getProperty("threads"));
-        clusterMembers = ImmutableList.copyOf(Splitter.on(',').split(
-                config.getProperty("clusterMembers")));
         gsUser = config.getProperty("user");
         gsPassword = config.getProperty("password");
 
@@ -107,12 +291,390 @@ public class RunTest {
         storeUser = config.getProperty("store.user");
         storePassword = config.getProperty("store.password");
         storeSchema = config.getProperty("store.schema");
+        bodies = new RequestBodies(storeHost, storePort, storeSchema, storeDatabase, storeUser,
+                storePassword);
+        featuresPerTable = Integer.parseInt(config.getProperty("getFeature.features", "1"));
+        checkArgument(featuresPerTable > 0, "getFeature.features must be > 0: %s",
+                featuresPerTable);
+        getFeatureBuffers = newBuffers(Integer.parseInt(config.getProperty(
+                "getFeature.bufferSize", String.valueOf(64 * 1024))));
+        log = createLog(config);
+        simulator = createSimulator(config);
+        if (simulator == null) {
+            clusterMembers = ImmutableList.copyOf(Splitter.on(',').split(
+                    config.getProperty("clusterMembers")));
+            fixtures = new PostgisFixtures(storeHost, storePort, storeDatabase, storeUser,
+                    storePassword, storeSchema, Integer.parseInt(config.getProperty(
+                            "fixtures.poolSize", "4")), Integer.parseInt(config.getProperty(
+                            "fixtures.batchSize", "50")), featuresPerTable, log);
+        } else {
+            clusterMembers = simulator.getBaseUrls();
+            fixtures = simulator.getTables();
+        }
+        preloadTables = Boolean.valueOf(config.getProperty("fixtures.preload", "true"));
         cleanup = Boolean.valueOf(config.getProperty("cleanup"));
+        convergenceTimeoutMillis = Long.parseLong(config.getProperty("convergence.timeout",
+                "10000"));
+        convergencePollMillis = Long.parseLong(config.getProperty("convergence.pollInterval",
+                "50"));
+        String executor = config.getProperty("executor", "platform");
+        checkArgument("platform".equals(executor) || "virtual".equals(executor),
+                "executor must be one of platform or virtual: %s", executor);
+        virtualThreads = "virtual".equals(executor);
+        String mode = config.getProperty("mode", "closed");
+        if ("open".equals(mode)) {
+            openLoopRate = Double.parseDouble(config.getProperty("rate"));
+            checkArgument(openLoopRate > 0, "rate must be > 0 in open mode: %s", openLoopRate);
+        } else {
+            checkArgument("closed".equals(mode), "mode must be one of open or closed: %s", mode);
+            openLoopRate = 0;
+        }
+        String steps = config.getProperty("load.steps");
+        if (steps == null || steps.trim().isEmpty()) {
+            ramp = null;
+        } else {
+            checkArgument(openLoopRate == 0, "load.steps can only be used in closed mode");
+            List<Integer> concurrencies = new ArrayList<>();
+            for (String step : Splitter.on(',').omitEmptyStrings().trimResults().split(steps)) {
+                int concurrency = Integer.parseInt(step);
+                checkArgument(concurrency > 0, "load.steps must be > 0: %s", steps);
+                concurrencies.add(Integer.valueOf(concurrency));
+            }
+            long stepSeconds = Long.parseLong(config.getProperty("load.stepDuration", "60"));
+            checkArgument(stepSeconds > 0, "load.stepDuration must be > 0: %s", stepSeconds);
+            ramp = new LoadRamp(concurrencies, TimeUnit.SECONDS.toNanos(stepSeconds));
+        }
+        String scenario = config.getProperty("scenario", "").trim();
+        if (scenario.isEmpty()) {
+            mix = null;
+        } else {
+            checkArgument(openLoopRate == 0 && ramp == null,
+                    "scenario can only be used in closed mode without load.steps");
+            try {
+                mix = WorkloadMix.load(new File(scenario));
+            } catch (IOException e) {
+                throw Throwables.propagate(e);
+            }
+        }
+        String catalogSizes = config.getProperty("catalog.sizes", "").trim();
+        if (catalogSizes.isEmpty()) {
+            scaling = null;
+        } else {
+            checkArgument(openLoopRate == 0 && ramp == null && mix == null,
+                    "catalog.sizes can only be used in closed mode without load.steps or scenario");
+            List<Integer> sizes = new ArrayList<>();
+            for (String size : Splitter.on(',').omitEmptyStrings().trimResults().split(
+                    catalogSizes)) {
+                sizes.add(Integer.valueOf(size));
+            }
+            scaling = new CatalogScaling(sizes, clusterMembers, Integer.parseInt(config
+                    .getProperty("catalog.layersPerStore", "100")), Integer.parseInt(config
+                    .getProperty("catalog.storesPerWorkspace", "10")), Integer.parseInt(config
+                    .getProperty("catalog.probes", "20")));
+        }
+        String seed = config.getProperty("seed", "").trim();
+        if (seed.isEmpty()) {
+            seedCommand = null;
+            seedLayers = 0;
+            seedJournal = null;
+        } else {
+            checkArgument(SEED_CREATE.equals(seed) || SEED_TEARDOWN.equals(seed),
+                    "seed must be one of %s or %s: %s", SEED_CREATE, SEED_TEARDOWN, seed);
+            checkArgument(openLoopRate == 0 && ramp == null && mix == null && scaling == null,
+                    "seed can only be used in closed mode without load.steps, scenario, or "
+                            + "catalog.sizes");
+            seedCommand = seed;
+            seedLayers = Integer.parseInt(config.getProperty("seed.layers"));
+            checkArgument(seedLayers > 0, "seed.layers must be > 0: %s", seedLayers);
+            seedJournal = new File(config.getProperty("seed.journal", "seed.journal").trim());
+        }
+        metrics = new LatencyMetrics(clusterMembers);
+        String duration = config.getProperty("duration", "").trim();
+        if (duration.isEmpty()) {
+            soak = null;
+        } else {
+            checkArgument(openLoopRate == 0 && ramp == null && mix == null && scaling == null
+                    && seedCommand == null, "duration can only be used in closed mode without "
+                    + "load.steps, scenario, catalog.sizes, or seed");
+            checkArgument(cleanup, "duration requires cleanup=true, test runs are recycled");
+            checkArgument(numRuns >= numConcClients,
+                    "duration requires runs to be at least threads: %s", numRuns);
+            soak = new SoakMonitor(metrics, SoakMonitor.parseDuration(duration),
+                    SoakMonitor.parseDuration(config.getProperty("soak.window", "5m")),
+                    Integer.parseInt(config.getProperty("soak.trendWindows", "12")),
+                    Double.parseDouble(config.getProperty("soak.driftThreshold", "10")), log);
+        }
+        errors = new ErrorCounters(clusterMembers);
+        errorThresholdPercent = Double.parseDouble(config.getProperty("errors.threshold", "0"));
+        checkArgument(errorThresholdPercent >= 0, "errors.threshold must be >= 0: %s",
+                errorThresholdPercent);
+        final Timeouts timeouts = createTimeouts(config);
+        int breakerFailures = Integer.parseInt(config.getProperty("breaker.failures", "0"));
+        checkArgument(breakerFailures >= 0, "breaker.failures must be >= 0: %s",
+                breakerFailures);
+        HttpTransport http;
+        if (breakerFailures == 0) {
+            breakers = null;
+            http = createTransport(config, timeouts);
+        } else {
+            checkArgument(timeouts.isBounded(), "breaker.failures requires non-zero timeouts, "
+                    + "or a hung probe keeps its member's breaker half open");
+            breakers = new CircuitBreakers(clusterMembers, breakerFailures, Long.parseLong(config
+                    .getProperty("breaker.backoff", "1000")), Long.parseLong(config.getProperty(
+                    "breaker.maxBackoff", "30000")));
+            http = breakers.wrap(createTransport(config, timeouts));
+        }
+        String samplesFile = config.getProperty("samples.file", "").trim();
+        if (samplesFile.isEmpty()) {
+            samples = null;
+        } else {
+            samples = new SampleLog(new File(samplesFile), clusterMembers, Integer.parseInt(config
+                    .getProperty("samples.chunkSize", "64")), log);
+            http = samples.wrap(http);
+        }
+        transport = http;
+        selector = MemberSelector.create(config.getProperty("members.strategy",
+                MemberSelector.ROUND_ROBIN).trim(), clusterMembers, transport, Double
+                .parseDouble(config.getProperty("members.ewmaDecay", "0.2")));
+        selector.setCircuitBreakers(breakers);
+        int maxInFlight = Integer.parseInt(config.getProperty("seed.maxInFlight", "8"));
+        if (scaling != null) {
+            seeder = new CatalogSeeder(transport, seededCatalog(), errors, log,
+                    clusterMembers.size(), scaling.getLayersPerStore(),
+                    scaling.getStoresPerWorkspace(), maxInFlight);
+        } else if (seedCommand != null) {
+            seeder = new CatalogSeeder(transport, seededCatalog(), errors, log,
+                    clusterMembers.size(), Integer.parseInt(config.getProperty(
+                            "seed.layersPerStore", "100")), Integer.parseInt(config
+                            .getProperty("seed.storesPerWorkspace", "10")), maxInFlight);
+        } else {
+            seeder = null;
+        }
+        String samplerFile = config.getProperty("sampler.file");
+        if (samplerFile == null || samplerFile.trim().isEmpty()) {
+            sampler = null;
+        } else {
+            long interval = Long.parseLong(config.getProperty("sampler.interval", "10"));
+            checkArgument(interval > 0, "sampler.interval must be > 0: %s", interval);
+            sampler = new MetricsSampler(metrics, transport, clusterMembers, new File(
+                    samplerFile.trim()), TimeUnit.SECONDS.toMillis(interval), log);
+        }
+        String healthFile = config.getProperty("health.file", "").trim();
+        if (healthFile.isEmpty()) {
+            health = null;
+        } else {
+            long interval = Long.parseLong(config.getProperty("health.interval", "10"));
+            checkArgument(interval > 0, "health.interval must be > 0: %s", interval);
+            List<String> names = Splitter.on(',').omitEmptyStrings().trimResults().splitToList(
+                    config.getProperty("health.metrics", "GEOSERVER_JVM_MEMORY_USAGE,"
+                            + "GEOSERVER_THREADS,GEOSERVER_CPU_USAGE,SYSTEM_AVERAGE_LOAD_1"));
+            health = new MemberHealthSampler(metrics, new RestletTransport(clusterMembers,
+                    gsUser, gsPassword, timeouts), clusterMembers, new File(healthFile),
+                    TimeUnit.SECONDS.toMillis(interval), names, Boolean.valueOf(config
+                            .getProperty("health.catalog", "false")), log);
+        }
+        allMembers = allMembers(clusterMembers);
+        fanOutExecutor = newFanOutExecutor();
+        fanOut = new FanOut(transport, fanOutExecutor);
+    }
+
+    private static ImmutableList<Integer> allMembers(List<String> clusterMembers) {
+        ImmutableList.Builder<Integer> members = ImmutableList.builder();
+        for (int i = 0; i < clusterMembers.size(); i++) {
+            members.add(Integer.valueOf(i));
+        }
+        return members.build();
+    }
+
+    private static PooledThreadLocal<byte[]> newBuffers(final int size) {
+        checkArgument(size > 0, "getFeature.bufferSize must be > 0: %s", size);
+        return new PooledThreadLocal<byte[]>() {
+            @Override
+            protected byte[] create() {
+                return new byte[size];
+            }
+        };
+    }
+
+    /**
+     * @return the executor for requests sent concurrently to all members when the transport is
+     *         not asynchronous, and for reading the responses when it is
+     */
+    private ExecutorService newFanOutExecutor() {
+        if (virtualThreads) {
+            return Executors.newVirtualThreadPerTaskExecutor();
+        }
+        return Executors.newCachedThreadPool(new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("fan-out-%d").build());
+    }
+
+    private static EventLog createLog(Properties config) {
+        String level = config.getProperty("log.level", "trace").trim();
+        Level logLevel = null;
+        for (Level l : Level.values()) {
+            if (l.name().equalsIgnoreCase(level)) {
+                logLevel = l;
+            }
+        }
+        checkArgument(logLevel != null, "log.level must be one of off, info, debug, or trace: %s",
+                level);
+        String file = config.getProperty("log.file", "").trim();
+        String format = config.getProperty("log.format", "text").trim();
+        checkArgument("text".equals(format) || "binary".equals(format),
+                "log.format must be one of text or binary: %s", format);
+        if (file.isEmpty()) {
+            checkArgument("text".equals(format), "log.format binary requires log.file");
+            return EventLog.console(logLevel);
+        }
+        int ringSize = Integer.parseInt(config.getProperty("log.ringSize", "65536"));
+        checkArgument(ringSize > 0, "log.ringSize must be > 0: %s", ringSize);
+        try {
+            return EventLog.file(logLevel, ringSize, new File(file), "binary".equals(format));
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    /**
+     * @return the started simulated cluster if {@code simulator.members} is set, {@code null}
+     *         otherwise
+     */
+    private SimulatedCluster createSimulator(Properties config) {
+        int members = Integer.parseInt(config.getProperty("simulator.members", "0").trim());
+        if (members == 0) {
+            return null;
+        }
+        String latency = config.getProperty("simulator.latency", "0");
+        SimulatedCluster simulator = new SimulatedCluster(members, millisToNanos(latency),
+                millisToNanos(config.getProperty("simulator.writeLatency", latency)),
+                millisToNanos(config.getProperty("simulator.propagationDelay", "0")),
+                Integer.parseInt(config.getProperty("simulator.threads", "64")),
+                featuresPerTable, log);
+        try {
+            simulator.start();
+        } catch (Exception e) {
+            simulator.close();
+            throw Throwables.propagate(e);
+        }
+        return simulator;
+    }
+
+    private static long millisToNanos(String millis) {
+        return (long) (Double.parseDouble(millis.trim()) * 1e6);
+    }
+
+    /**
+     * @return the {@code timeout.connect} and {@code timeout.default} timeouts, overridden per
+     *         operation by {@code timeout.<operation>}
+     */
+    private static Timeouts createTimeouts(Properties config) {
+        Map<Operation, Integer> readMillis = new HashMap<>();
+        for (Operation op : Operation.values()) {
+            String millis = config.getProperty("timeout." + op.key(), "").trim();
+            if (!millis.isEmpty()) {
+                readMillis.put(op, Integer.valueOf(millis));
+            }
+        }
+        return new Timeouts(Integer.parseInt(config.getProperty("timeout.connect", "10000")),
+                Integer.parseInt(config.getProperty("timeout.default", "60000")), readMillis);
+    }
+
+    private HttpTransport createTransport(Properties config, Timeouts timeouts) {
+        String type = config.getProperty("transport", "restlet");
+        if ("async".equals(type)) {
+            int maxConnections = Integer.parseInt(config.getProperty("transport.maxConnections",
+                    "100"));
+            int ioThreads = Integer.parseInt(config.getProperty("transport.ioThreads",
+                    String.valueOf(Runtime.getRuntime().availableProcessors())));
+            try {
+                return new AsyncHttpTransport(clusterMembers, gsUser, gsPassword, maxConnections,
+                        ioThreads, timeouts);
+            } catch (IOException e) {
+                throw Throwables.propagate(e);
+            }
+        }
+        checkArgument("restlet".equals(type), "transport must be one of restlet or async: %s",
+                type);
+        return new RestletTransport(clusterMembers, gsUser, gsPassword, timeouts);
+    }
+
+    public LatencyMetrics getMetrics() {
+        return metrics;
+    }
+
+    public ErrorCounters getErrors() {
+        return errors;
+    }
+
+    /**
+     * Holds the measured part of the test, once set up, until the given {@link System#nanoTime()}
+     */
+    void startAt(final long nanoTime) {
+        this.startNanos = nanoTime;
+    }
+
+    /**
+     * Prints out the latency report followed by the transport's connection statistics
+     */
+    public void report(PrintStream out) {
+        metrics.report(out);
+        errors.report(out, requests());
+        out.printf("Error threshold %.2f%%: %s\n", errorThresholdPercent, passed() ? "PASSED"
+                : "FAILED");
+        if (ramp != null) {
+            ramp.report(out);
+        }
+        if (mix != null) {
+            mix.report(out, metrics.elapsedNanos() / 1e9);
+        }
+        if (scaling != null) {
+            scaling.report(out);
+        }
+        if (seeder != null) {
+            seeder.report(out);
+        }
+        if (soak != null) {
+            soak.report(out);
+        }
+        if (health != null) {
+            health.report(out);
+        }
+        if (samples != null) {
+            samples.report(out);
+        }
+        selector.report(out);
+        if (breakers != null) {
+            breakers.report(out);
+        }
+        transport.report(out);
+        fixtures.report(out);
+        if (simulator != null) {
+            simulator.report(out);
+        }
+        log.report(out);
+    }
+
+    /**
+     * @return the number of requests sent, successful or not
+     */
+    private long requests() {
+        return metrics.merge(null, -1).getTotalCount() + metrics.failures();
+    }
+
+    /**
+     * @return whether the errors stayed within the configured threshold and, in a soak run, no
+     *         latency drifted up
+     */
+    public boolean passed() {
+        return errors.errorPercent(requests()) <= errorThresholdPercent
+                && (soak == null || !soak.drifted());
     }
 
     public static void main(String args[]) {
         try {
-            new RunTest().run();
+            RunTest test = new RunTest();
+            test.run();
+            test.report(System.out);
         } catch (Exception e) {
             e.printStackTrace();
         } finally {
@@ -121,9 +683,38 @@ public class RunTest {
     }
 
     public void run() throws Exception {
-        checkClusterMembers();
+        try {
+            runTasks();
+        } finally {
+            if (sampler != null) {
+                sampler.close();
+            }
+            if (health != null) {
+                health.close();
+            }
+            if (samples != null) {
+                samples.close();
+            }
+            fanOutExecutor.shutdownNow();
+            try {
+                transport.close();
+            } catch (IOException e) {
+                info("ERROR closing the transport: %s\n", e);
+            }
+            fixtures.close();
+            if (simulator != null) {
+                simulator.close();
+            }
+            log.close();
+        }
+    }
 
-        final ExecutorService executor = Executors.newFixedThreadPool(numConcClients);
+    private void runTasks() throws Exception {
+        checkClusterMembers();
+        if (seedCommand != null) {
+            runSeeding();
+            return;
+        }
 
         final LinkedHashMap<String, String> orignalAtts = new LinkedHashMap<>();
         orignalAtts.put("state_name", "java.lang.String");
@@ -141,17 +732,567 @@ public class RunTest {
         shuffledAtts.put("geom", "com.vividsolutions.jts.geom.MultiPolygon");
         shuffledAtts.put("state_name", "java.lang.String");
 
-        for (int i = 0; i < numRuns; i++) {
-            TestTask task = new TestTask(i, orignalAtts, alteredAtts, modifiedAtts, shuffledAtts);
-            executor.submit(task);
+        if (mix != null) {
+            runMix(orignalAtts);
+            return;
+        }
+        if (scaling != null) {
+            runCatalogScaling();
+            return;
+        }
+
+        if (preloadTables) {
+            info("Creating %,d tables ahead of time\n", numRuns);
+            fixtures.createTables(firstRun, numRuns);
+        }
+
+        awaitStart();
+        metrics.start();
+        startMonitoring();
+
+        if (ramp != null) {
+            runRamp(orignalAtts, alteredAtts, modifiedAtts, shuffledAtts);
+            stopMetrics();
+            dropPreloadedTables();
+            return;
+        }
+        if (soak != null) {
+            runSoak(orignalAtts, alteredAtts, modifiedAtts, shuffledAtts);
+            stopMetrics();
+            dropPreloadedTables();
+            return;
+        }
+
+        final ExecutorService executor;
+        final Semaphore permits;
+        if (virtualThreads) {
+            executor = Executors.newVirtualThreadPerTaskExecutor();
+            permits = new Semaphore(numConcClients);
+        } else {
+            executor = Executors.newFixedThreadPool(numConcClients);
+            permits = null;
+        }
+        if (openLoopRate > 0) {
+            final long period = (long) (TimeUnit.SECONDS.toNanos(1) / openLoopRate);
+            metrics.setSchedulePeriod(period);
+            final long start = System.nanoTime();
+            for (int i = 0; i < numRuns; i++) {
+                final long intendedStart = start + i * period;
+                long wait;
+                while ((wait = intendedStart - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                TestTask task = new TestTask(firstRun + i, orignalAtts, alteredAtts, modifiedAtts,
+                        shuffledAtts);
+                task.intendedStart = intendedStart;
+                submit(executor, permits, task);
+            }
+        } else {
+            for (int i = 0; i < numRuns; i++) {
+                TestTask task = new TestTask(firstRun + i, orignalAtts, alteredAtts, modifiedAtts,
+                        shuffledAtts);
+                submit(executor, permits, task);
+            }
         }
 
+        awaitTermination(executor);
+        stopMetrics();
+        dropPreloadedTables();
+    }
+
+    /**
+     * Holds the measured part of the test until the time given to {@link #startAt(long)}
+     */
+    private void awaitStart() {
+        final long wait = startNanos == 0L ? 0L : startNanos - System.nanoTime();
+        if (wait < 0) {
+            info("WARNING: set up took %s longer than the start delay, starting late\n",
+                    millis(-wait));
+        } else if (wait > 0) {
+            info("Starting in %s\n", millis(wait));
+            Uninterruptibles.sleepUninterruptibly(wait, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void startMonitoring() throws IOException {
+        if (breakers != null) {
+            breakers.start();
+        }
+        if (samples != null) {
+            samples.start();
+        }
+        if (sampler != null) {
+            sampler.start();
+        }
+        if (health != null) {
+            health.start();
+        }
+    }
+
+    private void stopMetrics() {
+        if (sampler != null) {
+            sampler.close();
+        }
+        if (health != null) {
+            health.close();
+        }
+        if (samples != null) {
+            samples.close();
+        }
+        if (breakers != null) {
+            breakers.stop();
+        }
+        metrics.stop();
+    }
+
+    private void dropPreloadedTables() {
+        if (preloadTables && cleanup) {
+            info("Dropping %,d tables\n", numRuns);
+            fixtures.dropTables(firstRun, numRuns);
+        }
+    }
+
+    private static void awaitTermination(final ExecutorService executor)
+            throws InterruptedException {
         executor.shutdown();
         while (!executor.isTerminated()) {
             executor.awaitTermination(1, TimeUnit.MINUTES);
         }
     }
 
+    /**
+     * Runs the test at each concurrency level of the {@link #ramp} in turn, each for the step
+     * time or until the {@link #numRuns} test runs are used up. At the end of a step the test
+     * runs in flight are let finish before measuring it, so steps don't overlap.
+     */
+    private void runRamp(final LinkedHashMap<String, String> orignalAtts,
+            final LinkedHashMap<String, String> alteredAtts,
+            final LinkedHashMap<String, String> modifiedAtts,
+            final LinkedHashMap<String, String> shuffledAtts) throws InterruptedException {
+
+        final AtomicInteger nextRun = new AtomicInteger();
+        for (Integer step : ramp.getConcurrencies()) {
+            final int concurrency = step.intValue();
+            info("Ramping to %d concurrent test runs for %ds\n", concurrency,
+                    TimeUnit.NANOSECONDS.toSeconds(ramp.getStepNanos()));
+
+            final Histogram before = metrics.merge(null, -1);
+            final long failuresBefore = metrics.failures();
+            final AtomicLong tasks = new AtomicLong();
+            final long start = System.nanoTime();
+            final long deadline = start + ramp.getStepNanos();
+
+            final ExecutorService executor = virtualThreads ? Executors
+                    .newVirtualThreadPerTaskExecutor() : Executors
+                    .newFixedThreadPool(concurrency);
+            for (int i = 0; i < concurrency; i++) {
+                executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        int index;
+                        while (System.nanoTime() - deadline < 0
+                                && (index = nextRun.getAndIncrement()) < numRuns) {
+                            new TestTask(firstRun + index, orignalAtts, alteredAtts,
+                                    modifiedAtts, shuffledAtts).run();
+                            tasks.incrementAndGet();
+                        }
+                    }
+                });
+            }
+            awaitTermination(executor);
+
+            Histogram latencies = metrics.merge(null, -1);
+            latencies.subtract(before);
+            ramp.completed(concurrency, System.nanoTime() - start, tasks.get(),
+                    metrics.failures() - failuresBefore, latencies);
+
+            if (nextRun.get() >= numRuns) {
+                info("WARNING: all %,d test runs were used up at concurrency %d, "
+                        + "raise runs to complete the ramp\n", numRuns, concurrency);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Has each of the {@link #numConcClients} threads cycle through its own share of the
+     * {@link #numRuns} test runs, the ones whose index modulo the number of threads is its own,
+     * until the {@link #soak} duration elapsed. Shares don't overlap, so no two threads ever use
+     * the same workspace or table at once, and each test run deletes its catalog objects before
+     * the next cycle creates them again.
+     */
+    private void runSoak(final LinkedHashMap<String, String> orignalAtts,
+            final LinkedHashMap<String, String> alteredAtts,
+            final LinkedHashMap<String, String> modifiedAtts,
+            final LinkedHashMap<String, String> shuffledAtts) throws InterruptedException {
+
+        info("Soaking with %d concurrent test runs for %s\n", numConcClients,
+                millis(soak.getDurationNanos()));
+        final long deadline = System.nanoTime() + soak.getDurationNanos();
+        final AtomicLong tasks = new AtomicLong();
+        final ExecutorService executor = virtualThreads ? Executors
+                .newVirtualThreadPerTaskExecutor() : Executors.newFixedThreadPool(numConcClients);
+        soak.start();
+        try {
+            for (int t = 0; t < numConcClients; t++) {
+                final int thread = t;
+                executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int cycle = 0; System.nanoTime() - deadline < 0; cycle++) {
+                            for (int index = thread; index < numRuns
+                                    && System.nanoTime() - deadline < 0; index += numConcClients) {
+                                TestTask task = new TestTask(firstRun + index, orignalAtts,
+                                        alteredAtts, modifiedAtts, shuffledAtts);
+                                task.recycled = cycle > 0;
+                                task.run();
+                                tasks.incrementAndGet();
+                            }
+                        }
+                    }
+                });
+            }
+            awaitTermination(executor);
+        } finally {
+            soak.close();
+        }
+        info("Soak run finished %,d test runs\n", tasks.get());
+    }
+
+    /**
+     * Sets up the {@link #mix} layers, then has {@link #numConcClients} virtual users draw and
+     * run actions from the mix until {@link #numRuns} actions were run in total. The requests
+     * issued to set up and tear down the layers are not measured, nor their failures counted
+     * against the error threshold.
+     */
+    private void runMix(final LinkedHashMap<String, String> orignalAtts) throws IOException,
+            InterruptedException {
+        final int layers = mix.getLayers();
+        info("Setting up %,d layers for the workload mix\n", layers);
+        fixtures.createTables(0, layers);
+        metrics.attach();
+        try {
+            for (int i = 0; i < layers; i++) {
+                String wsName = createWorkspace(i);
+                String dsName = createDataStore(wsName, i);
+                createFeatureTypeAndLayer(wsName, dsName, i, PostgisFixtures.tableName(i));
+            }
+        } finally {
+            metrics.detach();
+        }
+        if (errors.total() > 0) {
+            info("WARNING: %,d errors setting up the workload mix layers, not counted\n",
+                    errors.total());
+        }
+        metrics.reset();
+        errors.reset();
+
+        awaitStart();
+        metrics.start();
+        startMonitoring();
+        info("Running %,d actions from the workload mix with %d virtual users\n", numRuns,
+                numConcClients);
+        final AtomicInteger nextAction = new AtomicInteger();
+        final ExecutorService executor = virtualThreads ? Executors
+                .newVirtualThreadPerTaskExecutor() : Executors.newFixedThreadPool(numConcClients);
+        for (int i = 0; i < numConcClients; i++) {
+            executor.submit(new MixUser(i, nextAction, orignalAtts));
+        }
+        awaitTermination(executor);
+        stopMetrics();
+
+        if (cleanup) {
+            info("Deleting the %,d workload mix layers\n", layers);
+            for (int i = 0; i < layers; i++) {
+                deleteUnmeasured("rest/workspaces/" + workspaceName(i) + ".xml?recurse=true");
+            }
+            fixtures.dropTables(0, layers);
+        }
+    }
+
+    /**
+     * Grows the catalog to each of the {@link #scaling} sizes in turn with the {@link #seeder},
+     * probing every member once it got there
+     */
+    private void runCatalogScaling() throws IOException, InterruptedException {
+        fixtures.createTables(0, 1);
+        metrics.start();
+        startMonitoring();
+        int layers = 0;
+        for (int stage = 0; stage < scaling.getSizes().size(); stage++) {
+            final int size = scaling.getSizes().get(stage).intValue();
+            info("Growing the catalog to %,d layers, %,d stores, and %,d workspaces\n", size,
+                    seeder.storesFor(size), seeder.workspacesFor(size));
+            Stopwatch sw = Stopwatch.createStarted();
+            if (!seeder.seed(layers, size, null)) {
+                info("WARNING: not all of the catalog could be created, probing anyway\n");
+            }
+            info("Grew the catalog to %,d layers in %s, probing\n", size, sw.stop());
+            layers = size;
+            probeCatalog(stage, size);
+        }
+        stopMetrics();
+
+        if (cleanup) {
+            final int workspaces = seeder.workspacesFor(layers);
+            info("Deleting the %,d catalog scaling workspaces\n", workspaces);
+            if (seeder.teardown(workspaces, null)) {
+                fixtures.dropTables(0, 1);
+            }
+        }
+    }
+
+    /**
+     * Creates or deletes the {@link #seedLayers} layers of the {@link #seedCommand} with the
+     * {@link #seeder}. Creating resumes from the {@link #seedJournal} if there is one, and the
+     * table the layers publish is only created on the first run.
+     */
+    private void runSeeding() throws IOException, InterruptedException {
+        final int workspaces = seeder.workspacesFor(seedLayers);
+        metrics.start();
+        if (SEED_CREATE.equals(seedCommand)) {
+            if (!CatalogSeeder.isResuming(seedJournal)) {
+                fixtures.createTables(0, 1);
+            }
+            info("Seeding %,d layers, %,d stores, and %,d workspaces\n", seedLayers,
+                    seeder.storesFor(seedLayers), workspaces);
+            if (!seeder.seed(0, seedLayers, seedJournal)) {
+                info("WARNING: seeding did not complete, run again to resume from %s\n",
+                        seedJournal);
+            }
+        } else {
+            info("Deleting %,d seeded workspaces\n", workspaces);
+            if (seeder.teardown(workspaces, seedJournal) && cleanup) {
+                fixtures.dropTables(0, 1);
+            }
+        }
+        stopMetrics();
+    }
+
+    private static String seededLayerName(final int index) {
+        return "layer_" + index;
+    }
+
+    /**
+     * The names and request bodies of the objects the {@link #seeder} creates, all its layers
+     * publishing the same table
+     */
+    private CatalogSeeder.Catalog seededCatalog() {
+        final String table = PostgisFixtures.tableName(0);
+        return new CatalogSeeder.Catalog() {
+            @Override
+            public String workspaceName(int workspace) {
+                return RunTest.workspaceName(workspace);
+            }
+
+            @Override
+            public String storeName(int store) {
+                return dataStoreName(store);
+            }
+
+            @Override
+            public byte[] workspaceXml(int workspace) {
+                return RequestBodies.workspace(workspaceName(workspace)).toByteArray();
+            }
+
+            @Override
+            public byte[] dataStoreXml(int store) {
+                return bodies.dataStore(storeName(store)).toByteArray();
+            }
+
+            @Override
+            public byte[] featureTypeXml(int layer) {
+                return RequestBodies.featureType(layer, seededLayerName(layer), table)
+                        .toByteArray();
+            }
+        };
+    }
+
+    /**
+     * Sends each {@link CatalogScaling.Probe probe} to each member in turn, for as many rounds as
+     * configured, against random layers among the given number
+     */
+    private void probeCatalog(final int stage, final int layers) {
+        final Random random = new Random(stage);
+        for (int round = 0; round < scaling.getProbeRounds(); round++) {
+            for (int member = 0; member < clusterMembers.size(); member++) {
+                for (Probe probe : Probe.values()) {
+                    probe(stage, probe, member, random.nextInt(layers));
+                }
+            }
+        }
+    }
+
+    private void probe(final int stage, final Probe probe, final int member, final int layer) {
+        final int store = seeder.storeOf(layer);
+        final String wsName = workspaceName(seeder.workspaceOfStore(store));
+        final String ftName = seededLayerName(layer);
+        final String relativePath;
+        switch (probe) {
+        case WORKSPACES:
+            relativePath = "rest/workspaces.xml";
+            break;
+        case LAYERS:
+            relativePath = "rest/layers.xml";
+            break;
+        case FEATURE_TYPE:
+            relativePath = "rest/workspaces/" + wsName + "/datastores/" + dataStoreName(store)
+                    + "/featuretypes/" + ftName + ".xml";
+            break;
+        case GET_CAPABILITIES:
+            relativePath = "ows?service=WFS&version=1.0.0&request=GetCapabilities";
+            break;
+        case DESCRIBE_FEATURE_TYPE:
+            relativePath = wsName + "/wfs?service=WFS&version=1.0.0"
+                    + "&request=DescribeFeatureType&typeName=" + wsName + ":" + ftName;
+            break;
+        default:
+            throw new IllegalArgumentException(String.valueOf(probe));
+        }
+        final String targetRef = transport.targetUrl(member, relativePath);
+        final long start = System.nanoTime();
+        try (TransportResponse response = execute(probe.op(), member, HttpTransport.GET,
+                relativePath, null)) {
+            if (!response.isSuccess()) {
+                scaling.recordFailure(stage, probe, member);
+                errors.record(probe.op(), member, FailureClass.HTTP_STATUS, response.getStatus());
+                trace("ERROR GET %s: %s\n", targetRef, response);
+                return;
+            }
+            if (response.getBody() != null) {
+                ByteStreams.copy(response.getBody(), ByteStreams.nullOutputStream());
+            }
+            final long elapsed = System.nanoTime() - start;
+            scaling.record(stage, probe, member, elapsed);
+            trace("GET %s: %s (%s)\n", targetRef, response, millis(elapsed));
+        } catch (IOException e) {
+            scaling.recordFailure(stage, probe, member);
+            errors.record(probe.op(), member, e);
+            trace("ERROR GET %s: %s\n", targetRef, e.getMessage());
+        }
+    }
+
+    /**
+     * A virtual user of the {@link #mix}, drawing actions with its own random number source
+     */
+    private class MixUser implements Runnable {
+
+        private final int user;
+
+        private final AtomicInteger nextAction;
+
+        private final LinkedHashMap<String, String> orignalAtts;
+
+        private final Random random;
+
+        private int created;
+
+        MixUser(int user, AtomicInteger nextAction, LinkedHashMap<String, String> orignalAtts) {
+            this.user = user;
+            this.nextAction = nextAction;
+            this.orignalAtts = orignalAtts;
+            this.random = mix.newRandom(user);
+        }
+
+        @Override
+        public void run() {
+            metrics.attach();
+            PooledThreadLocal.attach();
+            selector.taskStarted();
+            try {
+                int run;
+                while ((run = nextAction.getAndIncrement()) < numRuns) {
+                    if (samples != null) {
+                        SampleLog.begin(run, null);
+                    }
+                    final Action action = mix.next(random);
+                    final int layer = random.nextInt(mix.getLayers());
+                    final long start = System.nanoTime();
+                    boolean success;
+                    try {
+                        success = perform(action, layer);
+                    } catch (RuntimeException e) {
+                        errors.record(null, -1, e);
+                        trace("ERROR " + e.getMessage());
+                        success = false;
+                    }
+                    mix.record(action, System.nanoTime() - start, success);
+                    final long thinkTime = mix.thinkTimeNanos(action);
+                    if (thinkTime > 0) {
+                        Uninterruptibles.sleepUninterruptibly(thinkTime, TimeUnit.NANOSECONDS);
+                    }
+                }
+            } finally {
+                SampleLog.end();
+                selector.taskFinished();
+                PooledThreadLocal.detach();
+                metrics.detach();
+            }
+        }
+
+        private boolean perform(final Action action, final int layer) {
+            final String wsName = workspaceName(layer);
+            final String dsName = dataStoreName(layer);
+            final String table = PostgisFixtures.tableName(layer);
+            switch (action) {
+            case REST_READ:
+                return orignalAtts.equals(getAttributes(wsName, dsName, table));
+            case FT_PUT:
+                return modifyFeatureType(wsName, dsName, table, table, orignalAtts);
+            case LAYER_CREATE_DELETE:
+                final String ftName = table + "_u" + user + "_" + created++;
+                if (!publishFeatureType(wsName, dsName, layer, ftName, table)) {
+                    return false;
+                }
+                return delete("rest/workspaces/" + wsName + "/datastores/" + dsName
+                        + "/featuretypes/" + ftName + ".xml?recurse=true");
+            case DESCRIBE_FEATURE_TYPE:
+                return describeFeatureType(wsName, table, orignalAtts.size());
+            case GET_FEATURE:
+                return getFeature(wsName, table);
+            default:
+                throw new IllegalArgumentException(String.valueOf(action));
+            }
+        }
+    }
+
+    /**
+     * Deletes a resource without recording the request in the {@link #metrics}
+     */
+    private void deleteUnmeasured(final String relativePath) {
+        final int member = nextMember();
+        final String targetRef = transport.targetUrl(member, relativePath);
+        try (TransportResponse response = execute(Operation.DELETE, member,
+                HttpTransport.DELETE, relativePath, null)) {
+            trace("DELETE %s: %s\n", targetRef, response);
+        } catch (IOException e) {
+            trace("ERROR DELETE %s: %s\n", targetRef, e.getMessage());
+        }
+    }
+
+    /**
+     * Submits the task to the executor, first waiting for one of the permits to be available if
+     * the concurrency is not bounded by the executor itself
+     */
+    private void submit(final ExecutorService executor, final Semaphore permits,
+            final Runnable task) throws InterruptedException {
+        if (permits == null) {
+            executor.submit(task);
+            return;
+        }
+        permits.acquire();
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } finally {
+                    permits.release();
+                }
+            }
+        });
+    }
+
     private class TestTask implements Runnable {
 
         private final int index;
@@ -164,6 +1305,18 @@ public class RunTest {
 
         private final LinkedHashMap<String, String> shuffledAtts;
 
+        /**
+         * {@link System#nanoTime()} at which the task was scheduled to start in open-loop mode,
+         * {@code null} in closed-loop mode
+         */
+        private Long intendedStart;
+
+        /**
+         * Whether an earlier cycle of a soak run already used this test run's table, which then
+         * has to be created again since the task altered it
+         */
+        private boolean recycled;
+
         public TestTask(final int index, LinkedHashMap<String, String> orignalAtts,
                 LinkedHashMap<String, String> alteredAtts,
                 LinkedHashMap<String, String> modifiedAtts,
@@ -177,25 +1330,58 @@ public class RunTest {
 
         @Override
         public void run() {
-            final String table = "clustertest_" + index;
-            info("Creating table, workspace, store, and layer %s\n", table);
+            metrics.attach();
+            PooledThreadLocal.attach();
+            selector.taskStarted();
+            if (samples != null) {
+                SampleLog.begin(index, intendedStart);
+            }
             try {
-                createTable(table);
-            } catch (RuntimeException e) {
-                e.printStackTrace();
-                return;
+                runTask();
+            } finally {
+                SampleLog.end();
+                selector.taskFinished();
+                PooledThreadLocal.detach();
+                metrics.detach();
+            }
+        }
+
+        private void runTask() {
+            if (intendedStart != null) {
+                metrics.scheduled(intendedStart.longValue());
+            }
+            final String table = PostgisFixtures.tableName(index);
+            if (preloadTables && !recycled) {
+                info("Creating workspace, store, and layer %s\n", table);
+            } else {
+                info("Creating table, workspace, store, and layer %s\n", table);
+                try {
+                    fixtures.createTable(table);
+                } catch (RuntimeException e) {
+                    errors.record(null, -1, FailureClass.FIXTURE);
+                    info("ERROR creating table %s: %s\n", table, e);
+                    return;
+                }
             }
             try {
                 final String wsName = createWorkspace(index);
                 final String dsName = createDataStore(wsName, index);
-                final String ftName = createFeatureTypeAndLayer(wsName, dsName, index, table);
+                final String ftName = table;
+                final boolean published = publishFeatureType(wsName, dsName, index, ftName,
+                        table);
 
                 LinkedHashMap<String, String> attributes;
                 try {
+                    if (published) {
+                        awaitConvergence(wsName, dsName, ftName, orignalAtts);
+                    }
                     debug("Checking initial attribute order...");
                     attributes = getAttributes(wsName, dsName, ftName);
-                    checkState(orignalAtts.equals(attributes), "expected %s, got %s",
-                            orignalAtts.keySet(), attributes.keySet());
+                    if (!orignalAtts.equals(attributes)) {
+                        errors.record(Operation.REST_GET, -1, FailureClass.ATTRIBUTE_MISMATCH);
+                        throw new IllegalStateException(String.format("expected %s, got %s",
+                                orignalAtts.keySet(), attributes.keySet()));
+                    }
                     trace(attributes.keySet() + " OK");
                     debug("Verifying attributes on every node through REST and WFS...");
                     verifyFeatureType(wsName, dsName, ftName, orignalAtts);
@@ -204,7 +1390,9 @@ public class RunTest {
 
                     debug("Removing one attribute through REST, expected result: "
                             + modifiedAtts.keySet());
-                    modifyFeatureType(wsName, dsName, ftName, table, modifiedAtts);
+                    if (modifyFeatureType(wsName, dsName, ftName, table, modifiedAtts)) {
+                        awaitConvergence(wsName, dsName, ftName, modifiedAtts);
+                    }
 
                     debug("Verifying attribute change on every node through REST and WFS...");
                     verifyFeatureType(wsName, dsName, ftName, modifiedAtts);
@@ -212,13 +1400,15 @@ public class RunTest {
                     verifyGetFeatures(wsName, dsName, ftName);
 
                     debug("Adding column 'newcol' to table %s through JDBC...\n", table);
-                    alterTableAddColumn(table);
+                    fixtures.alterTableAddColumn(table);
                     debug("Deleting FT %s recursively\n", table);
                     delete("rest/workspaces/" + wsName + "/datastores/" + dsName + "/featuretypes/"
                             + ftName + ".xml?recurse=true");
 
                     debug("Re-creating FT %s from altered db table...\n", table);
-                    createFeatureTypeAndLayer(wsName, dsName, index, table);
+                    if (publishFeatureType(wsName, dsName, index, ftName, table)) {
+                        awaitConvergence(wsName, dsName, ftName, alteredAtts);
+                    }
 
                     debug("Loading new attribute list...");
                     attributes = getAttributes(wsName, dsName, ftName);
@@ -229,7 +1419,9 @@ public class RunTest {
 
                     debug("Modifying FT %s attribute order. Original: %s, new: %s\n", table,
                             alteredAtts.keySet(), shuffledAtts.keySet());
-                    modifyFeatureType(wsName, dsName, ftName, table, shuffledAtts);
+                    if (modifyFeatureType(wsName, dsName, ftName, table, shuffledAtts)) {
+                        awaitConvergence(wsName, dsName, ftName, shuffledAtts);
+                    }
 
                     debug("Verifying new attribute order on all nodes through REST and WFS...");
                     verifyFeatureType(wsName, dsName, ftName, shuffledAtts);
@@ -248,91 +1440,97 @@ public class RunTest {
                     }
                 }
             } catch (RuntimeException e) {
+                errors.record(null, -1, e);
                 trace("ERROR " + e.getMessage());
             } finally {
-                if (cleanup) {
-                    dropTable(table);
+                if (cleanup && !preloadTables) {
+                    fixtures.dropTable(table);
                 }
             }
         }
     }
 
-    private void checkClusterMembers() {
+    private void checkClusterMembers() throws IOException {
         String relativePath = "rest/workspaces.xml";
-        for (int i = 0; i < clusterMembers.size(); i++) {
-            final ClientResource client = newClient(relativePath);
-            client.getRequest().setResourceRef(relativePath);
+        for (int member = 0; member < clusterMembers.size(); member++) {
             String msg = "Checking access to cluster member "
-                    + client.getRequest().getResourceRef().getTargetRef();
+                    + transport.targetUrl(member, relativePath);
             trace(msg);
-            Representation representation = client.get();
+            try (TransportResponse response = execute(Operation.REST_GET, member,
+                    HttpTransport.GET, relativePath, null)) {
+                checkState(response.isSuccess(), "%s: %s", msg, response);
+            }
         }
     }
 
     private void trace(String msg) {
-        print("    " + msg);
+        log.log(Level.TRACE, msg);
     }
 
     private void trace(String format, Object... args) {
-        print("    " + format, args);
+        log.log(Level.TRACE, format, args);
     }
 
     private void debug(String msg) {
-        print("  " + msg);
+        log.log(Level.DEBUG, msg);
     }
 
     private void debug(String format, Object... args) {
-        print("  " + format, args);
+        log.log(Level.DEBUG, format, args);
     }
 
     private void info(String msg) {
-        System.out.println(msg);
+        log.log(Level.INFO, msg);
     }
 
     private void info(String format, Object... args) {
-        System.out.printf(format, args);
-    }
-
-    private void print(String msg) {
-        System.out.println(msg);
+        log.log(Level.INFO, format, args);
     }
 
-    private void print(String format, Object... args) {
-        System.out.printf(format, args);
-    }
-
-    private void delete(final String relativePath) {
-        final ClientResource client = newClient(relativePath);
-        client.getRequest().setResourceRef(relativePath);
-
-        Reference targetRef = client.getRequest().getResourceRef().getTargetRef();
+    /**
+     * @return whether the request succeeded
+     */
+    private boolean delete(final String relativePath) {
+        final int member = nextMember();
+        final String targetRef = transport.targetUrl(member, relativePath);
         try {
             Stopwatch sw = Stopwatch.createStarted();
-            client.delete();
-            Status status = client.getResponse().getStatus();
-            trace("DELETE %s: %s (%s)\n", targetRef, status, sw.stop());
+            TransportResponse response = execute(Operation.DELETE, member, HttpTransport.DELETE,
+                    relativePath, null);
+            response.close();
+            sw.stop();
+            if (response.isSuccess()) {
+                metrics.record(Operation.DELETE, member, sw);
+                trace("DELETE %s: %s (%s)\n", targetRef, response, sw);
+                return true;
+            }
+            requestFailed(Operation.DELETE, member, response.getStatus(), null);
+            trace("ERROR DELETE %s: %s\n", targetRef, response);
         } catch (Exception e) {
+            requestFailed(Operation.DELETE, member, 0, e);
             trace("ERROR DELETE %s: %s\n", targetRef, e.getMessage());
         }
+        return false;
     }
 
     private String createFeatureTypeAndLayer(final String wsName, final String dsName,
             final int index, final String storeTable) {
+        publishFeatureType(wsName, dsName, index, storeTable, storeTable);
+        return storeTable;
+    }
+
+    /**
+     * Publishes a feature type and its layer off the given table, under the given name
+     *
+     * @return whether the request succeeded
+     */
+    private boolean publishFeatureType(final String wsName, final String dsName, final int index,
+            final String ftName, final String storeTable) {
 
         final String relativePath = "rest/workspaces/" + wsName + "/datastores/" + dsName
                 + "/featuretypes";
-        final String ftXml = "<featureType>\n"//
-                + "  <name>" + storeTable + "</name>\n" //
-                + "  <nativeName>" + storeTable + "</nativeName>\n" + //
-                "  <title>" + storeTable + " cluster stress test #" + index + "</title>\n" + //
-                "  <srs>EPSG:4326</srs>\n" + //
-                "  <nativeBoundingBox>"//
-                + "<minx>-180</minx><maxx>180</maxx><miny>-90</miny><maxy>90</maxy>"//
-                + "<crs>EPSG:4326</crs>"//
-                + "</nativeBoundingBox>\n" + //
-                "</featureType>\n";
-        postXml(relativePath, ftXml);
-        return storeTable;
+        return postXml(relativePath, RequestBodies.featureType(index, ftName, storeTable),
+                Operation.POST_FEATURETYPE);
     }
 
     private void verifyDescribeFeatureType(final String wsName, final String dsName,
@@ -341,42 +1539,30 @@ public class RunTest {
         String relativePath = wsName + "/wfs?service=WFS&version=1.0.0"
                 + "&request=DescribeFeatureType&typeName=" + wsName + ":" + ftName;
 
-        for (int i = 0; i < clusterMembers.size(); i++) {
-            final ClientResource client = newClient(relativePath);
-            client.getRequest().setResourceRef(relativePath);
-            client.setRetryOnError(false);
-            Reference targetRef = client.getRequest().getResourceRef().getTargetRef();
-            Representation representation;
-            Stopwatch sw = Stopwatch.createStarted();
-            try {
-                representation = client.get();
-            } catch (Exception e) {
-                trace("ERROR GET " + targetRef + ": " + e.getMessage());
-                continue;
-            }
-            Status status = client.getResponse().getStatus();
+        List<Reply<Integer>> replies = fanOut.get(Operation.DESCRIBE_FEATURE_TYPE, relativePath,
+                allMembers, ELEMENT_DECLARATIONS_READER);
 
-            trace("GET %s: %s (%s)\n", targetRef, status, sw.stop());
-            StringWriter writer = new StringWriter();
-            try {
-                representation.write(writer);
-            } catch (IOException e) {
-                e.printStackTrace();
+        List<Object> answers = new ArrayList<>();
+        for (Reply<Integer> reply : replies) {
+            final String targetRef = transport.targetUrl(reply.member, relativePath);
+            answers.add(reply.answer);
+            if (!reply.success) {
+                requestFailed(Operation.DESCRIBE_FEATURE_TYPE, reply);
+                trace("ERROR GET " + targetRef + ": " + errorMessage(reply));
                 continue;
             }
-            String stringRep = writer.toString();
-            Pattern p = Pattern.compile("maxOccurs");
-            Matcher m = p.matcher(stringRep);
-            int count = 0;
-            while (m.find()) {
-                count += 1;
-            }
+            metrics.record(Operation.DESCRIBE_FEATURE_TYPE, reply.member, reply.elapsedNanos);
+            trace("GET %s: %s (%s)\n", targetRef, reply.status, millis(reply.elapsedNanos));
+            int count = reply.answer.intValue();
             int expectedAttributeCount = expected.size();
             if (expectedAttributeCount != count) {
-                trace(String.format("ERROR: Expected %d attributes, got %d:\n%s\n",
-                        expectedAttributeCount, count, stringRep));
+                errors.record(Operation.DESCRIBE_FEATURE_TYPE, reply.member,
+                        FailureClass.DFT_COUNT_MISMATCH);
+                trace(String.format("ERROR: Expected %d attributes, got %d from %s\n",
+                        expectedAttributeCount, count, targetRef));
             }
         }
+        recordSkew(Operation.DESCRIBE_FEATURE_TYPE, replies, answers);
     }
 
     private void verifyGetFeatures(final String wsName, final String dsName, final String ftName) {
@@ -384,315 +1570,433 @@ public class RunTest {
         for (String version : Arrays.asList("1.0.0")) {
 
             String relativePath = wsName + "/wfs?service=WFS&version=" + version
-                    + "&request=GetFeature&maxFeatures=1&typeName=" + wsName + ":" + ftName;
-
-            for (int i = 0; i < clusterMembers.size(); i++) {
-                final ClientResource client = newClient(relativePath);
-                client.getRequest().setResourceRef(relativePath);
-                client.setRetryOnError(false);
-                Reference targetRef = client.getRequest().getResourceRef().getTargetRef();
-                // Can't use ClientResource cause it can't parse the weird Content-Type headers the
-                // WFS returns
-                URL url;
-                URLConnection connection;
-                Stopwatch sw = Stopwatch.createStarted();
-                try {
-                    url = new URL(targetRef.toString());
-                    connection = url.openConnection();
-                } catch (Exception e) {
-                    trace("ERROR Can't connect to " + targetRef + ": " + e.getMessage());
+                    + "&request=GetFeature&maxFeatures=" + featuresPerTable + "&typeName="
+                    + wsName + ":" + ftName;
+
+            List<Reply<FeatureCollectionScan>> replies = fanOut.get(Operation.GET_FEATURE,
+                    relativePath, allMembers, featureCollectionReader);
+
+            List<Object> answers = new ArrayList<>();
+            for (Reply<FeatureCollectionScan> reply : replies) {
+                final String targetRef = transport.targetUrl(reply.member, relativePath);
+                if (!reply.success) {
+                    answers.add(null);
+                    requestFailed(Operation.GET_FEATURE, reply);
+                    trace("ERROR GET " + targetRef + ": " + errorMessage(reply));
                     continue;
                 }
-
-                if (gsUser != null && gsPassword != null) {
-                    String usrpwd = gsUser + ":" + gsPassword;
-                    String encodedAuthorization = Base64.encode(usrpwd.toCharArray(), false);
-                    connection.setRequestProperty("Authorization", "Basic " + encodedAuthorization);
-                }
-                ByteArrayOutputStream to = new ByteArrayOutputStream();
-                try (InputStream in = connection.getInputStream()) {
-                    ByteStreams.copy(in, to);
-                } catch (IOException ex) {
-                    trace("ERROR GET " + targetRef + ": " + ex.getMessage());
+                FeatureCollectionScan scan = reply.answer;
+                if (!scan.isFeatureCollection()) {
+                    answers.add(scan.getRootElement());
+                    errors.record(Operation.GET_FEATURE, reply.member,
+                            FailureClass.NOT_FEATURE_COLLECTION, reply.statusCode);
+                    trace("ERROR GET %s: expected a FeatureCollection, got %s\n", targetRef,
+                            scan.getRootElement());
                     continue;
                 }
-
-                String stringRep = to.toString();
-                if (stringRep.contains("FeatureCollection")) {
-                    trace("GET %s: OK (%s)\n", targetRef, sw.stop());
-                } else {
-                    trace("ERROR GET " + targetRef + ": " + stringRep);
+                answers.add(Long.valueOf(scan.getFeatures()));
+                metrics.record(Operation.GET_FEATURE, reply.member, reply.completedNanos);
+                metrics.recordTransfer(reply.member, reply.elapsedNanos, reply.completedNanos,
+                        scan.getBytes(), scan.getFeatures());
+                trace("GET %s: OK, %,d features, %,d bytes (%s)\n", targetRef,
+                        scan.getFeatures(), scan.getBytes(), millis(reply.completedNanos));
+                if (scan.getFeatures() != featuresPerTable) {
+                    errors.record(Operation.GET_FEATURE, reply.member,
+                            FailureClass.FEATURE_COUNT_MISMATCH);
+                    trace("ERROR: Expected %d features, got %d from %s\n", featuresPerTable,
+                            scan.getFeatures(), targetRef);
                 }
             }
+            recordSkew(Operation.GET_FEATURE, replies, answers);
         }
     }
 
+    /**
+     * Sends a DescribeFeatureType request to the next member and checks it declares the expected
+     * number of attributes
+     *
+     * @return whether the request succeeded and the attribute count matched
+     */
+    private boolean describeFeatureType(final String wsName, final String ftName,
+            final int expectedAttributeCount) {
+        final Operation op = Operation.DESCRIBE_FEATURE_TYPE;
+        final int member = nextMember();
+        final String relativePath = wsName + "/wfs?service=WFS&version=1.0.0"
+                + "&request=DescribeFeatureType&typeName=" + wsName + ":" + ftName;
+        final String targetRef = transport.targetUrl(member, relativePath);
+        final long start = System.nanoTime();
+        int status = 0;
+        try (TransportResponse response = execute(op, member, HttpTransport.GET, relativePath,
+                null)) {
+            status = response.getStatus();
+            final long elapsed = System.nanoTime() - start;
+            if (!response.isSuccess()) {
+                requestFailed(op, member, status, null);
+                trace("ERROR GET %s: %s\n", targetRef, response);
+                return false;
+            }
+            int count = ResponseParsers.countElementDeclarations(response.getBody());
+            metrics.record(op, member, elapsed);
+            trace("GET %s: %s (%s)\n", targetRef, response, millis(elapsed));
+            if (count != expectedAttributeCount) {
+                errors.record(op, member, FailureClass.DFT_COUNT_MISMATCH);
+                trace("ERROR: Expected %d attributes, got %d from %s\n", expectedAttributeCount,
+                        count, targetRef);
+                return false;
+            }
+            return true;
+        } catch (IOException | XMLStreamException e) {
+            requestFailed(op, member, status, e);
+            trace("ERROR GET %s: %s\n", targetRef, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Sends a GetFeature request for all the features of the layer to the next member and reads
+     * the response through
+     *
+     * @return whether the request succeeded and returned all the features
+     */
+    private boolean getFeature(final String wsName, final String ftName) {
+        final Operation op = Operation.GET_FEATURE;
+        final int member = nextMember();
+        final String relativePath = wsName + "/wfs?service=WFS&version=1.0.0"
+                + "&request=GetFeature&maxFeatures=" + featuresPerTable + "&typeName=" + wsName
+                + ":" + ftName;
+        final String targetRef = transport.targetUrl(member, relativePath);
+        final long start = System.nanoTime();
+        int status = 0;
+        try (TransportResponse response = execute(op, member, HttpTransport.GET, relativePath,
+                null)) {
+            status = response.getStatus();
+            final long firstByte = System.nanoTime() - start;
+            if (!response.isSuccess()) {
+                requestFailed(op, member, status, null);
+                trace("ERROR GET %s: %s\n", targetRef, response);
+                return false;
+            }
+            FeatureCollectionScan scan = FeatureCollectionScan.scan(response.getBody(),
+                    getFeatureBuffers.get());
+            final long completed = System.nanoTime() - start;
+            if (!scan.isFeatureCollection()) {
+                errors.record(op, member, FailureClass.NOT_FEATURE_COLLECTION, status);
+                trace("ERROR GET %s: expected a FeatureCollection, got %s\n", targetRef,
+                        scan.getRootElement());
+                return false;
+            }
+            metrics.record(op, member, completed);
+            metrics.recordTransfer(member, firstByte, completed, scan.getBytes(),
+                    scan.getFeatures());
+            trace("GET %s: OK, %,d features, %,d bytes (%s)\n", targetRef, scan.getFeatures(),
+                    scan.getBytes(), millis(completed));
+            if (scan.getFeatures() != featuresPerTable) {
+                errors.record(op, member, FailureClass.FEATURE_COUNT_MISMATCH);
+                trace("ERROR: Expected %d features, got %d from %s\n", featuresPerTable,
+                        scan.getFeatures(), targetRef);
+                return false;
+            }
+            return true;
+        } catch (IOException e) {
+            requestFailed(op, member, status, e);
+            trace("ERROR GET %s: %s\n", targetRef, e.getMessage());
+            return false;
+        }
+    }
+
+    private final BodyReader<FeatureCollectionScan> featureCollectionReader = new BodyReader<FeatureCollectionScan>() {
+        @Override
+        public FeatureCollectionScan read(InputStream body) throws IOException {
+            return FeatureCollectionScan.scan(body, getFeatureBuffers.get());
+        }
+    };
+
     private LinkedHashMap<String, String> getAttributes(final String wsName, final String dsName,
             final String ftName) {
 
         final String relativePath = "rest/workspaces/" + wsName + "/datastores/" + dsName
                 + "/featuretypes/" + ftName + ".xml";
 
-        final ClientResource client = newClient(relativePath);
-        return getAttributes(relativePath, client);
+        return getAttributes(relativePath, nextMember());
     }
 
     private LinkedHashMap<String, String> getAttributes(final String relativePath,
-            final ClientResource client) {
-        client.getRequest().setResourceRef(relativePath);
-        Reference targetRef = client.getRequest().getResourceRef().getTargetRef();
+            final int member) {
+        final String targetRef = transport.targetUrl(member, relativePath);
 
         LinkedHashMap<String, String> attNamesAndBindings = new LinkedHashMap<>();
-        try {
-            Stopwatch sw = Stopwatch.createStarted();
-            Representation representation = client.get();
-            Status status = client.getResponse().getStatus();
-
-            trace("GET %s: %s (%s)\n", targetRef, status, sw.stop());
-            DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-            Document dom = builder.parse(representation.getStream());
-            NodeList attributesList = dom.getElementsByTagName("attributes");
-            if (attributesList.getLength() != 1) {
-                throw new RuntimeException("Unable to parse feature type " + relativePath);
-            }
-            Node attributes = attributesList.item(0);
-            NodeList atts = ((Element) attributes).getElementsByTagName("attribute");
-            for (int j = 0; j < atts.getLength(); j++) {
-                Node nameAtt = ((Element) atts.item(j)).getElementsByTagName("name").item(0);
-                Node bindingAtt = ((Element) atts.item(j)).getElementsByTagName("binding").item(0);
-                String attName = nameAtt.getTextContent();
-                String binding = bindingAtt.getTextContent();
-                attNamesAndBindings.put(attName, binding);
+        Stopwatch sw = Stopwatch.createStarted();
+        try (TransportResponse response = execute(Operation.REST_GET, member,
+                HttpTransport.GET, relativePath, null)) {
+            if (!response.isSuccess()) {
+                requestFailed(Operation.REST_GET, member, response.getStatus(), null);
+                trace("GET %s: %s (%s)\n", targetRef, response, sw);
+                return attNamesAndBindings;
             }
+            metrics.record(Operation.REST_GET, member, sw.stop());
+            trace("GET %s: %s (%s)\n", targetRef, response, sw);
+            parseAttributes(response.getBody(), relativePath, attNamesAndBindings);
+        } catch (IOException e) {
+            requestFailed(Operation.REST_GET, member, 0, e);
+            trace("GET ERROR to %s: %s\n", targetRef, e);
         } catch (Exception e) {
-            e.printStackTrace();
+            errors.record(Operation.REST_GET, member, FailureClass.INVALID_RESPONSE);
+            trace("GET %s: ERROR reading response: %s\n", targetRef, e);
         }
         return attNamesAndBindings;
     }
 
+    private void parseAttributes(final InputStream featureType, final String relativePath,
+            final Map<String, String> attNamesAndBindings) throws XMLStreamException {
+        try {
+            ResponseParsers.parseAttributes(featureType, attNamesAndBindings);
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("Unable to parse feature type " + relativePath, e);
+        }
+    }
+
+    /**
+     * Polls every cluster member for the feature type until its attributes match the expected ones
+     * or {@link #convergenceTimeoutMillis} elapses, recording how long each member took to reflect
+     * the change. The polling requests are not recorded as {@link Operation#REST_GET} latencies.
+     * Only called once the change succeeded, a failed one is already counted as an error and
+     * would only add convergence timeouts to it.
+     */
+    private void awaitConvergence(final String wsName, final String dsName, final String ftName,
+            final LinkedHashMap<String, String> expected) {
+        if (convergenceTimeoutMillis <= 0) {
+            return;
+        }
+        final String relativePath = "rest/workspaces/" + wsName + "/datastores/" + dsName
+                + "/featuretypes/" + ftName + ".xml";
+
+        final Stopwatch sw = Stopwatch.createStarted();
+        final List<Integer> pending = new ArrayList<>(allMembers);
+        while (true) {
+            final long roundStart = sw.elapsed(TimeUnit.NANOSECONDS);
+            List<Reply<LinkedHashMap<String, String>>> replies = fanOut.get(Operation.REST_GET,
+                    relativePath, pending, attributesReader(relativePath));
+            for (Reply<LinkedHashMap<String, String>> reply : replies) {
+                if (reply.success && expected.equals(reply.answer)) {
+                    pending.remove(Integer.valueOf(reply.member));
+                    long converged = roundStart + reply.elapsedNanos;
+                    metrics.recordConvergence(reply.member, converged);
+                    trace("%s converged to %s in %s\n", clusterMembers.get(reply.member),
+                            expected.keySet(), millis(converged));
+                }
+            }
+            if (pending.isEmpty()) {
+                return;
+            }
+            if (sw.elapsed(TimeUnit.MILLISECONDS) >= convergenceTimeoutMillis) {
+                for (Integer member : pending) {
+                    metrics.convergenceTimeout(member.intValue());
+                    errors.record(Operation.REST_GET, member.intValue(),
+                            FailureClass.CONVERGENCE_TIMEOUT);
+                    trace("ERROR: %s did not converge to %s within %dms\n",
+                            clusterMembers.get(member.intValue()), expected.keySet(),
+                            convergenceTimeoutMillis);
+                }
+                return;
+            }
+            Uninterruptibles.sleepUninterruptibly(convergencePollMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
     private void verifyFeatureType(final String wsName, final String dsName, final String ftName,
             final LinkedHashMap<String, String> expected) {
 
         final String relativePath = "rest/workspaces/" + wsName + "/datastores/" + dsName
                 + "/featuretypes/" + ftName + ".xml";
 
-        for (int i = 0; i < clusterMembers.size(); i++) {
-            final ClientResource client = newClient(relativePath);
-            LinkedHashMap<String, String> attributes = getAttributes(relativePath, client);
+        List<Reply<LinkedHashMap<String, String>>> replies = fanOut.get(Operation.REST_GET,
+                relativePath, allMembers, attributesReader(relativePath));
+
+        List<Object> answers = new ArrayList<>();
+        for (Reply<LinkedHashMap<String, String>> reply : replies) {
+            final String targetRef = transport.targetUrl(reply.member, relativePath);
+            answers.add(reply.answer);
+            if (!reply.success) {
+                requestFailed(Operation.REST_GET, reply);
+                trace("ERROR GET " + targetRef + ": " + errorMessage(reply));
+                continue;
+            }
+            metrics.record(Operation.REST_GET, reply.member, reply.elapsedNanos);
+            trace("GET %s: %s (%s)\n", targetRef, reply.status, millis(reply.elapsedNanos));
+            LinkedHashMap<String, String> attributes = reply.answer;
             if (!expected.equals(attributes)) {
+                errors.record(Operation.REST_GET, reply.member, FailureClass.ATTRIBUTE_MISMATCH);
                 trace("ERROR: attributes don't match. Expected %s, got %s\n", expected.keySet(),
                         attributes.keySet());
             } else {
                 trace(" OK: " + attributes.keySet());
             }
         }
+        recordSkew(Operation.REST_GET, replies, answers);
     }
 
-    private void modifyFeatureType(final String wsName, final String dsName, final String ftName,
-            final String table, final Map<String, String> attributes) {
-
-        final String relativePath = "rest/workspaces/" + wsName + "/datastores/" + dsName
-                + "/featuretypes/" + ftName + ".xml";
+    private static final BodyReader<Integer> ELEMENT_DECLARATIONS_READER = new BodyReader<Integer>() {
+        @Override
+        public Integer read(InputStream body) throws XMLStreamException {
+            return Integer.valueOf(ResponseParsers.countElementDeclarations(body));
+        }
+    };
 
-        String ftXml = "<featureType>\n" + "  <name>" + ftName + "</name>\n"//
-                + "  <nativeName>" + table + "</nativeName>\n"//
-                + "  <title>" + ftName + " + modified</title>\n"//
-                + "  <srs>EPSG:4326</srs>\n"//
-                + "  <enabled>true</enabled>\n"//
-                + "  <attributes>\n";
-        for (Entry<String, String> entry : attributes.entrySet()) {
-            String name = entry.getKey();
-            String binding = entry.getValue();
-            ftXml += "     <attribute>\n"//
-                    + "      <name>" + name + "</name><binding>" + binding
-                    + "</binding>\n"
-                    + "     </attribute>\n";
-        }
-        ftXml += "  </attributes>\n"//
-                + "</featureType>\n";
-        putXml(relativePath, ftXml);
+    private BodyReader<LinkedHashMap<String, String>> attributesReader(final String relativePath) {
+        return new BodyReader<LinkedHashMap<String, String>>() {
+            @Override
+            public LinkedHashMap<String, String> read(InputStream body) throws Exception {
+                LinkedHashMap<String, String> attributes = new LinkedHashMap<>();
+                parseAttributes(body, relativePath, attributes);
+                return attributes;
+            }
+        };
     }
 
-    private String createDataStore(final String wsName, final int index) {
-        final String dsName = "ds-" + index;
-        String dsxml = "<dataStore>\n" + //
-                "<name>" + dsName + "</name>\n" + //
-                " <connectionParameters>\n" + //
-                "  <host>" + storeHost + "</host>\n" + //
-                "  <port>" + storePort + "</port>\n" + //
-                "  <schema>" + storeSchema + "</schema>\n" + //
-                "  <database>" + storeDatabase + "</database>\n" + //
-                "  <user>" + storeUser + "</user>\n" + //
-                "  <passwd>" + storePassword + "</passwd>\n" + //
-                "  <dbtype>postgis</dbtype>\n" + //
-                " </connectionParameters>\n" + //
-                "</dataStore>";
-        final String relativePath = "rest/workspaces/" + wsName + "/datastores";
-
-        postXml(relativePath, dsxml);
-        return dsName;
+    /**
+     * Records the spread between the fastest and slowest member of a fan-out request, and whether
+     * their answers differed
+     */
+    private void recordSkew(final Operation op, final List<? extends Reply<?>> replies,
+            final List<?> answers) {
+        final long skew = FanOut.skewNanos(replies);
+        final boolean divergent = FanOut.divergent(answers);
+        metrics.recordSkew(op, skew, divergent);
+        if (divergent) {
+            errors.record(op, -1, FailureClass.DIVERGENT_ANSWERS);
+        }
+        trace("%s member skew %s%s\n", op, millis(skew),
+                divergent ? ", ERROR: members answered differently" : "");
     }
 
-    private String createWorkspace(final int index) {
-        final String wsName = "rest-stress-ws-" + index;
-        final String wsxml = "<workspace><name>" + wsName + "</name></workspace>";
-        postXml("rest/workspaces", wsxml);
-        return wsName;
+    /**
+     * Counts a request that didn't get a successful response, or whose response couldn't be read
+     *
+     * @param status the response status code, {@code 0} if there's no response
+     * @param error the exception the request or reading its response failed with, if any
+     */
+    private void requestFailed(final Operation op, final int member, final int status,
+            final Exception error) {
+        metrics.recordFailure(op, member);
+        if (error == null) {
+            errors.record(op, member, FailureClass.HTTP_STATUS, status);
+            return;
+        }
+        FailureClass failureClass = ErrorCounters.classify(error);
+        if (failureClass == FailureClass.OTHER && status >= 200 && status < 300) {
+            failureClass = FailureClass.INVALID_RESPONSE;
+        }
+        errors.record(op, member, failureClass, status);
     }
 
-    private Representation putXml(final String relativePath, final String xml) {
-        return sendXml(relativePath, xml, Method.PUT);
+    private void requestFailed(final Operation op, final Reply<?> reply) {
+        requestFailed(op, reply.member, reply.statusCode, reply.error);
     }
 
-    private Representation postXml(final String relativePath, final String xml) {
-        return sendXml(relativePath, xml, Method.POST);
+    private static String errorMessage(final Reply<?> reply) {
+        if (reply.error != null) {
+            return String.valueOf(reply.error.getMessage());
+        }
+        return reply.status;
     }
 
-    private Representation sendXml(final String relativePath, final String xml, Method method) {
-        ClientResource client = newClient(relativePath);
-        final String targetRef = client.getRequest().getResourceRef().getTargetRef().toString();
-        StringRepresentation reqRep = new StringRepresentation(xml);
-        reqRep.setMediaType(MediaType.APPLICATION_XML);
-        Representation result;
-        Stopwatch sw = Stopwatch.createStarted();
-        try {
-            if (Method.PUT.equals(method)) {
-                result = client.put(reqRep);
-            } else if (Method.POST.equals(method)) {
-                result = client.post(reqRep);
-            } else {
-                throw new IllegalArgumentException("Method: " + method);
-            }
-        } catch (ResourceException re) {
-            Representation responseEntity = client.getResponseEntity();
-            if (responseEntity != null) {
-                trace(method.getName() + " ERROR to " + targetRef + ": server response: "
-                        + re.getMessage());
-                try {
-                    responseEntity.write(System.out);
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            } else {
-                re.printStackTrace();
-            }
-            return null;
-        }
-        Response response = client.getResponse();
-        trace("%s to %s: %s (%s)\n", method.getName(), targetRef, response.getStatus(), sw.stop());
-        return result;
+    private static String millis(final long nanos) {
+        return String.format("%.2f ms", nanos / 1e6);
     }
 
-    private final ThreadLocal<Iterator<ClientResource>> CLIENTS_BY_THREAD = new ThreadLocal<Iterator<ClientResource>>() {
+    private boolean modifyFeatureType(final String wsName, final String dsName, final String ftName,
+            final String table, final Map<String, String> attributes) {
 
-        @Override
-        protected Iterator<ClientResource> initialValue() {
-            List<ClientResource> clients = new ArrayList<ClientResource>();
-            for (String baseUrl : clusterMembers) {
-                if (!baseUrl.endsWith("/")) {
-                    baseUrl += "/";
-                }
-                ClientResource client = new ClientResource(baseUrl);
-                client.getRequest().getResourceRef().setBaseRef(baseUrl);
-                client.setChallengeResponse(ChallengeScheme.HTTP_BASIC, gsUser, gsPassword);
-                client.setRetryOnError(false);
-                clients.add(client);
-            }
-            return Iterators.cycle(clients);
-        }
-    };
+        final String relativePath = "rest/workspaces/" + wsName + "/datastores/" + dsName
+                + "/featuretypes/" + ftName + ".xml";
 
-    private synchronized ClientResource newClient(final String relativePath) {
-        ClientResource client = CLIENTS_BY_THREAD.get().next();
-        if (null != relativePath) {
-            client.getRequest().setResourceRef(relativePath);
-        }
-        return client;
+        Buffer ftXml = RequestBodies.modifiedFeatureType(ftName, table, attributes);
+        return putXml(relativePath, ftXml, Operation.PUT_FEATURETYPE);
+    }
+
+    private String createDataStore(final String wsName, final int index) {
+        final String dsName = dataStoreName(index);
+        final String relativePath = "rest/workspaces/" + wsName + "/datastores";
 
-        // ClientResource client = new ClientResource("");
-        // client.getRequest().getResourceRef().setBaseRef(roundRobbinUrls.next());
-        // if (null != relativePath) {
-        // client.getRequest().setResourceRef(relativePath);
-        // }
-        // client.setChallengeResponse(HTTP_BASIC, "admin", "geoserver");
-        // return client;
+        postXml(relativePath, bodies.dataStore(dsName), Operation.POST_DATASTORE);
+        return dsName;
     }
 
-    private Connection createConnection() {
-        final String driver = "org.postgresql.Driver";
-        Connection connection;
-        try {
-            Class.forName(driver);
-            String url = "jdbc:postgresql://" + storeHost + ":" + storePort + "/" + storeDatabase;
-            connection = DriverManager.getConnection(url, storeUser, storePassword);
-        } catch (ClassNotFoundException | SQLException e) {
-            throw Throwables.propagate(e);
-        }
-        return connection;
+    private static String dataStoreName(final int index) {
+        return "ds-" + index;
     }
 
-    private void createTable(String table) {
-        final String sql1 = "drop table if exists \"" + table + "\"; CREATE TABLE \"" + table
-                + "\" (gid serial, \"state_name\" varchar(25))";
-        final String sql2 = "ALTER TABLE \"" + table + "\" ADD PRIMARY KEY (gid)";
-        final String sql3 = "SELECT AddGeometryColumn('','" + table
-                + "','geom','4326','MULTIPOLYGON',2)";
+    private static String workspaceName(final int index) {
+        return "rest-stress-ws-" + index;
+    }
 
-        final String sql4 = String
-                .format("insert into \"%s\"(state_name, geom) values('oregon', ST_GeomFromText('MULTIPOLYGON(((0 0, 0 1, 1 1, 1 0, 0 0)))', 4326) )",
-                        table);
+    private String createWorkspace(final int index) {
+        final String wsName = workspaceName(index);
+        postXml("rest/workspaces", RequestBodies.workspace(wsName), Operation.POST_WORKSPACE);
+        return wsName;
+    }
 
-        try (Connection c = createConnection()) {
-            c.setAutoCommit(false);
-            try (Statement st = c.createStatement()) {
-                String sql = String.format("%s;%s;%s;%s;", sql1, sql2, sql3, sql4);
-                execute(sql, st);
-                c.commit();
-            } catch (SQLException e) {
-                c.rollback();
-                throw e;
-            }
-            // avoid "ERROR: stats for "<table>.geom" do not exist" logs from postgres
-            c.setAutoCommit(true);
-            try (Statement st = c.createStatement()) {
-                execute("vacuum analyze", st);
-            }
-        } catch (SQLException e) {
-            throw Throwables.propagate(e);
-        }
+    private boolean putXml(final String relativePath, final Buffer xml, final Operation op) {
+        return sendXml(relativePath, xml, HttpTransport.PUT, op);
     }
 
-    private boolean execute(final String sql, Statement st) throws SQLException {
-        String searchPath = "set search_path to '" + storeSchema + "';";
-        String query = searchPath + sql;
-        trace("Running SQL: " + query);
-        return st.execute(query);
+    private boolean postXml(final String relativePath, final Buffer xml, final Operation op) {
+        return sendXml(relativePath, xml, HttpTransport.POST, op);
     }
 
-    private void alterTableAddColumn(String table) {
-        String sql = "ALTER TABLE \"" + table + "\" add column newcol text";
-        try (Connection c = createConnection()) {
-            c.setAutoCommit(false);
-            try (Statement st = c.createStatement()) {
-                execute(sql, st);
+    /**
+     * @return whether the request succeeded
+     */
+    private boolean sendXml(final String relativePath, final Buffer xml, final String method,
+            final Operation op) {
+        final int member = nextMember();
+        final String targetRef = transport.targetUrl(member, relativePath);
+        Stopwatch sw = Stopwatch.createStarted();
+        try (TransportResponse response = execute(op, member, method, relativePath, xml)) {
+            if (!response.isSuccess()) {
+                requestFailed(op, member, response.getStatus(), null);
+                trace(method + " ERROR to " + targetRef + ": server response: " + response);
+                if (log.isEnabled(Level.TRACE)) {
+                    trace(new String(ByteStreams.toByteArray(response.getBody()), Charsets.UTF_8));
+                }
+                return false;
             }
-            c.commit();
-        } catch (SQLException e) {
-            throw Throwables.propagate(e);
+            metrics.record(op, member, sw.stop());
+            trace("%s to %s: %s (%s)\n", method, targetRef, response, sw);
+            return true;
+        } catch (IOException e) {
+            requestFailed(op, member, 0, e);
+            trace("%s ERROR to %s: %s\n", method, targetRef, e);
+            return false;
         }
     }
 
-    private void dropTable(String table) {
-        final String sql = "DROP TABLE \"" + table + "\"";
-
-        try (Connection c = createConnection()) {
-            c.setAutoCommit(false);
-            try (Statement st = c.createStatement()) {
-                execute(sql, st);
-            }
-            c.commit();
-        } catch (SQLException e) {
-            throw Throwables.propagate(e);
+    /**
+     * Sends a request through the {@link #transport} and waits for the response, which must be
+     * closed by the caller, before the thread's {@link RequestBodies} buffer is reused
+     */
+    private TransportResponse execute(final Operation op, final int member, final String method,
+            final String relativePath, final Buffer xml) throws IOException {
+        String contentType = xml == null ? null : "application/xml";
+        final long start = System.nanoTime();
+        ListenableFuture<TransportResponse> response = transport.send(op, member, method,
+                relativePath, contentType, xml == null ? null : xml.array(),
+                xml == null ? 0 : xml.length());
+        try {
+            TransportResponse received = Uninterruptibles.getUninterruptibly(response);
+            selector.completed(member, System.nanoTime() - start, received.isSuccess());
+            return received;
+        } catch (ExecutionException e) {
+            selector.completed(member, System.nanoTime() - start, false);
+            Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+            throw Throwables.propagate(e.getCause());
         }
     }
+
+    /**
+     * @return the index in {@link #clusterMembers} of the member to send the next request to
+     */
+    private int nextMember() {
+        return selector.select();
+    }
 }
@@ -0,0 +1,709 @@
+package org.geoserver.rest.test;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.HdrHistogram.Histogram;
+import org.geoserver.rest.test.EventLog.Level;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.CountingInputStream;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Raw log of every request sent while the test runs, for investigating a bad run after the fact
+ * in more detail than the summary statistics keep.
+ * <p>
+ * Each request is written as a fixed-width binary record straight into a memory-mapped file:
+ * writers claim a record with an atomic increment of the position and fill it with absolute
+ * puts, so they never take a lock, and the file is grown by mapping a new chunk at its end only
+ * once every chunk before it is full. A record holds the intended start, actual start and end of
+ * the request, in nanoseconds since the log started, its {@link Operation}, member, HTTP status
+ * ({@code 0} if it got no response) and {@link ErrorCounters.FailureClass failure class}, the
+ * bytes sent and received, and the test run it was sent for. A request ends when its response is
+ * closed, so the end includes reading the body. The intended start is the open-loop schedule
+ * time of the first request of a test run, and the actual start otherwise, like the latencies
+ * {@link LatencyMetrics} corrects for coordinated omission.
+ * <p>
+ * The header holds the operation, member, and failure class names, so the file reads the same
+ * whatever the version of this tool, and the number of records, written on {@link #close()}.
+ * {@link #main(String[])} filters, buckets, and computes percentiles over the records without
+ * copying them off the mapped file.
+ */
+public class SampleLog implements Closeable {
+
+    private static final int MAGIC = 0x534d5031; // "SMP1"
+
+    private static final int VERSION = 1;
+
+    /**
+     * Record layout: intended start, start, end, and bytes received as longs, bytes sent and run
+     * index as ints, then status as a short, failure class, operation, and member as bytes, and
+     * padding to keep the longs of the next record aligned
+     */
+    static final int RECORD_SIZE = 48;
+
+    static final int INTENDED = 0, START = 8, END = 16, RECEIVED = 24, SENT = 32, RUN = 36,
+            STATUS = 40, FAILURE = 42, OP = 43, MEMBER = 44;
+
+    /**
+     * Offset in the header of the number of records, after the magic, version, record size,
+     * header size, and start time
+     */
+    static final int COUNT_OFFSET = 24;
+
+    /**
+     * Largest region of the file the reader maps at once, a whole number of records
+     */
+    private static final int READ_REGION = Integer.MAX_VALUE / RECORD_SIZE * RECORD_SIZE;
+
+    private static final long NO_INTENDED_START = Long.MIN_VALUE;
+
+    private static final ThreadLocal<Context> CONTEXT = new ThreadLocal<>();
+
+    private static final Executor SAME_THREAD = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    /**
+     * The test run the current thread sends requests for
+     */
+    static final class Context {
+
+        final int run;
+
+        /**
+         * The open-loop schedule time of the test run, taken by its first request
+         */
+        private final AtomicLong intendedStart;
+
+        Context(int run, long intendedStartNanos) {
+            this.run = run;
+            this.intendedStart = new AtomicLong(intendedStartNanos);
+        }
+    }
+
+    private final File file;
+
+    private final ImmutableList<String> members;
+
+    private final int chunkRecords;
+
+    private final AtomicLong position = new AtomicLong();
+
+    private RandomAccessFile raf;
+
+    private FileChannel channel;
+
+    private long headerSize, startNanos;
+
+    /**
+     * The mapped chunks in file order, replaced by a longer copy when a chunk is added
+     */
+    private volatile MappedByteBuffer[] chunks;
+
+    private volatile boolean open;
+
+    private final EventLog log;
+
+    /**
+     * @param chunkMegabytes how much the file is grown by at a time
+     */
+    public SampleLog(File file, List<String> members, int chunkMegabytes, EventLog log) {
+        checkArgument(members.size() <= 255, "The sample log holds up to 255 members: %s",
+                members.size());
+        checkArgument(chunkMegabytes > 0 && chunkMegabytes <= 1024,
+                "samples.chunkSize must be between 1 and 1024: %s", chunkMegabytes);
+        this.file = file;
+        this.members = ImmutableList.copyOf(members);
+        this.chunkRecords = (chunkMegabytes << 20) / RECORD_SIZE;
+        this.log = log;
+    }
+
+    /**
+     * Sets the test run the requests the current thread sends until {@link #end()} are for,
+     * and when it was scheduled to start, as per {@link System#nanoTime()}, in open-loop mode
+     */
+    public static void begin(final int run, final Long intendedStartNanos) {
+        CONTEXT.set(new Context(run, intendedStartNanos == null ? NO_INTENDED_START
+                : intendedStartNanos.longValue()));
+    }
+
+    public static void end() {
+        CONTEXT.remove();
+    }
+
+    /**
+     * @return the test run of the current thread, to {@link #resume(Context) resume} on the
+     *         threads it hands requests to, {@code null} if none
+     */
+    static Context current() {
+        return CONTEXT.get();
+    }
+
+    static void resume(final Context context) {
+        if (context == null) {
+            CONTEXT.remove();
+        } else {
+            CONTEXT.set(context);
+        }
+    }
+
+    /**
+     * @return a transport sending requests through the given one and logging them while the log
+     *         is open
+     */
+    public HttpTransport wrap(final HttpTransport transport) {
+        return new RecordingTransport(transport);
+    }
+
+    /**
+     * Creates the file and starts logging, right after {@link LatencyMetrics#start()}
+     */
+    public synchronized void start() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(bytes);
+        header.writeInt(MAGIC);
+        header.writeInt(VERSION);
+        header.writeInt(RECORD_SIZE);
+        header.writeInt(0);
+        header.writeLong(System.currentTimeMillis());
+        header.writeLong(0L);
+        header.writeShort(Operation.values().length);
+        for (Operation op : Operation.values()) {
+            header.writeUTF(op.key());
+        }
+        header.writeShort(members.size());
+        for (String member : members) {
+            header.writeUTF(member);
+        }
+        header.writeShort(ErrorCounters.FailureClass.values().length);
+        for (ErrorCounters.FailureClass failure : ErrorCounters.FailureClass.values()) {
+            header.writeUTF(failure.label());
+        }
+        while (bytes.size() % 8 != 0) {
+            header.writeByte(0);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        buffer.putInt(12, buffer.capacity());
+
+        raf = new RandomAccessFile(file, "rw");
+        raf.setLength(0L);
+        channel = raf.getChannel();
+        channel.write(buffer, 0L);
+        headerSize = buffer.capacity();
+        position.set(0L);
+        chunks = new MappedByteBuffer[0];
+        startNanos = System.nanoTime();
+        open = true;
+    }
+
+    /**
+     * Stops logging and writes the number of records to the header. The file keeps the size of
+     * the chunks mapped, requests still in flight may land past the count.
+     */
+    @Override
+    public synchronized void close() {
+        if (!open) {
+            return;
+        }
+        open = false;
+        try {
+            for (MappedByteBuffer chunk : chunks) {
+                chunk.force();
+            }
+            ByteBuffer count = ByteBuffer.allocate(8);
+            count.putLong(0, position.get());
+            channel.write(count, COUNT_OFFSET);
+            raf.close();
+        } catch (IOException e) {
+            log.log(Level.INFO, "ERROR closing sample log %s: %s\n", file, e);
+        }
+    }
+
+    public void report(final PrintStream out) {
+        out.printf("Sample log: %,d requests in %s, print them out with\n"
+                + "java -cp cluster_stress.jar %s %s\n", position.get(), file,
+                SampleLog.class.getName(), file);
+    }
+
+    private void record(final Operation op, final int member, final Context context,
+            final long start, final long end, final int status,
+            final ErrorCounters.FailureClass failure, final int sent, final long received) {
+        if (!open) {
+            return;
+        }
+        final long index = position.getAndIncrement();
+        final ByteBuffer chunk;
+        try {
+            chunk = chunk((int) (index / chunkRecords));
+        } catch (IOException e) {
+            return;
+        }
+        final int offset = (int) (index % chunkRecords) * RECORD_SIZE;
+        long intended = context == null ? NO_INTENDED_START : context.intendedStart
+                .getAndSet(NO_INTENDED_START);
+        chunk.putLong(offset + INTENDED, (intended == NO_INTENDED_START || intended > start
+                ? start : intended) - startNanos);
+        chunk.putLong(offset + START, start - startNanos);
+        chunk.putLong(offset + RECEIVED, received);
+        chunk.putInt(offset + SENT, sent);
+        chunk.putInt(offset + RUN, context == null ? -1 : context.run);
+        chunk.putShort(offset + STATUS, (short) status);
+        chunk.put(offset + FAILURE, (byte) (failure == null ? 0 : failure.ordinal() + 1));
+        chunk.put(offset + OP, (byte) op.ordinal());
+        chunk.put(offset + MEMBER, (byte) member);
+        // written last, readers skip records whose end is still zero
+        chunk.putLong(offset + END, Math.max(1L, end - startNanos));
+    }
+
+    private ByteBuffer chunk(final int chunk) throws IOException {
+        MappedByteBuffer[] mapped = chunks;
+        if (chunk < mapped.length) {
+            return mapped[chunk];
+        }
+        synchronized (this) {
+            mapped = chunks;
+            if (!open) {
+                throw new IOException("Sample log closed");
+            }
+            if (chunk >= mapped.length) {
+                mapped = Arrays.copyOf(mapped, chunk + 1);
+                final long chunkBytes = (long) chunkRecords * RECORD_SIZE;
+                for (int c = chunks.length; c <= chunk; c++) {
+                    mapped[c] = channel.map(MapMode.READ_WRITE, headerSize + c * chunkBytes,
+                            chunkBytes);
+                }
+                chunks = mapped;
+            }
+            return mapped[chunk];
+        }
+    }
+
+    /**
+     * Sends requests through another transport and logs them
+     */
+    private class RecordingTransport implements HttpTransport {
+
+        private final HttpTransport transport;
+
+        RecordingTransport(HttpTransport transport) {
+            this.transport = transport;
+        }
+
+        @Override
+        public ListenableFuture<TransportResponse> send(final Operation op, final int member,
+                final String method, final String relativePath, final String contentType,
+                final byte[] body, final int bodyLength) {
+            if (!open) {
+                return transport.send(op, member, method, relativePath, contentType, body,
+                        bodyLength);
+            }
+            final Context context = CONTEXT.get();
+            final long start = System.nanoTime();
+            final ListenableFuture<TransportResponse> response = transport.send(op, member,
+                    method, relativePath, contentType, body, bodyLength);
+            response.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Uninterruptibles.getUninterruptibly(response);
+                    } catch (ExecutionException e) {
+                        record(op, member, context, start, System.nanoTime(), 0,
+                                ErrorCounters.classify(e.getCause()), bodyLength, 0L);
+                    } catch (CancellationException e) {
+                        record(op, member, context, start, System.nanoTime(), 0,
+                                ErrorCounters.classify(e), bodyLength, 0L);
+                    }
+                }
+            }, SAME_THREAD);
+            return Futures.transform(response,
+                    new Function<TransportResponse, TransportResponse>() {
+                        @Override
+                        public TransportResponse apply(TransportResponse received) {
+                            return new RecordedResponse(received, op, member, context, start,
+                                    bodyLength);
+                        }
+                    }, SAME_THREAD);
+        }
+
+        @Override
+        public boolean isAsynchronous() {
+            return transport.isAsynchronous();
+        }
+
+        @Override
+        public int inFlight() {
+            return transport.inFlight();
+        }
+
+        @Override
+        public int inFlight(final int member) {
+            return transport.inFlight(member);
+        }
+
+        @Override
+        public String targetUrl(final int member, final String relativePath) {
+            return transport.targetUrl(member, relativePath);
+        }
+
+        @Override
+        public void report(final PrintStream out) {
+            transport.report(out);
+        }
+
+        @Override
+        public void close() throws IOException {
+            transport.close();
+        }
+    }
+
+    /**
+     * A response that logs its request once closed, with the bytes read off its body
+     */
+    private class RecordedResponse extends TransportResponse {
+
+        private final TransportResponse response;
+
+        private final CountingInputStream body;
+
+        private final Operation op;
+
+        private final int member;
+
+        private final Context context;
+
+        private final long start;
+
+        private final int sent;
+
+        private boolean closed;
+
+        RecordedResponse(TransportResponse response, Operation op, int member, Context context,
+                long start, int sent) {
+            this(response, new CountingInputStream(response.getBody()), op, member, context,
+                    start, sent);
+        }
+
+        private RecordedResponse(TransportResponse response, CountingInputStream body,
+                Operation op, int member, Context context, long start, int sent) {
+            super(response.getStatus(), response.getReason(), body);
+            this.response = response;
+            this.body = body;
+            this.op = op;
+            this.member = member;
+            this.context = context;
+            this.start = start;
+            this.sent = sent;
+        }
+
+        @Override
+        public void close() {
+            response.close();
+            if (!closed) {
+                closed = true;
+                record(op, member, context, start, System.nanoTime(), getStatus(),
+                        isSuccess() ? null : ErrorCounters.FailureClass.HTTP_STATUS, sent, body
+                                .getCount());
+            }
+        }
+    }
+
+    /**
+     * What to select from a sample log and how to summarize it
+     */
+    private static class Query {
+
+        String op, member;
+
+        int fromRun = Integer.MIN_VALUE, toRun = Integer.MAX_VALUE;
+
+        /**
+         * An HTTP status code, {@code 0} for requests that got no response, or {@code -1} for
+         * any
+         */
+        int status = -1;
+
+        /**
+         * {@code true} for successful requests only, {@code false} for failed ones only,
+         * {@code null} for both
+         */
+        Boolean success;
+
+        double fromSeconds = 0, toSeconds = Double.MAX_VALUE, bucketSeconds = 0;
+
+        /**
+         * One of {@code op}, {@code member}, {@code status}, {@code run}, or {@code none}
+         */
+        String by = "op";
+
+        /**
+         * Whether latencies count from the intended start rather than the actual one
+         */
+        boolean fromIntended = true;
+    }
+
+    /**
+     * The requests of a bucket and group
+     */
+    private static class Summary {
+
+        final Histogram latencies = new Histogram(LatencyMetrics.HIGHEST_TRACKABLE_MICROS,
+                LatencyMetrics.SIGNIFICANT_DIGITS);
+
+        long failed, sent, received;
+    }
+
+    /**
+     * Prints out a summary of the sample log records selected by the query, bucketed by start
+     * time and grouped as requested, with latencies in milliseconds
+     */
+    private static void print(final File file, final Query query, final PrintStream out)
+            throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                FileChannel channel = raf.getChannel()) {
+            ByteBuffer fixed = ByteBuffer.allocate(COUNT_OFFSET + 8);
+            channel.read(fixed, 0L);
+            if (fixed.position() < fixed.capacity() || fixed.getInt(0) != MAGIC) {
+                throw new IOException("Not a sample log: " + file);
+            }
+            checkArgument(fixed.getInt(4) == VERSION && fixed.getInt(8) == RECORD_SIZE,
+                    "Unsupported sample log version %s", fixed.getInt(4));
+            final int headerSize = fixed.getInt(12);
+            final long startMillis = fixed.getLong(16);
+            long count = fixed.getLong(COUNT_OFFSET);
+            final long available = (channel.size() - headerSize) / RECORD_SIZE;
+            // not closed, read whatever was written
+            count = count == 0L ? available : Math.min(count, available);
+
+            ByteBuffer header = ByteBuffer.allocate(headerSize - COUNT_OFFSET - 8);
+            channel.read(header, COUNT_OFFSET + 8);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(header.array()));
+            final List<String> ops = readNames(in), memberNames = readNames(in), failures =
+                    readNames(in);
+            final int op = query.op == null ? -1 : indexOf(ops, query.op, "operation");
+            final int member = query.member == null ? -1 : indexOf(memberNames, query.member,
+                    "member");
+
+            out.printf("%,d requests logged from %tF %<tT, latencies in ms from the %s start\n",
+                    count, startMillis, query.fromIntended ? "intended" : "actual");
+            final long fromNanos = (long) (query.fromSeconds * 1e9);
+            final long toNanos = query.toSeconds >= Long.MAX_VALUE / 1e9 ? Long.MAX_VALUE
+                    : (long) (query.toSeconds * 1e9);
+            final long bucketNanos = (long) (query.bucketSeconds * 1e9);
+            final TreeMap<Long, TreeMap<String, Summary>> buckets = new TreeMap<>();
+            final int[] failureCounts = new int[failures.size()];
+            long selected = 0;
+            for (long first = 0; first < count; first += READ_REGION / RECORD_SIZE) {
+                final long records = Math.min(count - first, READ_REGION / RECORD_SIZE);
+                final MappedByteBuffer region = channel.map(MapMode.READ_ONLY, headerSize
+                        + first * RECORD_SIZE, records * RECORD_SIZE);
+                for (int offset = 0; offset < records * RECORD_SIZE; offset += RECORD_SIZE) {
+                    final long end = region.getLong(offset + END);
+                    final long start = region.getLong(offset + START);
+                    final int recordOp = region.get(offset + OP);
+                    final int recordMember = region.get(offset + MEMBER) & 0xff;
+                    final int run = region.getInt(offset + RUN);
+                    final int status = region.getShort(offset + STATUS);
+                    final int failure = region.get(offset + FAILURE);
+                    if (end == 0L || start < fromNanos || start >= toNanos
+                            || (op != -1 && recordOp != op)
+                            || (member != -1 && recordMember != member) || run < query.fromRun
+                            || run > query.toRun
+                            || (query.status != -1 && status != query.status)
+                            || (query.success != null && query.success.booleanValue()
+                                    != (failure == 0))) {
+                        continue;
+                    }
+                    selected++;
+                    final Long bucket = Long.valueOf(bucketNanos == 0 ? 0L : start
+                            / bucketNanos * bucketNanos);
+                    TreeMap<String, Summary> groups = buckets.get(bucket);
+                    if (groups == null) {
+                        groups = new TreeMap<>();
+                        buckets.put(bucket, groups);
+                    }
+                    final String group;
+                    switch (query.by) {
+                    case "member":
+                        group = memberNames.get(recordMember);
+                        break;
+                    case "status":
+                        group = String.valueOf(status);
+                        break;
+                    case "run":
+                        group = String.format("%08d", run);
+                        break;
+                    case "none":
+                        group = "all";
+                        break;
+                    default:
+                        group = ops.get(recordOp);
+                    }
+                    Summary summary = groups.get(group);
+                    if (summary == null) {
+                        summary = new Summary();
+                        groups.put(group, summary);
+                    }
+                    final long from = query.fromIntended ? region.getLong(offset + INTENDED)
+                            : start;
+                    summary.latencies.recordValue(Math.min(
+                            LatencyMetrics.HIGHEST_TRACKABLE_MICROS,
+                            TimeUnit.NANOSECONDS.toMicros(Math.max(0L, end - from))));
+                    summary.sent += region.getInt(offset + SENT);
+                    summary.received += region.getLong(offset + RECEIVED);
+                    if (failure != 0) {
+                        summary.failed++;
+                        if (failure <= failureCounts.length) {
+                            failureCounts[failure - 1]++;
+                        }
+                    }
+                }
+            }
+            out.printf("%,d requests selected\n", selected);
+            out.printf("%10s %-30s %10s %8s %9s %9s %9s %9s %9s %9s %10s %10s\n", "start (s)",
+                    query.by, "requests", "failed", "req/s", "p50", "p90", "p99", "p99.9", "max",
+                    "sent KB", "recv KB");
+            for (Map.Entry<Long, TreeMap<String, Summary>> bucket : buckets.entrySet()) {
+                for (Map.Entry<String, Summary> group : bucket.getValue().entrySet()) {
+                    Summary s = group.getValue();
+                    Histogram h = s.latencies;
+                    out.printf("%10.1f %-30s %10d %8d %9s %9.1f %9.1f %9.1f %9.1f %9.1f %10.1f "
+                            + "%10.1f\n", bucket.getKey() / 1e9, group.getKey(),
+                            h.getTotalCount(), s.failed, bucketNanos == 0 ? "-" : String.format(
+                                    "%.1f", h.getTotalCount() / (bucketNanos / 1e9)),
+                            h.getValueAtPercentile(50) / 1000d,
+                            h.getValueAtPercentile(90) / 1000d,
+                            h.getValueAtPercentile(99) / 1000d,
+                            h.getValueAtPercentile(99.9) / 1000d, h.getMaxValue() / 1000d,
+                            s.sent / 1024d, s.received / 1024d);
+                }
+            }
+            for (int f = 0; f < failureCounts.length; f++) {
+                if (failureCounts[f] > 0) {
+                    out.printf("%,d failed with %s\n", failureCounts[f], failures.get(f));
+                }
+            }
+        }
+    }
+
+    private static List<String> readNames(final DataInputStream in) throws IOException {
+        final int size = in.readUnsignedShort();
+        List<String> names = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            names.add(in.readUTF());
+        }
+        return names;
+    }
+
+    private static int indexOf(final List<String> names, final String name, final String what) {
+        int index = names.indexOf(name);
+        checkArgument(index != -1, "Unknown %s %s, the log has %s", what, name, names);
+        return index;
+    }
+
+    /**
+     * Prints out a summary of the sample log given as argument, filtered, bucketed, and grouped
+     * as per the options that follow it
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: java -cp cluster_stress.jar " + SampleLog.class.getName()
+                    + " <sample log> [options]\n"
+                    + "  --op=<operation>      only requests of an operation, e.g. getFeature\n"
+                    + "  --member=<member>     only requests sent to a member\n"
+                    + "  --run=<n>[-<m>]       only requests of a test run, or range of runs\n"
+                    + "  --status=<code>       only responses with an HTTP status, 0 for none\n"
+                    + "  --success, --failed   only successful, or only failed, requests\n"
+                    + "  --from=<s>, --to=<s>  only requests started within these seconds\n"
+                    + "  --bucket=<s>          summarize every so many seconds\n"
+                    + "  --by=<field>          group by op (default), member, status, run, or "
+                    + "none\n"
+                    + "  --actual              count latencies from the actual start, leaving "
+                    + "out\n"
+                    + "                        the time behind the open-loop schedule");
+            System.exit(-1);
+        }
+        final Query query = new Query();
+        for (int i = 1; i < args.length; i++) {
+            final String arg = args[i];
+            final int eq = arg.indexOf('=');
+            final String name = eq == -1 ? arg : arg.substring(0, eq);
+            final String value = eq == -1 ? null : arg.substring(eq + 1);
+            switch (name) {
+            case "--op":
+                query.op = value;
+                break;
+            case "--member":
+                query.member = value;
+                break;
+            case "--run":
+                int dash = value.indexOf('-', 1);
+                query.fromRun = Integer.parseInt(dash == -1 ? value : value.substring(0, dash));
+                query.toRun = dash == -1 ? query.fromRun : Integer.parseInt(value
+                        .substring(dash + 1));
+                break;
+            case "--status":
+                query.status = Integer.parseInt(value);
+                break;
+            case "--success":
+                query.success = Boolean.TRUE;
+                break;
+            case "--failed":
+                query.success = Boolean.FALSE;
+                break;
+            case "--from":
+                query.fromSeconds = Double.parseDouble(value);
+                break;
+            case "--to":
+                query.toSeconds = Double.parseDouble(value);
+                break;
+            case "--bucket":
+                query.bucketSeconds = Double.parseDouble(value);
+                checkArgument(query.bucketSeconds > 0, "--bucket must be > 0: %s", value);
+                break;
+            case "--by":
+                checkArgument(ImmutableList.of("op", "member", "status", "run", "none")
+                        .contains(value), "--by must be op, member, status, run, or none: %s",
+                        value);
+                query.by = value;
+                break;
+            case "--actual":
+                query.fromIntended = false;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+        print(new File(args[0]), query, System.out);
+    }
+}
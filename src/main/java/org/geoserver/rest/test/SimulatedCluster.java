@@ -0,0 +1,1054 @@
+package org.geoserver.rest.test;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.net.URLDecoder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.geoserver.rest.test.EventLog.Level;
+import org.restlet.Context;
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.Restlet;
+import org.restlet.Server;
+import org.restlet.data.MediaType;
+import org.restlet.data.Protocol;
+import org.restlet.data.Status;
+import org.restlet.representation.OutputRepresentation;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A stand-in for a GeoServer cluster running in the same JVM as the test, to benchmark the test
+ * driver itself and try out new load modes without a live cluster and PostGIS.
+ * <p>
+ * Each member is a local HTTP server implementing the parts of the REST API and WFS the test uses:
+ * workspaces, datastores, feature types, layers, and the system status, and WFS GetCapabilities,
+ * DescribeFeatureType, and GetFeature. Members share an in-memory catalog, the way cluster members
+ * share the jdbcconfig database: changes are checked and applied against it one at a time, and each
+ * member sees them in the same order, the other members' changes after the propagation delay, and
+ * on making a change, every change made so far, as it would reading back from the database.
+ * Requests are held for the configured service latency before being handled, keeping a server
+ * thread busy as a real member would. The tables published are kept in memory too, see
+ * {@link #getTables()}.
+ */
+public class SimulatedCluster implements Closeable {
+
+    private static final ImmutableMap<String, String> TABLE_COLUMNS = ImmutableMap.of(
+            "state_name", "java.lang.String", //
+            "geom", "com.vividsolutions.jts.geom.MultiPolygon");
+
+    private static final XMLInputFactory XML_FACTORY;
+    static {
+        XML_FACTORY = XMLInputFactory.newInstance();
+        XML_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        XML_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    }
+
+    private final int numMembers;
+
+    private final long latencyNanos;
+
+    private final long writeLatencyNanos;
+
+    private final long propagationDelayNanos;
+
+    private final int threads;
+
+    private final int featuresPerTable;
+
+    private final EventLog log;
+
+    /**
+     * The catalog as stored, changes are checked against and applied to it holding its lock
+     */
+    private final Replica database = new Replica(-1);
+
+    /**
+     * What each member sees of the catalog
+     */
+    private final Replica[] replicas;
+
+    /**
+     * Delivers changes to the members other than the one that made them, guarded by
+     * {@link #database}
+     */
+    private final ScheduledExecutorService propagation;
+
+    /**
+     * The number of changes made, guarded by {@link #database}
+     */
+    private long changes;
+
+    private final Tables tables = new Tables();
+
+    private final List<Server> servers = new ArrayList<>();
+
+    private ImmutableList<String> baseUrls;
+
+    private final LongAdder[] requests;
+
+    private final LongAdder[] serviceNanos;
+
+    /**
+     * @param latencyNanos time each read request is held for before being handled
+     * @param writeLatencyNanos time each request changing the catalog is held for
+     * @param propagationDelayNanos time for a catalog change to reach the other members
+     * @param threads number of threads serving requests on each member
+     * @param featuresPerTable number of features in each table, which GetFeature returns
+     */
+    public SimulatedCluster(int numMembers, long latencyNanos, long writeLatencyNanos,
+            long propagationDelayNanos, int threads, int featuresPerTable, EventLog log) {
+        checkArgument(numMembers > 0, "simulator.members must be > 0: %s", numMembers);
+        checkArgument(latencyNanos >= 0, "simulator.latency must be >= 0: %s", latencyNanos);
+        checkArgument(writeLatencyNanos >= 0, "simulator.writeLatency must be >= 0: %s",
+                writeLatencyNanos);
+        checkArgument(propagationDelayNanos >= 0, "simulator.propagationDelay must be >= 0: %s",
+                propagationDelayNanos);
+        checkArgument(threads > 0, "simulator.threads must be > 0: %s", threads);
+        this.numMembers = numMembers;
+        this.latencyNanos = latencyNanos;
+        this.writeLatencyNanos = writeLatencyNanos;
+        this.propagationDelayNanos = propagationDelayNanos;
+        this.threads = threads;
+        this.featuresPerTable = featuresPerTable;
+        this.log = log;
+        this.replicas = new Replica[numMembers];
+        this.requests = new LongAdder[numMembers];
+        this.serviceNanos = new LongAdder[numMembers];
+        for (int m = 0; m < numMembers; m++) {
+            replicas[m] = new Replica(m);
+            requests[m] = new LongAdder();
+            serviceNanos[m] = new LongAdder();
+        }
+        this.propagation = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setDaemon(true).setNameFormat("simulator-propagation").build());
+    }
+
+    /**
+     * Starts a server on a free local port for each member
+     */
+    public void start() throws Exception {
+        ImmutableList.Builder<String> urls = ImmutableList.builder();
+        for (int m = 0; m < numMembers; m++) {
+            Server server = new Server(new Context(), Protocol.HTTP, 0, new MemberRestlet(m));
+            server.getContext().getParameters().add("defaultThreads", String.valueOf(threads));
+            server.start();
+            servers.add(server);
+            String url = "http://localhost:" + server.getActualPort() + "/geoserver/";
+            urls.add(url);
+            log.log(Level.INFO, "Started simulated cluster member %s\n", url);
+        }
+        baseUrls = urls.build();
+    }
+
+    /**
+     * @return the base URLs of the members, once {@link #start() started}
+     */
+    public ImmutableList<String> getBaseUrls() {
+        return baseUrls;
+    }
+
+    /**
+     * @return the in-memory tables the simulated members publish layers off
+     */
+    public TableFixtures getTables() {
+        return tables;
+    }
+
+    @Override
+    public void close() {
+        for (Server server : servers) {
+            try {
+                server.stop();
+            } catch (Exception e) {
+                log.log(Level.INFO, "ERROR stopping simulated cluster member: %s\n",
+                        e.getMessage());
+            }
+        }
+        servers.clear();
+        propagation.shutdownNow();
+    }
+
+    public void report(final PrintStream out) {
+        final long changeCount;
+        synchronized (database) {
+            changeCount = changes;
+        }
+        out.printf("Simulated cluster: %d members, latency %.1f ms read and %.1f ms write, "
+                + "propagation delay %.1f ms, %,d catalog changes\n", numMembers,
+                latencyNanos / 1e6, writeLatencyNanos / 1e6, propagationDelayNanos / 1e6,
+                changeCount);
+        out.printf("%-40s %10s %12s\n", "member", "requests", "service ms");
+        for (int m = 0; m < numMembers; m++) {
+            long count = requests[m].sum();
+            out.printf("%-40s %,10d %12.3f\n", baseUrls == null ? "member " + m : baseUrls.get(m),
+                    count, count == 0 ? 0d : serviceNanos[m].sum() / 1e6 / count);
+        }
+    }
+
+    /**
+     * A member's server, holding each request for the service latency and then handing it to
+     * {@link SimulatedCluster#handle}
+     */
+    private class MemberRestlet extends Restlet {
+
+        private final int member;
+
+        MemberRestlet(int member) {
+            this.member = member;
+        }
+
+        @Override
+        public void handle(final Request request, final Response response) {
+            final long start = System.nanoTime();
+            final String method = request.getMethod().getName();
+            String path = request.getResourceRef().getPath();
+            int root = path.indexOf("/geoserver/");
+            path = root < 0 ? path.substring(1) : path.substring(root + "/geoserver/".length());
+            try {
+                final byte[] body = request.isEntityAvailable() ? ByteStreams.toByteArray(request
+                        .getEntity().getStream()) : null;
+                hold(start, "GET".equals(method) ? latencyNanos : writeLatencyNanos);
+                final Reply reply = SimulatedCluster.this.handle(member, method, path, request
+                        .getResourceRef().getQuery(), body);
+                response.setStatus(Status.valueOf(reply.status));
+                response.setEntity(new OutputRepresentation(reply.xml ? MediaType.TEXT_XML
+                        : MediaType.TEXT_PLAIN) {
+                    @Override
+                    public void write(OutputStream out) throws IOException {
+                        reply.body.write(out);
+                    }
+                });
+            } catch (IOException e) {
+                response.setStatus(Status.SERVER_ERROR_INTERNAL);
+                response.setEntity(e.getMessage(), MediaType.TEXT_PLAIN);
+            } finally {
+                requests[member].increment();
+                serviceNanos[member].add(System.nanoTime() - start);
+            }
+        }
+
+        private void hold(final long start, final long nanos) {
+            long wait;
+            while ((wait = start + nanos - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+        }
+    }
+
+    /**
+     * Writes out a response body
+     */
+    static interface Body {
+        void write(OutputStream out) throws IOException;
+    }
+
+    static final class Reply {
+        final int status;
+
+        final boolean xml;
+
+        final Body body;
+
+        Reply(int status, boolean xml, Body body) {
+            this.status = status;
+            this.xml = xml;
+            this.body = body;
+        }
+
+        static Reply text(final int status, final String text) {
+            return new Reply(status, false, new Body() {
+                @Override
+                public void write(OutputStream out) throws IOException {
+                    out.write(text.getBytes(Charsets.UTF_8));
+                }
+            });
+        }
+
+        static Reply xml(final int status, final XmlBody body) {
+            return new Reply(status, true, new Body() {
+                @Override
+                public void write(OutputStream out) throws IOException {
+                    Writer writer = new BufferedWriter(new OutputStreamWriter(out,
+                            Charsets.UTF_8));
+                    writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+                    body.write(writer);
+                    writer.flush();
+                }
+            });
+        }
+    }
+
+    static interface XmlBody {
+        void write(Writer out) throws IOException;
+    }
+
+    private static Reply notFound(final String what) {
+        return Reply.text(404, "No such " + what);
+    }
+
+    /**
+     * Handles a request to the given member once held for the service latency
+     *
+     * @param path the request path relative to the member's base URL
+     * @param query the raw query string, {@code null} if none
+     * @param body the request body, {@code null} if none
+     */
+    Reply handle(final int member, final String method, final String path, final String query,
+            final byte[] body) throws IOException {
+        final List<String> segments = Splitter.on('/').splitToList(path);
+        final String last = segments.get(segments.size() - 1);
+        if (!"rest".equals(segments.get(0))) {
+            if ("wfs".equals(last) || "ows".equals(last)) {
+                return wfs(replicas[member], segments.size() > 1 ? segments.get(0) : null,
+                        parseQuery(query));
+            }
+            return notFound("service " + path);
+        }
+        final boolean recurse = "true".equals(parseQuery(query).get("recurse"));
+        final int size = segments.size();
+        try {
+            if (size == 2 && "workspaces.xml".equals(last) && "GET".equals(method)) {
+                return listWorkspaces(replicas[member]);
+            }
+            if (size == 2 && "workspaces".equals(last) && "POST".equals(method)) {
+                return postWorkspace(member, parse(body));
+            }
+            if (size == 2 && "layers.xml".equals(last) && "GET".equals(method)) {
+                return listLayers(replicas[member]);
+            }
+            if (size == 3 && "about".equals(segments.get(1))
+                    && "system-status.xml".equals(last) && "GET".equals(method)) {
+                return systemStatus();
+            }
+            if (size == 3 && "layers".equals(segments.get(1)) && "DELETE".equals(method)) {
+                return deleteLayer(member, stripXml(last));
+            }
+            if (size < 3 || !"workspaces".equals(segments.get(1))) {
+                return notFound("resource " + path);
+            }
+            final String ws = stripXml(segments.get(2));
+            if (size == 3 && "DELETE".equals(method)) {
+                return deleteWorkspace(member, ws, recurse);
+            }
+            if (size == 4 && "datastores".equals(last) && "POST".equals(method)) {
+                return postDataStore(member, ws, parse(body));
+            }
+            if (size < 5 || !"datastores".equals(segments.get(3))) {
+                return notFound("resource " + path);
+            }
+            final String ds = stripXml(segments.get(4));
+            if (size == 5 && "DELETE".equals(method)) {
+                return deleteDataStore(member, ws, ds, recurse);
+            }
+            if (size == 6 && "featuretypes".equals(last) && "POST".equals(method)) {
+                return postFeatureType(member, ws, ds, parse(body));
+            }
+            if (size == 7 && "featuretypes".equals(segments.get(5))) {
+                final String ft = stripXml(last);
+                if ("GET".equals(method)) {
+                    return getFeatureType(replicas[member], ws, ds, ft);
+                }
+                if ("PUT".equals(method)) {
+                    return putFeatureType(member, ws, ds, ft, parse(body));
+                }
+                if ("DELETE".equals(method)) {
+                    return deleteFeatureType(member, ws, ds, ft, recurse);
+                }
+            }
+            return notFound("resource " + path);
+        } catch (XMLStreamException | IllegalArgumentException e) {
+            return Reply.text(400, "Malformed request: " + e.getMessage());
+        }
+    }
+
+    private static String stripXml(final String segment) {
+        return segment.endsWith(".xml") ? segment.substring(0, segment.length() - 4) : segment;
+    }
+
+    /**
+     * @return the query parameters, with lower case names
+     */
+    private static Map<String, String> parseQuery(final String query)
+            throws UnsupportedEncodingException {
+        Map<String, String> params = new HashMap<>();
+        if (query != null) {
+            for (String param : Splitter.on('&').omitEmptyStrings().split(query)) {
+                int eq = param.indexOf('=');
+                String name = eq < 0 ? param : param.substring(0, eq);
+                String value = eq < 0 ? "" : URLDecoder.decode(param.substring(eq + 1), "UTF-8");
+                params.put(name.toLowerCase(), value);
+            }
+        }
+        return params;
+    }
+
+    /**
+     * What a request body holds: the text of the root element's children, and its
+     * {@code attributes} if it has any
+     */
+    private static final class Document {
+        final Map<String, String> fields = new HashMap<>();
+
+        LinkedHashMap<String, String> attributes;
+    }
+
+    private static Document parse(final byte[] body) throws XMLStreamException {
+        checkArgument(body != null, "no request body");
+        final Document doc = new Document();
+        final XMLStreamReader reader = XML_FACTORY.createXMLStreamReader(new ByteArrayInputStream(
+                body));
+        try {
+            int depth = 0;
+            boolean inAttributes = false, hasChildren = false;
+            String attName = null, attBinding = null;
+            StringBuilder text = new StringBuilder();
+            while (reader.hasNext()) {
+                final int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    text.setLength(0);
+                    if (depth == 2) {
+                        inAttributes = "attributes".equals(reader.getLocalName());
+                        hasChildren = false;
+                        if (inAttributes) {
+                            doc.attributes = new LinkedHashMap<>();
+                        }
+                    } else if (depth == 3) {
+                        hasChildren = true;
+                        attName = attBinding = null;
+                    }
+                } else if (event == XMLStreamConstants.CHARACTERS) {
+                    text.append(reader.getText());
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    final String name = reader.getLocalName();
+                    if (depth == 2 && !hasChildren && !inAttributes) {
+                        doc.fields.put(name, text.toString().trim());
+                    } else if (depth == 3 && inAttributes) {
+                        doc.attributes.put(attName, attBinding);
+                    } else if (depth == 4 && inAttributes && "name".equals(name)) {
+                        attName = text.toString().trim();
+                    } else if (depth == 4 && inAttributes && "binding".equals(name)) {
+                        attBinding = text.toString().trim();
+                    }
+                    depth--;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        checkArgument(doc.fields.get("name") != null, "no name given");
+        return doc;
+    }
+
+    private static final class FeatureType {
+        final String name, nativeName, title;
+
+        final ImmutableMap<String, String> attributes;
+
+        final boolean layer;
+
+        FeatureType(String name, String nativeName, String title,
+                ImmutableMap<String, String> attributes, boolean layer) {
+            this.name = name;
+            this.nativeName = nativeName;
+            this.title = title;
+            this.attributes = attributes;
+            this.layer = layer;
+        }
+    }
+
+    private static final class Store {
+        final ConcurrentHashMap<String, FeatureType> featureTypes = new ConcurrentHashMap<>();
+    }
+
+    private static final class Workspace {
+        final ConcurrentHashMap<String, Store> stores = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * A change to the catalog, applied to the {@link #database} and then to every
+     * {@link Replica} in the same order
+     */
+    private static abstract class Change {
+        /**
+         * When the change reaches the members other than the one that made it
+         */
+        long dueNanos;
+
+        abstract void apply(Replica catalog);
+    }
+
+    /**
+     * A copy of the catalog, as stored or as seen by one member
+     */
+    private static final class Replica {
+        final int member;
+
+        final ConcurrentHashMap<String, Workspace> workspaces = new ConcurrentHashMap<>();
+
+        /**
+         * Changes not applied yet, oldest first, guarded by {@code this}
+         */
+        private final ArrayDeque<Change> inbox = new ArrayDeque<>();
+
+        Replica(int member) {
+            this.member = member;
+        }
+
+        synchronized void enqueue(final Change change) {
+            inbox.add(change);
+        }
+
+        /**
+         * Applies the changes that reached this member by now
+         */
+        synchronized void applyDue() {
+            final long now = System.nanoTime();
+            while (!inbox.isEmpty() && inbox.peek().dueNanos - now <= 0) {
+                inbox.poll().apply(this);
+            }
+        }
+
+        synchronized void catchUp() {
+            while (!inbox.isEmpty()) {
+                inbox.poll().apply(this);
+            }
+        }
+
+        Store store(final String ws, final String ds) {
+            Workspace workspace = workspaces.get(ws);
+            return workspace == null ? null : workspace.stores.get(ds);
+        }
+
+        FeatureType featureType(final String ws, final String ds, final String ft) {
+            Store store = store(ws, ds);
+            return store == null ? null : store.featureTypes.get(ft);
+        }
+
+        /**
+         * @return the feature type of the given name in any store of the workspace
+         */
+        FeatureType featureType(final String ws, final String ft) {
+            Workspace workspace = workspaces.get(ws);
+            if (workspace != null) {
+                for (Store store : workspace.stores.values()) {
+                    FeatureType featureType = store.featureTypes.get(ft);
+                    if (featureType != null) {
+                        return featureType;
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Applies the change to the database and delivers it to the members, called holding the
+     * {@link #database} lock once the change was checked against it
+     */
+    private void commit(final int member, final Change change) {
+        changes++;
+        change.dueNanos = System.nanoTime() + propagationDelayNanos;
+        change.apply(database);
+        for (final Replica replica : replicas) {
+            replica.enqueue(change);
+            if (replica.member == member || propagationDelayNanos == 0) {
+                replica.catchUp();
+            } else {
+                propagation.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        replica.applyDue();
+                    }
+                }, propagationDelayNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private Reply postWorkspace(final int member, final Document doc) {
+        final String ws = doc.fields.get("name");
+        synchronized (database) {
+            if (database.workspaces.containsKey(ws)) {
+                return Reply.text(409, "Workspace '" + ws + "' already exists");
+            }
+            commit(member, new Change() {
+                @Override
+                void apply(Replica catalog) {
+                    catalog.workspaces.put(ws, new Workspace());
+                }
+            });
+        }
+        return Reply.text(201, ws);
+    }
+
+    private Reply deleteWorkspace(final int member, final String ws, final boolean recurse) {
+        synchronized (database) {
+            Workspace workspace = database.workspaces.get(ws);
+            if (workspace == null) {
+                return notFound("workspace " + ws);
+            }
+            if (!recurse && !workspace.stores.isEmpty()) {
+                return Reply.text(403, "Workspace " + ws + " not empty");
+            }
+            commit(member, new Change() {
+                @Override
+                void apply(Replica catalog) {
+                    catalog.workspaces.remove(ws);
+                }
+            });
+        }
+        return Reply.text(200, "");
+    }
+
+    private Reply postDataStore(final int member, final String ws, final Document doc) {
+        final String ds = doc.fields.get("name");
+        synchronized (database) {
+            Workspace workspace = database.workspaces.get(ws);
+            if (workspace == null) {
+                return notFound("workspace " + ws);
+            }
+            if (workspace.stores.containsKey(ds)) {
+                return Reply.text(409, "Store '" + ds + "' already exists in workspace " + ws);
+            }
+            commit(member, new Change() {
+                @Override
+                void apply(Replica catalog) {
+                    catalog.workspaces.get(ws).stores.put(ds, new Store());
+                }
+            });
+        }
+        return Reply.text(201, ds);
+    }
+
+    private Reply deleteDataStore(final int member, final String ws, final String ds,
+            final boolean recurse) {
+        synchronized (database) {
+            Store store = database.store(ws, ds);
+            if (store == null) {
+                return notFound("datastore " + ws + ":" + ds);
+            }
+            if (!recurse && !store.featureTypes.isEmpty()) {
+                return Reply.text(403, "Store " + ds + " not empty");
+            }
+            commit(member, new Change() {
+                @Override
+                void apply(Replica catalog) {
+                    catalog.workspaces.get(ws).stores.remove(ds);
+                }
+            });
+        }
+        return Reply.text(200, "");
+    }
+
+    /**
+     * Publishes the feature type and its layer, with the attributes given or else the columns
+     * of its table
+     */
+    private Reply postFeatureType(final int member, final String ws, final String ds,
+            final Document doc) {
+        final String name = doc.fields.get("name");
+        final String nativeName = doc.fields.containsKey("nativeName") ? doc.fields
+                .get("nativeName") : name;
+        final ImmutableMap<String, String> attributes;
+        if (doc.attributes != null) {
+            attributes = ImmutableMap.copyOf(doc.attributes);
+        } else {
+            attributes = tables.columns.get(nativeName);
+            if (attributes == null) {
+                return Reply.text(500, "Table " + nativeName + " not found in store " + ds);
+            }
+        }
+        final String title = doc.fields.containsKey("title") ? doc.fields.get("title") : name;
+        final FeatureType featureType = new FeatureType(name, nativeName, title, attributes,
+                true);
+        synchronized (database) {
+            Store store = database.store(ws, ds);
+            if (store == null) {
+                return notFound("datastore " + ws + ":" + ds);
+            }
+            if (store.featureTypes.containsKey(name)) {
+                return Reply.text(409, "Resource named '" + name + "' already exists in store: '"
+                        + ds + "'");
+            }
+            putFeatureType(member, ws, ds, featureType);
+        }
+        return Reply.text(201, name);
+    }
+
+    /**
+     * Replaces the title and attributes the document gives
+     */
+    private Reply putFeatureType(final int member, final String ws, final String ds,
+            final String ft, final Document doc) {
+        synchronized (database) {
+            FeatureType current = database.featureType(ws, ds, ft);
+            if (current == null) {
+                return notFound("feature type " + ws + ":" + ft);
+            }
+            String title = doc.fields.containsKey("title") ? doc.fields.get("title")
+                    : current.title;
+            ImmutableMap<String, String> attributes = doc.attributes == null ? current.attributes
+                    : ImmutableMap.copyOf(doc.attributes);
+            putFeatureType(member, ws, ds, new FeatureType(current.name, current.nativeName,
+                    title, attributes, current.layer));
+        }
+        return Reply.text(200, "");
+    }
+
+    private Reply deleteFeatureType(final int member, final String ws, final String ds,
+            final String ft, final boolean recurse) {
+        synchronized (database) {
+            FeatureType current = database.featureType(ws, ds, ft);
+            if (current == null) {
+                return notFound("feature type " + ws + ":" + ft);
+            }
+            if (!recurse && current.layer) {
+                return Reply.text(403, "Feature type " + ft + " is published by a layer");
+            }
+            commit(member, new Change() {
+                @Override
+                void apply(Replica catalog) {
+                    catalog.store(ws, ds).featureTypes.remove(ft);
+                }
+            });
+        }
+        return Reply.text(200, "");
+    }
+
+    private Reply deleteLayer(final int member, final String layer) {
+        synchronized (database) {
+            for (Map.Entry<String, Workspace> ws : database.workspaces.entrySet()) {
+                for (Map.Entry<String, Store> ds : ws.getValue().stores.entrySet()) {
+                    FeatureType current = ds.getValue().featureTypes.get(layer);
+                    if (current != null && current.layer) {
+                        putFeatureType(member, ws.getKey(), ds.getKey(), new FeatureType(
+                                current.name, current.nativeName, current.title,
+                                current.attributes, false));
+                        return Reply.text(200, "");
+                    }
+                }
+            }
+        }
+        return notFound("layer " + layer);
+    }
+
+    private void putFeatureType(final int member, final String ws, final String ds,
+            final FeatureType featureType) {
+        commit(member, new Change() {
+            @Override
+            void apply(Replica catalog) {
+                catalog.store(ws, ds).featureTypes.put(featureType.name, featureType);
+            }
+        });
+    }
+
+    private Reply listWorkspaces(final Replica catalog) {
+        return Reply.xml(200, new XmlBody() {
+            @Override
+            public void write(Writer out) throws IOException {
+                out.write("<workspaces>");
+                for (String ws : catalog.workspaces.keySet()) {
+                    out.write("<workspace><name>" + ws + "</name></workspace>");
+                }
+                out.write("</workspaces>");
+            }
+        });
+    }
+
+    /**
+     * Reports the JVM the simulated members run in, shared by all of them, with the metrics of a
+     * GeoServer {@code about/system-status} document the health sampler reads by default
+     */
+    private static Reply systemStatus() {
+        final Runtime runtime = Runtime.getRuntime();
+        final double memoryUsage = 100d * (runtime.totalMemory() - runtime.freeMemory())
+                / runtime.maxMemory();
+        final int threads = Thread.activeCount();
+        final double load = ManagementFactory.getOperatingSystemMXBean()
+                .getSystemLoadAverage();
+        return Reply.xml(200, new XmlBody() {
+            @Override
+            public void write(Writer out) throws IOException {
+                out.write("<metrics>");
+                writeMetric(out, "GEOSERVER_JVM_MEMORY_USAGE", memoryUsage);
+                writeMetric(out, "GEOSERVER_THREADS", threads);
+                if (load >= 0) {
+                    writeMetric(out, "SYSTEM_AVERAGE_LOAD_1", load);
+                }
+                out.write("</metrics>");
+            }
+        });
+    }
+
+    private static void writeMetric(final Writer out, final String name, final double value)
+            throws IOException {
+        out.write("<metric><available>true</available><name>" + name + "</name><value>" + value
+                + "</value></metric>");
+    }
+
+    private Reply listLayers(final Replica catalog) {
+        return Reply.xml(200, new XmlBody() {
+            @Override
+            public void write(Writer out) throws IOException {
+                out.write("<layers>");
+                for (Workspace ws : catalog.workspaces.values()) {
+                    for (Store ds : ws.stores.values()) {
+                        for (FeatureType ft : ds.featureTypes.values()) {
+                            if (ft.layer) {
+                                out.write("<layer><name>" + ft.name + "</name></layer>");
+                            }
+                        }
+                    }
+                }
+                out.write("</layers>");
+            }
+        });
+    }
+
+    private Reply getFeatureType(final Replica catalog, final String ws, final String ds,
+            final String ft) {
+        final FeatureType featureType = catalog.featureType(ws, ds, ft);
+        if (featureType == null) {
+            return notFound("feature type " + ws + ":" + ft);
+        }
+        return Reply.xml(200, new XmlBody() {
+            @Override
+            public void write(Writer out) throws IOException {
+                out.write("<featureType><name>" + featureType.name + "</name><nativeName>"
+                        + featureType.nativeName + "</nativeName><title>" + featureType.title
+                        + "</title><srs>EPSG:4326</srs><enabled>true</enabled><attributes>");
+                for (Map.Entry<String, String> att : featureType.attributes.entrySet()) {
+                    out.write("<attribute><name>" + att.getKey() + "</name><binding>"
+                            + att.getValue() + "</binding></attribute>");
+                }
+                out.write("</attributes></featureType>");
+            }
+        });
+    }
+
+    private Reply wfs(final Replica catalog, final String virtualWorkspace,
+            final Map<String, String> params) {
+        final String request = params.get("request");
+        if ("GetCapabilities".equalsIgnoreCase(request)) {
+            return getCapabilities(catalog);
+        }
+        final String typeName = params.get("typename");
+        if (typeName == null) {
+            return serviceException("No typeName given");
+        }
+        final int colon = typeName.indexOf(':');
+        final String ws = colon < 0 ? virtualWorkspace : typeName.substring(0, colon);
+        final FeatureType featureType = ws == null ? null : catalog.featureType(ws,
+                typeName.substring(colon + 1));
+        if (featureType == null || !featureType.layer) {
+            return serviceException("Feature type " + typeName + " unknown");
+        }
+        if ("DescribeFeatureType".equalsIgnoreCase(request)) {
+            return describeFeatureType(ws, featureType);
+        }
+        if ("GetFeature".equalsIgnoreCase(request)) {
+            int count = featuresPerTable;
+            if (params.containsKey("maxfeatures")) {
+                final String maxFeatures = params.get("maxfeatures");
+                try {
+                    count = Math.min(count, Integer.parseInt(maxFeatures));
+                } catch (NumberFormatException e) {
+                    return serviceException("Invalid maxFeatures " + maxFeatures);
+                }
+                if (count < 0) {
+                    return serviceException("Invalid maxFeatures " + maxFeatures);
+                }
+            }
+            return getFeature(ws, featureType, count);
+        }
+        return serviceException("Operation " + request + " not supported");
+    }
+
+    /**
+     * WFS 1.0 reports errors with a successful HTTP status
+     */
+    private static Reply serviceException(final String message) {
+        return Reply.xml(200, new XmlBody() {
+            @Override
+            public void write(Writer out) throws IOException {
+                out.write("<ServiceExceptionReport version=\"1.2.0\"><ServiceException>"
+                        + message + "</ServiceException></ServiceExceptionReport>");
+            }
+        });
+    }
+
+    private Reply getCapabilities(final Replica catalog) {
+        return Reply.xml(200, new XmlBody() {
+            @Override
+            public void write(Writer out) throws IOException {
+                out.write("<WFS_Capabilities version=\"1.0.0\"><FeatureTypeList>");
+                for (Map.Entry<String, Workspace> ws : catalog.workspaces.entrySet()) {
+                    for (Store ds : ws.getValue().stores.values()) {
+                        for (FeatureType ft : ds.featureTypes.values()) {
+                            if (ft.layer) {
+                                out.write("<FeatureType><Name>" + ws.getKey() + ":" + ft.name
+                                        + "</Name><Title>" + ft.title
+                                        + "</Title><SRS>EPSG:4326</SRS></FeatureType>");
+                            }
+                        }
+                    }
+                }
+                out.write("</FeatureTypeList></WFS_Capabilities>");
+            }
+        });
+    }
+
+    private static boolean isGeometry(final String binding) {
+        return binding != null && binding.contains(".geom.");
+    }
+
+    private Reply describeFeatureType(final String ws, final FeatureType featureType) {
+        return Reply.xml(200, new XmlBody() {
+            @Override
+            public void write(Writer out) throws IOException {
+                out.write("<xsd:schema xmlns:xsd=\"http://www.w3.org/2001/XMLSchema\" "
+                        + "xmlns:gml=\"http://www.opengis.net/gml\"><xsd:complexType name=\""
+                        + featureType.name + "Type\"><xsd:complexContent><xsd:extension "
+                        + "base=\"gml:AbstractFeatureType\"><xsd:sequence>");
+                for (Map.Entry<String, String> att : featureType.attributes.entrySet()) {
+                    out.write("<xsd:element maxOccurs=\"1\" minOccurs=\"0\" name=\""
+                            + att.getKey() + "\" nillable=\"true\" type=\""
+                            + (isGeometry(att.getValue()) ? "gml:GeometryPropertyType"
+                                    : "xsd:string") + "\"/>");
+                }
+                out.write("</xsd:sequence></xsd:extension></xsd:complexContent>"
+                        + "</xsd:complexType><xsd:element name=\"" + featureType.name
+                        + "\" substitutionGroup=\"gml:_Feature\" type=\"" + ws + ":"
+                        + featureType.name + "Type\"/></xsd:schema>");
+            }
+        });
+    }
+
+    /**
+     * Streams out the features, one degree squares laid out row by row as in the PostGIS tables
+     */
+    private Reply getFeature(final String ws, final FeatureType featureType, final int count) {
+        return Reply.xml(200, new XmlBody() {
+            @Override
+            public void write(Writer out) throws IOException {
+                final String type = ws + ":" + featureType.name;
+                out.write("<wfs:FeatureCollection xmlns:wfs=\"http://www.opengis.net/wfs\" "
+                        + "xmlns:gml=\"http://www.opengis.net/gml\" xmlns:" + ws
+                        + "=\"http://" + ws + "\">");
+                for (int i = 0; i < count; i++) {
+                    out.write("<gml:featureMember><" + type + " fid=\"" + featureType.name + "."
+                            + (i + 1) + "\">");
+                    for (Map.Entry<String, String> att : featureType.attributes.entrySet()) {
+                        out.write("<" + ws + ":" + att.getKey() + ">");
+                        if (isGeometry(att.getValue())) {
+                            int x = i % 360 - 180, y = (i / 360) % 180 - 90;
+                            out.write("<gml:MultiPolygon srsName=\"EPSG:4326\"><gml:polygonMember>"
+                                    + "<gml:Polygon><gml:outerBoundaryIs><gml:LinearRing>"
+                                    + "<gml:coordinates>" + x + "," + y + " " + x + "," + (y + 1)
+                                    + " " + (x + 1) + "," + (y + 1) + " " + (x + 1) + "," + y
+                                    + " " + x + "," + y + "</gml:coordinates></gml:LinearRing>"
+                                    + "</gml:outerBoundaryIs></gml:Polygon></gml:polygonMember>"
+                                    + "</gml:MultiPolygon>");
+                        } else {
+                            out.write("state_" + i);
+                        }
+                        out.write("</" + ws + ":" + att.getKey() + ">");
+                    }
+                    out.write("</" + type + "></gml:featureMember>");
+                }
+                out.write("</wfs:FeatureCollection>");
+            }
+        });
+    }
+
+    /**
+     * The tables of the simulated database, as the columns each has
+     */
+    private class Tables implements TableFixtures {
+
+        final ConcurrentHashMap<String, ImmutableMap<String, String>> columns =
+                new ConcurrentHashMap<>();
+
+        private final LongAdder created = new LongAdder();
+
+        private final LongAdder dropped = new LongAdder();
+
+        @Override
+        public void createTable(String table) {
+            columns.put(table, TABLE_COLUMNS);
+            created.increment();
+        }
+
+        @Override
+        public void alterTableAddColumn(String table) {
+            ImmutableMap<String, String> current = columns.get(table);
+            checkArgument(current != null, "no such table: %s", table);
+            columns.put(table, ImmutableMap.<String, String> builder().putAll(current)
+                    .put("newcol", "java.lang.String").build());
+        }
+
+        @Override
+        public void dropTable(String table) {
+            columns.remove(table);
+            dropped.increment();
+        }
+
+        @Override
+        public void createTables(int first, int count) {
+            for (int i = first; i < first + count; i++) {
+                createTable(PostgisFixtures.tableName(i));
+            }
+            log.log(Level.INFO, "Created %,d simulated tables\n", count);
+        }
+
+        @Override
+        public void dropTables(int first, int count) {
+            for (int i = first; i < first + count; i++) {
+                dropTable(PostgisFixtures.tableName(i));
+            }
+        }
+
+        @Override
+        public void report(PrintStream out) {
+            out.printf("Simulated tables: %,d created, %,d dropped, %,d features each\n",
+                    created.sum(), dropped.sum(), featuresPerTable);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
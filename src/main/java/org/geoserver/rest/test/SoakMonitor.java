@@ -0,0 +1,309 @@
+package org.geoserver.rest.test;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.Closeable;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.HdrHistogram.Histogram;
+import org.geoserver.rest.test.EventLog.Level;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Watches a soak run, one that keeps cycling through the test runs for a fixed time, for slow
+ * degradation such as leaked data stores or growing caches on the cluster members.
+ * <p>
+ * Every window the median and p99 latency and error rate of each operation over that window, and
+ * the median time to consistency, are added to a series. Once a series has
+ * {@link #getTrendWindows()} windows, a least squares line is fit to the medians of the latest
+ * ones: if it rises faster than the drift threshold, as a percentage of their mean per hour, and
+ * fits well enough ({@link #MIN_R_SQUARED}) for the rise not to be noise, the series is flagged as
+ * drifting. A warning is logged the first time, and the run fails.
+ */
+public class SoakMonitor implements Closeable {
+
+    /**
+     * Coefficient of determination below which a rising line is not considered a trend
+     */
+    static final double MIN_R_SQUARED = 0.5;
+
+    private static final Pattern DURATION = Pattern.compile("(\\d+)\\s*([smhd]?)");
+
+    private final LatencyMetrics metrics;
+
+    private final long durationNanos;
+
+    private final long windowNanos;
+
+    private final int trendWindows;
+
+    private final double driftPercentPerHour;
+
+    private final EventLog log;
+
+    private final List<Series> series = new ArrayList<>();
+
+    /**
+     * Cumulative latencies and failures by operation at the end of the previous window
+     */
+    private final Histogram[] previous = new Histogram[Operation.values().length];
+
+    private final long[] previousFailures = new long[Operation.values().length];
+
+    private ScheduledExecutorService scheduler;
+
+    private long startNanos;
+
+    private int windows;
+
+    /**
+     * The values of a metric at the end of each window, {@code NaN} where there were none
+     */
+    private static class Series {
+
+        final String label;
+
+        final List<Double> hours = new ArrayList<>();
+
+        final List<Double> p50 = new ArrayList<>();
+
+        final List<Double> p99 = new ArrayList<>();
+
+        final List<Double> errorPercent = new ArrayList<>();
+
+        /**
+         * The last trend fit: slope of the median in ms per hour, growth in percent of the mean
+         * per hour, and coefficient of determination
+         */
+        double slope, growth, rSquared;
+
+        /**
+         * The window the series was first flagged at, {@code -1} if it wasn't
+         */
+        int driftWindow = -1;
+
+        Series(String label) {
+            this.label = label;
+        }
+
+        void add(double hour, Histogram h, double errors) {
+            hours.add(Double.valueOf(hour));
+            boolean empty = h == null || h.getTotalCount() == 0;
+            p50.add(Double.valueOf(empty ? Double.NaN : h.getValueAtPercentile(50) / 1000d));
+            p99.add(Double.valueOf(empty ? Double.NaN : h.getValueAtPercentile(99) / 1000d));
+            errorPercent.add(Double.valueOf(errors));
+        }
+    }
+
+    public SoakMonitor(LatencyMetrics metrics, long durationNanos, long windowNanos,
+            int trendWindows, double driftPercentPerHour, EventLog log) {
+        checkArgument(windowNanos > 0 && windowNanos <= durationNanos,
+                "soak.window must be > 0 and no longer than duration");
+        checkArgument(trendWindows >= 3, "soak.trendWindows must be >= 3: %s", trendWindows);
+        checkArgument(driftPercentPerHour > 0, "soak.driftThreshold must be > 0: %s",
+                driftPercentPerHour);
+        this.metrics = metrics;
+        this.durationNanos = durationNanos;
+        this.windowNanos = windowNanos;
+        this.trendWindows = trendWindows;
+        this.driftPercentPerHour = driftPercentPerHour;
+        this.log = log;
+        for (Operation op : Operation.values()) {
+            series.add(new Series(op.label()));
+        }
+        series.add(new Series("time to consistency"));
+    }
+
+    /**
+     * @return the nanoseconds in a duration such as {@code 90s}, {@code 30m}, {@code 8h}, or
+     *         {@code 2d}, in seconds if it has no unit
+     */
+    public static long parseDuration(final String duration) {
+        Matcher m = DURATION.matcher(duration.trim().toLowerCase(Locale.ROOT));
+        checkArgument(m.matches(), "Invalid duration, expected a number followed by s, m, h, "
+                + "or d: %s", duration);
+        long amount = Long.parseLong(m.group(1));
+        switch (m.group(2)) {
+        case "m":
+            return TimeUnit.MINUTES.toNanos(amount);
+        case "h":
+            return TimeUnit.HOURS.toNanos(amount);
+        case "d":
+            return TimeUnit.DAYS.toNanos(amount);
+        default:
+            return TimeUnit.SECONDS.toNanos(amount);
+        }
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * @return the number of latest windows trends are fit to
+     */
+    public int getTrendWindows() {
+        return trendWindows;
+    }
+
+    /**
+     * Starts taking windows, right after {@link LatencyMetrics#start()}
+     */
+    public synchronized void start() {
+        startNanos = System.nanoTime();
+        for (Operation op : Operation.values()) {
+            previous[op.ordinal()] = metrics.merge(op, -1);
+            previousFailures[op.ordinal()] = metrics.failures(op);
+        }
+        metrics.takeConvergence();
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setDaemon(true).setNameFormat("soak-monitor").build());
+        scheduler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                window();
+            }
+        }, windowNanos, windowNanos, TimeUnit.NANOSECONDS);
+    }
+
+    synchronized void window() {
+        final int window = ++windows;
+        final double hour = (System.nanoTime() - startNanos) / 3.6e12;
+        for (Operation op : Operation.values()) {
+            Histogram total = metrics.merge(op, -1);
+            Histogram latencies = total.copy();
+            latencies.subtract(previous[op.ordinal()]);
+            previous[op.ordinal()] = total;
+            long failures = metrics.failures(op);
+            long failed = failures - previousFailures[op.ordinal()];
+            previousFailures[op.ordinal()] = failures;
+            long requests = latencies.getTotalCount() + failed;
+            series.get(op.ordinal()).add(hour, latencies, requests == 0 ? 0d
+                    : 100d * failed / requests);
+        }
+        series.get(series.size() - 1).add(hour, metrics.takeConvergence(), 0d);
+
+        for (Series s : series) {
+            if (!fitTrend(s)) {
+                continue;
+            }
+            boolean drifting = s.slope > 0 && s.growth > driftPercentPerHour
+                    && s.rSquared >= MIN_R_SQUARED;
+            if (drifting && s.driftWindow == -1) {
+                s.driftWindow = window;
+                log.log(Level.INFO, "WARNING: %s median latency drifting up %.1f%% per hour "
+                        + "(%.2f ms/h, r2 %.2f) over the last %d windows\n", s.label, s.growth,
+                        s.slope, s.rSquared, trendWindows);
+            }
+        }
+        if (log.isEnabled(Level.DEBUG)) {
+            for (Series s : series) {
+                int last = s.p50.size() - 1;
+                if (!s.p50.get(last).isNaN()) {
+                    log.log(Level.DEBUG, "Soak window %d: %s p50 %.1f ms, p99 %.1f ms, "
+                            + "%.2f%% errors\n", window, s.label, s.p50.get(last), s.p99
+                            .get(last), s.errorPercent.get(last));
+                }
+            }
+        }
+    }
+
+    /**
+     * Fits a least squares line to the medians of the latest {@link #trendWindows} windows that
+     * had any
+     *
+     * @return whether there were enough windows to
+     */
+    private boolean fitTrend(final Series s) {
+        List<Double> x = new ArrayList<>(), y = new ArrayList<>();
+        for (int i = s.p50.size() - 1; i >= 0 && x.size() < trendWindows; i--) {
+            if (!s.p50.get(i).isNaN()) {
+                x.add(s.hours.get(i));
+                y.add(s.p50.get(i));
+            }
+        }
+        final int n = x.size();
+        if (n < trendWindows) {
+            return false;
+        }
+        double meanX = 0, meanY = 0;
+        for (int i = 0; i < n; i++) {
+            meanX += x.get(i).doubleValue() / n;
+            meanY += y.get(i).doubleValue() / n;
+        }
+        double sxx = 0, sxy = 0, syy = 0;
+        for (int i = 0; i < n; i++) {
+            double dx = x.get(i).doubleValue() - meanX, dy = y.get(i).doubleValue() - meanY;
+            sxx += dx * dx;
+            sxy += dx * dy;
+            syy += dy * dy;
+        }
+        s.slope = sxx == 0 ? 0 : sxy / sxx;
+        s.growth = meanY == 0 ? 0 : 100 * s.slope / meanY;
+        s.rSquared = sxx == 0 || syy == 0 ? 0 : sxy * sxy / (sxx * syy);
+        return true;
+    }
+
+    /**
+     * @return whether any series was flagged as drifting
+     */
+    public synchronized boolean drifted() {
+        for (Series s : series) {
+            if (s.driftWindow != -1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Prints out, for each series that had data, how its first and last windows compare and the
+     * latest trend fit
+     */
+    public synchronized void report(final PrintStream out) {
+        out.printf("Soak run: %d windows of %ds, trend fit to the last %d, drift threshold "
+                + "%.1f%% per hour, latencies in ms\n", windows, TimeUnit.NANOSECONDS
+                .toSeconds(windowNanos), trendWindows, driftPercentPerHour);
+        out.printf("%-20s %9s %9s %9s %9s %9s %9s %9s %6s  %s\n", "series", "first p50",
+                "last p50", "first p99", "last p99", "max err%", "ms/h", "%/h", "r2", "trend");
+        for (Series s : series) {
+            int first = -1, last = -1;
+            double maxErrors = 0;
+            for (int i = 0; i < s.p50.size(); i++) {
+                if (!s.p50.get(i).isNaN()) {
+                    first = first == -1 ? i : first;
+                    last = i;
+                }
+                maxErrors = Math.max(maxErrors, s.errorPercent.get(i).doubleValue());
+            }
+            if (first == -1) {
+                continue;
+            }
+            boolean fitted = fitTrend(s);
+            out.printf("%-20s %9.1f %9.1f %9.1f %9.1f %9.2f %9s %9s %6s  %s\n", s.label,
+                    s.p50.get(first), s.p50.get(last), s.p99.get(first), s.p99.get(last),
+                    maxErrors, fitted ? String.format("%.2f", s.slope) : "-",
+                    fitted ? String.format("%.1f", s.growth) : "-",
+                    fitted ? String.format("%.2f", s.rSquared) : "-", s.driftWindow != -1
+                            ? "DRIFT from window " + s.driftWindow : fitted ? "stable"
+                                    : "too few windows");
+        }
+    }
+}
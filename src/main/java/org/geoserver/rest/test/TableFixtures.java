@@ -0,0 +1,35 @@
+package org.geoserver.rest.test;
+
+import java.io.Closeable;
+import java.io.PrintStream;
+
+/**
+ * The tables the test runs publish, named after {@link PostgisFixtures#tableName(int)}, holding
+ * the {@code state_name} and {@code geom} columns
+ */
+public interface TableFixtures extends Closeable {
+
+    public void createTable(String table);
+
+    /**
+     * Adds a {@code newcol} text column to the table
+     */
+    public void alterTableAddColumn(String table);
+
+    public void dropTable(String table);
+
+    /**
+     * Creates the tables for test runs {@code first} to {@code first + count - 1}
+     */
+    public void createTables(int first, int count);
+
+    /**
+     * Drops the tables for test runs {@code first} to {@code first + count - 1}
+     */
+    public void dropTables(int first, int count);
+
+    public void report(PrintStream out);
+
+    @Override
+    public void close();
+}
@@ -0,0 +1,67 @@
+package org.geoserver.rest.test;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Map;
+
+/**
+ * How long the transports wait on a cluster member before giving up on a request, so a hung
+ * member fails the requests sent to it instead of holding the threads that sent them.
+ * <p>
+ * The connect timeout is the same for all requests, the response timeout is set per
+ * {@link Operation} since a GetFeature of a large table legitimately takes much longer than a REST
+ * GET. It is both the socket read timeout, the longest wait for the next bytes of the response,
+ * and the deadline of the whole request up to its response being handed over, enforced by the
+ * {@link AbstractHttpTransport transports}. Zero waits forever. Requests that time out fail with
+ * a {@link java.net.SocketTimeoutException}, counted as
+ * {@link ErrorCounters.FailureClass#TIMEOUT timeouts}.
+ */
+public class Timeouts {
+
+    private final int connectMillis;
+
+    private final int[] readMillis = new int[Operation.values().length];
+
+    /**
+     * @param readMillis the read timeouts of the operations that don't use the default one
+     */
+    public Timeouts(int connectMillis, int defaultReadMillis, Map<Operation, Integer> readMillis) {
+        checkArgument(connectMillis >= 0, "timeout.connect must be >= 0: %s", connectMillis);
+        checkArgument(defaultReadMillis >= 0, "timeout.default must be >= 0: %s",
+                defaultReadMillis);
+        this.connectMillis = connectMillis;
+        for (Operation op : Operation.values()) {
+            Integer millis = readMillis.get(op);
+            checkArgument(millis == null || millis.intValue() >= 0,
+                    "timeout.%s must be >= 0: %s", op.key(), millis);
+            this.readMillis[op.ordinal()] = millis == null ? defaultReadMillis : millis
+                    .intValue();
+        }
+    }
+
+    public int connectMillis() {
+        return connectMillis;
+    }
+
+    /**
+     * @return {@code true} if no request may wait forever
+     */
+    public boolean isBounded() {
+        if (connectMillis == 0) {
+            return false;
+        }
+        for (int millis : readMillis) {
+            if (millis == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the socket read timeout and deadline of the operation's requests
+     */
+    public int readMillis(final Operation op) {
+        return readMillis[op.ordinal()];
+    }
+}
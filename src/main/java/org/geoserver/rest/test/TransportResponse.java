@@ -0,0 +1,58 @@
+package org.geoserver.rest.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The status and body of a response obtained through an {@link HttpTransport}.
+ * <p>
+ * The body stream is only valid until the response is {@link #close() closed}.
+ */
+public class TransportResponse implements Closeable {
+
+    private static final InputStream EMPTY = new ByteArrayInputStream(new byte[0]);
+
+    private final int status;
+
+    private final String reason;
+
+    private final InputStream body;
+
+    public TransportResponse(int status, String reason, InputStream body) {
+        this.status = status;
+        this.reason = reason;
+        this.body = body == null ? EMPTY : body;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public boolean isSuccess() {
+        return status >= 200 && status < 300;
+    }
+
+    public InputStream getBody() {
+        return body;
+    }
+
+    @Override
+    public void close() {
+        try {
+            body.close();
+        } catch (IOException ignore) {
+            //
+        }
+    }
+
+    @Override
+    public String toString() {
+        return reason + " (" + status + ")";
+    }
+}
@@ -0,0 +1,210 @@
+package org.geoserver.rest.test;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * A weighted mix of catalog reads and writes, as declared in a scenario file, that virtual users
+ * draw their next action from instead of running the fixed test task script.
+ * <p>
+ * The scenario file is a properties file with a {@code <action>.weight} and optional
+ * {@code <action>.thinkTime} in milliseconds per {@link Action}, a default {@code thinkTime},
+ * the number of {@code layers} the actions are spread over, and an optional random {@code seed}
+ * to draw the same sequence of actions on every run. Actions with no weight are not run.
+ * <p>
+ * The time each action took and whether it failed are kept per action, so each kind of traffic
+ * can be reported on its own.
+ */
+public class WorkloadMix {
+
+    private static final double[] PERCENTILES = { 50, 90, 99 };
+
+    /**
+     * What a virtual user can do, all of them against one of the layers set up for the mix
+     */
+    public static enum Action {
+        /**
+         * GET a feature type through REST
+         */
+        REST_READ("rest-read"), //
+        /**
+         * PUT a feature type through REST, with unchanged attributes
+         */
+        FT_PUT("ft-put"), //
+        /**
+         * Publish a new layer off the same table and delete it
+         */
+        LAYER_CREATE_DELETE("layer-create-delete"), //
+        /**
+         * WFS DescribeFeatureType
+         */
+        DESCRIBE_FEATURE_TYPE("dft"), //
+        /**
+         * WFS GetFeature for all the features of the layer
+         */
+        GET_FEATURE("getfeature");
+
+        private final String label;
+
+        private Action(String label) {
+            this.label = label;
+        }
+
+        public String label() {
+            return label;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    private final double[] weights = new double[Action.values().length];
+
+    /**
+     * Running totals of {@link #weights}, to pick an action with a single random number
+     */
+    private final double[] cumulativeWeights = new double[Action.values().length];
+
+    private final long[] thinkTimeNanos = new long[Action.values().length];
+
+    private final int layers;
+
+    private final Long seed;
+
+    private final Recorder[] latencies = new Recorder[Action.values().length];
+
+    /**
+     * What was drained from {@link #latencies} so far
+     */
+    private final Histogram[] totals = new Histogram[Action.values().length];
+
+    private final LongAdder[] failures = new LongAdder[Action.values().length];
+
+    public WorkloadMix(Properties scenario) {
+        long defaultThinkTime = Long.parseLong(scenario.getProperty("thinkTime", "0").trim());
+        checkArgument(defaultThinkTime >= 0, "thinkTime must be >= 0: %s", defaultThinkTime);
+        double total = 0;
+        for (Action action : Action.values()) {
+            final int i = action.ordinal();
+            double weight = Double.parseDouble(scenario.getProperty(action.label() + ".weight",
+                    "0").trim());
+            checkArgument(weight >= 0, "%s.weight must be >= 0: %s", action.label(), weight);
+            long thinkTime = Long.parseLong(scenario.getProperty(action.label() + ".thinkTime",
+                    String.valueOf(defaultThinkTime)).trim());
+            checkArgument(thinkTime >= 0, "%s.thinkTime must be >= 0: %s", action.label(),
+                    thinkTime);
+            weights[i] = weight;
+            total += weight;
+            cumulativeWeights[i] = total;
+            thinkTimeNanos[i] = TimeUnit.MILLISECONDS.toNanos(thinkTime);
+            latencies[i] = new Recorder(LatencyMetrics.HIGHEST_TRACKABLE_MICROS,
+                    LatencyMetrics.SIGNIFICANT_DIGITS);
+            totals[i] = LatencyMetrics.newHistogram();
+            failures[i] = new LongAdder();
+        }
+        checkArgument(total > 0, "the scenario must give a weight to at least one action");
+        layers = Integer.parseInt(scenario.getProperty("layers", "10").trim());
+        checkArgument(layers > 0, "layers must be > 0: %s", layers);
+        String seedValue = scenario.getProperty("seed", "").trim();
+        seed = seedValue.isEmpty() ? null : Long.valueOf(seedValue);
+    }
+
+    public static WorkloadMix load(File file) throws IOException {
+        checkArgument(file.isFile(), "scenario file not found: %s", file.getAbsolutePath());
+        Properties scenario = new Properties();
+        try (Reader reader = new FileReader(file)) {
+            scenario.load(reader);
+        }
+        return new WorkloadMix(scenario);
+    }
+
+    /**
+     * @return the number of layers to set up for the actions to run against
+     */
+    public int getLayers() {
+        return layers;
+    }
+
+    /**
+     * @return the random number source for the given virtual user, seeded from the scenario's
+     *         seed if it has one
+     */
+    public Random newRandom(final int user) {
+        return seed == null ? new Random() : new Random(seed.longValue() + user);
+    }
+
+    /**
+     * Draws an action according to the weights
+     */
+    public Action next(final Random random) {
+        final double total = cumulativeWeights[cumulativeWeights.length - 1];
+        final double r = random.nextDouble() * total;
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (r < cumulativeWeights[i]) {
+                return Action.values()[i];
+            }
+        }
+        // rounding at the top end, take the last action with any weight
+        for (int i = weights.length - 1;; i--) {
+            if (weights[i] > 0) {
+                return Action.values()[i];
+            }
+        }
+    }
+
+    /**
+     * @return the time a virtual user waits after the given action before drawing the next one
+     */
+    public long thinkTimeNanos(final Action action) {
+        return thinkTimeNanos[action.ordinal()];
+    }
+
+    public void record(final Action action, final long elapsedNanos, final boolean success) {
+        if (success) {
+            latencies[action.ordinal()].recordValue(Math.min(
+                    LatencyMetrics.HIGHEST_TRACKABLE_MICROS,
+                    TimeUnit.NANOSECONDS.toMicros(elapsedNanos)));
+        } else {
+            failures[action.ordinal()].increment();
+        }
+    }
+
+    /**
+     * Prints out the count, rate, failures, and latency percentiles of each action
+     */
+    public synchronized void report(final PrintStream out, final double seconds) {
+        final double totalWeight = cumulativeWeights[cumulativeWeights.length - 1];
+        out.printf("Workload mix: %d layers, times in ms\n", layers);
+        out.printf("%-20s %7s %9s %9s %9s %9s %9s %9s %9s\n", "action", "weight", "count",
+                "actions/s", "failed", "p50", "p90", "p99", "max");
+        for (Action action : Action.values()) {
+            final int i = action.ordinal();
+            if (weights[i] == 0) {
+                continue;
+            }
+            Histogram h = totals[i];
+            h.add(latencies[i].getIntervalHistogram());
+            out.printf("%-20s %6.1f%% %9d %9.1f %9d", action.label(), 100 * weights[i]
+                    / totalWeight, h.getTotalCount(), h.getTotalCount() / seconds,
+                    failures[i].sum());
+            for (double p : PERCENTILES) {
+                out.printf(" %9.1f", h.getValueAtPercentile(p) / 1000d);
+            }
+            out.printf(" %9.1f\n", h.getMaxValue() / 1000d);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package org.geoserver.rest.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.geoserver.rest.test.BodyTemplate.Buffer;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+
+public class BodyTemplateTest {
+
+    @Test
+    public void testNoPlaceholders() {
+        BodyTemplate template = BodyTemplate.compile("<workspace/>");
+        assertTrue(template.getPlaceholders().isEmpty());
+        assertEquals("<workspace/>", write(template));
+    }
+
+    @Test
+    public void testEmptyTemplate() {
+        assertEquals("", write(BodyTemplate.compile("")));
+    }
+
+    @Test
+    public void testRepeatedPlaceholder() {
+        BodyTemplate template = BodyTemplate.compile("${a}-${b}-${a}");
+        assertEquals(ImmutableList.of("a", "b"), template.getPlaceholders());
+        assertEquals("1-2-1", write(template, "1", "2"));
+        assertEquals("--", write(template, "", ""));
+    }
+
+    @Test
+    public void testBind() {
+        BodyTemplate template = BodyTemplate.compile("${a}/${b}/${c}/${b}").bind("b", "x");
+        assertEquals(ImmutableList.of("a", "c"), template.getPlaceholders());
+        assertEquals("1/x/3/x", write(template, "1", "3"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongNumberOfValues() {
+        write(BodyTemplate.compile("${a}${b}"), "1");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnterminatedPlaceholder() {
+        BodyTemplate.compile("<name>${name</name>");
+    }
+
+    @Test
+    public void testValuesEncodedAsUtf8() {
+        BodyTemplate template = BodyTemplate.compile("<name>${name}</name>");
+        Buffer body = new Buffer(4);
+        template.write(body, "caf\u00e9 \u5730\u56f3");
+        assertArrayEquals("<name>caf\u00e9 \u5730\u56f3</name>".getBytes(Charsets.UTF_8),
+                body.toByteArray());
+    }
+
+    @Test
+    public void testValueLargerThanTheBuffer() {
+        String value = Strings.repeat("x", 100000);
+        Buffer body = new Buffer(16);
+        BodyTemplate.compile("<a>${v}</a>").write(body, value);
+        assertEquals("<a>" + value + "</a>", body.toString());
+    }
+
+    @Test
+    public void testEmptyAttributeList() throws XMLStreamException {
+        Buffer body = RequestBodies.modifiedFeatureType("ft", "table",
+                new LinkedHashMap<String, String>());
+        assertTrue(parseAttributes(body).isEmpty());
+    }
+
+    @Test
+    public void testLargeAttributeList() throws XMLStreamException {
+        LinkedHashMap<String, String> attributes = new LinkedHashMap<>();
+        for (int i = 0; i < 10000; i++) {
+            attributes.put("att" + i, i % 2 == 0 ? "java.lang.String" : "java.lang.Integer");
+        }
+        Buffer body = RequestBodies.modifiedFeatureType("ft", "table", attributes);
+        assertTrue(body.length() > 4096);
+        assertEquals(ImmutableList.copyOf(attributes.entrySet()), ImmutableList
+                .copyOf(parseAttributes(body).entrySet()));
+    }
+
+    @Test
+    public void testSmallBodyAfterALargeOne() throws XMLStreamException {
+        LinkedHashMap<String, String> attributes = new LinkedHashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            attributes.put("att" + i, "java.lang.String");
+        }
+        RequestBodies.modifiedFeatureType("ft", "table", attributes);
+        // same thread, same buffer, reset to the new body's length
+        Buffer body = RequestBodies.workspace("ws");
+        assertEquals("<workspace><name>ws</name></workspace>", body.toString());
+    }
+
+    private static String write(final BodyTemplate template, final String... values) {
+        Buffer body = new Buffer(1);
+        template.write(body, values);
+        return body.toString();
+    }
+
+    private static Map<String, String> parseAttributes(final Buffer body)
+            throws XMLStreamException {
+        Map<String, String> attributes = new LinkedHashMap<>();
+        ResponseParsers.parseAttributes(new ByteArrayInputStream(body.array(), 0,
+                body.length()), attributes);
+        return attributes;
+    }
+}
@@ -0,0 +1,89 @@
+package org.geoserver.rest.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+
+import org.geoserver.rest.test.ErrorCounters.FailureClass;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ErrorCountersTest {
+
+    private static final double DELTA = 1e-9;
+
+    private ErrorCounters errors;
+
+    @Before
+    public void setUp() {
+        errors = new ErrorCounters(Arrays.asList("http://member1/", "http://member2/"));
+    }
+
+    @Test
+    public void testNoErrorsIsZeroPercent() {
+        assertEquals(0d, errors.errorPercent(0), DELTA);
+        assertEquals(0d, errors.errorPercent(1000), DELTA);
+    }
+
+    @Test
+    public void testPercentOfRequestsSent() {
+        errors.record(Operation.REST_GET, 0, FailureClass.HTTP_STATUS, 500);
+        assertEquals(0.5d, errors.errorPercent(200), DELTA);
+        errors.record(Operation.REST_GET, 1, FailureClass.TIMEOUT);
+        assertEquals(1d, errors.errorPercent(200), DELTA);
+        assertEquals(100d, errors.errorPercent(2), DELTA);
+    }
+
+    @Test
+    public void testErrorsWithoutRequestsAreAllErrors() {
+        errors.record(null, -1, FailureClass.FIXTURE);
+        assertEquals(100d, errors.errorPercent(0), DELTA);
+    }
+
+    @Test
+    public void testVerificationFailuresCappedAtRequestsSent() {
+        // a successful response can fail more than one verification
+        for (int i = 0; i < 3; i++) {
+            errors.record(Operation.GET_FEATURE, 0, FailureClass.ATTRIBUTE_MISMATCH);
+        }
+        assertEquals(3, errors.total());
+        assertEquals(100d, errors.errorPercent(2), DELTA);
+    }
+
+    @Test
+    public void testResetDiscardsSetupFailures() {
+        errors.record(Operation.POST_WORKSPACE, 0, FailureClass.HTTP_STATUS, 409);
+        errors.reset();
+        assertEquals(0, errors.total());
+        assertEquals(0d, errors.errorPercent(10), DELTA);
+    }
+
+    @Test
+    public void testClassifiesWrappedTimeouts() {
+        Exception wrapped = new RuntimeException(new IOException(new SocketTimeoutException()));
+        errors.record(Operation.REST_GET, 0, wrapped);
+        assertEquals(FailureClass.TIMEOUT, ErrorCounters.classify(wrapped));
+        assertEquals(1, errors.total());
+    }
+
+    @Test
+    public void testReadAddsToTheCountsOfAnotherProcess() throws IOException {
+        errors.record(Operation.REST_GET, 0, FailureClass.HTTP_STATUS, 500);
+        errors.record(Operation.REST_GET, 0, FailureClass.HTTP_STATUS, 500);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        errors.write(new DataOutputStream(bytes));
+
+        ErrorCounters merged = new ErrorCounters(Arrays.asList("http://member1/",
+                "http://member2/"));
+        merged.record(Operation.REST_GET, 1, FailureClass.TIMEOUT);
+        merged.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(3, merged.total());
+        assertEquals(1.5d, merged.errorPercent(200), DELTA);
+    }
+}
@@ -0,0 +1,91 @@
+package org.geoserver.rest.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+
+public class FeatureCollectionScanTest {
+
+    private static final String COLLECTION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<wfs:FeatureCollection xmlns:wfs=\"http://www.opengis.net/wfs\" "
+            + "xmlns:gml=\"http://www.opengis.net/gml\" note='a > b'>"
+            + "<gml:featureMember><ws:table fid=\"table.1\"><ws:name>one</ws:name></ws:table>"
+            + "</gml:featureMember>"
+            + "<!-- a -> b <gml:featureMember> --><!---->"
+            + "<gml:featureMember><ws:table fid=\"table.2\">"
+            + "<ws:text><![CDATA[ ]> <gml:featureMember> ]]]></ws:text></ws:table>"
+            + "</gml:featureMember>"
+            + "<?pi a > b <gml:featureMember> ?>"
+            + "<gml:featureMembers/><gml:featureMember/>"
+            + "</wfs:FeatureCollection>";
+
+    @Test
+    public void testCountsFeatureMembers() throws IOException {
+        FeatureCollectionScan scan = scan(COLLECTION, 8192, Integer.MAX_VALUE);
+        assertTrue(scan.isFeatureCollection());
+        assertEquals("FeatureCollection", scan.getRootElement());
+        assertEquals(3, scan.getFeatures());
+        assertEquals(COLLECTION.length(), scan.getBytes());
+    }
+
+    @Test
+    public void testSameCountWhateverTheBufferSize() throws IOException {
+        for (int size = 1; size <= COLLECTION.length(); size++) {
+            assertEquals("buffer size " + size, 3, scan(COLLECTION, size, Integer.MAX_VALUE)
+                    .getFeatures());
+        }
+    }
+
+    @Test
+    public void testSameCountWhateverTheReadSize() throws IOException {
+        // the buffer is large, but the stream hands out short reads that split every token
+        for (int read = 1; read <= 16; read++) {
+            FeatureCollectionScan scan = scan(COLLECTION, 8192, read);
+            assertEquals("read size " + read, 3, scan.getFeatures());
+            assertEquals(COLLECTION.length(), scan.getBytes());
+        }
+    }
+
+    @Test
+    public void testStopsAtTheRootOfOtherDocuments() throws IOException {
+        String exception = "<?xml version=\"1.0\"?><ows:ExceptionReport><ows:Exception>"
+                + "<gml:featureMember/></ows:Exception></ows:ExceptionReport>";
+        for (int size = 1; size <= exception.length(); size++) {
+            FeatureCollectionScan scan = scan(exception, size, Integer.MAX_VALUE);
+            assertFalse(scan.isFeatureCollection());
+            assertEquals("ExceptionReport", scan.getRootElement());
+            assertEquals(0, scan.getFeatures());
+        }
+    }
+
+    @Test
+    public void testEmptyResponse() throws IOException {
+        FeatureCollectionScan scan = scan("", 16, Integer.MAX_VALUE);
+        assertEquals(null, scan.getRootElement());
+        assertEquals(0, scan.getBytes());
+        assertEquals(0, scan.getFeatures());
+    }
+
+    private static FeatureCollectionScan scan(final String document, final int bufferSize,
+            final int maxRead) throws IOException {
+        InputStream body = new ByteArrayInputStream(document.getBytes(Charsets.UTF_8));
+        if (maxRead != Integer.MAX_VALUE) {
+            body = new FilterInputStream(body) {
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    return super.read(b, off, Math.min(len, maxRead));
+                }
+            };
+        }
+        return FeatureCollectionScan.scan(body, new byte[bufferSize]);
+    }
+}
@@ -0,0 +1,112 @@
+package org.geoserver.rest.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LoadRampTest {
+
+    private static final long STEP_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private LoadRamp ramp;
+
+    @Before
+    public void setUp() {
+        ramp = new LoadRamp(Arrays.asList(1, 2, 4, 8, 16), STEP_NANOS);
+    }
+
+    @Test
+    public void testNoStepsNoKnee() {
+        assertNull(ramp.knee());
+    }
+
+    @Test
+    public void testSingleStepNoKnee() {
+        step(1, 1000, 5000);
+        assertNull(ramp.knee());
+    }
+
+    @Test
+    public void testFlatCurveNoKnee() throws UnsupportedEncodingException {
+        for (int concurrency : ramp.getConcurrencies()) {
+            step(concurrency, 1000, 5000);
+        }
+        assertNull(ramp.knee());
+        assertTrue(report().contains("No saturation point found"));
+    }
+
+    @Test
+    public void testFlatCurveOfSubMicrosecondLatenciesNoKnee() {
+        // a p99 of zero that stays zero did not grow
+        for (int concurrency : ramp.getConcurrencies()) {
+            step(concurrency, 1000, 0);
+        }
+        assertNull(ramp.knee());
+    }
+
+    @Test
+    public void testFlatThroughputWithSlowlyRisingLatencyNoKnee() {
+        long micros = 5000;
+        for (int concurrency : ramp.getConcurrencies()) {
+            step(concurrency, 1000, micros);
+            micros += micros / 4;
+        }
+        assertNull(ramp.knee());
+    }
+
+    @Test
+    public void testGrowingThroughputWithRisingLatencyNoKnee() {
+        int requests = 1000;
+        long micros = 5000;
+        for (int concurrency : ramp.getConcurrencies()) {
+            step(concurrency, requests, micros);
+            requests *= 2;
+            micros *= 2;
+        }
+        assertNull(ramp.knee());
+    }
+
+    @Test
+    public void testKneeWhereTheFlatCurveSlowsDown() throws UnsupportedEncodingException {
+        step(1, 1000, 5000);
+        step(2, 2000, 5000);
+        step(4, 2050, 5000);
+        step(8, 2050, 10000);
+        step(16, 2050, 40000);
+        LoadRamp.Step knee = ramp.knee();
+        assertEquals(8, knee.concurrency);
+        assertTrue(report().contains("Saturation point at concurrency 4"));
+    }
+
+    @Test
+    public void testKneeWhenThroughputDrops() {
+        step(1, 1000, 5000);
+        step(2, 500, 10000);
+        assertEquals(2, ramp.knee().concurrency);
+    }
+
+    /**
+     * Completes a step of {@code requests} successful requests, all taking {@code micros}
+     */
+    private void step(final int concurrency, final int requests, final long micros) {
+        Histogram latencies = LatencyMetrics.newHistogram();
+        latencies.recordValueWithCount(micros, requests);
+        ramp.completed(concurrency, STEP_NANOS, requests, 0, latencies);
+    }
+
+    private String report() throws UnsupportedEncodingException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ramp.report(new PrintStream(bytes, true, "UTF-8"));
+        return bytes.toString("UTF-8");
+    }
+}
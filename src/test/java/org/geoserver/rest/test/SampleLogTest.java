@@ -0,0 +1,224 @@
+package org.geoserver.rest.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.net.ConnectException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.geoserver.rest.test.ErrorCounters.FailureClass;
+import org.geoserver.rest.test.EventLog.Level;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+public class SampleLogTest {
+
+    private static final List<String> MEMBERS = Arrays.asList("http://member0/",
+            "http://member1/");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private EventLog log;
+
+    private File file;
+
+    private SampleLog samples;
+
+    private HttpTransport transport;
+
+    @Before
+    public void setUp() throws IOException {
+        log = EventLog.console(Level.OFF);
+        file = new File(folder.getRoot(), "samples.bin");
+        samples = new SampleLog(file, MEMBERS, 1, log);
+        samples.start();
+        transport = samples.wrap(new FixedTransport());
+    }
+
+    @After
+    public void tearDown() {
+        samples.close();
+        log.close();
+    }
+
+    @Test
+    public void testRecordRoundTrip() throws Exception {
+        final long sentNanos = System.nanoTime();
+        SampleLog.begin(7, Long.valueOf(sentNanos - TimeUnit.MILLISECONDS.toNanos(5)));
+        try (TransportResponse response = send(Operation.GET_FEATURE, 1, "200", 10)) {
+            assertEquals(100, ByteStreams.toByteArray(response.getBody()).length);
+        }
+        // the intended start is taken by the first request of the run only
+        send(Operation.REST_GET, 0, "500", 0).close();
+        SampleLog.end();
+        try {
+            send(Operation.POST_WORKSPACE, 1, "refused", 42);
+        } catch (ExecutionException expected) {
+            // recorded anyway
+        }
+        samples.close();
+
+        ByteBuffer records = records(3);
+        assertEquals(3 * SampleLog.RECORD_SIZE, records.capacity());
+
+        assertRecord(records, 0, Operation.GET_FEATURE, 1, 200, null, 10, 100, 7);
+        assertTrue(records.getLong(SampleLog.INTENDED) < records.getLong(SampleLog.START));
+        assertRecord(records, 1, Operation.REST_GET, 0, 500, FailureClass.HTTP_STATUS, 0, 0, 7);
+        assertRecord(records, 2, Operation.POST_WORKSPACE, 1, 0,
+                FailureClass.CONNECTION_REFUSED, 42, 0, -1);
+        for (int i = 1; i < 3; i++) {
+            int offset = i * SampleLog.RECORD_SIZE;
+            assertEquals(records.getLong(offset + SampleLog.START), records.getLong(offset
+                    + SampleLog.INTENDED));
+        }
+    }
+
+    @Test
+    public void testRecordsAcrossChunks() throws Exception {
+        // one more than fits the first 1MB chunk
+        final int count = (1 << 20) / SampleLog.RECORD_SIZE + 1;
+        for (int i = 0; i < count; i++) {
+            SampleLog.begin(i, null);
+            send(Operation.REST_GET, i % 2, "200", i % 100).close();
+            SampleLog.end();
+        }
+        samples.close();
+
+        ByteBuffer records = records(count);
+        for (int i = count - 2; i < count; i++) {
+            // closed without reading the body
+            assertRecord(records, i, Operation.REST_GET, i % 2, 200, null, i % 100, 0, i);
+        }
+    }
+
+    @Test
+    public void testPrintOut() throws Exception {
+        send(Operation.REST_GET, 0, "200", 0).close();
+        send(Operation.REST_GET, 1, "404", 0).close();
+        samples.close();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(bytes, true, "UTF-8"));
+        try {
+            SampleLog.main(new String[] { file.getPath(), "--failed", "--by=member" });
+        } finally {
+            System.setOut(out);
+        }
+        String printed = new String(bytes.toByteArray(), Charsets.UTF_8);
+        assertTrue(printed, printed.contains("2 requests logged"));
+        assertTrue(printed, printed.contains("1 requests selected"));
+        assertTrue(printed, printed.contains("http://member1/"));
+        assertTrue(printed, printed.contains("1 failed with http status"));
+    }
+
+    private TransportResponse send(final Operation op, final int member, final String outcome,
+            final int bodyLength) throws Exception {
+        byte[] body = bodyLength == 0 ? null : new byte[bodyLength];
+        return transport.send(op, member, HttpTransport.POST, outcome, null, body, bodyLength)
+                .get();
+    }
+
+    /**
+     * @return the records of the sample log, checking the header holds their count
+     */
+    private ByteBuffer records(final int expectedCount) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                FileChannel channel = raf.getChannel()) {
+            ByteBuffer header = ByteBuffer.allocate(SampleLog.COUNT_OFFSET + 8);
+            channel.read(header, 0L);
+            final int headerSize = header.getInt(12);
+            assertEquals(0, headerSize % 8);
+            assertEquals(expectedCount, header.getLong(SampleLog.COUNT_OFFSET));
+            assertEquals(0, (channel.size() - headerSize) % SampleLog.RECORD_SIZE);
+            ByteBuffer records = ByteBuffer.allocate(expectedCount * SampleLog.RECORD_SIZE);
+            channel.read(records, headerSize);
+            return records;
+        }
+    }
+
+    private static void assertRecord(final ByteBuffer records, final int index,
+            final Operation op, final int member, final int status, final FailureClass failure,
+            final int sent, final long received, final int run) {
+        final int offset = index * SampleLog.RECORD_SIZE;
+        final long start = records.getLong(offset + SampleLog.START);
+        assertTrue(start >= 0);
+        assertTrue(records.getLong(offset + SampleLog.END) >= start);
+        assertEquals(op.ordinal(), records.get(offset + SampleLog.OP));
+        assertEquals(member, records.get(offset + SampleLog.MEMBER) & 0xff);
+        assertEquals(status, records.getShort(offset + SampleLog.STATUS));
+        assertEquals(failure == null ? 0 : failure.ordinal() + 1, records.get(offset
+                + SampleLog.FAILURE));
+        assertEquals(sent, records.getInt(offset + SampleLog.SENT));
+        assertEquals(received, records.getLong(offset + SampleLog.RECEIVED));
+        assertEquals(run, records.getInt(offset + SampleLog.RUN));
+    }
+
+    /**
+     * Answers with the status given as path and a 100 bytes body, or refuses the connection
+     */
+    private static class FixedTransport implements HttpTransport {
+
+        @Override
+        public ListenableFuture<TransportResponse> send(Operation op, int member, String method,
+                String relativePath, String contentType, byte[] body, int bodyLength) {
+            if ("refused".equals(relativePath)) {
+                return Futures.immediateFailedFuture(new ConnectException(relativePath));
+            }
+            InputStream responseBody = new ByteArrayInputStream(new byte[100]);
+            return Futures.immediateFuture(new TransportResponse(Integer.parseInt(relativePath),
+                    relativePath, responseBody));
+        }
+
+        @Override
+        public boolean isAsynchronous() {
+            return false;
+        }
+
+        @Override
+        public int inFlight() {
+            return 0;
+        }
+
+        @Override
+        public int inFlight(int member) {
+            return 0;
+        }
+
+        @Override
+        public String targetUrl(int member, String relativePath) {
+            return MEMBERS.get(member) + relativePath;
+        }
+
+        @Override
+        public void report(PrintStream out) {
+            // nothing to report
+        }
+
+        @Override
+        public void close() {
+            // nothing to close
+        }
+    }
+}